@@ -0,0 +1,36 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+
+//a byte range reserved behind the end of a file, written without holding the file token
+public interface CrailAppendRegion {
+	public long getOffset();
+	public long getLength();
+	public long position();
+	public Future<CrailResult> write(ByteBuffer dataBuf) throws Exception;
+	//publishes the region once all writes completed, returns the committed length of the file
+	public long commit() throws Exception;
+}
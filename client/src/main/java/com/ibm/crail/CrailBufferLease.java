@@ -0,0 +1,38 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+//a read-only view straight into the memory of a co-located datanode, the block stays pinned until 
+//the lease is closed or runs out, long readers renew the lease, the buffer must not be touched afterwards
+public interface CrailBufferLease {
+	//fails once the lease is closed or ran out
+	public ByteBuffer getBuffer() throws IOException;
+	//false once the namenode may have dropped the pin on its own
+	public boolean isValid();
+	//extends the pin by another lease period, fails if the lease ran out already
+	public void renew() throws Exception;
+	public void close() throws Exception;
+}
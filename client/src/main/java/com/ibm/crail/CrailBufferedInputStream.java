@@ -24,6 +24,7 @@ package com.ibm.crail;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -42,8 +43,20 @@ public class CrailBufferedInputStream extends InputStream {
 	private ByteBuffer internalBuf;	
 	private Future<CrailResult> future;
 	private long position;
+	private CrailCodec codec;
+	private ByteBuffer frameBuf;
+	private long[] frameOffsets;
+	private long[] frameRawOffsets;
+	private int frameCount;
+	private long indexOffset;
+	private int currentFrame;
+	private int nextFrame;
 	
 	public CrailBufferedInputStream(CrailFS crailFS, CrailInputStream inputStream) throws IOException {
+		this(crailFS, inputStream, null, 0);
+	}
+	
+	public CrailBufferedInputStream(CrailFS crailFS, CrailInputStream inputStream, CrailCodec codec, long capacity) throws IOException {
 		this.crailFS = crailFS;
 		this.inputStream = inputStream;
 		this.position = 0;
@@ -52,6 +65,13 @@ public class CrailBufferedInputStream extends InputStream {
 		this.internalBuf = crailFS.allocateBuffer();
 		this.future = null;
 		this.internalBuf.clear().flip();
+		this.codec = codec;
+		if (codec != null){
+			this.frameBuf = crailFS.allocateBuffer(CrailCodec.FRAME_HEADER + codec.maxCompressedLength(internalBuf.capacity()));
+			this.currentFrame = -1;
+			this.nextFrame = 0;
+			loadIndex(capacity);
+		}
 		triggerFetch();
 	}
 	
@@ -64,16 +84,45 @@ public class CrailBufferedInputStream extends InputStream {
         return read(b, 0, b.length);
     }	
 
-	public final synchronized int read(long position, byte[] buffer, int offset, int length) throws IOException {
-		long oldPos = position();
-		int nread = -1;
+	public final int read(long position, byte[] buffer, int offset, int length) throws IOException {
+		if (buffer == null) {
+			throw new NullPointerException();
+		} else if (offset < 0 || length < 0 || length > buffer.length - offset) {
+			throw new IndexOutOfBoundsException("off " + offset + ", len " + length + ", length " + buffer.length);
+		} else if (length == 0) {
+			return 0;
+		}
+		if (codec != null){
+			return readCompressed(position, buffer, offset, length);
+		}
+		
+		ByteBuffer positionalBuf = crailFS.allocateBuffer();
 		try {
-			seek(position);
-			nread = read(buffer, offset, length);
+			int sumLen = 0;
+			while (length > 0) {
+				positionalBuf.clear();
+				positionalBuf.limit(Math.min(length, positionalBuf.capacity()));
+				Future<CrailResult> positionalFuture = inputStream.read(position, positionalBuf);
+				if (positionalFuture == null){
+					break;
+				}
+				int nread = (int) positionalFuture.get().getLen();
+				if (nread <= 0){
+					break;
+				}
+				positionalBuf.flip();
+				positionalBuf.get(buffer, offset, nread);
+				length -= nread;
+				offset += nread;
+				position += nread;
+				sumLen += nread;
+			}
+			return sumLen > 0 ? sumLen : -1;
+		} catch (Exception e) {
+			throw new IOException(e);
 		} finally {
-			seek(oldPos);
+			crailFS.freeBuffer(positionalBuf);
 		}
-		return nread;
 	}
 	
 	@Override
@@ -135,7 +184,14 @@ public class CrailBufferedInputStream extends InputStream {
 	
 	private void triggerFetch() throws IOException {
 		try {
-			if (future == null && internalBuf.remaining() == 0){
+			if (future == null && internalBuf.remaining() == 0 && codec != null){
+				internalBuf.clear().flip();
+				if (nextFrame < frameCount){
+					frameBuf.clear();
+					frameBuf.limit((int) (frameEnd(nextFrame) - frameOffsets[nextFrame]));
+					future = inputStream.read(frameOffsets[nextFrame], frameBuf);
+				}
+			} else if (future == null && internalBuf.remaining() == 0){
 				internalBuf.clear();
 				future = inputStream.read(internalBuf);
 				if (future == null){
@@ -151,7 +207,12 @@ public class CrailBufferedInputStream extends InputStream {
 		try {
 			if (future != null){
 				future.get();
-				internalBuf.flip();
+				if (codec != null){
+					decodeFrame(codec, frameBuf, internalBuf);
+					currentFrame = nextFrame++;
+				} else {
+					internalBuf.flip();
+				}
 				future = null;
 			}
 			return internalBuf.remaining();
@@ -169,6 +230,9 @@ public class CrailBufferedInputStream extends InputStream {
 			completeFetch();
 			inputStream.close();
 			crailFS.freeBuffer(internalBuf);
+			if (codec != null){
+				crailFS.freeBuffer(frameBuf);
+			}
 		} catch (Exception e) {
 			throw new IOException(e);
 		}
@@ -202,27 +266,40 @@ public class CrailBufferedInputStream extends InputStream {
 		long skip = pos - position;
 		if (Math.abs(skip) < Integer.MAX_VALUE){
 			int bufferPosition = internalBuf.position() + (int) skip;
-			if (bufferPosition > 0 && bufferPosition < internalBuf.limit()){
+			if (bufferPosition >= 0 && bufferPosition < internalBuf.limit()){
 				internalBuf.position(bufferPosition);
 				this.position = pos;
 				return;
 			}
 		}
 		
-		long startOffset = CrailUtils.blockStartAddress(pos);
+		if (codec != null){
+			nextFrame = findFrame(pos);
+			internalBuf.clear().flip();
+			triggerFetch();
+			completeFetch();
+			long frameStart = nextFrame > 0 ? frameRawOffsets[nextFrame - 1] : 0;
+			internalBuf.position((int) Math.min(pos - frameStart, internalBuf.limit()));
+			this.position = pos;
+			return;
+		}
+		
 		long offset = pos % (long) CrailConstants.BUFFER_SIZE;
+		long startOffset = pos - offset;
 		inputStream.seek(startOffset);
 		internalBuf.clear().flip();
 		triggerFetch();
 		completeFetch();
-		internalBuf.position((int) offset);
+		internalBuf.position(Math.min((int) offset, internalBuf.limit()));
 		this.position = pos;
 	}
 
 
 	public synchronized int available() {
 		try {
-			if (future != null){
+			if (future != null && codec != null){
+				return 0;
+			} else if (future != null){
 				return (int) (future.isDone() ? future.get().getLen() : 0);
 			} else {
 				return internalBuf.remaining();
@@ -240,6 +317,150 @@ public class CrailBufferedInputStream extends InputStream {
 		return position;
 	}
 
+	//---------------------- compression
+	
+	//the index is read from the trailer, files that were never closed are scanned frame by frame
+	private void loadIndex(long capacity) throws IOException {
+		this.frameOffsets = new long[64];
+		this.frameRawOffsets = new long[64];
+		this.frameCount = 0;
+		if (capacity >= CrailCodec.TRAILER_SIZE){
+			frameBuf.clear();
+			frameBuf.limit(CrailCodec.TRAILER_SIZE);
+			readFully(capacity - CrailCodec.TRAILER_SIZE, frameBuf);
+			frameBuf.flip();
+			long offset = frameBuf.getLong();
+			int count = frameBuf.getInt();
+			int type = frameBuf.getInt();
+			int magic = frameBuf.getInt();
+			if (magic == CrailCodec.MAGIC && type == codec.getType() && offset + (long) count*CrailCodec.INDEX_ENTRY + CrailCodec.TRAILER_SIZE == capacity){
+				long current = offset;
+				while (frameCount < count){
+					int entries = Math.min(count - frameCount, frameBuf.capacity() / CrailCodec.INDEX_ENTRY);
+					frameBuf.clear();
+					frameBuf.limit(entries*CrailCodec.INDEX_ENTRY);
+					readFully(current, frameBuf);
+					frameBuf.flip();
+					for (int i = 0; i < entries; i++){
+						addFrame(frameBuf.getLong(), frameBuf.getLong());
+					}
+					current += entries*CrailCodec.INDEX_ENTRY;
+				}
+				this.indexOffset = offset;
+				return;
+			}
+		}
+		
+		long offset = 0;
+		long rawOffset = 0;
+		while (offset + CrailCodec.FRAME_HEADER <= capacity){
+			frameBuf.clear();
+			frameBuf.limit(CrailCodec.FRAME_HEADER);
+			readFully(offset, frameBuf);
+			frameBuf.flip();
+			int rawLen = frameBuf.getInt();
+			int compressedLen = frameBuf.getInt();
+			if (offset + CrailCodec.FRAME_HEADER + compressedLen > capacity){
+				break;
+			}
+			addFrame(offset, rawOffset);
+			offset += CrailCodec.FRAME_HEADER + compressedLen;
+			rawOffset += rawLen;
+		}
+		this.indexOffset = offset;
+	}
+	
+	private void addFrame(long offset, long rawOffset){
+		if (frameCount == frameOffsets.length){
+			frameOffsets = Arrays.copyOf(frameOffsets, frameCount*2);
+			frameRawOffsets = Arrays.copyOf(frameRawOffsets, frameCount*2);
+		}
+		frameOffsets[frameCount] = offset;
+		frameRawOffsets[frameCount] = rawOffset;
+		frameCount++;
+	}
+	
+	private long frameEnd(int frame){
+		return frame + 1 < frameCount ? frameOffsets[frame + 1] : indexOffset;
+	}
+	
+	//last frame starting at or before pos
+	private int findFrame(long pos){
+		int index = Arrays.binarySearch(frameRawOffsets, 0, frameCount, pos);
+		if (index < 0){
+			index = -index - 2;
+		}
+		return Math.max(0, index);
+	}
+	
+	private static void decodeFrame(CrailCodec codec, ByteBuffer frame, ByteBuffer raw) throws IOException {
+		frame.flip();
+		int rawLen = frame.getInt();
+		int compressedLen = frame.getInt();
+		if (compressedLen != frame.remaining() || rawLen > raw.capacity()){
+			throw new IOException("corrupt frame, rawLen " + rawLen + ", compressedLen " + compressedLen + ", available " + frame.remaining());
+		}
+		raw.clear();
+		raw.limit(rawLen);
+		if (compressedLen == rawLen){
+			raw.put(frame);
+		} else if (codec.decompress(frame, raw) != rawLen){
+			throw new IOException("corrupt frame, decompressed length does not match " + rawLen);
+		}
+		raw.flip();
+	}
+	
+	//positional reads run outside the stream lock, they decode with their own codec and buffers
+	private int readCompressed(long position, byte[] buffer, int offset, int length) throws IOException {
+		CrailCodec positionalCodec = CrailCodec.createInstance(codec.getType());
+		ByteBuffer positionalFrame = crailFS.allocateBuffer(frameBuf.capacity());
+		ByteBuffer positionalBuf = crailFS.allocateBuffer();
+		try {
+			int sumLen = 0;
+			for (int frame = findFrame(position); length > 0 && frame < frameCount; frame++){
+				positionalFrame.clear();
+				positionalFrame.limit((int) (frameEnd(frame) - frameOffsets[frame]));
+				readFully(frameOffsets[frame], positionalFrame);
+				decodeFrame(positionalCodec, positionalFrame, positionalBuf);
+				long skip = position - frameRawOffsets[frame];
+				if (skip >= positionalBuf.limit()){
+					continue;
+				}
+				positionalBuf.position((int) skip);
+				int nread = Math.min(length, positionalBuf.remaining());
+				positionalBuf.get(buffer, offset, nread);
+				length -= nread;
+				offset += nread;
+				position += nread;
+				sumLen += nread;
+			}
+			return sumLen > 0 ? sumLen : -1;
+		} finally {
+			crailFS.freeBuffer(positionalFrame);
+			crailFS.freeBuffer(positionalBuf);
+		}
+	}
+	
+	private void readFully(long offset, ByteBuffer buffer) throws IOException {
+		try {
+			while (buffer.hasRemaining()){
+				Future<CrailResult> readFuture = inputStream.read(offset, buffer);
+				if (readFuture == null){
+					throw new IOException("unexpected end of compressed file at " + offset);
+				}
+				long nread = readFuture.get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS).getLen();
+				if (nread <= 0){
+					throw new IOException("unexpected end of compressed file at " + offset);
+				}
+				offset += nread;
+			}
+		} catch(IOException e){
+			throw e;
+		} catch(Exception e){
+			throw new IOException(e);
+		}
+	}
+	
 	//---------------------- ByteBuffer interface 
 	
 	public final synchronized double readDouble() throws Exception {
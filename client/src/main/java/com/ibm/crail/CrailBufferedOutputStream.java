@@ -24,6 +24,7 @@ package com.ibm.crail;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -44,8 +45,17 @@ public class CrailBufferedOutputStream extends OutputStream {
 	private CrailImmediateOperation noOp;
 	private long position;
 	private Future<CrailResult> future;
+	private CrailCodec codec;
+	private ByteBuffer frameBuf;
+	private long[] frameOffsets;
+	private long[] frameRawOffsets;
+	private int frameCount;
 	
 	public CrailBufferedOutputStream(CrailFS crailFS, CrailOutputStream outputStream) throws IOException {
+		this(crailFS, outputStream, null);
+	}
+	
+	public CrailBufferedOutputStream(CrailFS crailFS, CrailOutputStream outputStream, CrailCodec codec) throws IOException {
 		this.crailFS = crailFS;
 		this.outputStream = outputStream;
 		this.internalBuf = crailFS.allocateBuffer();
@@ -55,6 +65,16 @@ public class CrailBufferedOutputStream extends OutputStream {
 		this.noOp = new CrailImmediateOperation(0);
 		this.position = 0;
 		this.future = null;
+		this.codec = codec;
+		if (codec != null){
+			if (outputStream.position() != 0){
+				throw new IOException("compressed files cannot be appended to");
+			}
+			this.frameBuf = crailFS.allocateBuffer(CrailCodec.FRAME_HEADER + codec.maxCompressedLength(internalBuf.capacity()));
+			this.frameOffsets = new long[64];
+			this.frameRawOffsets = new long[64];
+			this.frameCount = 0;
+		}
 	}
 	
 	public final synchronized void write(int dataBuf) throws IOException {
@@ -136,7 +156,11 @@ public class CrailBufferedOutputStream extends OutputStream {
 		try {
 			if (future == null && internalBuf.position() > 0) {
 				internalBuf.flip();
-				future = outputStream.write(internalBuf);
+				if (codec != null){
+					future = outputStream.write(compressFrame());
+				} else {
+					future = outputStream.write(internalBuf);
+				}
 				internalBuf.clear();
 				return future;
 			} else if (internalBuf.position() == 0){
@@ -161,6 +185,10 @@ public class CrailBufferedOutputStream extends OutputStream {
 			completePurge();
 			future = purge();
 			completePurge();
+			if (codec != null){
+				writeIndex();
+				crailFS.freeBuffer(frameBuf);
+			}
 			outputStream.close();
 			crailFS.freeBuffer(internalBuf);
 		} catch (Exception e) {
@@ -176,6 +204,62 @@ public class CrailBufferedOutputStream extends OutputStream {
 		return position;
 	}
 
+	//---------------------- compression
+	
+	//frames that do not shrink are stored raw, marked by compressedLen == rawLen
+	private ByteBuffer compressFrame() throws IOException {
+		int rawLen = internalBuf.remaining();
+		addFrame(outputStream.position(), position - rawLen);
+		frameBuf.clear();
+		frameBuf.position(CrailCodec.FRAME_HEADER);
+		int compressedLen = codec.compress(internalBuf.duplicate(), frameBuf);
+		if (compressedLen < 0 || compressedLen >= rawLen){
+			frameBuf.position(CrailCodec.FRAME_HEADER);
+			frameBuf.put(internalBuf.duplicate());
+			compressedLen = rawLen;
+		}
+		frameBuf.putInt(0, rawLen);
+		frameBuf.putInt(4, compressedLen);
+		frameBuf.flip();
+		return frameBuf;
+	}
+	
+	private void addFrame(long offset, long rawOffset){
+		if (frameCount == frameOffsets.length){
+			frameOffsets = Arrays.copyOf(frameOffsets, frameCount*2);
+			frameRawOffsets = Arrays.copyOf(frameRawOffsets, frameCount*2);
+		}
+		frameOffsets[frameCount] = offset;
+		frameRawOffsets[frameCount] = rawOffset;
+		frameCount++;
+	}
+	
+	private void writeIndex() throws Exception {
+		long indexOffset = outputStream.position();
+		frameBuf.clear();
+		for (int i = 0; i < frameCount; i++){
+			if (frameBuf.remaining() < CrailCodec.INDEX_ENTRY){
+				flushIndex();
+			}
+			frameBuf.putLong(frameOffsets[i]);
+			frameBuf.putLong(frameRawOffsets[i]);
+		}
+		if (frameBuf.remaining() < CrailCodec.TRAILER_SIZE){
+			flushIndex();
+		}
+		frameBuf.putLong(indexOffset);
+		frameBuf.putInt(frameCount);
+		frameBuf.putInt(codec.getType());
+		frameBuf.putInt(CrailCodec.MAGIC);
+		flushIndex();
+	}
+	
+	private void flushIndex() throws Exception {
+		frameBuf.flip();
+		outputStream.write(frameBuf).get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+		frameBuf.clear();
+	}
+
 	//---------------------- ByteBuffer interface
 	
 	public final synchronized void writeDouble(double value) throws Exception {
@@ -0,0 +1,75 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.ibm.crail.utils.DeflateCodec;
+import com.ibm.crail.utils.LZCodec;
+
+//block compression used by the buffered streams, instances keep scratch space and are not thread safe
+public abstract class CrailCodec {
+	public static final int NONE = 0;
+	public static final int LZ = 1;
+	public static final int DEFLATE = 2;
+	
+	//compressed files are a sequence of frames [rawLen, compressedLen, payload] followed by an index
+	//of (fileOffset, rawOffset) pairs and a trailer [indexOffset, frameCount, codec, magic]
+	static final int FRAME_HEADER = 8;
+	static final int INDEX_ENTRY = 16;
+	static final int TRAILER_SIZE = 20;
+	static final int MAGIC = 0x43524c5a;
+	
+	public static CrailCodec createInstance(int type) throws IOException {
+		if (type == NONE){
+			return null;
+		} else if (type == LZ){
+			return new LZCodec();
+		} else if (type == DEFLATE){
+			return new DeflateCodec();
+		} 
+		throw new IOException("unknown codec " + type);
+	}
+	
+	public static int getType(String name) throws IOException {
+		if (name.equalsIgnoreCase("none")){
+			return NONE;
+		} else if (name.equalsIgnoreCase("lz")){
+			return LZ;
+		} else if (name.equalsIgnoreCase("deflate")){
+			return DEFLATE;
+		}
+		throw new IOException("unknown codec " + name);
+	}
+	
+	public abstract int getType();
+	
+	public abstract int maxCompressedLength(int len);
+	
+	//compresses the remaining bytes of src into dst, returns the compressed length or -1 if dst is too small
+	public abstract int compress(ByteBuffer src, ByteBuffer dst) throws IOException;
+	
+	//decompresses the remaining bytes of src into dst, returns the decompressed length
+	public abstract int decompress(ByteBuffer src, ByteBuffer dst) throws IOException;
+}
@@ -0,0 +1,34 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail;
+
+//a server-side copy, the datanodes holding the source push its blocks straight into the blocks of the 
+//destination, the destination is readable with its full capacity once the copy is done
+public interface CrailCopy {
+	public CrailFile getFile() throws Exception;
+	//bytes to transfer, replicas and erasure coded fragments included
+	public long getTotal();
+	public long getCopied() throws Exception;
+	public boolean isDone() throws Exception;
+	//waits up to timeout milliseconds, returns false on timeout, throws if the copy failed
+	public boolean waitFor(long timeout) throws Exception;
+}
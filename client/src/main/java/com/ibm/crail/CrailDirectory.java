@@ -26,6 +26,8 @@ import java.util.Iterator;
 public interface CrailDirectory extends CrailNode {
 	public abstract int files();
 	public abstract Iterator<String> listEntries() throws Exception;
+	public abstract Iterator<CrailNode> listNodes() throws Exception;
+	public abstract CrailDirectoryWatch watch() throws Exception;
 	
 	default CrailMultiStream getMultiStream(int outstanding) throws Exception{
 		return new CrailMultiStream(this.getFileSystem(), listEntries(), outstanding, files());
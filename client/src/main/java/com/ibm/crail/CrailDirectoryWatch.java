@@ -0,0 +1,33 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail;
+
+import java.util.List;
+
+//a subscription on the entries of a directory, events of the same file are coalesced while they are not polled
+public interface CrailDirectoryWatch {
+	public CrailDirectory getDirectory();
+	//waits up to timeout milliseconds for events, returns an empty list on timeout or once the directory is gone
+	public List<CrailWatchEvent> poll(long timeout) throws Exception;
+	public boolean isClosed();
+	public void close() throws Exception;
+}
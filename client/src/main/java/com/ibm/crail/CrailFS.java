@@ -23,6 +23,7 @@ package com.ibm.crail;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -38,15 +39,30 @@ public abstract class CrailFS {
 	private static CrailFS instance = null;
 	
 	public abstract Future<CrailFile> createFile(String path, int locationAffinity, int storageAffinity) throws Exception;
+	public abstract Future<CrailFile> createFile(String path, int locationAffinity, int storageAffinity, long sizeHint) throws Exception;
+	public abstract Future<CrailFile> createFile(String path, int locationAffinity, int storageAffinity, long sizeHint, int replication) throws Exception;
+	public abstract Future<CrailFile> createCompressedFile(String path, int locationAffinity, int storageAffinity, int codec) throws Exception;
+	public abstract Future<CrailFile> createErasureCodedFile(String path, int locationAffinity, int storageAffinity, int dataFragments, int parityFragments) throws Exception;
 	public abstract Future<CrailDirectory> makeDirectory(String path) throws Exception;
 	public abstract Future<CrailFile> lookupFile(String path, boolean writeable) throws Exception;
 	public abstract Future<CrailDirectory> lookupDirectory(String path) throws Exception;
 	public abstract Future<CrailNode> lookupNode(String path) throws Exception;
 	public abstract Future<CrailNode> rename(String src, String dst) throws Exception;
 	public abstract Future<CrailNode> delete(String path, boolean recursive) throws Exception;
+	public abstract CrailFile concat(String dst, String[] srcs) throws Exception;
+	public abstract CrailNode clone(String src, String dst) throws Exception;
+	public abstract CrailCopy copy(String src, String dst, int locationAffinity, int storageAffinity, long bandwidth) throws Exception;
+	public abstract CrailTable openTable(String path) throws Exception;
+	
+	public abstract CompletionStage<CrailFile> createFileAsync(String path, int locationAffinity, int storageAffinity) throws Exception;
+	public abstract CompletionStage<CrailFile> lookupFileAsync(String path, boolean writeable) throws Exception;
+	public abstract CompletionStage<CrailNode> lookupNodeAsync(String path) throws Exception;
+	
+	public abstract CrailBlockLocation[][] getBlockLocations(String[] paths, long[] starts, long[] lens) throws Exception;
 	
 	public abstract void dumpNameNode() throws Exception;
 	public abstract ByteBuffer allocateBuffer() throws IOException;
+	public abstract ByteBuffer allocateBuffer(int size) throws IOException;
 	public abstract void freeBuffer(ByteBuffer buffer) throws IOException;
 	public abstract int getHostHash();
 	public abstract void printStatistics(String message);
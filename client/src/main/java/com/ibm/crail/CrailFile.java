@@ -29,15 +29,17 @@ public interface CrailFile extends CrailNode {
 	public abstract int storageAffinity();
 	public abstract long getToken();
 	public abstract long getFd();
+	public abstract int getCodec();
+	public abstract CrailAppendRegion reserve(long length) throws Exception;
 	public abstract void close() throws Exception;
 
 	default CrailBufferedInputStream getBufferedInputStream(long readHint) throws Exception {
 		CrailInputStream stream = getDirectInputStream(readHint);
-		return new CrailBufferedInputStream(getFileSystem(), stream);
+		return new CrailBufferedInputStream(getFileSystem(), stream, CrailCodec.createInstance(getCodec()), getCapacity());
 	}
 	
 	default CrailBufferedOutputStream getBufferedOutputStream(long writeHint) throws Exception {
 		CrailOutputStream stream = getDirectOutputStream(writeHint);
-		return new CrailBufferedOutputStream(getFileSystem(), stream);
+		return new CrailBufferedOutputStream(getFileSystem(), stream, CrailCodec.createInstance(getCodec()));
 	}
 }
@@ -23,10 +23,22 @@ package com.ibm.crail;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 
 public interface CrailInputStream {
 	public Future<CrailResult> read(ByteBuffer dataBuf) throws Exception;
+	//reads at the given offset without moving the stream position, may be called from several threads at once
+	public Future<CrailResult> read(long position, ByteBuffer dataBuf) throws Exception;
+	public CompletionStage<CrailResult> readAsync(ByteBuffer dataBuf) throws Exception;
+	//at the end of the file waits up to timeout ms for the writer to extend it, the result length is 0
+	//on timeout and -1 once the writer closed the file and everything has been read
+	public Future<CrailResult> follow(ByteBuffer dataBuf, long timeout) throws Exception;
+	//maps up to length bytes at the current position without copying, returns null if the data is not held
+	//by a co-located datanode or the stream is at the end of the file, the caller then falls back to read
+	public CrailBufferLease readZeroCopy(int length) throws Exception;
+	public List<Future<CrailResult>> readVectored(List<CrailReadRange> ranges) throws Exception;
 	public void seek(long pos) throws IOException;
 	public int available();
 	public boolean isOpen();
@@ -0,0 +1,190 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+
+public class CrailMultiOutputStream extends OutputStream {
+	public static final int ROUND_ROBIN = 0;
+	public static final int RANGE = 1;
+	
+	private CrailFS fs;
+	private String path;
+	private int mode;
+	private long stripeSize;
+	private String[] names;
+	private CrailBufferedOutputStream[] shards;
+	private byte[] tmpByteBuf;
+	private long position;
+	private int currentShard;
+	private boolean isClosed;
+	
+	/**
+	 * Creates a directory at path holding the given number of shard files. In ROUND_ROBIN mode the 
+	 * stream is striped over all shards in units of stripeSize, in RANGE mode each shard holds a 
+	 * contiguous partition of at most stripeSize bytes (the last shard is unbounded). Each shard has 
+	 * its own buffered stream, so flushes to different shards are in flight at the same time.
+	 */
+	public CrailMultiOutputStream(CrailFS fs, String path, int shards, long stripeSize, int mode) throws Exception {
+		if (shards <= 0 || stripeSize <= 0){
+			throw new IllegalArgumentException("invalid shard configuration, shards " + shards + ", stripeSize " + stripeSize);
+		}
+		if (mode != ROUND_ROBIN && mode != RANGE){
+			throw new IllegalArgumentException("unknown shard mode " + mode);
+		}
+		this.fs = fs;
+		this.path = path;
+		this.mode = mode;
+		this.stripeSize = stripeSize;
+		this.names = new String[shards];
+		this.shards = new CrailBufferedOutputStream[shards];
+		this.tmpByteBuf = new byte[1];
+		this.position = 0;
+		this.currentShard = 0;
+		this.isClosed = false;
+		
+		fs.makeDirectory(path).get().syncDir();
+		Future<?>[] futures = new Future<?>[shards];
+		for (int i = 0; i < shards; i++){
+			names[i] = String.format("part-%05d", i);
+			futures[i] = fs.createFile(path + "/" + names[i], 0, 0);
+		}
+		for (int i = 0; i < shards; i++){
+			CrailFile file = (CrailFile) futures[i].get();
+			file.syncDir();
+			this.shards[i] = file.getBufferedOutputStream(0);
+		}
+	}
+	
+	public final synchronized void write(int dataBuf) throws IOException {
+		tmpByteBuf[0] = (byte) dataBuf;
+		this.write(tmpByteBuf, 0, 1);
+	}
+	
+	public final synchronized void write(byte[] dataBuf) throws IOException {
+		this.write(dataBuf, 0, dataBuf.length);
+	}
+	
+	public final synchronized void write(byte[] dataBuf, int off, int len) throws IOException {
+		if (dataBuf == null) {
+			throw new NullPointerException();
+		} else if ((off < 0) || (off > dataBuf.length) || (len < 0) || ((off + len) > dataBuf.length) || ((off + len) < 0)) {
+			throw new IndexOutOfBoundsException();
+		} else if (isClosed){
+			throw new IOException("stream closed");
+		}
+		
+		while (len > 0){
+			CrailBufferedOutputStream shard = nextShard();
+			int writeLen = (int) Math.min(len, shardRemaining(shard));
+			shard.write(dataBuf, off, writeLen);
+			off += writeLen;
+			len -= writeLen;
+			position += writeLen;
+		}
+	}
+	
+	public final synchronized void write(ByteBuffer dataBuf) throws IOException {
+		if (dataBuf == null) {
+			throw new NullPointerException();
+		} else if (isClosed){
+			throw new IOException("stream closed");
+		}
+		
+		while (dataBuf.remaining() > 0){
+			CrailBufferedOutputStream shard = nextShard();
+			int writeLen = (int) Math.min(dataBuf.remaining(), shardRemaining(shard));
+			int oldLimit = dataBuf.limit();
+			dataBuf.limit(dataBuf.position() + writeLen);
+			shard.write(dataBuf);
+			dataBuf.limit(oldLimit);
+			position += writeLen;
+		}
+	}
+	
+	/**
+	 * Direct access to a shard, in RANGE mode independent writers can fill 
+	 * their partitions concurrently. Readers see the shards concatenated in order. 
+	 */
+	public CrailBufferedOutputStream getShard(int index) throws IOException {
+		if (mode != RANGE){
+			throw new IOException("direct shard access requires RANGE mode");
+		}
+		return shards[index];
+	}
+	
+	public synchronized void close() throws IOException {
+		if (isClosed){
+			return;
+		}
+		
+		try {
+			for (CrailBufferedOutputStream shard : shards){
+				shard.purge();
+			}
+			long length = 0;
+			long[] lengths = new long[shards.length];
+			for (int i = 0; i < shards.length; i++){
+				shards[i].close();
+				lengths[i] = shards[i].position();
+				length += lengths[i];
+			}
+			CrailStreamManifest manifest = new CrailStreamManifest(path, mode, stripeSize, length, names, lengths);
+			manifest.write(fs);
+			isClosed = true;
+		} catch(Exception e){
+			throw new IOException(e);
+		}
+	}
+	
+	public synchronized long position() {
+		return position;
+	}
+	
+	public int shards() {
+		return shards.length;
+	}
+	
+	private CrailBufferedOutputStream nextShard() {
+		if (mode == ROUND_ROBIN){
+			currentShard = (int) ((position / stripeSize) % shards.length);
+		} else {
+			while (currentShard < shards.length - 1 && shards[currentShard].position() >= stripeSize){
+				currentShard++;
+			}
+		}
+		return shards[currentShard];
+	}
+	
+	private long shardRemaining(CrailBufferedOutputStream shard) {
+		if (mode == ROUND_ROBIN){
+			return stripeSize - position % stripeSize;
+		} else if (currentShard == shards.length - 1){
+			return Long.MAX_VALUE;
+		} else {
+			return stripeSize - shard.position();
+		}
+	}
+}
@@ -24,7 +24,11 @@ package com.ibm.crail;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.slf4j.Logger;
@@ -38,6 +42,14 @@ public class CrailMultiStream extends InputStream {
 	private Iterator<String> paths;
 	private int outstanding;
 	
+	//offset index, files are looked up ahead of time 
+	private ArrayList<CrailFile> files;
+	private ArrayList<Long> offsets;
+	private long indexedCapacity;
+	private LinkedList<Future<CrailFile>> pendingLookups;
+	private LinkedList<String> pendingPaths;
+	private int nextFile;
+	
 	//state
 	private LinkedBlockingQueue<SubStream> streams;
 	private LinkedBlockingQueue<SubStream> runningStreams;
@@ -51,7 +63,14 @@ public class CrailMultiStream extends InputStream {
 	public CrailMultiStream(CrailFS fs, Iterator<String> paths, int outstanding, int files) throws Exception{
 		this.fs = fs;
 		this.paths = paths;
-		this.outstanding = Math.min(outstanding, files);
+		this.outstanding = Math.max(1, Math.min(outstanding, files));
+		
+		this.files = new ArrayList<CrailFile>(files);
+		this.offsets = new ArrayList<Long>(files);
+		this.indexedCapacity = 0;
+		this.pendingLookups = new LinkedList<Future<CrailFile>>();
+		this.pendingPaths = new LinkedList<String>();
+		this.nextFile = 0;
 		
 		this.streams = new LinkedBlockingQueue<SubStream>();
 		this.runningStreams = new LinkedBlockingQueue<SubStream>();
@@ -62,14 +81,8 @@ public class CrailMultiStream extends InputStream {
 		this.isClosed = false;
 		this.filesProcessed = 0;
 		
-		for (int i = 0; i < this.outstanding; i++){
-			SubStream substream = nextSubStream();
-			if (substream != null){
-				streams.add(substream);
-			} else {
-				break;
-			}
-		}
+		triggerLookups();
+		startSubStreams();
 	}	
 	
 	public final synchronized int read() throws IOException {
@@ -244,18 +257,15 @@ public class CrailMultiStream extends InputStream {
 			return;
 		}
 
-		while (!tmpStreams.isEmpty()) {
-			SubStream stream = tmpStreams.poll();
-			stream.close();
-		}
-		while (!runningStreams.isEmpty()) {
-			SubStream stream = runningStreams.poll();
-			stream.close();
-		}
-		while (!streams.isEmpty()) {
-			SubStream stream = streams.poll();
-			stream.close();
+		closeSubStreams();
+		for (Future<CrailFile> lookup : pendingLookups){
+			try {
+				lookup.get();
+			} catch(Exception e){
+			}
 		}
+		pendingLookups.clear();
+		pendingPaths.clear();
 		while (paths.hasNext()) {
 			paths.next();
 		}
@@ -264,11 +274,63 @@ public class CrailMultiStream extends InputStream {
 	}
 
 	public final synchronized int available() {
-		return 0;
+		SubStream substream = null;
+		for (SubStream stream : runningStreams){
+			if (stream.current() == consumedPosition){
+				substream = stream;
+			}
+		}
+		for (SubStream stream : streams){
+			if (stream.current() == consumedPosition){
+				substream = stream;
+			}
+		}
+		if (substream == null){
+			return 0;
+		}
+		return Math.max(0, substream.available());
+	}
+	
+	public final synchronized void seek(long pos) throws IOException {
+		if (isClosed){
+			throw new IOException("stream closed");
+		}
+		if (pos == consumedPosition){
+			return;
+		}
+		if (pos < 0){
+			throw new IOException("seek position out of range, pos " + pos);
+		}
+		
+		try {
+			closeSubStreams();
+			while (indexedCapacity <= pos && indexNext()){
+			}
+			if (pos > indexedCapacity){
+				throw new IOException("seek position out of range, pos " + pos + ", capacity " + indexedCapacity);
+			}
+			
+			int index = Collections.binarySearch(offsets, pos);
+			if (index < 0){
+				index = -index - 2;
+			}
+			index = Math.max(index, 0);
+			while (index < files.size() && offsets.get(index) + files.get(index).getCapacity() <= pos){
+				index++;
+			}
+			this.nextFile = index;
+			this.consumedPosition = pos;
+			this.triggeredPosition = pos;
+			startSubStreams();
+		} catch(IOException e){
+			throw e;
+		} catch(Exception e){
+			throw new IOException(e);
+		}
 	}
 	
-	public void seek(long pos) throws IOException {
-		throw new IOException("operation not implemented!");
+	public synchronized long position(){
+		return consumedPosition;
 	}
 
 	public boolean isOpen() {
@@ -280,19 +342,77 @@ public class CrailMultiStream extends InputStream {
 	}
 
 	private SubStream nextSubStream() throws Exception {
-		SubStream substream = null;
-		if (paths.hasNext()){
-			String path = paths.next();
-			CrailFile file = fs.lookupFile(path, false).get();
-			if (file == null){
-				throw new Exception("File not found, name " + path);
+		while (nextFile < files.size() || indexNext()){
+			CrailFile file = files.get(nextFile);
+			long start = offsets.get(nextFile);
+			nextFile++;
+			if (file.getCapacity() == 0){
+				filesProcessed++;
+				continue;
 			}
+			
 			CrailBufferedInputStream stream = file.getBufferedInputStream(file.getCapacity());
 //			LOG.info("starting new substream, triggeredPosition " + triggeredPosition + ", file " + file.getPath());
-			substream = new SubStream(file, stream, triggeredPosition);
-			triggeredPosition += file.getCapacity();
-		} 
-		return substream;
+			SubStream substream = new SubStream(file, stream, start);
+			if (start < consumedPosition){
+				substream.seek(consumedPosition);
+			}
+			triggeredPosition = substream.end();
+			return substream;
+		}
+		return null;
+	}
+	
+	private void startSubStreams() throws Exception {
+		for (int i = 0; i < this.outstanding; i++){
+			SubStream substream = nextSubStream();
+			if (substream != null){
+				streams.add(substream);
+			} else {
+				break;
+			}
+		}
+	}
+	
+	private void closeSubStreams() throws IOException {
+		while (!tmpStreams.isEmpty()) {
+			SubStream stream = tmpStreams.poll();
+			stream.close();
+		}
+		while (!runningStreams.isEmpty()) {
+			SubStream stream = runningStreams.poll();
+			stream.close();
+		}
+		while (!streams.isEmpty()) {
+			SubStream stream = streams.poll();
+			stream.close();
+		}
+	}
+	
+	private boolean indexNext() throws Exception {
+		triggerLookups();
+		if (pendingLookups.isEmpty()){
+			return false;
+		}
+		
+		String path = pendingPaths.poll();
+		CrailFile file = pendingLookups.poll().get();
+		if (file == null){
+			throw new Exception("File not found, name " + path);
+		}
+		files.add(file);
+		offsets.add(indexedCapacity);
+		indexedCapacity += file.getCapacity();
+		triggerLookups();
+		return true;
+	}
+	
+	private void triggerLookups() throws Exception {
+		while (pendingLookups.size() < outstanding && paths.hasNext()){
+			String path = paths.next();
+			pendingPaths.add(path);
+			pendingLookups.add(fs.lookupFile(path, false));
+		}
 	}
 
 	private class SubStream {
@@ -328,6 +448,11 @@ public class CrailMultiStream extends InputStream {
 			return stream.available();
 		}		
 		
+		public void seek(long pos) throws IOException {
+			stream.seek(pos - (end - file.getCapacity()));
+			this.current = pos;
+		}
+		
 		public void close() throws IOException {
 			stream.close();
 		}
@@ -27,5 +27,6 @@ public interface CrailNode {
 	public abstract CrailNode syncDir() throws Exception;
 	public abstract long getModificationTime();
 	public abstract long getCapacity();
+	public abstract long getBlockSize();
 	public abstract boolean isDir();
 }
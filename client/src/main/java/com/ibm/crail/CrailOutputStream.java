@@ -23,10 +23,12 @@ package com.ibm.crail;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 
 public interface CrailOutputStream {
 	public Future<CrailResult> write(ByteBuffer dataBuf) throws Exception;
+	public CompletionStage<CrailResult> writeAsync(ByteBuffer dataBuf) throws Exception;
 	public Future<Void> sync() throws IOException;
 	public boolean isOpen();
 	public long position();
@@ -0,0 +1,157 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+public class CrailStreamManifest {
+	public static final String MANIFEST = "manifest";
+	private static final int VERSION = 1;
+	
+	private String path;
+	private int mode;
+	private long stripeSize;
+	private long length;
+	private String[] names;
+	private long[] lengths;
+	
+	public CrailStreamManifest(String path, int mode, long stripeSize, long length, String[] names, long[] lengths) {
+		this.path = path;
+		this.mode = mode;
+		this.stripeSize = stripeSize;
+		this.length = length;
+		this.names = names;
+		this.lengths = lengths;
+	}
+	
+	public static CrailStreamManifest read(CrailFS fs, String path) throws Exception {
+		CrailFile file = fs.lookupFile(path + "/" + MANIFEST, false).get();
+		if (file == null){
+			throw new IOException("no manifest found at " + path);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) file.getCapacity());
+		CrailBufferedInputStream stream = file.getBufferedInputStream(buffer.capacity());
+		try {
+			while (buffer.remaining() > 0 && stream.read(buffer) > 0);
+		} finally {
+			stream.close();
+		}
+		buffer.flip();
+		
+		int version = buffer.getInt();
+		if (version != VERSION){
+			throw new IOException("unsupported manifest version " + version + ", path " + path);
+		}
+		int mode = buffer.getInt();
+		long stripeSize = buffer.getLong();
+		long length = buffer.getLong();
+		int shards = buffer.getInt();
+		String[] names = new String[shards];
+		long[] lengths = new long[shards];
+		for (int i = 0; i < shards; i++){
+			lengths[i] = buffer.getLong();
+			byte[] name = new byte[buffer.getShort()];
+			buffer.get(name);
+			names[i] = new String(name, StandardCharsets.UTF_8);
+		}
+		return new CrailStreamManifest(path, mode, stripeSize, length, names, lengths);
+	}
+	
+	public void write(CrailFS fs) throws Exception {
+		int size = 28;
+		byte[][] encoded = new byte[names.length][];
+		for (int i = 0; i < names.length; i++){
+			encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+			size += 10 + encoded[i].length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(VERSION);
+		buffer.putInt(mode);
+		buffer.putLong(stripeSize);
+		buffer.putLong(length);
+		buffer.putInt(names.length);
+		for (int i = 0; i < names.length; i++){
+			buffer.putLong(lengths[i]);
+			buffer.putShort((short) encoded[i].length);
+			buffer.put(encoded[i]);
+		}
+		buffer.flip();
+		
+		CrailFile file = fs.createFile(path + "/" + MANIFEST, 0, 0, size).get();
+		file.syncDir();
+		CrailBufferedOutputStream stream = file.getBufferedOutputStream(size);
+		stream.write(buffer);
+		stream.close();
+	}
+	
+	/**
+	 * Reassembles the logical stream, RANGE shards are read as a concatenation
+	 * using a multistream, ROUND_ROBIN shards are de-striped.
+	 */
+	public InputStream getInputStream(CrailFS fs, int outstanding) throws Exception {
+		if (mode == CrailMultiOutputStream.RANGE){
+			ArrayList<String> paths = new ArrayList<String>(names.length);
+			for (String name : names){
+				paths.add(getShardPath(name));
+			}
+			return new CrailMultiStream(fs, paths.iterator(), outstanding, paths.size());
+		} else {
+			return new CrailStripedInputStream(fs, this);
+		}
+	}
+	
+	public String getPath() {
+		return path;
+	}
+
+	public int getMode() {
+		return mode;
+	}
+
+	public long getStripeSize() {
+		return stripeSize;
+	}
+
+	public long getLength() {
+		return length;
+	}
+	
+	public int getShards() {
+		return names.length;
+	}
+	
+	public String getShardPath(int index) {
+		return getShardPath(names[index]);
+	}
+	
+	public long getShardLength(int index) {
+		return lengths[index];
+	}
+	
+	private String getShardPath(String name) {
+		return path + "/" + name;
+	}
+}
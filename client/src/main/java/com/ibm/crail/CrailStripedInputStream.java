@@ -0,0 +1,140 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Future;
+
+public class CrailStripedInputStream extends InputStream {
+	private long stripeSize;
+	private long length;
+	private CrailBufferedInputStream[] shards;
+	private byte[] tmpByteBuf;
+	private long position;
+	private boolean isClosed;
+	
+	public CrailStripedInputStream(CrailFS fs, CrailStreamManifest manifest) throws Exception {
+		this.stripeSize = manifest.getStripeSize();
+		this.length = manifest.getLength();
+		this.shards = new CrailBufferedInputStream[manifest.getShards()];
+		this.tmpByteBuf = new byte[1];
+		this.position = 0;
+		this.isClosed = false;
+		
+		Future<?>[] futures = new Future<?>[shards.length];
+		for (int i = 0; i < shards.length; i++){
+			futures[i] = fs.lookupFile(manifest.getShardPath(i), false);
+		}
+		for (int i = 0; i < shards.length; i++){
+			CrailFile file = (CrailFile) futures[i].get();
+			if (file == null){
+				throw new IOException("shard not found, path " + manifest.getShardPath(i));
+			}
+			shards[i] = file.getBufferedInputStream(manifest.getShardLength(i));
+		}
+	}
+	
+	public final synchronized int read() throws IOException {
+		int ret = read(tmpByteBuf, 0, 1);
+		return (ret <= 0) ? -1 : (tmpByteBuf[0] & 0xff);
+	}
+	
+	public final synchronized int read(byte b[]) throws IOException {
+		return read(b, 0, b.length);
+	}
+	
+	public final synchronized int read(byte[] buffer, int off, int len) throws IOException {
+		if (buffer == null) {
+			throw new NullPointerException();
+		} else if (off < 0 || len < 0 || len > buffer.length - off) {
+			throw new IndexOutOfBoundsException();
+		} else if (len == 0) {
+			return 0;
+		} else if (isClosed || position >= length){
+			return -1;
+		}
+		
+		int sum = 0;
+		while (sum < len && position < length){
+			CrailBufferedInputStream shard = shards[(int) ((position / stripeSize) % shards.length)];
+			long stripeRemaining = Math.min(stripeSize - position % stripeSize, length - position);
+			int readLen = (int) Math.min(len - sum, stripeRemaining);
+			int ret = shard.read(buffer, off + sum, readLen);
+			if (ret <= 0){
+				throw new IOException("shard shorter than manifest, position " + position);
+			}
+			sum += ret;
+			position += ret;
+		}
+		return sum;
+	}
+	
+	public synchronized void seek(long pos) throws IOException {
+		if (pos < 0 || pos > length){
+			throw new IOException("seek position out of range, pos " + pos + ", length " + length);
+		}
+		long stripe = pos / stripeSize;
+		long rounds = stripe / shards.length;
+		int current = (int) (stripe % shards.length);
+		for (int i = 0; i < shards.length; i++){
+			long shardOffset = rounds * stripeSize;
+			if (i < current){
+				shardOffset += stripeSize;
+			} else if (i == current){
+				shardOffset += pos % stripeSize;
+			}
+			shards[i].seek(shardOffset);
+		}
+		this.position = pos;
+	}
+	
+	public synchronized long skip(long n) throws IOException {
+		if (n <= 0){
+			return 0;
+		}
+		long oldPos = position;
+		seek(Math.min(length, position + n));
+		return position - oldPos;
+	}
+	
+	public synchronized int available() {
+		if (isClosed || position >= length){
+			return 0;
+		}
+		return shards[(int) ((position / stripeSize) % shards.length)].available();
+	}
+	
+	public synchronized long position() {
+		return position;
+	}
+	
+	public synchronized void close() throws IOException {
+		if (isClosed){
+			return;
+		}
+		for (CrailBufferedInputStream shard : shards){
+			shard.close();
+		}
+		isClosed = true;
+	}
+}
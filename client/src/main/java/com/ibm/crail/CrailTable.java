@@ -0,0 +1,37 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+
+//a directory used as a key-value table, each key is a file holding one value
+public interface CrailTable {
+	public CrailFS getFileSystem();
+	public String getPath();
+	public abstract Future<CrailResult> put(String key, ByteBuffer value) throws Exception;
+	//the result length is -1 if the key does not exist, values larger than the buffer fail without reading
+	public abstract Future<CrailResult> get(String key, ByteBuffer value) throws Exception;
+	public abstract Future<CrailResult>[] get(String[] keys, ByteBuffer[] values) throws Exception;
+	public abstract Future<CrailNode> delete(String key) throws Exception;
+}
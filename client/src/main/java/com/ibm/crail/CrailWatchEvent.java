@@ -0,0 +1,71 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail;
+
+import com.ibm.crail.namenode.protocol.WatchEvent;
+
+public class CrailWatchEvent {
+	public static final int CREATE = WatchEvent.CREATE;
+	public static final int DELETE = WatchEvent.DELETE;
+	public static final int RENAME = WatchEvent.RENAME;
+	public static final int CLOSE = WatchEvent.CLOSE;
+	//events have been lost, the directory needs to be listed again
+	public static final int OVERFLOW = 0;
+	
+	private int type;
+	private String path;
+	private boolean dir;
+	private String oldPath;
+	
+	public CrailWatchEvent(int type, String path, boolean dir){
+		this(type, path, dir, null);
+	}
+	
+	public CrailWatchEvent(int type, String path, boolean dir, String oldPath){
+		this.type = type;
+		this.path = path;
+		this.dir = dir;
+		this.oldPath = oldPath;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public boolean isDir() {
+		return dir;
+	}
+	
+	//the path the entry had before a rename, null for all other events
+	public String getOldPath() {
+		return oldPath;
+	}
+
+	@Override
+	public String toString() {
+		return "type " + type + ", path " + path + ", dir " + dir + (oldPath != null ? ", oldPath " + oldPath : "");
+	}
+}
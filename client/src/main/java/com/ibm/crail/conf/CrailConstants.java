@@ -24,7 +24,10 @@ package com.ibm.crail.conf;
 import java.io.IOException;
 import org.slf4j.Logger;
 
-import com.ibm.crail.core.DirectoryRecord;
+import com.ibm.crail.namenode.protocol.DirectoryRecord;
+import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.namenode.protocol.FileInfo;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
 import com.ibm.crail.utils.CrailUtils;
 
 public class CrailConstants {
@@ -57,8 +60,22 @@ public class CrailConstants {
 	public static final String NAMENODE_DARPC_QUEUESIZE_KEY = "crail.namenode.darpc.queuesize";
 	public static int NAMENODE_DARPC_QUEUESIZE = 32;	
 	
+	//long polls (waitFile, watchDirectory) run on their own connection, at most this many per client at a time
+	public static final String NAMENODE_POLL_MAX_KEY = "crail.namenode.poll.max";
+	public static int NAMENODE_POLL_MAX = 16;
+	
+	//upper bound the namenode parks a single long poll
+	public static final String NAMENODE_POLL_TIMEOUT_KEY = "crail.namenode.poll.timeout";
+	public static int NAMENODE_POLL_TIMEOUT = 10000;
+	
 	public static final String DATANODE_TYPES_KEY = "crail.datanode.types";
 	public static String DATANODE_TYPES = "com.ibm.crail.datanode.rdma.RdmaDataNode";		
+	
+	public static final String DATANODE_TRANSFER_BANDWIDTH_KEY = "crail.datanode.transfer.bandwidth";
+	public static long DATANODE_TRANSFER_BANDWIDTH = 0;
+	
+	public static final String DATANODE_TRANSFER_INTERVAL_KEY = "crail.datanode.transfer.interval";
+	public static int DATANODE_TRANSFER_INTERVAL = 1000;
 
 	public static final String DIRECTORY_DEPTH_KEY = "crail.directory.depth";
 	public static int DIRECTORY_DEPTH = 16;
@@ -69,6 +86,17 @@ public class CrailConstants {
 	public static final String BLOCK_SIZE_KEY = "crail.blocksize";
 	public static long BLOCK_SIZE = 67108864;
 	
+	public static final String SLAB_MIN_KEY = "crail.slab.min";
+	public static long SLAB_MIN = 4096;
+	
+	public static final String SLAB_MAX_KEY = "crail.slab.max";
+	public static long SLAB_MAX = 1048576;
+	
+	//inline content is part of the fixed size getFile and setFile messages, larger limits grow every rpc slot
+	public static final String INLINE_DATA_KEY = "crail.inlinedata";
+	public static int INLINE_DATA = 256;
+	public static final int INLINE_DATA_MAX = 4096;
+	
 	public static final String CACHE_LIMIT_KEY = "crail.cachelimit";
 	public static long CACHE_LIMIT = 1073741824;
 	
@@ -81,6 +109,12 @@ public class CrailConstants {
 	public static final String SHADOW_REPLICATION_KEY = "crail.shadow.replication";
 	public static int SHADOW_REPLICATION = 1;	
 	
+	public static final String REPLICATION_KEY = "crail.replication";
+	public static int REPLICATION = 1;
+	
+	public static final String ERASURE_CELL_SIZE_KEY = "crail.erasure.cellsize";
+	public static int ERASURE_CELL_SIZE = 65536;
+	
 	public static final String DEBUG_KEY = "crail.debug";
 	public static boolean DEBUG = false;
 	
@@ -96,6 +130,12 @@ public class CrailConstants {
 	public static final String BUFFER_SIZE_KEY = "crail.buffersize";
 	public static int BUFFER_SIZE = 1048576;
 	
+	public static final String BUFFER_MIN_SIZE_KEY = "crail.buffersize.min";
+	public static int BUFFER_MIN_SIZE = 4096;
+	
+	public static final String BUFFER_THREAD_CACHE_KEY = "crail.buffercache.thread";
+	public static int BUFFER_THREAD_CACHE = 8;
+	
 	public static final String HDFS_WRITE_AHEAD_KEY = "crail.default.writeahead";
 	public static long HDFS_WRITE_AHEAD = Integer.MAX_VALUE;	
 	
@@ -105,12 +145,37 @@ public class CrailConstants {
 	public static final String REGION_SIZE_KEY = "crail.regionsize";
 	public static long REGION_SIZE = 1073741824;
 	
+	//fixed slot size of a directory entry, file names are limited to this size minus a 3 byte header, 509 bytes by default
 	public static final String DIRECTORY_RECORD_KEY = "crail.directoryrecord";
 	public static int DIRECTORY_RECORD = 512;	
 	
 	public static final String DIRECTORY_RANDOMIZE_KEY = "crail.directoryrandomize";
 	public static boolean DIRECTORY_RANDOMIZE = true;		
 	
+	public static final String DIRECTORY_PAGE_KEY = "crail.directorypage";
+	public static int DIRECTORY_PAGE = 4096;
+	
+	public static final String DIRECTORY_COMPACTION_KEY = "crail.directorycompaction";
+	public static double DIRECTORY_COMPACTION = 0.5;
+	
+	public static final String DIRECTORY_WATCH_QUEUE_KEY = "crail.directorywatchqueue";
+	public static int DIRECTORY_WATCH_QUEUE = 1024;
+	
+	public static final String DATA_CACHE_TYPE_KEY = "crail.datacache.type";
+	public static String DATA_CACHE_TYPE = "none";
+	
+	public static final String DATA_CACHE_LIMIT_KEY = "crail.datacache.limit";
+	public static long DATA_CACHE_LIMIT = 1073741824;
+	
+	public static final String DATA_CACHE_PAGE_SIZE_KEY = "crail.datacache.pagesize";
+	public static int DATA_CACHE_PAGE_SIZE = 1048576;
+	
+	public static final String DATA_CACHE_PATH_KEY = "crail.datacache.path";
+	public static String DATA_CACHE_PATH = "/dev/shm/crail/datacache";
+	
+	public static final String VECTORED_MERGE_GAP_KEY = "crail.vectored.mergegap";
+	public static int VECTORED_MERGE_GAP = 65536;
+	
 	public static void updateConstants(CrailConfiguration conf){
 		if (conf.get(NAMENODE_ADDRESS_KEY) != null) {
 			NAMENODE_ADDRESS = conf.get(NAMENODE_ADDRESS_KEY);
@@ -136,9 +201,21 @@ public class CrailConstants {
 		if (conf.get(NAMENODE_DARPC_QUEUESIZE_KEY) != null) {
 			NAMENODE_DARPC_QUEUESIZE = Integer.parseInt(conf.get(NAMENODE_DARPC_QUEUESIZE_KEY));
 		}			
+		if (conf.get(NAMENODE_POLL_MAX_KEY) != null) {
+			NAMENODE_POLL_MAX = Integer.parseInt(conf.get(NAMENODE_POLL_MAX_KEY));
+		}
+		if (conf.get(NAMENODE_POLL_TIMEOUT_KEY) != null) {
+			NAMENODE_POLL_TIMEOUT = Integer.parseInt(conf.get(NAMENODE_POLL_TIMEOUT_KEY));
+		}
 		if (conf.get(DATANODE_TYPES_KEY) != null) {
 			DATANODE_TYPES = conf.get(DATANODE_TYPES_KEY);
 		}			
+		if (conf.get(DATANODE_TRANSFER_BANDWIDTH_KEY) != null) {
+			DATANODE_TRANSFER_BANDWIDTH = Long.parseLong(conf.get(DATANODE_TRANSFER_BANDWIDTH_KEY));
+		}
+		if (conf.get(DATANODE_TRANSFER_INTERVAL_KEY) != null) {
+			DATANODE_TRANSFER_INTERVAL = Integer.parseInt(conf.get(DATANODE_TRANSFER_INTERVAL_KEY));
+		}
 		if (conf.get(DIRECTORY_DEPTH_KEY) != null) {
 			DIRECTORY_DEPTH = Integer.parseInt(conf.get(DIRECTORY_DEPTH_KEY));
 		}			
@@ -147,6 +224,15 @@ public class CrailConstants {
 		}		
 		if (conf.get(BLOCK_SIZE_KEY) != null) {
 			BLOCK_SIZE = Long.parseLong(conf.get(BLOCK_SIZE_KEY));
+		}
+		if (conf.get(SLAB_MIN_KEY) != null) {
+			SLAB_MIN = Long.parseLong(conf.get(SLAB_MIN_KEY));
+		}
+		if (conf.get(SLAB_MAX_KEY) != null) {
+			SLAB_MAX = Long.parseLong(conf.get(SLAB_MAX_KEY));
+		}
+		if (conf.get(INLINE_DATA_KEY) != null) {
+			INLINE_DATA = Integer.parseInt(conf.get(INLINE_DATA_KEY));
 		}			
 		if (conf.get(CACHE_LIMIT_KEY) != null) {
 			CACHE_LIMIT = Long.parseLong(conf.get(CACHE_LIMIT_KEY));
@@ -160,6 +246,12 @@ public class CrailConstants {
 		if (conf.get(SHADOW_REPLICATION_KEY) != null) {
 			SHADOW_REPLICATION = Integer.parseInt(conf.get(SHADOW_REPLICATION_KEY));
 		}	
+		if (conf.get(REPLICATION_KEY) != null) {
+			REPLICATION = Integer.parseInt(conf.get(REPLICATION_KEY));
+		}
+		if (conf.get(ERASURE_CELL_SIZE_KEY) != null) {
+			ERASURE_CELL_SIZE = Integer.parseInt(conf.get(ERASURE_CELL_SIZE_KEY));
+		}
 		if (conf.get(DEBUG_KEY) != null) {
 			DEBUG = Boolean.parseBoolean(conf.get(DEBUG_KEY));
 		}	
@@ -175,6 +267,12 @@ public class CrailConstants {
 		if (conf.get(BUFFER_SIZE_KEY) != null) {
 			BUFFER_SIZE = Integer.parseInt(conf.get(BUFFER_SIZE_KEY));
 		}	
+		if (conf.get(BUFFER_MIN_SIZE_KEY) != null) {
+			BUFFER_MIN_SIZE = Integer.parseInt(conf.get(BUFFER_MIN_SIZE_KEY));
+		}	
+		if (conf.get(BUFFER_THREAD_CACHE_KEY) != null) {
+			BUFFER_THREAD_CACHE = Integer.parseInt(conf.get(BUFFER_THREAD_CACHE_KEY));
+		}	
 		if (conf.get(HDFS_WRITE_AHEAD_KEY) != null) {
 			HDFS_WRITE_AHEAD = Long.parseLong(conf.get(HDFS_WRITE_AHEAD_KEY));
 		}
@@ -190,6 +288,30 @@ public class CrailConstants {
 		if (conf.get(CrailConstants.DIRECTORY_RANDOMIZE_KEY) != null) {
 			DIRECTORY_RANDOMIZE = conf.getBoolean(CrailConstants.DIRECTORY_RANDOMIZE_KEY, false);
 		}			
+		if (conf.get(DIRECTORY_PAGE_KEY) != null) {
+			DIRECTORY_PAGE = Integer.parseInt(conf.get(DIRECTORY_PAGE_KEY));
+		}
+		if (conf.get(DIRECTORY_COMPACTION_KEY) != null) {
+			DIRECTORY_COMPACTION = Double.parseDouble(conf.get(DIRECTORY_COMPACTION_KEY));
+		}
+		if (conf.get(DIRECTORY_WATCH_QUEUE_KEY) != null) {
+			DIRECTORY_WATCH_QUEUE = Integer.parseInt(conf.get(DIRECTORY_WATCH_QUEUE_KEY));
+		}
+		if (conf.get(DATA_CACHE_TYPE_KEY) != null) {
+			DATA_CACHE_TYPE = conf.get(DATA_CACHE_TYPE_KEY);
+		}
+		if (conf.get(DATA_CACHE_LIMIT_KEY) != null) {
+			DATA_CACHE_LIMIT = Long.parseLong(conf.get(DATA_CACHE_LIMIT_KEY));
+		}
+		if (conf.get(DATA_CACHE_PAGE_SIZE_KEY) != null) {
+			DATA_CACHE_PAGE_SIZE = Integer.parseInt(conf.get(DATA_CACHE_PAGE_SIZE_KEY));
+		}
+		if (conf.get(DATA_CACHE_PATH_KEY) != null) {
+			DATA_CACHE_PATH = conf.get(DATA_CACHE_PATH_KEY);
+		}
+		if (conf.get(VECTORED_MERGE_GAP_KEY) != null) {
+			VECTORED_MERGE_GAP = Integer.parseInt(conf.get(VECTORED_MERGE_GAP_KEY));
+		}
 	}
 	
 	public static void printConf(){
@@ -202,32 +324,101 @@ public class CrailConstants {
 		LOG.info(NAMENODE_DARPC_AFFINITY_KEY + " " + NAMENODE_DARPC_AFFINITY);
 		LOG.info(NAMENODE_DARPC_MAXINLINE_KEY + " " + NAMENODE_DARPC_MAXINLINE);
 		LOG.info(NAMENODE_DARPC_QUEUESIZE_KEY + " " + NAMENODE_DARPC_QUEUESIZE);
+		LOG.info(NAMENODE_POLL_MAX_KEY + " " + NAMENODE_POLL_MAX);
+		LOG.info(NAMENODE_POLL_TIMEOUT_KEY + " " + NAMENODE_POLL_TIMEOUT);
 		LOG.info(DATANODE_TYPES_KEY + " " + DATANODE_TYPES);
+		LOG.info(DATANODE_TRANSFER_BANDWIDTH_KEY + " " + DATANODE_TRANSFER_BANDWIDTH);
+		LOG.info(DATANODE_TRANSFER_INTERVAL_KEY + " " + DATANODE_TRANSFER_INTERVAL);
 		LOG.info(DIRECTORY_DEPTH_KEY + " " + DIRECTORY_DEPTH);
 		LOG.info(TOKEN_EXPIRATION_KEY + " " + TOKEN_EXPIRATION);
 		LOG.info(BLOCK_SIZE_KEY + " " + BLOCK_SIZE);
+		LOG.info(SLAB_MIN_KEY + " " + SLAB_MIN);
+		LOG.info(SLAB_MAX_KEY + " " + SLAB_MAX);
+		LOG.info(INLINE_DATA_KEY + " " + INLINE_DATA);
 		LOG.info(CACHE_LIMIT_KEY + " " + CACHE_LIMIT);
 		LOG.info(CACHE_PATH_KEY + " " + CACHE_PATH);
 		LOG.info(USER_KEY + " " + USER);
 		LOG.info(SHADOW_REPLICATION_KEY + " " + SHADOW_REPLICATION);
+		LOG.info(REPLICATION_KEY + " " + REPLICATION);
+		LOG.info(ERASURE_CELL_SIZE_KEY + " " + ERASURE_CELL_SIZE);
 		LOG.info(DEBUG_KEY + " " + DEBUG);
 		LOG.info(STATISTICS_KEY + " " + STATISTICS);
 		LOG.info(RPC_TIMEOUT_KEY + " " + RPC_TIMEOUT);
 		LOG.info(DATA_TIMEOUT_KEY + " " + DATA_TIMEOUT);
 		LOG.info(BUFFER_SIZE_KEY + " " + BUFFER_SIZE);
+		LOG.info(BUFFER_MIN_SIZE_KEY + " " + BUFFER_MIN_SIZE);
+		LOG.info(BUFFER_THREAD_CACHE_KEY + " " + BUFFER_THREAD_CACHE);
 		LOG.info(HDFS_WRITE_AHEAD_KEY + " " + HDFS_WRITE_AHEAD);
 		LOG.info(SINGLETON_KEY + " " + SINGLETON);
 		LOG.info(REGION_SIZE_KEY + " " + REGION_SIZE);
 		LOG.info(DIRECTORY_RECORD_KEY + " " + DIRECTORY_RECORD);
 		LOG.info(DIRECTORY_RANDOMIZE_KEY + " " + DIRECTORY_RANDOMIZE);
+		LOG.info(DIRECTORY_PAGE_KEY + " " + DIRECTORY_PAGE);
+		LOG.info(DIRECTORY_COMPACTION_KEY + " " + DIRECTORY_COMPACTION);
+		LOG.info(DIRECTORY_WATCH_QUEUE_KEY + " " + DIRECTORY_WATCH_QUEUE);
+		LOG.info(DATA_CACHE_TYPE_KEY + " " + DATA_CACHE_TYPE);
+		LOG.info(DATA_CACHE_LIMIT_KEY + " " + DATA_CACHE_LIMIT);
+		LOG.info(DATA_CACHE_PAGE_SIZE_KEY + " " + DATA_CACHE_PAGE_SIZE);
+		LOG.info(DATA_CACHE_PATH_KEY + " " + DATA_CACHE_PATH);
+		LOG.info(VECTORED_MERGE_GAP_KEY + " " + VECTORED_MERGE_GAP);
 	}
 	
 	public static void verify() throws IOException {
 		if (CrailConstants.BUFFER_SIZE % CrailConstants.DIRECTORY_RECORD != 0){
 			throw new IOException("crail.buffersize must be multiple of " + CrailConstants.DIRECTORY_RECORD);
 		}	
+		if (CrailConstants.DIRECTORY_RECORD <= DirectoryRecord.HEADER_SIZE){
+			throw new IOException("crail.directoryrecord must be larger than the record header, minimum " + (DirectoryRecord.HEADER_SIZE + 1));
+		}
+		if (CrailConstants.DIRECTORY_PAGE < FileInfo.CSIZE + CrailConstants.DIRECTORY_RECORD){
+			throw new IOException("crail.directorypage must hold at least one entry, minimum " + (FileInfo.CSIZE + CrailConstants.DIRECTORY_RECORD));
+		}
+		if (Math.max(FileInfo.CSIZE, 16 + CrailConstants.DIRECTORY_RECORD) + CrailConstants.DIRECTORY_RECORD > RpcResponseMessage.ListDirRes.PAGE){
+			throw new IOException("crail.directoryrecord too large for a listing or watch page of " + RpcResponseMessage.ListDirRes.PAGE + " bytes");
+		}
+		if (CrailConstants.SLAB_MAX > 0){
+			if (Long.bitCount(CrailConstants.SLAB_MIN) != 1 || Long.bitCount(CrailConstants.SLAB_MAX) != 1){
+				throw new IOException("crail.slab.min and crail.slab.max must be powers of two");
+			}
+			if (CrailConstants.SLAB_MIN > CrailConstants.SLAB_MAX || CrailConstants.SLAB_MAX >= CrailConstants.BLOCK_SIZE || CrailConstants.BLOCK_SIZE % CrailConstants.SLAB_MAX != 0){
+				throw new IOException("crail.slab.max must be a divisor of crail.blocksize and not smaller than crail.slab.min, crail.slab.max 0 disables slabs");
+			}
+		}
+		if (CrailConstants.REPLICATION < 1 || CrailConstants.REPLICATION > BlockInfo.MAX_REPLICATION){
+			throw new IOException("crail.replication must be between 1 and " + BlockInfo.MAX_REPLICATION);
+		}
+		if (CrailConstants.ERASURE_CELL_SIZE <= 0 || CrailConstants.BLOCK_SIZE % CrailConstants.ERASURE_CELL_SIZE != 0){
+			throw new IOException("crail.erasure.cellsize must be a divisor of crail.blocksize");
+		}
+		if (CrailConstants.INLINE_DATA < 0 || CrailConstants.INLINE_DATA > Math.min(INLINE_DATA_MAX, CrailConstants.BUFFER_SIZE)){
+			throw new IOException("crail.inlinedata must be between 0 and " + INLINE_DATA_MAX + " and not exceed crail.buffersize, 0 disables inline data");
+		}
+		if (CrailConstants.DIRECTORY_COMPACTION < 0 || CrailConstants.DIRECTORY_COMPACTION >= 1){
+			throw new IOException("crail.directorycompaction must be in [0, 1), 0 disables compaction");
+		}
+		if (CrailConstants.DATANODE_TRANSFER_BANDWIDTH < 0 || CrailConstants.DATANODE_TRANSFER_INTERVAL <= 0){
+			throw new IOException("crail.datanode.transfer.bandwidth must not be negative, 0 disables the limit, crail.datanode.transfer.interval must be positive");
+		}
+		if (CrailConstants.DIRECTORY_WATCH_QUEUE <= 0){
+			throw new IOException("crail.directorywatchqueue must be positive");
+		}
+		if (CrailConstants.BUFFER_MIN_SIZE <= 0 || CrailConstants.BUFFER_MIN_SIZE > CrailConstants.BUFFER_SIZE){
+			throw new IOException("crail.buffersize.min must be positive and not larger than crail.buffersize");
+		}
+		if (!CrailConstants.DATA_CACHE_TYPE.equalsIgnoreCase("none") && !CrailConstants.DATA_CACHE_TYPE.equalsIgnoreCase("memory") && !CrailConstants.DATA_CACHE_TYPE.equalsIgnoreCase("file")){
+			throw new IOException("crail.datacache.type must be either <none>, <memory> or <file>, found " + CrailConstants.DATA_CACHE_TYPE);
+		}
+		if (CrailConstants.DATA_CACHE_PAGE_SIZE <= 0 || CrailConstants.BLOCK_SIZE % CrailConstants.DATA_CACHE_PAGE_SIZE != 0){
+			throw new IOException("crail.datacache.pagesize must be a divisor of crail.blocksize");
+		}
 		if (!CrailConstants.NAMENODE_DARPC_TYPE.equalsIgnoreCase("passive") && !CrailConstants.NAMENODE_DARPC_TYPE.equalsIgnoreCase("active")){
 			throw new IOException("crail.namenode.darpc.type must be either <active> or <passive>, found " + CrailConstants.NAMENODE_DARPC_TYPE);
 		}
+		if (CrailConstants.NAMENODE_POLL_MAX <= 0 || CrailConstants.NAMENODE_POLL_MAX > CrailConstants.NAMENODE_DARPC_QUEUESIZE){
+			throw new IOException("crail.namenode.poll.max must be between 1 and crail.namenode.darpc.queuesize");
+		}
+		if (CrailConstants.NAMENODE_POLL_TIMEOUT <= 0){
+			throw new IOException("crail.namenode.poll.timeout must be positive");
+		}
 	}
 }
@@ -0,0 +1,114 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.CrailAppendRegion;
+import com.ibm.crail.CrailResult;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.namenode.protocol.FileInfo;
+import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+import com.ibm.crail.utils.BlockCache.FileBlockCache;
+import com.ibm.crail.utils.CrailUtils;
+
+public class CoreAppendRegion implements CrailAppendRegion {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private CoreFile file;
+	private long offset;
+	private long length;
+	private CoreOutputStream stream;
+	
+	//the region writes through a private view of the file whose capacity starts at the reserved offset
+	CoreAppendRegion(CoreFile file, RpcResponseMessage.ReserveFileRes reserveRes, long length) throws Exception {
+		this.file = file;
+		this.offset = reserveRes.getOffset();
+		this.length = length;
+		
+		CoreFileSystem fs = file.getFileSystem();
+		FileInfo fileInfo = file.getFileInfo();
+		FileBlockCache blockCache = fs.getBlockCache(fileInfo.getFd());
+		int index = CrailUtils.computeIndex(offset, fileInfo.getBlockSize());
+		for (int i = 0; i < reserveRes.getBlockCount(); i++){
+			BlockInfo block = new BlockInfo();
+			block.setBlockInfo(reserveRes.getBlockInfo(i));
+			blockCache.put(CoreSubOperation.createKey(fileInfo.getFd(), CrailUtils.blockAddress(index + i, fileInfo.getBlockSize()), fileInfo.getBlockSize()), block);
+		}
+		fileInfo.setCapacity(reserveRes.getCapacity());
+		
+		FileInfo regionInfo = new FileInfo();
+		regionInfo.setFileInfo(fileInfo);
+		regionInfo.resetToken();
+		regionInfo.resetCapacity();
+		regionInfo.setCapacity(offset);
+		CoreNode regionNode = new CoreLookupFile(fs, regionInfo, file.getPath());
+		this.stream = fs.getOutputStream(regionNode, offset + length);
+	}
+
+	@Override
+	public long getOffset() {
+		return offset;
+	}
+
+	@Override
+	public long getLength() {
+		return length;
+	}
+
+	@Override
+	public long position() {
+		return stream.position() - offset;
+	}
+
+	@Override
+	public Future<CrailResult> write(ByteBuffer dataBuf) throws Exception {
+		if (stream.position() + dataBuf.remaining() > offset + length){
+			throw new IOException("write exceeds append reservation, offset " + offset + ", length " + length + ", position " + position() + ", len " + dataBuf.remaining());
+		}
+		return stream.write(dataBuf);
+	}
+
+	@Override
+	public long commit() throws Exception {
+		stream.close();
+		CoreFileSystem fs = file.getFileSystem();
+		RpcResponseMessage.CommitFileRes commitRes = fs.getNamenodeClientRpc().commitFile(file.getFd(), offset).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (commitRes.getError() != NameNodeProtocol.ERR_OK){
+			LOG.info("commit: " + NameNodeProtocol.messages[commitRes.getError()] + ", fd " + file.getFd() + ", offset " + offset);
+			throw new IOException("commit: " + NameNodeProtocol.messages[commitRes.getError()] + ", error " + commitRes.getError());
+		}
+		file.getFileInfo().setCapacity(commitRes.getCapacity());
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("commit: fd " + file.getFd() + ", offset " + offset + ", length " + length + ", committed " + commitRes.getCapacity());
+		}
+		return commitRes.getCapacity();
+	}
+}
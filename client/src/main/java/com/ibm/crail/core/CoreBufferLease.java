@@ -0,0 +1,207 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.CrailBufferLease;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcNameNodeClient;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+import com.ibm.crail.utils.CrailUtils;
+
+class CoreBufferLease implements CrailBufferLease {
+	private CoreBlockPin pin;
+	private ByteBuffer buffer;
+	private boolean closed;
+	
+	//no pin for data that needs none, e.g., inline data held by the client
+	CoreBufferLease(CoreBlockPin pin) {
+		this.pin = pin;
+		this.buffer = null;
+		this.closed = false;
+	}
+
+	@Override
+	public synchronized ByteBuffer getBuffer() throws IOException {
+		if (!isValid()){
+			throw new IOException("buffer lease " + (closed ? "closed" : "expired") + ", leaseId " + getLeaseId());
+		}
+		return buffer;
+	}
+	
+	void setBuffer(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+	
+	boolean hasBuffer() {
+		return buffer != null;
+	}
+
+	@Override
+	public synchronized boolean isValid() {
+		return !closed && (pin == null || pin.isValid());
+	}
+	
+	//renews the shared pin, all leases on the block see the new deadline
+	@Override
+	public synchronized void renew() throws Exception {
+		if (!isValid()){
+			throw new IOException("buffer lease " + (closed ? "closed" : "expired") + ", leaseId " + getLeaseId());
+		}
+		if (pin != null){
+			pin.renew();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws Exception {
+		if (closed){
+			return;
+		}
+		closed = true;
+		buffer = null;
+		if (pin != null){
+			pin.release();
+		}
+	}
+	
+	private long getLeaseId() {
+		return pin != null ? pin.getLeaseId() : 0;
+	}
+}
+
+//one namenode pin per block, shared by all leases a stream hands out on that block, the stream holds on to the pin 
+//while it reads the block, the pin is released once the stream moved on and the last lease on it is closed
+class CoreBlockPin {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private RpcNameNodeClient namenodeClientRpc;
+	private long fd;
+	private long leaseId;
+	private long deadline;
+	private BlockInfo block;
+	private int refCount;
+	private boolean cached;
+	private boolean released;
+	
+	CoreBlockPin(RpcNameNodeClient namenodeClientRpc, long fd) {
+		this.namenodeClientRpc = namenodeClientRpc;
+		this.fd = fd;
+		this.leaseId = 0;
+		this.deadline = 0;
+		this.block = null;
+		this.refCount = 0;
+		this.cached = true;
+		this.released = false;
+	}
+	
+	//the deadline is taken before the pin was requested, so it never outlasts the pin at the namenode
+	synchronized void pin(long position) throws Exception {
+		long start = System.currentTimeMillis();
+		RpcResponseMessage.PinBlockRes pinRes = pinBlock(position, 0, false);
+		if (pinRes.getError() != NameNodeProtocol.ERR_OK) {
+			LOG.info("inputStream: " + NameNodeProtocol.messages[pinRes.getError()]);
+			throw new IOException(NameNodeProtocol.messages[pinRes.getError()]);
+		}
+		leaseId = pinRes.getLeaseId();
+		deadline = start + pinRes.getTimeout();
+		block = pinRes.getBlockInfo();
+	}
+	
+	//false once the pin ran out, the caller pins the block again
+	synchronized boolean acquire() {
+		if (!isValid()){
+			return false;
+		}
+		refCount++;
+		return true;
+	}
+	
+	synchronized void renew() throws Exception {
+		if (!isValid()){
+			throw new IOException("block pin expired, leaseId " + leaseId);
+		}
+		long start = System.currentTimeMillis();
+		RpcResponseMessage.PinBlockRes pinRes = pinBlock(0, leaseId, true);
+		if (pinRes.getError() != NameNodeProtocol.ERR_OK){
+			LOG.info("bufferLease: " + NameNodeProtocol.messages[pinRes.getError()]);
+			throw new IOException(NameNodeProtocol.messages[pinRes.getError()]);
+		}
+		deadline = start + pinRes.getTimeout();
+	}
+	
+	synchronized void release() throws Exception {
+		refCount--;
+		drop();
+	}
+	
+	//the stream moved to another block or was closed
+	synchronized void uncache() throws Exception {
+		cached = false;
+		drop();
+	}
+	
+	synchronized boolean isValid() {
+		return !released && System.currentTimeMillis() < deadline;
+	}
+	
+	synchronized int getRefCount() {
+		return refCount;
+	}
+	
+	long getLeaseId() {
+		return leaseId;
+	}
+	
+	BlockInfo getBlock() {
+		return block;
+	}
+	
+	RpcResponseMessage.PinBlockRes pinBlock(long position, long leaseId, boolean renew) throws Exception {
+		return namenodeClientRpc.pinBlock(fd, position, leaseId, renew).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+	
+	//an expired pin is already gone at the namenode, that is not an error
+	private void drop() throws Exception {
+		if (refCount > 0 || cached || released){
+			return;
+		}
+		released = true;
+		if (leaseId == 0){
+			return;
+		}
+		RpcResponseMessage.PinBlockRes pinRes = pinBlock(0, leaseId, false);
+		short error = pinRes.getError();
+		if (error != NameNodeProtocol.ERR_OK && error != NameNodeProtocol.ERR_LEASE_UNKNOWN){
+			LOG.info("bufferLease: " + NameNodeProtocol.messages[error]);
+			throw new IOException(NameNodeProtocol.messages[error]);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.core;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.ibm.crail.datanode.DataResult;
+import com.ibm.crail.namenode.protocol.FileInfo;
+import com.ibm.crail.utils.BlockDataCache;
+
+class CoreCachedResult implements Future<DataResult>, DataResult {
+	private int len;
+	
+	public CoreCachedResult(int len){
+		this.len = len;
+	}
+
+	@Override
+	public int getLen() {
+		return len;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return true;
+	}
+
+	@Override
+	public DataResult get() throws InterruptedException, ExecutionException {
+		return this;
+	}
+
+	@Override
+	public DataResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		return this;
+	}
+}
+
+class CoreCachingFuture implements Future<DataResult> {
+	private Future<DataResult> future;
+	private BlockDataCache dataCache;
+	private long fd;
+	private long capacity;
+	private long modificationTime;
+	private long fileOffset;
+	private ByteBuffer buffer;
+	private boolean cached;
+	
+	public CoreCachingFuture(Future<DataResult> future, BlockDataCache dataCache, FileInfo fileInfo, long fileOffset, ByteBuffer buffer){
+		this.future = future;
+		this.dataCache = dataCache;
+		this.fd = fileInfo.getFd();
+		this.capacity = fileInfo.getCapacity();
+		this.modificationTime = fileInfo.getModificationTime();
+		this.fileOffset = fileOffset;
+		this.buffer = buffer;
+		this.cached = false;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return future.cancel(mayInterruptIfRunning);
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return future.isCancelled();
+	}
+
+	@Override
+	public boolean isDone() {
+		return future.isDone();
+	}
+
+	@Override
+	public DataResult get() throws InterruptedException, ExecutionException {
+		return insert(future.get());
+	}
+
+	@Override
+	public DataResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		return insert(future.get(timeout, unit));
+	}
+	
+	private synchronized DataResult insert(DataResult result) throws ExecutionException {
+		if (!cached && result.getLen() == buffer.remaining()){
+			try {
+				dataCache.write(fd, capacity, modificationTime, fileOffset, buffer);
+			} catch(Exception e){
+				throw new ExecutionException(e);
+			}
+			cached = true;
+		}
+		return result;
+	}
+}
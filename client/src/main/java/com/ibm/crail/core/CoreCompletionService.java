@@ -0,0 +1,204 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.CrailResult;
+import com.ibm.crail.utils.CrailImmediateOperation;
+import com.ibm.crail.utils.CrailUtils;
+
+class CoreCompletionService implements Runnable {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private static final long MIN_POLL_INTERVAL = 1000;
+	private static final long MAX_POLL_INTERVAL = 1000000;
+	
+	private int fsId;
+	private LinkedBlockingQueue<CoreCompletion<?>> submitted;
+	private LinkedList<CoreCompletion<?>> pending;
+	private Thread thread;
+	private volatile boolean running;
+	
+	public CoreCompletionService(int fsId){
+		this.fsId = fsId;
+		this.submitted = new LinkedBlockingQueue<CoreCompletion<?>>();
+		this.pending = new LinkedList<CoreCompletion<?>>();
+		this.thread = null;
+		this.running = true;
+	}
+	
+	//the queue is only added to while running, so the final drain in run sees every submission
+	<T> CompletionStage<T> submit(Future<T> future) throws IOException {
+		CompletableFuture<T> stage = new CompletableFuture<T>();
+		enqueue(new CoreCompletion<T>(future, stage));
+		return stage;
+	}
+	
+	//stream operations are only probed here, so stream state never changes on the completion thread
+	CompletionStage<CrailResult> submit(CoreDataOperation operation) throws IOException {
+		CompletableFuture<CrailResult> stage = new CompletableFuture<CrailResult>();
+		enqueue(new CoreDataCompletion(operation, stage));
+		return stage;
+	}
+	
+	private void enqueue(CoreCompletion<?> completion) throws IOException {
+		if (!completion.poll()){
+			Thread _thread = null;
+			synchronized(this){
+				if (!running){
+					throw new IOException("completion service closed");
+				}
+				start();
+				submitted.add(completion);
+				_thread = thread;
+			}
+			LockSupport.unpark(_thread);
+		}
+	}
+	
+	//blocks while idle, while waiting for pending futures the poll interval backs off until something completes
+	public void run() {
+		long interval = MIN_POLL_INTERVAL;
+		while (running) {
+			try {
+				if (pending.isEmpty()){
+					pending.add(submitted.take());
+				}
+				if (submitted.drainTo(pending) > 0){
+					interval = MIN_POLL_INTERVAL;
+				}
+				
+				int completed = 0;
+				for (Iterator<CoreCompletion<?>> iter = pending.iterator(); iter.hasNext(); ){
+					if (iter.next().poll()){
+						iter.remove();
+						completed++;
+					}
+				}
+				if (completed > 0 || pending.isEmpty()){
+					interval = MIN_POLL_INTERVAL;
+				} else {
+					LockSupport.parkNanos(this, interval);
+					interval = Math.min(2*interval, MAX_POLL_INTERVAL);
+				}
+			} catch(InterruptedException e){
+				break;
+			} catch(Exception e){
+				LOG.info("completion service error " + e.getMessage());
+			}
+		}
+		
+		synchronized(this){
+			submitted.drainTo(pending);
+		}
+		for (CoreCompletion<?> completion : pending){
+			completion.abort(new IOException("file system closed"));
+		}
+		pending.clear();
+	}
+	
+	void close() throws InterruptedException {
+		Thread _thread = null;
+		synchronized(this){
+			this.running = false;
+			_thread = thread;
+		}
+		if (_thread != null){
+			_thread.interrupt();
+			_thread.join();
+		}
+	}
+	
+	private synchronized void start(){
+		if (thread == null && running){
+			this.thread = new Thread(this, "crail-completion-" + fsId);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+}
+
+class CoreCompletion<T> {
+	private Future<T> future;
+	private CompletableFuture<T> stage;
+	
+	public CoreCompletion(Future<T> future, CompletableFuture<T> stage){
+		this.future = future;
+		this.stage = stage;
+	}
+	
+	boolean poll(){
+		if (future == null){
+			stage.complete(null);
+			return true;
+		}
+		if (!future.isDone()){
+			return false;
+		}
+		try {
+			stage.complete(future.get());
+		} catch(ExecutionException e){
+			stage.completeExceptionally(e.getCause() != null ? e.getCause() : e);
+		} catch(Exception e){
+			stage.completeExceptionally(e);
+		}
+		return true;
+	}
+	
+	void abort(Exception e){
+		stage.completeExceptionally(e);
+	}
+}
+
+class CoreDataCompletion extends CoreCompletion<CrailResult> {
+	private CoreDataOperation operation;
+	private CompletableFuture<CrailResult> stage;
+	
+	public CoreDataCompletion(CoreDataOperation operation, CompletableFuture<CrailResult> stage){
+		super(operation, stage);
+		this.operation = operation;
+		this.stage = stage;
+	}
+	
+	boolean poll(){
+		try {
+			long len = operation.peek();
+			if (len < 0){
+				return false;
+			}
+			stage.complete(new CrailImmediateOperation((int) len));
+		} catch(Exception e){
+			stage.completeExceptionally(e);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.CrailCopy;
+import com.ibm.crail.CrailFile;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+import com.ibm.crail.utils.CrailUtils;
+
+class CoreCopy implements CrailCopy {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private CoreFileSystem fs;
+	private CrailFile file;
+	private String path;
+	private long copyId;
+	private long total;
+	private long copied;
+	private int state;
+	
+	CoreCopy(CoreFileSystem fs, CrailFile file, String path, long copyId, long total) {
+		this.fs = fs;
+		this.file = file;
+		this.path = path;
+		this.copyId = copyId;
+		this.total = total;
+		this.copied = 0;
+		this.state = RpcResponseMessage.CopyStatusRes.RUNNING;
+	}
+
+	@Override
+	public synchronized CrailFile getFile() throws Exception {
+		return file;
+	}
+
+	@Override
+	public long getTotal() {
+		return total;
+	}
+
+	@Override
+	public synchronized long getCopied() throws Exception {
+		update();
+		return copied;
+	}
+
+	@Override
+	public synchronized boolean isDone() throws Exception {
+		update();
+		return state != RpcResponseMessage.CopyStatusRes.RUNNING;
+	}
+
+	//long polls the destination, the namenode releases it once the last transfer task reported back
+	@Override
+	public synchronized boolean waitFor(long timeout) throws Exception {
+		long deadline = System.currentTimeMillis() + Math.max(0, timeout);
+		update();
+		while (state == RpcResponseMessage.CopyStatusRes.RUNNING){
+			long wait = Math.min(deadline - System.currentTimeMillis(), CrailConstants.NAMENODE_POLL_TIMEOUT);
+			if (wait <= 0){
+				return false;
+			}
+			fs.getNamenodeClientRpc().waitFile(file.getFd(), 0, wait).get(wait + CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+			update();
+		}
+		if (state == RpcResponseMessage.CopyStatusRes.FAILED){
+			throw new IOException("copy: failed after " + copied + " of " + total + " bytes, " + path);
+		}
+		return true;
+	}
+	
+	private void update() throws Exception {
+		if (state != RpcResponseMessage.CopyStatusRes.RUNNING){
+			return;
+		}
+		RpcResponseMessage.CopyStatusRes statusRes = fs.getNamenodeClientRpc().copyStatus(copyId).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (statusRes.getError() == NameNodeProtocol.ERR_COPY_UNKNOWN){
+			//the namenode dropped the result, a completed copy leaves a released destination behind
+			RpcResponseMessage.WaitFileRes waitRes = fs.getNamenodeClientRpc().waitFile(file.getFd(), 0, 0).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+			boolean done = waitRes.isClosed() && (waitRes.getCapacity() > 0 || total == 0);
+			state = done ? RpcResponseMessage.CopyStatusRes.DONE : RpcResponseMessage.CopyStatusRes.FAILED;
+			copied = done ? total : copied;
+		} else if (statusRes.getError() != NameNodeProtocol.ERR_OK){
+			LOG.info("copy: " + NameNodeProtocol.messages[statusRes.getError()] + ", path " + path);
+			throw new IOException("copy: " + NameNodeProtocol.messages[statusRes.getError()] + ", error " + statusRes.getError());
+		} else {
+			state = statusRes.getState();
+			copied = statusRes.getCopied();
+		}
+		if (state == RpcResponseMessage.CopyStatusRes.DONE){
+			file = fs.lookupFile(path, false).get();
+		}
+	}
+}
@@ -55,9 +55,13 @@ class CoreDataOperation implements Future<CrailResult>, CrailResult {
 	private Exception exception;
 	
 	public CoreDataOperation(CoreStream stream, ByteBuffer buffer) throws Exception{
+		this(stream, buffer, stream.position());
+	}
+	
+	public CoreDataOperation(CoreStream stream, ByteBuffer buffer, long fileOffset) throws Exception{
 		this.stream = stream;
 		this.buffer = buffer;
-		this.fileOffset = stream.position();
+		this.fileOffset = fileOffset;
 		this.bufferPosition = buffer.position();
 		this.bufferLimit = buffer.limit();
 		this.operationLength = buffer.remaining();
@@ -78,26 +82,32 @@ class CoreDataOperation implements Future<CrailResult>, CrailResult {
 		
 	}
 	
-	public synchronized boolean isDone() {
-		if (status.get() == RPC_PENDING) {
-			try {
-				Future<DataResult> dataFuture = pendingDataOps.peek();
-				while (dataFuture != null && dataFuture.isDone()) {
-					dataFuture = pendingDataOps.poll();
-					DataResult result = dataFuture.get();
-					completedLen += result.getLen();
-					dataFuture = pendingDataOps.peek();
-				}
-				if (pendingDataOps.isEmpty() && status.get() == RPC_PENDING) {
-					completeOperation();
+	public boolean isDone() {
+		if (status.get() != RPC_PENDING) {
+			return true;
+		}
+		
+		synchronized(this) {
+			if (status.get() == RPC_PENDING) {
+				try {
+					Future<DataResult> dataFuture = pendingDataOps.peek();
+					while (dataFuture != null && dataFuture.isDone()) {
+						dataFuture = pendingDataOps.poll();
+						DataResult result = dataFuture.get();
+						completedLen += result.getLen();
+						dataFuture = pendingDataOps.peek();
+					}
+					if (pendingDataOps.isEmpty() && status.get() == RPC_PENDING) {
+						completeOperation();
+					}
+				} catch (Exception e) {
+					status.set(RPC_ERROR);
+					this.exception = e;
 				}
-			} catch (Exception e) {
-				status.set(RPC_ERROR);
-				this.exception = e;
 			}
+			
+			return status.get() > 0;
 		}
-		
-		return status.get() > 0;
 	}	
 	
 	public synchronized CrailResult get() throws InterruptedException, ExecutionException {
@@ -163,6 +173,25 @@ class CoreDataOperation implements Future<CrailResult>, CrailResult {
 		return completedLen;
 	}
 	
+	//checks the transfers without completing the operation, the stream is only updated by the thread 
+	//that owns it, returns -1 while transfers are pending
+	synchronized long peek() throws Exception {
+		if (exception != null){
+			throw exception;
+		}
+		if (status.get() == RPC_DONE){
+			return completedLen;
+		}
+		long len = completedLen;
+		for (Future<DataResult> dataFuture : pendingDataOps){
+			if (!dataFuture.isDone()){
+				return -1;
+			}
+			len += dataFuture.get().getLen();
+		}
+		return len;
+	}
+	
 	void incProcessedLen(int opLen){
 		this.inProcessLen += opLen;
 	}
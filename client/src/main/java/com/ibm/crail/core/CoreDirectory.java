@@ -25,6 +25,8 @@ import java.util.Iterator;
 import java.util.concurrent.Future;
 
 import com.ibm.crail.CrailDirectory;
+import com.ibm.crail.CrailDirectoryWatch;
+import com.ibm.crail.CrailNode;
 import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.namenode.protocol.FileInfo;
 
@@ -46,6 +48,16 @@ class CoreDirectory extends CoreNode implements CrailDirectory {
 	public Iterator<String> listEntries() throws Exception {
 		return fs.listEntries(path);
 	}
+	
+	@Override
+	public Iterator<CrailNode> listNodes() throws Exception {
+		return fs.listNodes(path);
+	}
+	
+	@Override
+	public CrailDirectoryWatch watch() throws Exception {
+		return new CoreDirectoryWatch(fs, this);
+	}
 }
 
 class CoreMakeDirectory extends CoreDirectory {
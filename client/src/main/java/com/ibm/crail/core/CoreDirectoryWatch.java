@@ -0,0 +1,118 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.CrailDirectory;
+import com.ibm.crail.CrailDirectoryWatch;
+import com.ibm.crail.CrailWatchEvent;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.protocol.WatchEvent;
+import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+import com.ibm.crail.utils.CrailUtils;
+
+class CoreDirectoryWatch implements CrailDirectoryWatch {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private CoreFileSystem fs;
+	private CoreDirectory directory;
+	private long watchId;
+	private boolean closed;
+	
+	CoreDirectoryWatch(CoreFileSystem fs, CoreDirectory directory) throws Exception {
+		this.fs = fs;
+		this.directory = directory;
+		this.watchId = 0;
+		this.closed = false;
+		subscribe();
+	}
+
+	@Override
+	public CrailDirectory getDirectory() {
+		return directory;
+	}
+
+	//long polls the namenode, each call is bounded by what the namenode is willing to park
+	@Override
+	public synchronized List<CrailWatchEvent> poll(long timeout) throws Exception {
+		ArrayList<CrailWatchEvent> events = new ArrayList<CrailWatchEvent>();
+		long deadline = System.currentTimeMillis() + Math.max(0, timeout);
+		while (!closed){
+			long wait = Math.max(0, Math.min(deadline - System.currentTimeMillis(), CrailConstants.NAMENODE_POLL_TIMEOUT));
+			RpcResponseMessage.WatchDirRes watchRes = fs.getNamenodeClientRpc().watchDirectory(directory.getFd(), watchId, wait, false).get(wait + CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+			if (watchRes.getError() == NameNodeProtocol.ERR_WATCH_UNKNOWN){
+				//the namenode dropped the subscription, events may have been missed in between
+				subscribe();
+				events.add(new CrailWatchEvent(CrailWatchEvent.OVERFLOW, directory.getPath(), true));
+				return events;
+			}
+			if (watchRes.getError() != NameNodeProtocol.ERR_OK){
+				throw new IOException("watch: " + NameNodeProtocol.messages[watchRes.getError()] + ", error " + watchRes.getError());
+			}
+			closed = watchRes.isClosed();
+			if (watchRes.isOverflow()){
+				events.add(new CrailWatchEvent(CrailWatchEvent.OVERFLOW, directory.getPath(), true));
+			}
+			for (WatchEvent event : watchRes.getEvents()){
+				String oldPath = event.getType() == WatchEvent.RENAME ? CrailUtils.combinePath(directory.getPath(), event.getOldName()) : null;
+				events.add(new CrailWatchEvent(event.getType(), CrailUtils.combinePath(directory.getPath(), event.getName()), event.isDir(), oldPath));
+			}
+			if (!events.isEmpty() || System.currentTimeMillis() >= deadline){
+				break;
+			}
+		}
+		return events;
+	}
+
+	@Override
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public synchronized void close() throws Exception {
+		if (closed){
+			return;
+		}
+		closed = true;
+		RpcResponseMessage.WatchDirRes watchRes = fs.getNamenodeClientRpc().watchDirectory(directory.getFd(), watchId, 0, true).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (watchRes.getError() != NameNodeProtocol.ERR_OK && watchRes.getError() != NameNodeProtocol.ERR_WATCH_UNKNOWN){
+			LOG.info("watch: " + NameNodeProtocol.messages[watchRes.getError()] + ", path " + directory.getPath());
+		}
+	}
+	
+	private void subscribe() throws Exception {
+		RpcResponseMessage.WatchDirRes watchRes = fs.getNamenodeClientRpc().watchDirectory(directory.getFd(), 0, 0, false).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (watchRes.getError() != NameNodeProtocol.ERR_OK){
+			throw new IOException("watch: " + NameNodeProtocol.messages[watchRes.getError()] + ", error " + watchRes.getError());
+		}
+		this.watchId = watchRes.getWatchId();
+		this.closed = watchRes.isClosed();
+	}
+}
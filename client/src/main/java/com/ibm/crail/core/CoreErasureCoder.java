@@ -0,0 +1,420 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.datanode.DataNodeEndpoint;
+import com.ibm.crail.datanode.DataResult;
+import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.namenode.protocol.FileInfo;
+import com.ibm.crail.utils.CrailUtils;
+import com.ibm.crail.utils.EndpointCache;
+import com.ibm.crail.utils.ReedSolomon;
+
+//a file block of an erasure coded file is striped over dataFragments + parityFragments datanode blocks.
+//stripe s places cell i of the data at offset s*cellSize of fragment i, parity cells follow the data fragments
+class CoreErasureCoder {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private CoreFileSystem fs;
+	private EndpointCache endpointCache;
+	private ReedSolomon codec;
+	private int dataFragments;
+	private int parityFragments;
+	private int cellSize;
+	private int stripeSize;
+	
+	public CoreErasureCoder(CoreFileSystem fs, FileInfo fileInfo) throws IOException {
+		this.fs = fs;
+		this.endpointCache = fs.getDatanodeEndpointCache();
+		this.dataFragments = fileInfo.getDataFragments();
+		this.parityFragments = fileInfo.getParityFragments();
+		this.codec = new ReedSolomon(dataFragments, parityFragments);
+		this.cellSize = CrailConstants.ERASURE_CELL_SIZE;
+		this.stripeSize = cellSize*dataFragments;
+	}
+	
+	//writes must start at a stripe boundary, a trailing partial stripe is padded with zeros
+	synchronized Future<DataResult> write(CoreSubOperation opDesc, ByteBuffer buffer, ByteBuffer region, BlockInfo block) throws Exception {
+		if (opDesc.getBlockOffset() % stripeSize != 0){
+			throw new IOException("erasure coded write not stripe aligned, block offset " + opDesc.getBlockOffset());
+		}
+		int len = buffer.remaining();
+		ArrayList<Future<DataResult>> futures = new ArrayList<Future<DataResult>>();
+		ArrayList<ByteBuffer> scratch = new ArrayList<ByteBuffer>();
+		ByteBuffer[] cells = new ByteBuffer[dataFragments];
+		ByteBuffer[] parity = new ByteBuffer[parityFragments];
+		try {
+			for (int stripeOffset = 0; stripeOffset < len; stripeOffset += stripeSize){
+				int stripeLen = Math.min(stripeSize, len - stripeOffset);
+				ByteBuffer stripe = buffer.duplicate();
+				stripe.position(buffer.position() + stripeOffset);
+				stripe.limit(stripe.position() + stripeLen);
+				ByteBuffer stripeRegion = region;
+				if (stripeLen < stripeSize){
+					ByteBuffer padded = allocate(stripeSize, scratch);
+					padded.put(stripe);
+					while(padded.hasRemaining()){
+						padded.put((byte) 0);
+					}
+					padded.flip();
+					stripe = padded;
+					stripeRegion = regionOf(padded);
+				}
+				for (int i = 0; i < dataFragments; i++){
+					cells[i] = stripe.duplicate();
+					cells[i].position(stripe.position() + i*cellSize);
+					cells[i].limit(cells[i].position() + cellSize);
+				}
+				for (int j = 0; j < parityFragments; j++){
+					parity[j] = allocate(cellSize, scratch);
+				}
+				codec.encode(cells, parity, cellSize);
+				
+				long fragmentOffset = (opDesc.getBlockOffset() + stripeOffset) / dataFragments;
+				for (int i = 0; i < dataFragments; i++){
+					futures.add(writeFragment(getFragment(block, i), cells[i], stripeRegion, fragmentOffset));
+				}
+				for (int j = 0; j < parityFragments; j++){
+					futures.add(writeFragment(getFragment(block, dataFragments + j), parity[j], regionOf(parity[j]), fragmentOffset));
+				}
+			}
+		} catch(Exception e){
+			for (Future<DataResult> future : futures){
+				try {
+					future.get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+				} catch(Exception f){
+				}
+			}
+			release(scratch);
+			throw e;
+		}
+		return new CoreErasureWrite(this, futures, scratch, len);
+	}
+	
+	//cells are fetched directly from the data fragments, decoding only kicks in for fragments that cannot be read
+	Future<DataResult> read(CoreSubOperation opDesc, ByteBuffer buffer, ByteBuffer region, BlockInfo block) throws Exception {
+		int len = buffer.remaining();
+		ArrayList<CoreErasurePiece> pieces = new ArrayList<CoreErasurePiece>();
+		int done = 0;
+		while (done < len){
+			long logicalOffset = opDesc.getBlockOffset() + done;
+			long stripe = logicalOffset / stripeSize;
+			int stripeOffset = (int) (logicalOffset % stripeSize);
+			int cell = stripeOffset / cellSize;
+			int cellOffset = stripeOffset % cellSize;
+			int pieceLen = Math.min(cellSize - cellOffset, len - done);
+			
+			ByteBuffer target = buffer.duplicate();
+			target.position(buffer.position() + done);
+			target.limit(target.position() + pieceLen);
+			CoreErasurePiece piece = new CoreErasurePiece(cell, stripe*cellSize + cellOffset, target);
+			try {
+				piece.future = readFragment(getFragment(block, cell), target.duplicate(), region, piece.fragmentOffset);
+			} catch(IOException e){
+				LOG.info("fragment " + cell + " not available, " + e.getMessage());
+				piece.future = null;
+			}
+			pieces.add(piece);
+			done += pieceLen;
+		}
+		return new CoreErasureRead(this, block, pieces, len);
+	}
+	
+	//rebuilds the range of a missing fragment from the same range of any dataFragments other fragments
+	synchronized void reconstruct(BlockInfo block, CoreErasurePiece piece) throws Exception {
+		int fragments = dataFragments + parityFragments;
+		int len = piece.target.remaining();
+		ByteBuffer[] shards = new ByteBuffer[fragments];
+		boolean[] present = new boolean[fragments];
+		ArrayList<Future<DataResult>> futures = new ArrayList<Future<DataResult>>(fragments);
+		for (int i = 0; i < fragments; i++){
+			futures.add(null);
+		}
+		ArrayList<ByteBuffer> scratch = new ArrayList<ByteBuffer>();
+		try {
+			int available = 0;
+			int next = 0;
+			while (available < dataFragments){
+				int inFlight = 0;
+				for (; next < fragments && available + inFlight < dataFragments; next++){
+					if (next == piece.cell){
+						continue;
+					}
+					ByteBuffer shard = allocate(len, scratch);
+					try {
+						futures.set(next, readFragment(getFragment(block, next), shard.duplicate(), regionOf(shard), piece.fragmentOffset));
+						shards[next] = shard;
+						inFlight++;
+					} catch(IOException e){
+						futures.set(next, null);
+					}
+				}
+				if (inFlight == 0){
+					throw new IOException("cannot decode fragment " + piece.cell + ", only " + available + " fragments readable");
+				}
+				for (int i = 0; i < next; i++){
+					if (futures.get(i) == null){
+						continue;
+					}
+					try {
+						futures.get(i).get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+						present[i] = true;
+						available++;
+					} catch(ExecutionException e){
+						shards[i] = null;
+					}
+					futures.set(i, null);
+				}
+			}
+			for (int i = 0; i < fragments; i++){
+				if (!present[i]){
+					shards[i] = null;
+				}
+			}
+			shards[piece.cell] = piece.target;
+			codec.decode(shards, present, len);
+		} finally {
+			release(scratch);
+		}
+	}
+	
+	void release(ArrayList<ByteBuffer> buffers) throws IOException {
+		for (ByteBuffer buffer : buffers){
+			fs.freeBuffer(buffer);
+		}
+		buffers.clear();
+	}
+	
+	int getStripeSize() {
+		return stripeSize;
+	}
+	
+	private BlockInfo getFragment(BlockInfo block, int index) throws IOException {
+		if (index == 0){
+			return block;
+		}
+		if (index > block.getReplicaCount()){
+			throw new IOException("fragment " + index + " missing in block layout");
+		}
+		return block.getReplica(index - 1);
+	}
+	
+	private Future<DataResult> writeFragment(BlockInfo fragment, ByteBuffer buffer, ByteBuffer region, long offset) throws Exception {
+		DataNodeEndpoint endpoint = endpointCache.getDataEndpoint(fragment.getDnInfo());
+		return endpoint.write(buffer, region, fragment, offset);
+	}
+	
+	private Future<DataResult> readFragment(BlockInfo fragment, ByteBuffer buffer, ByteBuffer region, long offset) throws Exception {
+		DataNodeEndpoint endpoint = endpointCache.getDataEndpoint(fragment.getDnInfo());
+		return endpoint.read(buffer, region, fragment, offset);
+	}
+	
+	private ByteBuffer allocate(int size, ArrayList<ByteBuffer> scratch) throws IOException {
+		ByteBuffer buffer = fs.allocateBuffer(size);
+		scratch.add(buffer);
+		buffer.clear();
+		buffer.limit(size);
+		return buffer;
+	}
+	
+	private ByteBuffer regionOf(ByteBuffer buffer){
+		ByteBuffer region = fs.getBufferCache().getAllocationBuffer(buffer);
+		return region != null ? region : buffer;
+	}
+}
+
+class CoreErasurePiece {
+	int cell;
+	long fragmentOffset;
+	ByteBuffer target;
+	Future<DataResult> future;
+	
+	CoreErasurePiece(int cell, long fragmentOffset, ByteBuffer target){
+		this.cell = cell;
+		this.fragmentOffset = fragmentOffset;
+		this.target = target;
+		this.future = null;
+	}
+}
+
+class CoreErasureWrite implements Future<DataResult>, DataResult {
+	private CoreErasureCoder coder;
+	private ArrayList<Future<DataResult>> futures;
+	private ArrayList<ByteBuffer> scratch;
+	private int len;
+	private boolean done;
+	
+	public CoreErasureWrite(CoreErasureCoder coder, ArrayList<Future<DataResult>> futures, ArrayList<ByteBuffer> scratch, int len){
+		this.coder = coder;
+		this.futures = futures;
+		this.scratch = scratch;
+		this.len = len;
+		this.done = false;
+	}
+	
+	@Override
+	public int getLen() {
+		return len;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		if (done){
+			return true;
+		}
+		for (Future<DataResult> future : futures){
+			if (!future.isDone()){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public DataResult get() throws InterruptedException, ExecutionException {
+		try {
+			return get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch(TimeoutException e){
+			throw new ExecutionException(e);
+		}
+	}
+
+	@Override
+	public synchronized DataResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (done){
+			return this;
+		}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (Future<DataResult> future : futures){
+			future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+		done = true;
+		try {
+			coder.release(scratch);
+		} catch(IOException e){
+			throw new ExecutionException(e);
+		}
+		return this;
+	}
+}
+
+class CoreErasureRead implements Future<DataResult>, DataResult {
+	private CoreErasureCoder coder;
+	private BlockInfo block;
+	private ArrayList<CoreErasurePiece> pieces;
+	private int len;
+	private boolean done;
+	
+	public CoreErasureRead(CoreErasureCoder coder, BlockInfo block, ArrayList<CoreErasurePiece> pieces, int len){
+		this.coder = coder;
+		this.block = block;
+		this.pieces = pieces;
+		this.len = len;
+		this.done = false;
+	}
+	
+	@Override
+	public int getLen() {
+		return len;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		if (done){
+			return true;
+		}
+		for (CoreErasurePiece piece : pieces){
+			if (piece.future != null && !piece.future.isDone()){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public DataResult get() throws InterruptedException, ExecutionException {
+		try {
+			return get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch(TimeoutException e){
+			throw new ExecutionException(e);
+		}
+	}
+
+	@Override
+	public synchronized DataResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (done){
+			return this;
+		}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (CoreErasurePiece piece : pieces){
+			boolean missing = piece.future == null;
+			if (!missing){
+				try {
+					piece.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				} catch(ExecutionException e){
+					missing = true;
+				}
+			}
+			if (missing){
+				try {
+					coder.reconstruct(block, piece);
+				} catch(Exception e){
+					throw new ExecutionException(e);
+				}
+			}
+		}
+		done = true;
+		return this;
+	}
+}
@@ -22,6 +22,7 @@
 package com.ibm.crail.core;
 
 import java.util.concurrent.Future;
+import com.ibm.crail.CrailAppendRegion;
 import com.ibm.crail.CrailBlockLocation;
 import com.ibm.crail.CrailFile;
 import com.ibm.crail.CrailInputStream;
@@ -62,6 +63,14 @@ abstract class CoreFile extends CoreNode implements CrailFile {
 	public long getToken() {
 		return fileInfo.getToken();
 	}
+	
+	public int getCodec() {
+		return fileInfo.getCodec();
+	}
+	
+	public CrailAppendRegion reserve(long length) throws Exception {
+		return fs.reserve(this, length);
+	}
 
 	public boolean tokenFree(){
 		return fileInfo.tokenFree();
@@ -27,10 +27,14 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -39,18 +43,24 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 
+import com.ibm.crail.CrailAppendRegion;
 import com.ibm.crail.CrailBlockLocation;
+import com.ibm.crail.CrailCodec;
+import com.ibm.crail.CrailCopy;
 import com.ibm.crail.CrailDirectory;
 import com.ibm.crail.CrailFile;
 import com.ibm.crail.CrailFS;
+import com.ibm.crail.CrailInputStream;
 import com.ibm.crail.CrailNode;
 import com.ibm.crail.CrailOutputStream;
 import com.ibm.crail.CrailResult;
+import com.ibm.crail.CrailTable;
 import com.ibm.crail.conf.CrailConfiguration;
 import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.datanode.DataNode;
 import com.ibm.crail.namenode.protocol.BlockInfo;
 import com.ibm.crail.namenode.protocol.DataNodeInfo;
+import com.ibm.crail.namenode.protocol.DirectoryRecord;
 import com.ibm.crail.namenode.protocol.FileInfo;
 import com.ibm.crail.namenode.protocol.FileName;
 import com.ibm.crail.namenode.rpc.NameNodeProtocol;
@@ -59,6 +69,7 @@ import com.ibm.crail.namenode.rpc.RpcNameNodeClient;
 import com.ibm.crail.namenode.rpc.RpcNameNodeFuture;
 import com.ibm.crail.namenode.rpc.RpcResponseMessage;
 import com.ibm.crail.utils.BlockCache;
+import com.ibm.crail.utils.BlockDataCache;
 import com.ibm.crail.utils.BufferCheckpoint;
 import com.ibm.crail.utils.DirectBufferCache;
 import com.ibm.crail.utils.EndpointCache;
@@ -81,11 +92,14 @@ public class CoreFileSystem extends CrailFS {
 	
 	private AtomicLong streamCounter;
 	private ConcurrentHashMap<Long, CoreStream> openStreams;
+	private ConcurrentHashMap<Long, AtomicInteger> pendingReads;
 	
 	private BlockCache blockCache;
 	private NextBlockCache nextBlockCache;
 	private DirectBufferCache bufferCache;
 	private BufferCheckpoint bufferCheckpoint;
+	private CoreCompletionService completionService;
+	private BlockDataCache dataCache;
 	
 	private boolean isOpen;
 	private int fsId;
@@ -125,25 +139,65 @@ public class CoreFileSystem extends CrailFS {
 		this.blockCache = new BlockCache();
 		this.nextBlockCache = new NextBlockCache();
 		this.openStreams = new ConcurrentHashMap<Long, CoreStream>();
+		this.pendingReads = new ConcurrentHashMap<Long, AtomicInteger>();
 		this.streamCounter = new AtomicLong(0);
 		this.isOpen = true;
 		this.bufferCheckpoint = new BufferCheckpoint();
+		this.completionService = new CoreCompletionService(fsId);
+		this.dataCache = null;
+		if (!CrailConstants.DATA_CACHE_TYPE.equalsIgnoreCase("none")){
+			this.dataCache = new BlockDataCache();
+		}
 		this.ioStatsIn = new CoreIOStatistics();
 		this.ioStatsOut = new CoreIOStatistics();
 		this.streamStats = new CoreStreamStatistics();
 	}
 	
 	public Future<CrailFile> createFile(String path, int storageAffinity, int locationAffinity) throws Exception {
+		return createFile(path, storageAffinity, locationAffinity, 0);
+	}
+	
+	public Future<CrailFile> createFile(String path, int storageAffinity, int locationAffinity, long sizeHint) throws Exception {
+		return createFile(path, storageAffinity, locationAffinity, sizeHint, CrailConstants.REPLICATION);
+	}
+	
+	public Future<CrailFile> createFile(String path, int storageAffinity, int locationAffinity, long sizeHint, int replication) throws Exception {
 		FileName name = new FileName(path);
 		
 		if (CrailConstants.DEBUG){
-			LOG.info("createFile: name " + path + ", storageAffinity " + storageAffinity + ", locationAffinity " + locationAffinity);
+			LOG.info("createFile: name " + path + ", storageAffinity " + storageAffinity + ", locationAffinity " + locationAffinity + ", sizeHint " + sizeHint + ", replication " + replication);
 		}
 
-		RpcNameNodeFuture<RpcResponseMessage.CreateFileRes> fileRes = namenodeClientRpc.createFile(name, false, storageAffinity, locationAffinity);
+		RpcNameNodeFuture<RpcResponseMessage.CreateFileRes> fileRes = namenodeClientRpc.createFile(name, false, storageAffinity, locationAffinity, sizeHint, replication, 0, 0, CrailCodec.NONE);
 		return new CreateFileFuture(this, path, fileRes, storageAffinity, locationAffinity);
 	}	
 	
+	public Future<CrailFile> createErasureCodedFile(String path, int storageAffinity, int locationAffinity, int dataFragments, int parityFragments) throws Exception {
+		if (dataFragments <= 0 || parityFragments <= 0 || dataFragments + parityFragments > BlockInfo.MAX_FRAGMENTS){
+			throw new IOException("createErasureCodedFile: invalid layout " + dataFragments + "+" + parityFragments);
+		}
+		FileName name = new FileName(path);
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("createErasureCodedFile: name " + path + ", storageAffinity " + storageAffinity + ", locationAffinity " + locationAffinity + ", fragments " + dataFragments + "+" + parityFragments);
+		}
+
+		RpcNameNodeFuture<RpcResponseMessage.CreateFileRes> fileRes = namenodeClientRpc.createFile(name, false, storageAffinity, locationAffinity, 0, 1, dataFragments, parityFragments, CrailCodec.NONE);
+		return new CreateFileFuture(this, path, fileRes, storageAffinity, locationAffinity);
+	}
+	
+	public Future<CrailFile> createCompressedFile(String path, int storageAffinity, int locationAffinity, int codec) throws Exception {
+		CrailCodec.createInstance(codec);
+		FileName name = new FileName(path);
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("createCompressedFile: name " + path + ", storageAffinity " + storageAffinity + ", locationAffinity " + locationAffinity + ", codec " + codec);
+		}
+
+		RpcNameNodeFuture<RpcResponseMessage.CreateFileRes> fileRes = namenodeClientRpc.createFile(name, false, storageAffinity, locationAffinity, 0, CrailConstants.REPLICATION, 0, 0, codec);
+		return new CreateFileFuture(this, path, fileRes, storageAffinity, locationAffinity);
+	}
+	
 	CoreFile _createFile(RpcResponseMessage.CreateFileRes fileRes, String path, int storageAffinity, int locationAffinity) throws Exception {
 		if (fileRes.getError() == NameNodeProtocol.ERR_PARENT_MISSING){
 			throw new IOException("create: " + NameNodeProtocol.messages[fileRes.getError()] + ", name " + path);
@@ -163,8 +217,11 @@ public class CoreFileSystem extends CrailFS {
 		blockCache.remove(fileInfo.getFd());
 		nextBlockCache.remove(fileInfo.getFd());
 		
+		//files that may stay inline get their first block on demand
 		BlockInfo fileBlock = fileRes.getFileBlock();
-		getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
+		if (fileBlock.getLength() > 0){
+			getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
+		}
 		BlockInfo dirBlock = fileRes.getDirBlock();
 		getBlockCache(dirInfo.getFd()).put(CoreSubOperation.createKey(dirInfo.getFd(), fileInfo.getDirOffset()), dirBlock);
 		
@@ -187,7 +244,7 @@ public class CoreFileSystem extends CrailFS {
 			LOG.info("makeDirectory: name " + path);
 		}
 
-		RpcNameNodeFuture<RpcResponseMessage.CreateFileRes> fileRes = namenodeClientRpc.createFile(name, true, 0, 0);
+		RpcNameNodeFuture<RpcResponseMessage.CreateFileRes> fileRes = namenodeClientRpc.createFile(name, true, 0, 0, 0, 1, 0, 0, CrailCodec.NONE);
 		return new MakeDirFuture(this, path, fileRes);
 	}	
 	
@@ -255,8 +312,12 @@ public class CoreFileSystem extends CrailFS {
 				LOG.info("lookupFile: name " + path + ", success, fd " + fileInfo.getFd());
 			}
 			BlockInfo fileBlock = fileRes.getFileBlock();
-			getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
-			return new CoreLookupFile(this, fileInfo, path);
+			if (fileBlock.getLength() > 0){
+				getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
+			}
+			CoreFile file = new CoreLookupFile(this, fileInfo, path);
+			file.setInlineData(fileRes.getInlineData());
+			return file;
 		} else {
 			return null;
 		}
@@ -323,7 +384,9 @@ public class CoreFileSystem extends CrailFS {
 				LOG.info("lookup: name " + path + ", success, fd " + fileInfo.getFd());
 			}
 			BlockInfo fileBlock = fileRes.getFileBlock();
-			getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
+			if (fileBlock.getLength() > 0){
+				getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
+			}
 			return new CoreNode(this, fileInfo, path, 0, 0);
 		} else {
 			return null;
@@ -332,14 +395,19 @@ public class CoreFileSystem extends CrailFS {
 	
 
 	public Future<CrailNode> rename(String src, String dst) throws Exception {
+		return rename(src, dst, false);
+	}
+	
+	//with overwrite an existing file at dst is replaced in one step, the new entry takes over its directory record
+	public Future<CrailNode> rename(String src, String dst, boolean overwrite) throws Exception {
 		FileName srcPath = new FileName(src);
 		FileName dstPath = new FileName(dst);
 		
 		if (CrailConstants.DEBUG){
-			LOG.info("rename: srcname " + src + ", dstname " + dst);
+			LOG.info("rename: srcname " + src + ", dstname " + dst + ", overwrite " + overwrite);
 		}
 		
-		RpcNameNodeFuture<RpcResponseMessage.RenameRes> renameRes = namenodeClientRpc.renameFile(srcPath, dstPath);
+		RpcNameNodeFuture<RpcResponseMessage.RenameRes> renameRes = namenodeClientRpc.renameFile(srcPath, dstPath, overwrite);
 		return new RenameNodeFuture(this, src, dst, renameRes);
 	}
 	
@@ -431,6 +499,257 @@ public class CoreFileSystem extends CrailFS {
 		return new CoreDeleteNode(this, fileInfo, path, future, stream);
 	}	
 	
+	public CrailFile concat(String dst, String[] srcs) throws Exception {
+		FileName dstName = new FileName(dst);
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("concat: dst " + dst + ", sources " + srcs.length);
+		}
+		
+		for (String src : srcs){
+			FileName srcName = new FileName(src);
+			RpcResponseMessage.ConcatFileRes concatRes = namenodeClientRpc.concatFile(dstName, srcName, new FileName(), -1).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+			String staging = null;
+			if (concatRes.getError() == NameNodeProtocol.ERR_CONCAT_UNALIGNED){
+				//the target ends in a partial block, stage that block with the source and relink the staged blocks in its place
+				staging = CrailUtils.combinePath(CrailUtils.getParent(src), "." + CrailUtils.getName(src) + ".concat");
+				long dstCapacity = stageTail(dst, src, staging);
+				concatRes = namenodeClientRpc.concatFile(dstName, srcName, new FileName(staging), dstCapacity).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+				if (concatRes.getError() != NameNodeProtocol.ERR_OK){
+					discardStaging(staging);
+				}
+			}
+			if (concatRes.getError() != NameNodeProtocol.ERR_OK){
+				LOG.info("concat: " + NameNodeProtocol.messages[concatRes.getError()] + ", src " + src);
+				throw new IOException("concat: " + NameNodeProtocol.messages[concatRes.getError()] + ", src " + src);
+			}
+			
+			FileInfo srcFile = concatRes.getSrcFile();
+			CoreDirectory dirFile = new CoreDirectory(this, concatRes.getSrcParent(), CrailUtils.getParent(src));
+			DirectoryOutputStream stream = this.getDirectoryOutputStream(dirFile);
+			DirectoryRecord record = new DirectoryRecord(false, src);
+			stream.writeRecord(record, srcFile.getDirOffset()).get();
+			if (staging != null){
+				FileInfo stagingFile = concatRes.getStagingFile();
+				record = new DirectoryRecord(false, staging);
+				stream.writeRecord(record, stagingFile.getDirOffset()).get();
+				blockCache.remove(stagingFile.getFd());
+			}
+			stream.close();
+			
+			blockCache.remove(srcFile.getFd());
+			blockCache.remove(concatRes.getDstFile().getFd());
+		}
+		
+		return lookupFile(dst, false).get();
+	}
+	
+	//files share their full blocks with the source, those blocks stay read only in both files until one of them is deleted,
+	//directories are cloned entry by entry and are not a consistent snapshot
+	public CrailNode clone(String src, String dst) throws Exception {
+		CrailNode srcNode = lookupNode(src).get();
+		if (srcNode == null){
+			throw new FileNotFoundException("clone: source not found, " + src);
+		}
+		if (srcNode.isDir()){
+			makeDirectory(dst).get().syncDir();
+			Iterator<String> iter = listEntries(src);
+			while (iter.hasNext()){
+				String child = iter.next();
+				clone(child, CrailUtils.combinePath(dst, CrailUtils.getName(child)));
+			}
+			return lookupNode(dst).get();
+		}
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("clone: src " + src + ", dst " + dst);
+		}
+		
+		RpcResponseMessage.CloneFileRes cloneRes = namenodeClientRpc.cloneFile(new FileName(src), new FileName(dst)).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (cloneRes.getError() != NameNodeProtocol.ERR_OK){
+			LOG.info("clone: " + NameNodeProtocol.messages[cloneRes.getError()] + ", src " + src + ", dst " + dst);
+			throw new IOException("clone: " + NameNodeProtocol.messages[cloneRes.getError()] + ", error " + cloneRes.getError());
+		}
+		CoreFile file = _createFile(cloneRes, dst, 0, 0);
+		file.syncDir();
+		try {
+			if (cloneRes.getSrcCapacity() > file.getCapacity()){
+				copyTail(src, file, cloneRes.getSrcCapacity());
+			}
+		} finally {
+			file.close();
+		}
+		return lookupNode(dst).get();
+	}
+	
+	//the copy runs on the datanodes, bandwidth limits the transfer in bytes per second, 0 means unlimited
+	public CrailCopy copy(String src, String dst, int locationAffinity, int storageAffinity, long bandwidth) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.info("copy: src " + src + ", dst " + dst + ", locationAffinity " + locationAffinity + ", storageAffinity " + storageAffinity + ", bandwidth " + bandwidth);
+		}
+		
+		RpcResponseMessage.CopyFileRes copyRes = namenodeClientRpc.copyFile(new FileName(src), new FileName(dst), storageAffinity, locationAffinity, bandwidth).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (copyRes.getError() == NameNodeProtocol.ERR_SRC_FILE_NOT_FOUND){
+			throw new FileNotFoundException("copy: source not found, " + src);
+		} else if (copyRes.getError() != NameNodeProtocol.ERR_OK){
+			LOG.info("copy: " + NameNodeProtocol.messages[copyRes.getError()] + ", src " + src + ", dst " + dst);
+			throw new IOException("copy: " + NameNodeProtocol.messages[copyRes.getError()] + ", error " + copyRes.getError());
+		}
+		CoreFile file = _createFile(copyRes, dst, storageAffinity, locationAffinity);
+		file.syncDir();
+		return new CoreCopy(this, file, dst, copyRes.getCopyId(), copyRes.getTotal());
+	}
+	
+	//the partial last block is never shared, the clone gets its own copy
+	private void copyTail(String src, CoreFile file, long srcCapacity) throws Exception {
+		CrailFile srcFile = lookupFile(src, false).get();
+		if (srcFile == null){
+			throw new FileNotFoundException("clone: source not found, " + src);
+		}
+		
+		long offset = file.getCapacity();
+		CrailOutputStream outputStream = file.getDirectOutputStream(srcCapacity - offset);
+		try {
+			copyRange(srcFile, offset, srcCapacity, outputStream);
+		} finally {
+			outputStream.close();
+		}
+	}
+	
+	//copies the partial last block of the target, or all of a slab target, followed by the source into a staging file laid out like the target,
+	//returns the target capacity the staging file was built against
+	private long stageTail(String dst, String src, String staging) throws Exception {
+		CoreFile dstFile = (CoreFile) lookupFile(dst, false).get();
+		if (dstFile == null){
+			throw new FileNotFoundException("concat: target not found, " + dst);
+		}
+		CrailFile srcFile = lookupFile(src, false).get();
+		if (srcFile == null){
+			throw new FileNotFoundException("concat: source not found, " + src);
+		}
+		
+		FileInfo dstInfo = dstFile.getFileInfo();
+		long blockSize = dstInfo.getBlockSize();
+		long dstCapacity = dstFile.getCapacity();
+		long tail = dstCapacity - CrailUtils.concatAddress(dstCapacity, blockSize);
+		CoreFile stagingFile = null;
+		if (dstInfo.getDataFragments() > 0){
+			stagingFile = (CoreFile) createErasureCodedFile(staging, 0, 0, dstInfo.getDataFragments(), dstInfo.getParityFragments()).get();
+		} else {
+			stagingFile = (CoreFile) createFile(staging, 0, 0, blockSize == CrailConstants.BLOCK_SIZE ? 0 : blockSize, dstInfo.getReplication()).get();
+		}
+		stagingFile.syncDir();
+		
+		try {
+			//the namenode only relinks blocks, so small or inline sources must not be staged inline again
+			CrailOutputStream outputStream = getOutputStream(stagingFile, tail + srcFile.getCapacity(), false);
+			try {
+				copyRange(dstFile, dstCapacity - tail, dstCapacity, outputStream);
+				copyRange(srcFile, 0, srcFile.getCapacity(), outputStream);
+			} finally {
+				outputStream.close();
+				stagingFile.close();
+			}
+		} catch(Exception e){
+			discardStaging(staging);
+			throw e;
+		}
+		return dstCapacity;
+	}
+	
+	private void discardStaging(String staging) throws Exception {
+		CrailNode node = delete(staging, false).get();
+		if (node != null){
+			node.syncDir();
+		}
+	}
+	
+	private void copyRange(CrailFile srcFile, long offset, long end, CrailOutputStream outputStream) throws Exception {
+		CrailInputStream inputStream = srcFile.getDirectInputStream(end);
+		ByteBuffer buffer = allocateBuffer();
+		try {
+			inputStream.seek(offset);
+			while (offset < end){
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), end - offset));
+				Future<CrailResult> future = inputStream.read(buffer);
+				if (future == null){
+					throw new IOException("copy: " + srcFile.getPath() + " ends before " + end);
+				}
+				future.get();
+				buffer.flip();
+				offset += buffer.remaining();
+				outputStream.write(buffer).get();
+			}
+		} finally {
+			freeBuffer(buffer);
+			inputStream.close();
+		}
+	}
+	
+	CrailAppendRegion reserve(CoreFile file, long length) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.info("reserve: fd " + file.getFd() + ", length " + length);
+		}
+		
+		RpcResponseMessage.ReserveFileRes reserveRes = namenodeClientRpc.reserveFile(file.getFd(), length, file.storageAffinity(), file.locationAffinity()).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (reserveRes.getError() != NameNodeProtocol.ERR_OK){
+			LOG.info("reserve: " + NameNodeProtocol.messages[reserveRes.getError()] + ", fd " + file.getFd() + ", length " + length);
+			throw new IOException("reserve: " + NameNodeProtocol.messages[reserveRes.getError()] + ", error " + reserveRes.getError());
+		}
+		return new CoreAppendRegion(file, reserveRes, length);
+	}
+	
+	public CrailTable openTable(String path) throws Exception {
+		CrailNode node = lookupNode(path).get();
+		if (node == null){
+			makeDirectory(path).get().syncDir();
+		} else if (!node.isDir()){
+			throw new IOException("openTable: " + path + " is not a directory");
+		}
+		return new CoreTable(this, path);
+	}
+	
+	//creates or replaces a closed file holding value inline in a single rpc, only a new file costs a directory record write
+	CoreFile putFile(String path, byte[] value) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.info("putFile: name " + path + ", length " + value.length);
+		}
+		
+		RpcResponseMessage.PutFileRes putRes = namenodeClientRpc.putFile(new FileName(path), value).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (putRes.getError() != NameNodeProtocol.ERR_OK){
+			LOG.info("putFile: " + NameNodeProtocol.messages[putRes.getError()] + ", name " + path);
+			throw new IOException("putFile: " + NameNodeProtocol.messages[putRes.getError()] + ", error " + putRes.getError());
+		}
+		
+		FileInfo fileInfo = putRes.getFile();
+		FileInfo dirInfo = putRes.getParent();
+		blockCache.remove(fileInfo.getFd());
+		nextBlockCache.remove(fileInfo.getFd());
+		if (putRes.isReplaced()){
+			return new CoreCreateFile(this, fileInfo, path, 0, 0, null, null);
+		}
+		
+		getBlockCache(dirInfo.getFd()).put(CoreSubOperation.createKey(dirInfo.getFd(), fileInfo.getDirOffset()), putRes.getDirBlock());
+		CoreDirectory dirFile = new CoreDirectory(this, dirInfo, CrailUtils.getParent(path));
+		DirectoryOutputStream stream = this.getDirectoryOutputStream(dirFile);
+		DirectoryRecord record = new DirectoryRecord(true, path);
+		Future<CrailResult> future = stream.writeRecord(record, fileInfo.getDirOffset());
+		return new CoreCreateFile(this, fileInfo, path, 0, 0, future, stream);
+	}
+	
+	public CompletionStage<CrailFile> createFileAsync(String path, int storageAffinity, int locationAffinity) throws Exception {
+		return completionService.submit(createFile(path, storageAffinity, locationAffinity));
+	}
+	
+	public CompletionStage<CrailFile> lookupFileAsync(String path, boolean writeable) throws Exception {
+		return completionService.submit(lookupFile(path, writeable));
+	}
+	
+	public CompletionStage<CrailNode> lookupNodeAsync(String path) throws Exception {
+		return completionService.submit(lookupNode(path));
+	}
+	
 	public DirectoryInputStream listEntries(String name) throws Exception {
 		return _listEntries(name, CrailConstants.DIRECTORY_RANDOMIZE);
 	}
@@ -459,6 +778,17 @@ public class CoreFileSystem extends CrailFS {
 		return inputStream;
 	}	
 	
+	public DirectoryListing listNodes(String name) throws Exception {
+		FileName directory = new FileName(name);
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("listNodes: " + name);
+		}
+		
+		RpcNameNodeFuture<RpcResponseMessage.ListDirRes> listRes = namenodeClientRpc.listDirectory(directory, 0, -1);
+		return new DirectoryListing(this, name, listRes);
+	}
+	
 	public CrailBlockLocation[] getBlockLocations(String path, long start, long len) throws Exception {
 		if (CrailConstants.DEBUG){
 			LOG.info("location: path " + path + ", start " + start + ", len " + len);
@@ -468,37 +798,97 @@ public class CoreFileSystem extends CrailFS {
 			LOG.info("Path null");
 			return null;
 		}
-		if (start < 0 || len < 0) {
-			LOG.info("Start or len invalid");
-			throw new IOException("Invalid start or len parameter");
+		
+		return getBlockLocations(new String[]{ path }, new long[]{ start }, new long[]{ len })[0];
+	}
+	
+	public CrailBlockLocation[][] getBlockLocations(String[] paths, long[] starts, long[] lens) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.info("location: files " + paths.length);
 		}
 		
+		//each getLocations rpc covers up to MAX_BLOCKS blocks, rpcs of all files are pipelined
+		ArrayList<TreeMap<Long, BlockInfo>> blocks = new ArrayList<TreeMap<Long, BlockInfo>>(paths.length);
+		long[] blockSizes = new long[paths.length];
+		LinkedList<PendingLocation> pending = new LinkedList<PendingLocation>();
+		for (int i = 0; i < paths.length; i++){
+			if (starts[i] < 0 || lens[i] < 0) {
+				LOG.info("Start or len invalid");
+				throw new IOException("Invalid start or len parameter");
+			}
+			
+			FileName name = new FileName(paths[i]);
+			blocks.add(new TreeMap<Long, BlockInfo>());
+			//the block size of the file is only known from the first answer, the namenode aligns each range to it
+			blockSizes[i] = CrailConstants.BLOCK_SIZE;
+			long rangeStart = starts[i];
+			long rangeEnd = starts[i] + lens[i];
+			long chunk = RpcResponseMessage.GetLocationsRes.MAX_BLOCKS*CrailConstants.BLOCK_SIZE;
+			for (long current = rangeStart; current < rangeEnd; current += chunk){
+				if (pending.size() >= CrailConstants.NAMENODE_DARPC_QUEUESIZE){
+					completeLocation(pending.poll(), blocks, blockSizes, pending);
+				}
+				long end = Math.min(current + chunk, rangeEnd);
+				pending.add(new PendingLocation(namenodeClientRpc.getLocations(name, current, end - current), name, i, current, end));
+			}
+		}
+		while(!pending.isEmpty()){
+			completeLocation(pending.poll(), blocks, blockSizes, pending);
+		}
 		
-		FileName name = new FileName(path);
-		long rangeStart = CrailUtils.blockStartAddress(start);
-		long range = start + len - CrailUtils.blockStartAddress(start);
-		long blockCount = range / CrailConstants.BLOCK_SIZE;
-		if (range % CrailConstants.BLOCK_SIZE > 0){
-			blockCount++;
+		CrailBlockLocation[][] locations = new CrailBlockLocation[paths.length][];
+		for (int i = 0; i < paths.length; i++){
+			locations[i] = buildBlockLocations(starts[i], lens[i], blockSizes[i], blocks.get(i));
+		}
+		return locations;
+	}
+	
+	//files with small blocks may need more than one rpc per chunk, the remainder is requested once the answer is in
+	private void completeLocation(PendingLocation location, ArrayList<TreeMap<Long, BlockInfo>> blocks, long[] blockSizes, LinkedList<PendingLocation> pending) throws Exception {
+		RpcResponseMessage.GetLocationsRes getLocationsRes = location.future.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (getLocationsRes.getError() != NameNodeProtocol.ERR_OK) {
+			LOG.info("location: " + NameNodeProtocol.messages[getLocationsRes.getError()]);
+			throw new IOException(NameNodeProtocol.messages[getLocationsRes.getError()]);
+		}
+		long blockSize = getLocationsRes.getBlockSize();
+		int blockCount = getLocationsRes.getBlockCount();
+		if (blockSize <= 0){
+			throw new IOException("location: no block size returned for offset " + location.start);
 		}
-		CoreBlockLocation[] blockLocations = new CoreBlockLocation[(int) blockCount];
+		blockSizes[location.file] = blockSize;
+		if (blockCount == 0){
+			//the file has no blocks, its content is inline
+			return;
+		}
+		TreeMap<Long, BlockInfo> fileBlocks = blocks.get(location.file);
+		int index = CrailUtils.computeIndex(location.start, blockSize);
+		for (int i = 0; i < blockCount; i++){
+			fileBlocks.put(CrailUtils.blockAddress(index + i, blockSize), getLocationsRes.getBlockInfo(i));
+		}
+		long current = CrailUtils.blockAddress(index + blockCount, blockSize);
+		if (current < location.end){
+			pending.add(new PendingLocation(namenodeClientRpc.getLocations(location.name, current, location.end - current), location.name, location.file, current, location.end));
+		}
+	}
+	
+	private CoreBlockLocation[] buildBlockLocations(long start, long len, long blockSize, TreeMap<Long, BlockInfo> blocks) throws Exception {
+		long rangeStart = CrailUtils.blockStartAddress(start, blockSize);
+		Collection<Map.Entry<Long, BlockInfo>> range = blocks.subMap(rangeStart, true, start + len, false).entrySet();
+		CoreBlockLocation[] blockLocations = new CoreBlockLocation[range.size()];
 		HashMap<String, DataNodeInfo> dataNodeSet = new HashMap<String, DataNodeInfo>();
 		HashMap<Long, String> offset2DataNode = new HashMap<Long, String>();
+		BlockInfo[] locationBlocks = new BlockInfo[range.size()];
 	
-		for (long current = CrailUtils.blockStartAddress(start); current < start + len; current += CrailConstants.BLOCK_SIZE){
-			RpcResponseMessage.GetLocationRes getLocationRes = namenodeClientRpc.getLocation(name, current).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
-			if (getLocationRes.getError() != NameNodeProtocol.ERR_OK) {
-				LOG.info("location: " + NameNodeProtocol.messages[getLocationRes.getError()]);
-				throw new IOException(NameNodeProtocol.messages[getLocationRes.getError()]);
-			}
-			
-			DataNodeInfo dataNodeInfo = getLocationRes.getBlockInfo().getDnInfo();
+		int locationIndex = 0;
+		for (Map.Entry<Long, BlockInfo> entry : range){
+			long current = entry.getKey();
+			DataNodeInfo dataNodeInfo = entry.getValue().getDnInfo();
 			dataNodeSet.put(dataNodeInfo.getInetAddress().toString(), dataNodeInfo);
 			CoreBlockLocation location = new CoreBlockLocation();
 			location.setOffset(current);
-			location.setLength(Math.min(start + len - current, CrailConstants.BLOCK_SIZE));
-			long index = (current - rangeStart) / CrailConstants.BLOCK_SIZE;
-			blockLocations[(int) index] = location;
+			location.setLength(Math.min(start + len - current, CrailUtils.blockLength(CrailUtils.computeIndex(current, blockSize), blockSize)));
+			locationBlocks[locationIndex] = entry.getValue();
+			blockLocations[locationIndex++] = location;
 			offset2DataNode.put(current, dataNodeInfo.getInetAddress().toString());
 		}
 		
@@ -514,6 +904,10 @@ public class CoreFileSystem extends CrailFS {
 		int blockIndex = 0;
 		for (int i = 0; i < blockLocations.length; i++){
 			CoreBlockLocation location = blockLocations[i];
+			if (locationBlocks[i].getReplicaCount() > 0){
+				setReplicaLocations(location, locationBlocks[i]);
+				continue;
+			}
 			String[] hosts = new String[locationSize];
 			String[] names = new String[locationSize];
 			String[] topology = new String[locationSize];
@@ -548,6 +942,30 @@ public class CoreFileSystem extends CrailFS {
 		return blockLocations;
 	}
 	
+	//replicated blocks report the datanodes actually holding a copy
+	private void setReplicaLocations(CoreBlockLocation location, BlockInfo block) {
+		int locationSize = block.getReplicaCount() + 1;
+		String[] hosts = new String[locationSize];
+		String[] names = new String[locationSize];
+		String[] topology = new String[locationSize];
+		int[] storageTiers = new int[locationSize];
+		int[] locationTiers = new int[locationSize];
+		for (int j = 0; j < locationSize; j++){
+			DataNodeInfo dataNode = j == 0 ? block.getDnInfo() : block.getReplica(j - 1).getDnInfo();
+			InetSocketAddress address = dataNode.getInetAddress();
+			names[j] = address.getAddress().getHostAddress() + ":" + address.getPort(); 
+			hosts[j] = address.getAddress().getHostAddress();
+			topology[j] = "/default-rack/" + names[j];
+			storageTiers[j] = dataNode.getStorageTier();
+			locationTiers[j] = dataNode.getLocationAffinity();
+		}
+		location.setNames(names);
+		location.setHosts(hosts);
+		location.setTopologyPaths(topology);
+		location.setStorageTiers(storageTiers);
+		location.setLocationAffinities(locationTiers);
+	}
+	
 	public void dumpNameNode() throws Exception {
 		namenodeClientRpc.dumpNameNode().get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
 	}	
@@ -564,6 +982,10 @@ public class CoreFileSystem extends CrailFS {
 		return this.bufferCache.getBuffer();
 	}
 	
+	public ByteBuffer allocateBuffer(int size) throws IOException {
+		return this.bufferCache.getBuffer(size);
+	}
+	
 	public void freeBuffer(ByteBuffer buffer) throws IOException {
 		this.bufferCache.putBuffer(buffer);
 	}	
@@ -585,6 +1007,9 @@ public class CoreFileSystem extends CrailFS {
 		this.ioStatsOut.reset();
 		this.streamStats.reset();
 		this.bufferCache.reset();
+		if (dataCache != null){
+			this.dataCache.reset();
+		}
 	}
 	
 	public void printStatistics(String message) {
@@ -602,12 +1027,17 @@ public class CoreFileSystem extends CrailFS {
 					", capacity " + ioStatsOut.getCapacity() + ", totalStreams " + ioStatsOut.getTotalStreams() + ", avgCapacity " + ioStatsOut.getAvgCapacity() +
 					", avgOpLen " + ioStatsOut.getAvgOpLen() + 
 					
-					", cacheGet " + bufferCache.get() + ", cachePut " + bufferCache.put() + ", cacheMiss " + bufferCache.missed() + ", cacheMissMap " + bufferCache.missedMap() + ", cacheMissHeap " + bufferCache.missedHeap() + ", cacheSize " + bufferCache.size() +  ", cacheMax " + bufferCache.max() +
+					", cacheGet " + bufferCache.get() + ", cachePut " + bufferCache.put() + ", cacheMiss " + bufferCache.missed() + ", cacheMissMap " + bufferCache.missedMap() + ", cacheMissHeap " + bufferCache.missedHeap() + ", cacheSize " + bufferCache.size() +  ", cacheMax " + bufferCache.max() + ", cacheReclaimed " + bufferCache.reclaimed() +
 //					", mrOps " + mrCache.ops() + ", mrMisses " + mrCache.missed() +
 					", endpointCache " + datanodeEndpointCache.size() + 
 					", open " + streamStats.getOpen() + ", openInput " + streamStats.getOpenInput() + ", openOutput " + streamStats.getOpenOutput() + ", openInputDir " + streamStats.getOpenInputDir() + ", openOutputDir " + streamStats.getOpenOutputDir() + 
 					", close " + streamStats.getClose() + ", closeInput " + streamStats.getCloseInput() + ", closeOutput " + streamStats.getCloseOutput() + ", closeInputDir " + streamStats.getCloseInputDir() + ", closeOutputDir " + streamStats.getCloseOutputDir() + 
 					", maxInput " + streamStats.getMaxInput() + ", maxOutput " + streamStats.getMaxOutput());
+			if (dataCache != null){
+				LOG.info("CoreFileSystem data cache, message " + message + 
+						", hits " + dataCache.hits() + ", misses " + dataCache.misses() + ", hitRate " + dataCache.hitRate() + 
+						", inserts " + dataCache.inserts() + ", evictions " + dataCache.evictions() + ", pages " + dataCache.size());
+			}
 		}
 	}	
 	
@@ -624,7 +1054,11 @@ public class CoreFileSystem extends CrailFS {
 			stream.close();
 		}
 	
+		completionService.close();
 		bufferCache.close();
+		if (dataCache != null){
+			dataCache.close();
+		}
 		datanodeEndpointCache.close();
 		rpcNameNode.close();
 		this.isOpen = false;
@@ -649,7 +1083,11 @@ public class CoreFileSystem extends CrailFS {
 	}	
 
 	CoreOutputStream getOutputStream(CoreNode file, long writeHint) throws Exception {
-		CoreOutputStream outputStream = new CoreOutputStream(file, streamCounter.incrementAndGet(), writeHint);
+		return getOutputStream(file, writeHint, true);
+	}
+	
+	CoreOutputStream getOutputStream(CoreNode file, long writeHint, boolean inline) throws Exception {
+		CoreOutputStream outputStream = new CoreOutputStream(file, streamCounter.incrementAndGet(), writeHint, inline);
 		openStreams.put(outputStream.getStreamId(), outputStream);
 
 		if (CrailConstants.STATISTICS){
@@ -691,7 +1129,7 @@ public class CoreFileSystem extends CrailFS {
 				if (stream.getFile().isDir()){
 					streamStats.incCloseInputDir();
 				}
-			} 
+			}
 			if (stream instanceof CoreOutputStream){
 				streamStats.incCloseOutput();
 				this.ioStatsOut.add(stream.getCoreStatistics());
@@ -721,6 +1159,24 @@ public class CoreFileSystem extends CrailFS {
 		return datanodeEndpointCache;
 	}
 
+	AtomicInteger getPendingReads(DataNodeInfo dnInfo) {
+		AtomicInteger pending = pendingReads.get(dnInfo.key());
+		if (pending == null){
+			pending = new AtomicInteger(0);
+			AtomicInteger current = pendingReads.putIfAbsent(dnInfo.key(), pending);
+			pending = current != null ? current : pending;
+		}
+		return pending;
+	}
+
+	BlockDataCache getDataCache() {
+		return dataCache;
+	}
+	
+	CoreCompletionService getCompletionService() {
+		return completionService;
+	}
+
 	public DirectBufferCache getBufferCache() {
 		return bufferCache;
 	}
@@ -730,3 +1186,19 @@ public class CoreFileSystem extends CrailFS {
 		nextBlockCache.purge();
 	}
 }
+
+class PendingLocation {
+	RpcNameNodeFuture<RpcResponseMessage.GetLocationsRes> future;
+	FileName name;
+	int file;
+	long start;
+	long end;
+	
+	PendingLocation(RpcNameNodeFuture<RpcResponseMessage.GetLocationsRes> future, FileName name, int file, long start, long end){
+		this.future = future;
+		this.name = name;
+		this.file = file;
+		this.start = start;
+		this.end = end;
+	}
+}
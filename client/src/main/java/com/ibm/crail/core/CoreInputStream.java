@@ -23,19 +23,35 @@ package com.ibm.crail.core;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 
 import sun.nio.ch.DirectBuffer;
 
+import com.ibm.crail.CrailBufferLease;
 import com.ibm.crail.CrailInputStream;
+import com.ibm.crail.CrailReadRange;
 import com.ibm.crail.CrailResult;
 import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.datanode.DataNodeEndpoint;
 import com.ibm.crail.datanode.DataResult;
 import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.namenode.protocol.FileInfo;
+import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcNameNodeFuture;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+import com.ibm.crail.utils.BlockDataCache;
 import com.ibm.crail.utils.CrailImmediateOperation;
 import com.ibm.crail.utils.CrailUtils;
 
@@ -75,9 +91,16 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 			int _fileAvailable = (int) fileAvailable;
 			dataBuf.limit(dataBuf.position() + _fileAvailable);
 		}
+		byte[] inlineData = getFile().getInlineData();
+		if (inlineData != null){
+			int len = dataBuf.remaining();
+			dataBuf.put(inlineData, (int) position(), len);
+			super.seek(position() + len);
+			return new CrailImmediateOperation(len);
+		}
 		
 		inFlight.incrementAndGet();
-		long nextOffset = CrailUtils.nextBlockAddress(position() + dataBuf.remaining());
+		long nextOffset = CrailUtils.nextBlockAddress(position() + dataBuf.remaining(), getFile().getBlockSize());
 		if (nextOffset < readHint){
 			prefetchMetadata(nextOffset);
 		}
@@ -85,6 +108,174 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 		return future;
 	}
 	
+	final public CompletionStage<CrailResult> readAsync(ByteBuffer dataBuf) throws Exception {
+		return submitAsync(read(dataBuf));
+	}
+	
+	final public Future<CrailResult> follow(ByteBuffer dataBuf, long timeout) throws Exception {
+		if (!isOpen()) {
+			throw new IOException("stream already closed");
+		}
+		if (position() < getFile().getCapacity()){
+			return read(dataBuf);
+		}
+		return new CoreFollowRead(this, dataBuf, timeout);
+	}
+	
+	final public CrailBufferLease readZeroCopy(int length) throws Exception {
+		if (!isOpen()) {
+			throw new IOException("stream already closed");
+		}
+		if (length <= 0){
+			throw new IOException("zero copy length too small, len " + length);
+		}
+		if (position() >= getFile().getCapacity()) {
+			return null;
+		}
+		
+		int len = Math.min(length, available());
+		byte[] inlineData = getFile().getInlineData();
+		if (inlineData != null){
+			CoreBufferLease lease = new CoreBufferLease(null);
+			lease.setBuffer(ByteBuffer.wrap(inlineData, (int) position(), len).slice().asReadOnlyBuffer());
+			super.seek(position() + len);
+			return lease;
+		}
+		return zeroCopyOperation(len);
+	}
+	
+	//picks up a capacity change pushed by the namenode, inline content is only valid while it covers the file
+	void updateCapacity(RpcResponseMessage.WaitFileRes waitRes) {
+		CoreNode node = getFile();
+		node.getFileInfo().setCapacity(waitRes.getCapacity());
+		node.setInlineData(waitRes.getInlineData());
+	}
+	
+	final public Future<CrailResult> read(long position, ByteBuffer dataBuf) throws Exception {
+		if (!isOpen()) {
+			throw new IOException("stream already closed");
+		}
+		if (!(dataBuf instanceof DirectBuffer)) {
+			throw new IOException("buffer not offheap");
+		}
+		if (position < 0){
+			throw new IOException("read position out of range, position " + position);
+		}
+		if (dataBuf.remaining() <= 0) {
+			return noOp;
+		}
+		long capacity = getFile().getCapacity();
+		if (position >= capacity) {
+			return null;
+		}
+		
+		long fileAvailable = capacity - position;
+		long bufAvailable = (long) dataBuf.remaining();
+		if (fileAvailable < bufAvailable){
+			int _fileAvailable = (int) fileAvailable;
+			dataBuf.limit(dataBuf.position() + _fileAvailable);
+		}
+		byte[] inlineData = getFile().getInlineData();
+		if (inlineData != null){
+			int len = dataBuf.remaining();
+			dataBuf.put(inlineData, (int) position, len);
+			return new CrailImmediateOperation(len);
+		}
+		
+		inFlight.incrementAndGet();
+		try {
+			CoreDataOperation[] operations = vectoredOperation(new ByteBuffer[]{ dataBuf }, new long[]{ position });
+			return operations[0];
+		} catch(Exception e){
+			inFlight.decrementAndGet();
+			throw e;
+		}
+	}
+	
+	final public List<Future<CrailResult>> readVectored(List<CrailReadRange> ranges) throws Exception {
+		if (!isOpen()) {
+			throw new IOException("stream already closed");
+		}
+		
+		ArrayList<Future<CrailResult>> futures = new ArrayList<Future<CrailResult>>(ranges.size());
+		byte[] inlineData = getFile().getInlineData();
+		if (inlineData != null){
+			for (CrailReadRange range : ranges){
+				if (range.getOffset() < 0){
+					throw new IOException("range offset out of range, offset " + range.getOffset());
+				}
+				int len = (int) Math.max(0, Math.min(range.getLength(), inlineData.length - range.getOffset()));
+				if (len > 0){
+					range.getBuffer().put(inlineData, (int) range.getOffset(), len);
+					futures.add(new CrailImmediateOperation(len));
+				} else {
+					futures.add(noOp);
+				}
+			}
+			return futures;
+		}
+		ArrayList<CoreRangeFuture> sortedRanges = new ArrayList<CoreRangeFuture>(ranges.size());
+		for (CrailReadRange range : ranges){
+			if (!(range.getBuffer() instanceof DirectBuffer)) {
+				throw new IOException("buffer not offheap");
+			}
+			if (range.getOffset() < 0){
+				throw new IOException("range offset out of range, offset " + range.getOffset());
+			}
+			CoreRangeFuture rangeFuture = new CoreRangeFuture(range, getFile().getCapacity());
+			if (rangeFuture.getLength() > 0){
+				futures.add(rangeFuture);
+				sortedRanges.add(rangeFuture);
+			} else {
+				futures.add(noOp);
+			}
+		}
+		if (sortedRanges.isEmpty()){
+			return futures;
+		}
+		Collections.sort(sortedRanges, new Comparator<CoreRangeFuture>() {
+			public int compare(CoreRangeFuture o1, CoreRangeFuture o2) {
+				return Long.compare(o1.getOffset(), o2.getOffset());
+			}
+		});
+		
+		//merge ranges that are close to each other into one transfer 
+		ArrayList<CoreVectoredRead> groups = new ArrayList<CoreVectoredRead>();
+		CoreVectoredRead group = null;
+		for (CoreRangeFuture rangeFuture : sortedRanges){
+			if (group != null && group.canMerge(rangeFuture, CrailConstants.VECTORED_MERGE_GAP, CrailConstants.BUFFER_SIZE)){
+				group.add(rangeFuture);
+			} else {
+				group = new CoreVectoredRead(getFile().getFileSystem(), rangeFuture);
+				groups.add(group);
+			}
+		}
+		
+		ByteBuffer[] dataBufs = new ByteBuffer[groups.size()];
+		long[] fileOffsets = new long[groups.size()];
+		int issued = 0;
+		try {
+			for (int i = 0; i < groups.size(); i++){
+				dataBufs[i] = groups.get(i).prepareBuffer();
+				fileOffsets[i] = groups.get(i).getOffset();
+				inFlight.incrementAndGet();
+				issued++;
+			}
+			CoreDataOperation[] operations = vectoredOperation(dataBufs, fileOffsets);
+			for (int i = 0; i < groups.size(); i++){
+				groups.get(i).setOperation(operations[i]);
+			}
+		} catch(Exception e){
+			//nothing was handed out, undo the accounting and return the staging buffers
+			inFlight.addAndGet(-issued);
+			for (CoreVectoredRead _group : groups){
+				_group.release();
+			}
+			throw e;
+		}
+		return futures;
+	}
+	
 	final public int available() {
 		long available = Math.max(0, getFile().getCapacity() - position());
 		long maxint = (long) Integer.MAX_VALUE;
@@ -109,6 +300,7 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 			return;
 		}			
 		
+		reapAsync();
 		if (inFlight.get() != 0){
 			LOG.info("Cannot close, pending operations, opcount " + inFlight.get() + ", path " + getFile().getPath());
 			throw new IOException("Cannot close, pending operations, opcount " + inFlight.get());
@@ -122,11 +314,162 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 	// --------------------------
 	
 	public Future<DataResult> trigger(DataNodeEndpoint endpoint, CoreSubOperation opDesc, ByteBuffer buffer, ByteBuffer region, BlockInfo block) throws Exception {
+		BlockDataCache dataCache = getFile().getFileSystem().getDataCache();
+		if (dataCache != null && !endpoint.isLocal() && !getFile().isDir()){
+			FileInfo fileInfo = getFile().getFileInfo();
+			long fileOffset = opDesc.getBlockStart() + opDesc.getBlockOffset();
+			if (dataCache.read(fileInfo.getFd(), fileInfo.getCapacity(), fileInfo.getModificationTime(), fileOffset, buffer)){
+				return new CoreCachedResult(buffer.remaining());
+			}
+			Future<DataResult> future = endpoint.read(buffer, region, block, opDesc.getBlockOffset());
+			return new CoreCachingFuture(future, dataCache, fileInfo, fileOffset, buffer.duplicate());
+		}
+		
 		Future<DataResult> future = endpoint.read(buffer, region, block, opDesc.getBlockOffset());
+		if (getFile().getFileInfo().getReplication() > 1){
+			AtomicInteger pending = getFile().getFileSystem().getPendingReads(block.getDnInfo());
+			pending.incrementAndGet();
+			return new CoreTrackedRead(future, pending);
+		}
 		return future;
 	}	
 	
+	@Override
+	Future<DataResult> triggerFragments(CoreErasureCoder coder, CoreSubOperation opDesc, ByteBuffer buffer, ByteBuffer region, BlockInfo block) throws Exception {
+		return coder.read(opDesc, buffer, region, block);
+	}
+	
+	//prefer a replica on the local host, otherwise the one with the fewest reads in flight
+	@Override
+	BlockInfo selectReplica(BlockInfo block) {
+		if (block.getReplicaCount() == 0){
+			return block;
+		}
+		CoreFileSystem fs = getFile().getFileSystem();
+		int hostHash = fs.getHostHash();
+		if (block.getDnInfo().getLocationAffinity() == hostHash){
+			return block;
+		}
+		BlockInfo selected = block;
+		int minPending = fs.getPendingReads(block.getDnInfo()).get();
+		for (int i = 0; i < block.getReplicaCount(); i++){
+			BlockInfo replica = block.getReplica(i);
+			if (replica.getDnInfo().getLocationAffinity() == hostHash){
+				return replica;
+			}
+			int pending = fs.getPendingReads(replica.getDnInfo()).get();
+			if (pending < minPending){
+				selected = replica;
+				minPending = pending;
+			}
+		}
+		return selected;
+	}
+	
+	@Override
+	Future<DataResult> failover(Future<DataResult> future, CoreSubOperation opDesc, ByteBuffer buffer, ByteBuffer region, BlockInfo block, BlockInfo replica) {
+		return new CoreFailoverRead(this, future, opDesc, buffer, region, block, replica);
+	}
+	
 	public void update(long newCapacity) {
 		inFlight.decrementAndGet();
 	}
 }
+
+class CoreFollowRead implements Future<CrailResult> {
+	private static CrailResult TIMEOUT = new CrailImmediateOperation(0);
+	private static CrailResult CLOSED = new CrailImmediateOperation(-1);
+	
+	private CoreInputStream stream;
+	private ByteBuffer dataBuf;
+	private long deadline;
+	private RpcNameNodeFuture<RpcResponseMessage.WaitFileRes> waitFuture;
+	private Future<CrailResult> readFuture;
+	private CrailResult result;
+	private Exception exception;
+	
+	public CoreFollowRead(CoreInputStream stream, ByteBuffer dataBuf, long timeout) throws Exception {
+		this.stream = stream;
+		this.dataBuf = dataBuf;
+		this.deadline = System.currentTimeMillis() + Math.max(0, timeout);
+		this.readFuture = null;
+		this.result = null;
+		this.exception = null;
+		this.waitFuture = issueWait();
+	}
+	
+	//one long poll at the namenode, bounded by what the namenode is willing to park
+	private RpcNameNodeFuture<RpcResponseMessage.WaitFileRes> issueWait() throws Exception {
+		CoreNode node = stream.getFile();
+		long timeout = Math.max(0, Math.min(deadline - System.currentTimeMillis(), CrailConstants.NAMENODE_POLL_TIMEOUT));
+		return node.getFileSystem().getNamenodeClientRpc().waitFile(node.getFd(), node.getCapacity(), timeout);
+	}
+	
+	private void process(RpcResponseMessage.WaitFileRes waitRes) throws Exception {
+		if (waitRes.getError() != NameNodeProtocol.ERR_OK){
+			throw new IOException("follow: " + NameNodeProtocol.messages[waitRes.getError()] + ", error " + waitRes.getError());
+		}
+		stream.updateCapacity(waitRes);
+		waitFuture = null;
+		if (stream.position() < stream.getFile().getCapacity()){
+			readFuture = stream.read(dataBuf);
+		} else if (waitRes.isClosed()){
+			result = CLOSED;
+		} else if (System.currentTimeMillis() >= deadline){
+			result = TIMEOUT;
+		} else {
+			waitFuture = issueWait();
+		}
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		try {
+			while (result == null && readFuture == null && waitFuture.isDone()){
+				process(waitFuture.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS));
+			}
+		} catch (Exception e) {
+			exception = e;
+		}
+		return result != null || exception != null || (readFuture != null && readFuture.isDone());
+	}
+
+	@Override
+	public synchronized CrailResult get() throws InterruptedException, ExecutionException {
+		try {
+			return get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new ExecutionException(e);
+		}
+	}
+
+	@Override
+	public synchronized CrailResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (exception != null){
+			throw new ExecutionException(exception);
+		}
+		try {
+			while (result == null && readFuture == null){
+				process(waitFuture.get(CrailConstants.NAMENODE_POLL_TIMEOUT + CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS));
+			}
+		} catch (InterruptedException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ExecutionException(e);
+		}
+		if (result == null){
+			result = readFuture.get(timeout, unit);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+}
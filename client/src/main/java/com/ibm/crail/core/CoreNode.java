@@ -31,6 +31,7 @@ public class CoreNode implements CrailNode {
 	protected String path;
 	protected int storageAffinity;
 	protected int locationAffinity;	
+	private byte[] inlineData;
 	
 	protected CoreNode(CoreFileSystem fs, FileInfo fileInfo, String path, int storageAffinity, int locationAffinity){
 		this.fs = fs;
@@ -58,6 +59,10 @@ public class CoreNode implements CrailNode {
 		return fileInfo.getCapacity();
 	}
 	
+	public long getBlockSize() {
+		return fileInfo.getBlockSize();
+	}
+	
 	public boolean isDir() {
 		return fileInfo.isDir();
 	}
@@ -82,6 +87,17 @@ public class CoreNode implements CrailNode {
 	FileInfo getFileInfo(){
 		return fileInfo;
 	}
+	
+	byte[] getInlineData(){
+		if (inlineData != null && inlineData.length == fileInfo.getCapacity()){
+			return inlineData;
+		}
+		return null;
+	}
+	
+	void setInlineData(byte[] inlineData){
+		this.inlineData = inlineData;
+	}
 }
 
 class CoreRenamedNode extends CoreFile {
@@ -23,7 +23,11 @@ package com.ibm.crail.core;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -36,6 +40,7 @@ import com.ibm.crail.datanode.DataResult;
 import com.ibm.crail.namenode.protocol.BlockInfo;
 import com.ibm.crail.utils.CrailImmediateOperation;
 import com.ibm.crail.utils.CrailUtils;
+import com.ibm.crail.utils.EndpointCache;
 
 import sun.nio.ch.DirectBuffer;
 
@@ -44,12 +49,38 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 	private AtomicLong inFlight;
 	private long writeHint;
 	private CrailImmediateOperation noOp;
+	private byte[] inlineBuf;
+	private int inlineLength;
+	private ByteBuffer[] stripeBufs;
+	private ArrayList<Future<CrailResult>> stripeFutures;
+	private int stripeIndex;
+	private long stripeStart;
+	private int stripeSynced;
 	
 	public CoreOutputStream(CoreNode file, long streamId, long writeHint) throws Exception {
+		this(file, streamId, writeHint, true);
+	}
+	
+	//streams that must leave their data on the datanodes, such as concat staging, are opened with inline disabled
+	CoreOutputStream(CoreNode file, long streamId, long writeHint, boolean inline) throws Exception {
 		super(file, streamId, file.getCapacity());
 		this.writeHint = Math.max(0, writeHint);
 		this.inFlight = new AtomicLong(0);
 		this.noOp = new CrailImmediateOperation(0);
+		this.inlineBuf = null;
+		this.inlineLength = 0;
+		this.stripeBufs = null;
+		if (getErasureCoder() != null){
+			initStripes();
+		} else if (inline && CrailConstants.INLINE_DATA > 0 && !file.isDir() && file.getFileInfo().getToken() > 0){
+			byte[] inlineData = file.getInlineData();
+			if (inlineData != null){
+				this.inlineBuf = Arrays.copyOf(inlineData, CrailConstants.INLINE_DATA);
+				this.inlineLength = inlineData.length;
+			} else if (file.getCapacity() == 0){
+				this.inlineBuf = new byte[CrailConstants.INLINE_DATA];
+			}
+		}
 		if (CrailConstants.DEBUG){
 			LOG.info("CoreOutputStream, open, path " + file.getPath() + ", fd " + file.getFd() + ", streamId " + streamId + ", isDir " + file.isDir() + ", writeHint " + this.writeHint);
 		}
@@ -65,9 +96,24 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 		if (dataBuf.remaining() <= 0) {
 			return noOp;
 		}
+		if (stripeBufs != null){
+			return writeStripes(dataBuf);
+		}
+		if (inlineBuf != null){
+			int len = dataBuf.remaining();
+			if (position() + len <= inlineBuf.length){
+				int pos = (int) position();
+				dataBuf.get(inlineBuf, pos, len);
+				inlineLength = Math.max(inlineLength, pos + len);
+				setCapacity(pos + len);
+				seek(pos + len);
+				return new CrailImmediateOperation(len);
+			}
+			flushInline();
+		}
 		
 		inFlight.incrementAndGet();
-		long nextOffset = CrailUtils.nextBlockAddress(position() + dataBuf.remaining());
+		long nextOffset = CrailUtils.nextBlockAddress(position() + dataBuf.remaining(), getFile().getBlockSize());
 		if (nextOffset < writeHint){
 			prefetchMetadata(nextOffset);
 		} 
@@ -75,11 +121,26 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 		return future;
 	}	
 	
+	final public CompletionStage<CrailResult> writeAsync(ByteBuffer dataBuf) throws Exception {
+		return submitAsync(write(dataBuf));
+	}
+	
 	final public long getWriteHint() {
 		return this.writeHint;
 	}
 	
+	public long position() {
+		if (stripeBufs != null){
+			return stripeStart + stripeBufs[stripeIndex].position();
+		}
+		return super.position();
+	}
+	
 	public Future<Void> sync() throws IOException {
+		if (stripeBufs != null){
+			flushStripes();
+		}
+		reapAsync();
 		if (inFlight.get() != 0){
 			LOG.info("Cannot sync, pending operations, opcount " + inFlight.get());
 			throw new IOException("Cannot close, pending operations, opcount " + inFlight.get());
@@ -92,6 +153,15 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 			return;
 		}		
 		
+		if (stripeBufs != null){
+			flushStripes();
+			CoreFileSystem fs = getFile().getFileSystem();
+			for (int i = 0; i < stripeBufs.length; i++){
+				fs.freeBuffer(stripeBufs[i]);
+			}
+			stripeBufs = null;
+		}
+		reapAsync();
 		if (inFlight.get() != 0){
 			LOG.info("Cannot close, pending operations, opcount " + inFlight.get() + ", path " + getFile().getPath());
 			throw new IOException("Cannot close, pending operations, opcount " + inFlight.get() + ", fd " + getFile().getFd() + ", streamId " + getStreamId() + ", capacity " + getFile().getCapacity());
@@ -104,11 +174,151 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 	
 	// ----------------------
 	
+	//the file outgrew the inline limit, move what has been written so far to the datanodes
+	private void flushInline() throws Exception {
+		long pos = position();
+		if (inlineLength > 0){
+			CoreFileSystem fs = getFile().getFileSystem();
+			ByteBuffer buffer = fs.allocateBuffer();
+			try {
+				buffer.clear();
+				buffer.put(inlineBuf, 0, inlineLength);
+				buffer.flip();
+				seek(0);
+				inFlight.incrementAndGet();
+				dataOperation(buffer).get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+			} finally {
+				fs.freeBuffer(buffer);
+			}
+			seek(pos);
+		}
+		inlineBuf = null;
+		inlineLength = 0;
+	}
+	
+	//erasure coded files are written in full stripes, two stripe buffers let encoding overlap with the previous transfer
+	private void initStripes() throws Exception {
+		CoreFileSystem fs = getFile().getFileSystem();
+		int stripeSize = getErasureCoder().getStripeSize();
+		this.stripeBufs = new ByteBuffer[2];
+		this.stripeFutures = new ArrayList<Future<CrailResult>>(2);
+		for (int i = 0; i < stripeBufs.length; i++){
+			stripeFutures.add(null);
+			stripeBufs[i] = fs.allocateBuffer(stripeSize);
+			stripeBufs[i].clear();
+			stripeBufs[i].limit(stripeSize);
+		}
+		this.stripeIndex = 0;
+		long capacity = getFile().getCapacity();
+		this.stripeStart = capacity - capacity % stripeSize;
+		this.stripeSynced = (int) (capacity - stripeStart);
+		
+		//appending to a partial stripe re-encodes it, so the stripe prefix is read back first
+		if (stripeSynced > 0){
+			CoreInputStream tail = fs.getInputStream(getFile(), capacity);
+			try {
+				tail.seek(stripeStart);
+				ByteBuffer stripe = stripeBufs[stripeIndex];
+				stripe.limit(stripeSynced);
+				while (stripe.hasRemaining()){
+					Future<CrailResult> future = tail.read(stripe);
+					if (future == null){
+						throw new IOException("cannot read partial stripe at " + stripeStart);
+					}
+					future.get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+				}
+				stripe.limit(stripeSize);
+			} finally {
+				tail.close();
+			}
+		}
+	}
+	
+	private Future<CrailResult> writeStripes(ByteBuffer dataBuf) throws Exception {
+		int len = dataBuf.remaining();
+		while (dataBuf.hasRemaining()){
+			ByteBuffer stripe = stripeBufs[stripeIndex];
+			ByteBuffer src = dataBuf.duplicate();
+			src.limit(src.position() + Math.min(stripe.remaining(), dataBuf.remaining()));
+			stripe.put(src);
+			dataBuf.position(src.position());
+			if (!stripe.hasRemaining()){
+				writeStripe();
+				stripeStart += stripe.limit();
+				stripeSynced = 0;
+				stripeIndex = (stripeIndex + 1) % stripeBufs.length;
+				waitStripe(stripeIndex);
+				stripeBufs[stripeIndex].clear();
+				stripeBufs[stripeIndex].limit(stripe.limit());
+			}
+		}
+		return new CrailImmediateOperation(len);
+	}
+	
+	private void writeStripe() throws Exception {
+		ByteBuffer stripe = stripeBufs[stripeIndex].duplicate();
+		stripe.flip();
+		if (super.position() != stripeStart){
+			seek(stripeStart);
+		}
+		inFlight.incrementAndGet();
+		stripeFutures.set(stripeIndex, dataOperation(stripe));
+	}
+	
+	private void waitStripe(int index) throws Exception {
+		Future<CrailResult> future = stripeFutures.set(index, null);
+		if (future != null){
+			future.get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	private void flushStripes() throws IOException {
+		try {
+			if (stripeBufs[stripeIndex].position() > stripeSynced){
+				stripeSynced = stripeBufs[stripeIndex].position();
+				writeStripe();
+			}
+			for (int i = 0; i < stripeFutures.size(); i++){
+				waitStripe(i);
+			}
+		} catch(IOException e){
+			throw e;
+		} catch(Exception e){
+			throw new IOException(e);
+		}
+	}
+	
+	byte[] inlineSnapshot() {
+		if (inlineBuf == null || inlineLength != getFile().getCapacity()){
+			return null;
+		}
+		byte[] inlineData = Arrays.copyOf(inlineBuf, inlineLength);
+		getFile().setInlineData(inlineData);
+		return inlineData;
+	}
+	
 	public Future<DataResult> trigger(DataNodeEndpoint endpoint, CoreSubOperation opDesc, ByteBuffer buffer, ByteBuffer region, BlockInfo block) throws Exception {
+		if (block.getReplicaCount() == 0){
+			return endpoint.write(buffer, region, block, opDesc.getBlockOffset());
+		}
+		
+		//replicas are written from the same buffer range as the primary
+		EndpointCache endpointCache = getFile().getFileSystem().getDatanodeEndpointCache();
+		ArrayList<Future<DataResult>> replicaFutures = new ArrayList<Future<DataResult>>(block.getReplicaCount());
+		for (int i = 0; i < block.getReplicaCount(); i++){
+			BlockInfo replica = block.getReplica(i);
+			DataNodeEndpoint replicaEndpoint = endpointCache.getDataEndpoint(replica.getDnInfo());
+			replicaFutures.add(replicaEndpoint.write(buffer.duplicate(), region, replica, opDesc.getBlockOffset()));
+		}
 		Future<DataResult> dataFuture = endpoint.write(buffer, region, block, opDesc.getBlockOffset());
-		return dataFuture;		
+		return new CoreReplicatedWrite(dataFuture, replicaFutures);
 	}	
 	
+	@Override
+	Future<DataResult> triggerFragments(CoreErasureCoder coder, CoreSubOperation opDesc, ByteBuffer buffer, ByteBuffer region, BlockInfo block) throws Exception {
+		return coder.write(opDesc, buffer, region, block);
+	}
+	
 	public synchronized void update(long newCapacity) {
 		inFlight.decrementAndGet();
 		setCapacity(newCapacity);
@@ -0,0 +1,245 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail.core;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.datanode.DataResult;
+import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.utils.CrailUtils;
+
+class CoreReplicatedWrite implements Future<DataResult> {
+	private Future<DataResult> primary;
+	private List<Future<DataResult>> replicas;
+	
+	public CoreReplicatedWrite(Future<DataResult> primary, List<Future<DataResult>> replicas){
+		this.primary = primary;
+		this.replicas = replicas;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		if (!primary.isDone()){
+			return false;
+		}
+		for (Future<DataResult> replica : replicas){
+			if (!replica.isDone()){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public DataResult get() throws InterruptedException, ExecutionException {
+		for (Future<DataResult> replica : replicas){
+			replica.get();
+		}
+		return primary.get();
+	}
+
+	@Override
+	public DataResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (Future<DataResult> replica : replicas){
+			replica.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+		return primary.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+	}
+}
+
+class CoreTrackedRead implements Future<DataResult> {
+	private Future<DataResult> future;
+	private AtomicInteger pending;
+	private boolean released;
+	
+	public CoreTrackedRead(Future<DataResult> future, AtomicInteger pending){
+		this.future = future;
+		this.pending = pending;
+		this.released = false;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return future.cancel(mayInterruptIfRunning);
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return future.isCancelled();
+	}
+
+	@Override
+	public boolean isDone() {
+		boolean done = future.isDone();
+		if (done){
+			release();
+		}
+		return done;
+	}
+
+	@Override
+	public DataResult get() throws InterruptedException, ExecutionException {
+		try {
+			return future.get();
+		} finally {
+			release();
+		}
+	}
+
+	@Override
+	public DataResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		DataResult result = future.get(timeout, unit);
+		release();
+		return result;
+	}
+	
+	private synchronized void release(){
+		if (!released){
+			pending.decrementAndGet();
+			released = true;
+		}
+	}
+}
+
+//reads a replicated block and moves on to the next replica when a read fails
+class CoreFailoverRead implements Future<DataResult> {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private CoreInputStream stream;
+	private Future<DataResult> future;
+	private CoreSubOperation opDesc;
+	private ByteBuffer buffer;
+	private ByteBuffer region;
+	private BlockInfo block;
+	private boolean[] tried;
+	
+	public CoreFailoverRead(CoreInputStream stream, Future<DataResult> future, CoreSubOperation opDesc, ByteBuffer buffer, ByteBuffer region, BlockInfo block, BlockInfo replica){
+		this.stream = stream;
+		this.future = future;
+		this.opDesc = opDesc;
+		this.buffer = buffer;
+		this.region = region;
+		this.block = block;
+		this.tried = new boolean[block.getReplicaCount() + 1];
+		this.tried[indexOf(replica)] = true;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		if (!future.isDone()){
+			return false;
+		}
+		try {
+			future.get();
+			return true;
+		} catch(ExecutionException e){
+			return !retry(e);
+		} catch(InterruptedException e){
+			return false;
+		}
+	}
+
+	@Override
+	public synchronized DataResult get() throws InterruptedException, ExecutionException {
+		while (true){
+			try {
+				return future.get();
+			} catch(ExecutionException e){
+				if (!retry(e)){
+					throw e;
+				}
+			}
+		}
+	}
+
+	@Override
+	public synchronized DataResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (true){
+			try {
+				return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch(ExecutionException e){
+				if (!retry(e)){
+					throw e;
+				}
+			}
+		}
+	}
+	
+	//issues the read again on a replica not tried yet, false if all of them failed
+	private boolean retry(ExecutionException failure) {
+		for (int i = 0; i < tried.length; i++){
+			if (tried[i]){
+				continue;
+			}
+			tried[i] = true;
+			BlockInfo replica = i == 0 ? block : block.getReplica(i - 1);
+			LOG.info("read failed on " + replica.getDnInfo() + ", trying next replica, " + failure.getMessage());
+			try {
+				future = stream.triggerReplica(opDesc, buffer.duplicate(), region, replica);
+				return true;
+			} catch(Exception e){
+				LOG.info("replica " + replica.getDnInfo() + " not available, " + e.getMessage());
+			}
+		}
+		return false;
+	}
+	
+	private int indexOf(BlockInfo replica) {
+		for (int i = 0; i < block.getReplicaCount(); i++){
+			if (block.getReplica(i) == replica){
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+}
@@ -24,7 +24,14 @@ package com.ibm.crail.core;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -65,6 +72,10 @@ public abstract class CoreStream {
 	private CoreIOStatistics ioStats;
 	private HashMap<Integer, CoreSubOperation> blockMap;
 	private LinkedBlockingQueue<RpcNameNodeFuture<RpcResponseMessage.GetBlockRes>> pendingBlocks;
+	private CoreErasureCoder erasureCoder;
+	private ConcurrentLinkedQueue<CoreDataOperation> asyncOperations;
+	private CoreBlockPin blockPin;
+	private long blockPinKey;
 	
 	abstract Future<DataResult> trigger(DataNodeEndpoint endpoint, CoreSubOperation opDesc, ByteBuffer buffer, ByteBuffer region, BlockInfo block) throws Exception;
 	abstract void update(long newCapacity);	
@@ -87,6 +98,10 @@ public abstract class CoreStream {
 		
 		this.blockMap = new HashMap<Integer, CoreSubOperation>();
 		this.pendingBlocks = new LinkedBlockingQueue<RpcNameNodeFuture<RpcResponseMessage.GetBlockRes>>();
+		this.erasureCoder = fileInfo.isErasureCoded() ? new CoreErasureCoder(fs, fileInfo) : null;
+		this.asyncOperations = new ConcurrentLinkedQueue<CoreDataOperation>();
+		this.blockPin = null;
+		this.blockPinKey = -1;
 	}	
 	
 	final Future<CrailResult> dataOperation(ByteBuffer dataBuf) throws Exception {
@@ -98,7 +113,7 @@ public abstract class CoreStream {
 		while(multiOperation.remaining() > 0){
 			long blockRemaining = blockRemaining();
 			int opLen = CrailUtils.minFileBuf(blockRemaining, multiOperation.remaining());	
-			CoreSubOperation subOperation = new CoreSubOperation(fileInfo.getFd(), position, multiOperation.getCurrentBufferPosition(), opLen);
+			CoreSubOperation subOperation = new CoreSubOperation(fileInfo.getFd(), position, multiOperation.getCurrentBufferPosition(), opLen, fileInfo.getBlockSize());
 //			LOG.info("OpDesc: " + opDesc.toString());
 			ioStats.incTotalOps((long) opLen);
 			
@@ -160,8 +175,148 @@ public abstract class CoreStream {
 		return multiOperation;
 	}
 	
+	final CoreDataOperation[] vectoredOperation(ByteBuffer[] dataBufs, long[] fileOffsets) throws Exception {
+		CoreDataOperation[] multiOperations = new CoreDataOperation[dataBufs.length];
+		ArrayList<CoreVectoredSubOperation> subOperations = new ArrayList<CoreVectoredSubOperation>();
+		//only per-call state from here on, positional reads may run on several threads at once
+		long capacity = fileInfo.getCapacity();
+		HashMap<Long, RpcNameNodeFuture<RpcResponseMessage.GetBlockRes>> blockRpcs = new HashMap<Long, RpcNameNodeFuture<RpcResponseMessage.GetBlockRes>>();
+		
+		//split all ranges into block fragments, start one metadata RPC per missing block 
+		for (int i = 0; i < dataBufs.length; i++){
+			CoreDataOperation multiOperation = new CoreDataOperation(this, dataBufs[i], fileOffsets[i]);
+			multiOperations[i] = multiOperation;
+			long offset = fileOffsets[i];
+			while(multiOperation.remaining() > 0){
+				int opLen = CrailUtils.minFileBuf(blockRemaining(offset), multiOperation.remaining());
+				CoreSubOperation subOperation = new CoreSubOperation(fileInfo.getFd(), offset, multiOperation.getCurrentBufferPosition(), opLen, fileInfo.getBlockSize());
+				ioStats.incTotalOps((long) opLen);
+				
+				if (blockCache.containsKey(subOperation.key())){
+					this.ioStats.incCachedOps();
+				} else if (!blockRpcs.containsKey(subOperation.key())){
+					if (nextBlockCache.containsKey(subOperation.key())){
+						blockRpcs.put(subOperation.key(), nextBlockCache.get(subOperation.key()));
+					} else {
+						RpcNameNodeFuture<RpcResponseMessage.GetBlockRes> rpcFuture = namenodeClientRpc.getBlock(fileInfo.getFd(), fileInfo.getToken(), offset, node.storageAffinity(), node.locationAffinity(), capacity);
+						blockRpcs.put(subOperation.key(), rpcFuture);
+					}
+				}
+				subOperations.add(new CoreVectoredSubOperation(subOperation, multiOperation, dataBufs[i]));
+				
+				offset += opLen;
+				multiOperation.incProcessedLen(opLen);
+			}
+		}
+		
+		//wait for the block RPCs
+		for (Map.Entry<Long, RpcNameNodeFuture<RpcResponseMessage.GetBlockRes>> entry : blockRpcs.entrySet()){
+			RpcNameNodeFuture<RpcResponseMessage.GetBlockRes> rpcFuture = entry.getValue();
+			if (!rpcFuture.isDone()){
+				this.ioStats.incBlockingOps();
+			} else {
+				this.ioStats.incNonblockingOps();
+			}
+			RpcResponseMessage.GetBlockRes getBlockRes = rpcFuture.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+			if (!rpcFuture.isDone()){
+				throw new IOException("rpc timeout ");
+			}
+			if (getBlockRes.getError() != NameNodeProtocol.ERR_OK) {
+				LOG.info("inputStream: " + NameNodeProtocol.messages[getBlockRes.getError()]);
+				throw new IOException(NameNodeProtocol.messages[getBlockRes.getError()]);
+			}
+			blockCache.put(entry.getKey(), getBlockRes.getBlockInfo());
+		}
+		
+		//issue the fragments grouped by datanode
+		for (CoreVectoredSubOperation subOperation : subOperations){
+			subOperation.setBlock(blockCache.get(subOperation.getSubOperation().key()));
+		}
+		Collections.sort(subOperations, new Comparator<CoreVectoredSubOperation>() {
+			public int compare(CoreVectoredSubOperation o1, CoreVectoredSubOperation o2) {
+				return Long.compare(o1.getBlock().getDnInfo().key(), o2.getBlock().getDnInfo().key());
+			}
+		});
+		for (CoreVectoredSubOperation subOperation : subOperations){
+			Future<DataResult> subFuture = prepareAndTrigger(subOperation.getSubOperation(), subOperation.getBuffer(), subOperation.getBlock());
+			subOperation.getMultiOperation().add(subFuture);
+		}
+		
+		for (int i = 0; i < dataBufs.length; i++){
+			CoreDataOperation multiOperation = multiOperations[i];
+			if (!multiOperation.isProcessed()){
+				throw new IOException("Internal error, processed data != operation length");
+			}
+			dataBufs[i].limit(multiOperation.getBufferLimit());
+			dataBufs[i].position(multiOperation.getCurrentBufferPosition());
+		}
+		return multiOperations;
+	}
+	
+	//maps up to length bytes of the block at the current position, null if the block has no replica on a co-located datanode,
+	//the block is pinned once and the pin is shared by the leases on it until it runs out or the stream moves on
+	final CoreBufferLease zeroCopyOperation(int length) throws Exception {
+		if (erasureCoder != null){
+			return null;
+		}
+		long key = CoreSubOperation.createKey(fileInfo.getFd(), position, fileInfo.getBlockSize());
+		BlockInfo cached = blockCache.get(key);
+		if (cached != null && localReplica(cached) == null){
+			return null;
+		}
+		
+		if (blockPin != null && (blockPinKey != key || !blockPin.acquire())){
+			dropBlockPin();
+		}
+		if (blockPin == null){
+			CoreBlockPin pin = new CoreBlockPin(namenodeClientRpc, fileInfo.getFd());
+			pin.pin(position);
+			blockCache.put(key, pin.getBlock());
+			blockPin = pin;
+			blockPinKey = key;
+			if (!blockPin.acquire()){
+				dropBlockPin();
+				throw new IOException("block pin expired before use, fd " + fileInfo.getFd() + ", position " + position);
+			}
+		}
+		
+		int len = CrailUtils.minFileBuf(blockRemaining(), length);
+		CoreBufferLease lease = new CoreBufferLease(blockPin);
+		try {
+			BlockInfo block = localReplica(blockPin.getBlock());
+			if (block != null){
+				DataNodeEndpoint endpoint = endpointCache.getDataEndpoint(block.getDnInfo());
+				if (endpoint.isLocal()){
+					lease.setBuffer(endpoint.map(block, position - CrailUtils.blockStartAddress(position, fileInfo.getBlockSize()), len));
+				}
+			}
+		} catch(IOException e){
+			lease.close();
+			throw e;
+		}
+		if (!lease.hasBuffer()){
+			lease.close();
+			dropBlockPin();
+			return null;
+		}
+		
+		ioStats.incTotalOps((long) len);
+		incStats(true);
+		position += len;
+		return lease;
+	}
+	
+	private void dropBlockPin() throws Exception {
+		if (blockPin != null){
+			CoreBlockPin pin = blockPin;
+			blockPin = null;
+			blockPinKey = -1;
+			pin.uncache();
+		}
+	}
+	
 	final void prefetchMetadata(long nextOffset) throws Exception {
-		long key = CoreSubOperation.createKey(fileInfo.getFd(), nextOffset);
+		long key = CoreSubOperation.createKey(fileInfo.getFd(), nextOffset, fileInfo.getBlockSize());
 		if (blockCache.containsKey(key)){
 			return;
 		}
@@ -188,7 +343,7 @@ public abstract class CoreStream {
 		Future<Void> future = null;
 		if (fileInfo.getToken() > 0 && syncedCapacity < fileInfo.getCapacity()){
 			syncedCapacity = fileInfo.getCapacity();
-			future = new SyncNodeFuture(namenodeClientRpc.setFile(fileInfo, false));	
+			future = new SyncNodeFuture(namenodeClientRpc.setFile(fileInfo, false, inlineSnapshot()));	
 		} else {
 			future = new NoOperation();
 		}
@@ -196,8 +351,32 @@ public abstract class CoreStream {
 		return future;
 	}
 	
+	//the completion thread only watches async operations, they are applied to the stream by the caller's next call
+	final CompletionStage<CrailResult> submitAsync(Future<CrailResult> future) throws IOException {
+		reapAsync();
+		if (future instanceof CoreDataOperation){
+			CoreDataOperation operation = (CoreDataOperation) future;
+			asyncOperations.add(operation);
+			return fs.getCompletionService().submit(operation);
+		}
+		return fs.getCompletionService().submit(future);
+	}
+	
+	final void reapAsync() {
+		for (Iterator<CoreDataOperation> iter = asyncOperations.iterator(); iter.hasNext(); ){
+			if (iter.next().isDone()){
+				iter.remove();
+			}
+		}
+	}
+	
+	byte[] inlineSnapshot() {
+		return null;
+	}
+	
 	void close() throws IOException {
 		try {
+			dropBlockPin();
 			node.syncDir();
 			ioStats.setCapacity(fileInfo.getCapacity());
 			if (fs.unregister(this) != null){
@@ -240,20 +419,35 @@ public abstract class CoreStream {
 	}	
 	
 	private long blockRemaining(){
-		long blockOffset = position % CrailConstants.BLOCK_SIZE;
-		long blockRemaining = CrailConstants.BLOCK_SIZE - blockOffset;
+		return blockRemaining(position);
+	}
+	
+	private long blockRemaining(long position){
+		long blockRemaining = CrailUtils.nextBlockAddress(position + 1, fileInfo.getBlockSize()) - position;
 		return blockRemaining;
 	}
 	
 	private Future<DataResult> prepareAndTrigger(CoreSubOperation opDesc, ByteBuffer dataBuf, BlockInfo block) throws Exception {
 		try {
+			if (erasureCoder != null){
+				ByteBuffer region = fs.getBufferCache().getAllocationBuffer(dataBuf);
+				region = region != null ? region : dataBuf;
+				dataBuf.position(opDesc.getBufferPosition());
+				dataBuf.limit(dataBuf.position() + opDesc.getLen());
+				return triggerFragments(erasureCoder, opDesc, dataBuf, region, block);
+			}
 //			InetSocketAddress inetAddress = block.getDnInfo().getInetAddress();
-			DataNodeEndpoint endpoint = endpointCache.getDataEndpoint(block.getDnInfo());
+			BlockInfo replica = selectReplica(block);
+			DataNodeEndpoint endpoint = endpointCache.getDataEndpoint(replica.getDnInfo());
 			ByteBuffer region = fs.getBufferCache().getAllocationBuffer(dataBuf);
 			region = region != null ? region : dataBuf;
 			dataBuf.position(opDesc.getBufferPosition());
 			dataBuf.limit(dataBuf.position() + opDesc.getLen());
-			Future<DataResult> subFuture = trigger(endpoint, opDesc, dataBuf, region, block);
+			ByteBuffer retryBuf = block.getReplicaCount() > 0 ? dataBuf.duplicate() : null;
+			Future<DataResult> subFuture = trigger(endpoint, opDesc, dataBuf, region, replica);
+			if (retryBuf != null){
+				subFuture = failover(subFuture, opDesc, retryBuf, region, block, replica);
+			}
 			incStats(endpoint.isLocal());
 			return subFuture;
 		} catch(IOException e){
@@ -262,6 +456,43 @@ public abstract class CoreStream {
 		}
 	}
 
+	private BlockInfo localReplica(BlockInfo block) {
+		int hostHash = fs.getHostHash();
+		if (block.getDnInfo().getLocationAffinity() == hostHash){
+			return block;
+		}
+		for (int i = 0; i < block.getReplicaCount(); i++){
+			BlockInfo replica = block.getReplica(i);
+			if (replica.getDnInfo().getLocationAffinity() == hostHash){
+				return replica;
+			}
+		}
+		return null;
+	}
+	
+	BlockInfo selectReplica(BlockInfo block) {
+		return block;
+	}
+	
+	Future<DataResult> failover(Future<DataResult> future, CoreSubOperation opDesc, ByteBuffer buffer, ByteBuffer region, BlockInfo block, BlockInfo replica) {
+		return future;
+	}
+	
+	Future<DataResult> triggerReplica(CoreSubOperation opDesc, ByteBuffer buffer, ByteBuffer region, BlockInfo replica) throws Exception {
+		DataNodeEndpoint endpoint = endpointCache.getDataEndpoint(replica.getDnInfo());
+		Future<DataResult> subFuture = trigger(endpoint, opDesc, buffer, region, replica);
+		incStats(endpoint.isLocal());
+		return subFuture;
+	}
+	
+	Future<DataResult> triggerFragments(CoreErasureCoder coder, CoreSubOperation opDesc, ByteBuffer buffer, ByteBuffer region, BlockInfo block) throws Exception {
+		throw new IOException("stream does not support erasure coded files");
+	}
+	
+	CoreErasureCoder getErasureCoder() {
+		return erasureCoder;
+	}
+
 	private void incStats(boolean isLocal){
 		if (CrailConstants.STATISTICS){
 			if (isLocal){
@@ -277,4 +508,38 @@ public abstract class CoreStream {
 			}
 		}		
 	}
+	
+	private static class CoreVectoredSubOperation {
+		private CoreSubOperation subOperation;
+		private CoreDataOperation multiOperation;
+		private ByteBuffer buffer;
+		private BlockInfo block;
+		
+		public CoreVectoredSubOperation(CoreSubOperation subOperation, CoreDataOperation multiOperation, ByteBuffer buffer){
+			this.subOperation = subOperation;
+			this.multiOperation = multiOperation;
+			this.buffer = buffer;
+			this.block = null;
+		}
+
+		public CoreSubOperation getSubOperation() {
+			return subOperation;
+		}
+
+		public CoreDataOperation getMultiOperation() {
+			return multiOperation;
+		}
+
+		public ByteBuffer getBuffer() {
+			return buffer;
+		}
+
+		public BlockInfo getBlock() {
+			return block;
+		}
+
+		public void setBlock(BlockInfo block) {
+			this.block = block;
+		}
+	}
 }
@@ -36,14 +36,14 @@ public class CoreSubOperation {
 	private long blockStart;
 	private long key;
 	
-	public CoreSubOperation(long fd, long fileOffset, int bufferPosition, int writeLen) throws IOException {
+	public CoreSubOperation(long fd, long fileOffset, int bufferPosition, int writeLen, long blockSize) throws IOException {
 		this.fd = fd;
 		this.fileOffset = fileOffset;
 		this.bufferPosition = bufferPosition;
 		this.len = writeLen;
 		
-		this.blockOffset = fileOffset % CrailConstants.BLOCK_SIZE;
-		this.blockStart = CrailUtils.blockStartAddress(fileOffset);
+		this.blockStart = CrailUtils.blockStartAddress(fileOffset, blockSize);
+		this.blockOffset = fileOffset - blockStart;
 //		this.key = CoreSubOperation.createKey(fd, blockStart);
 		this.key = blockStart;
 	}
@@ -78,7 +78,11 @@ public class CoreSubOperation {
 	}
 	
 	public static long createKey(long fd, long fileOffset){
-		long offset = CrailUtils.blockStartAddress(fileOffset);
+		return createKey(fd, fileOffset, CrailConstants.BLOCK_SIZE);
+	}
+	
+	public static long createKey(long fd, long fileOffset, long blockSize){
+		long offset = CrailUtils.blockStartAddress(fileOffset, blockSize);
 		return offset;
 //		return fd + ":" + offset;
 	}
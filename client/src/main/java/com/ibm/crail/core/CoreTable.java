@@ -0,0 +1,310 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.CrailFile;
+import com.ibm.crail.CrailInputStream;
+import com.ibm.crail.CrailNode;
+import com.ibm.crail.CrailOutputStream;
+import com.ibm.crail.CrailResult;
+import com.ibm.crail.CrailTable;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.utils.CrailImmediateOperation;
+import com.ibm.crail.utils.CrailUtils;
+
+//a get costs one getFile rpc which returns the first block (or the inline value) and at most one data transfer,
+//a put of an inline value costs one putFile rpc, plus the directory record write for a new key, 
+//larger values are written to a temporary entry first and renamed over the key so that readers never see the key missing
+public class CoreTable implements CrailTable {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private CoreFileSystem fs;
+	private String path;
+	
+	public CoreTable(CoreFileSystem fs, String path) {
+		this.fs = fs;
+		this.path = path;
+	}
+
+	@Override
+	public CoreFileSystem getFileSystem() {
+		return fs;
+	}
+
+	@Override
+	public String getPath() {
+		return path;
+	}
+	
+	public Future<CrailResult> put(String key, ByteBuffer value) throws Exception {
+		String keyPath = getKeyPath(key);
+		int length = value.remaining();
+		if (CrailConstants.DEBUG){
+			LOG.info("put: key " + key + ", table " + path + ", len " + length);
+		}
+		if (CrailConstants.INLINE_DATA > 0 && length <= CrailConstants.INLINE_DATA){
+			byte[] bytes = new byte[length];
+			value.get(bytes);
+			fs.putFile(keyPath, bytes).syncDir();
+			return new CrailImmediateOperation(length);
+		}
+		
+		String tmpPath = path + "/." + key + "." + Long.toHexString(ThreadLocalRandom.current().nextLong());
+		CrailFile file = fs.createFile(tmpPath, 0, 0, length).get();
+		CrailOutputStream stream = null;
+		try {
+			stream = file.getDirectOutputStream(length);
+			Future<CrailResult> future = stream.write(value);
+			return new KeyPutFuture(fs, file, keyPath, stream, future);
+		} catch (Exception e) {
+			KeyPutFuture.discard(fs, file, stream);
+			throw e;
+		}
+	}
+	
+	public Future<CrailResult> get(String key, ByteBuffer value) throws Exception {
+		Future<CrailFile> lookup = fs.lookupFile(getKeyPath(key), false);
+		return new KeyGetFuture(lookup, value);
+	}
+	
+	//all lookups are issued before the first one is awaited, data transfers overlap with the remaining lookups
+	public Future<CrailResult>[] get(String[] keys, ByteBuffer[] values) throws Exception {
+		if (keys.length != values.length){
+			throw new IOException("multi get: " + keys.length + " keys but " + values.length + " buffers");
+		}
+		KeyGetFuture[] futures = new KeyGetFuture[keys.length];
+		for (int i = 0; i < keys.length; i++){
+			futures[i] = new KeyGetFuture(fs.lookupFile(getKeyPath(keys[i]), false), values[i]);
+		}
+		for (int i = 0; i < futures.length; i++){
+			futures[i].fetch();
+		}
+		return futures;
+	}
+	
+	public Future<CrailNode> delete(String key) throws Exception {
+		return fs.delete(getKeyPath(key), false);
+	}
+	
+	private String getKeyPath(String key) throws IOException {
+		if (key == null || key.isEmpty() || key.indexOf('/') >= 0){
+			throw new IOException("invalid key " + key + ", table " + path);
+		}
+		return path + "/" + key;
+	}
+}
+
+class KeyPutFuture implements Future<CrailResult> {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private CoreFileSystem fs;
+	private CrailFile file;
+	private String keyPath;
+	private CrailOutputStream stream;
+	private Future<CrailResult> writeFuture;
+	private CrailResult result;
+	private Exception exception;
+	
+	public KeyPutFuture(CoreFileSystem fs, CrailFile file, String keyPath, CrailOutputStream stream, Future<CrailResult> writeFuture){
+		this.fs = fs;
+		this.file = file;
+		this.keyPath = keyPath;
+		this.stream = stream;
+		this.writeFuture = writeFuture;
+		this.result = null;
+		this.exception = null;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return result != null || exception != null || writeFuture.isDone();
+	}
+
+	@Override
+	public synchronized CrailResult get() throws InterruptedException, ExecutionException {
+		try {
+			return get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new ExecutionException(e);
+		}
+	}
+
+	//a failed put removes its temporary entry, later calls report the same failure
+	@Override
+	public synchronized CrailResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (exception != null){
+			throw new ExecutionException(exception);
+		}
+		if (result == null){
+			try {
+				CrailResult written = writeFuture.get(timeout, unit);
+				stream.close();
+				file.syncDir();
+				CrailNode node = fs.rename(file.getPath(), keyPath, true).get();
+				if (node == null){
+					throw new IOException("put: cannot replace " + keyPath);
+				}
+				node.syncDir();
+				result = written;
+			} catch (Exception e) {
+				exception = e;
+				discard(fs, file, stream);
+				throw new ExecutionException(e);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+	
+	static void discard(CoreFileSystem fs, CrailFile file, CrailOutputStream stream) {
+		try {
+			if (stream != null){
+				stream.close();
+			}
+		} catch (Exception e) {
+			LOG.info("put: cannot close temporary entry " + file.getPath() + ", " + e.getMessage());
+		}
+		try {
+			file.syncDir();
+			CrailNode node = fs.delete(file.getPath(), false).get();
+			if (node != null){
+				node.syncDir();
+			}
+		} catch (Exception e) {
+			LOG.info("put: cannot remove temporary entry " + file.getPath() + ", " + e.getMessage());
+		}
+	}
+}
+
+class KeyGetFuture implements Future<CrailResult> {
+	private static CrailResult MISSING = new CrailImmediateOperation(-1);
+	private static CrailResult EMPTY = new CrailImmediateOperation(0);
+	
+	private Future<CrailFile> lookup;
+	private ByteBuffer value;
+	private CrailInputStream stream;
+	private Future<CrailResult> readFuture;
+	private CrailResult result;
+	private Exception exception;
+	
+	public KeyGetFuture(Future<CrailFile> lookup, ByteBuffer value){
+		this.lookup = lookup;
+		this.value = value;
+		this.stream = null;
+		this.readFuture = null;
+		this.result = null;
+		this.exception = null;
+	}
+	
+	//waits for the lookup and issues the data transfer
+	synchronized void fetch() {
+		if (lookup == null){
+			return;
+		}
+		try {
+			CrailFile file = lookup.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+			lookup = null;
+			if (file == null){
+				result = MISSING;
+				return;
+			}
+			if (file.getCapacity() > value.remaining()){
+				throw new IOException("get: value of " + file.getPath() + " has " + file.getCapacity() + " bytes, buffer holds " + value.remaining());
+			}
+			stream = file.getDirectInputStream(file.getCapacity());
+			readFuture = stream.read(value);
+			if (readFuture == null){
+				result = EMPTY;
+				stream.close();
+			}
+		} catch (Exception e) {
+			lookup = null;
+			exception = e;
+		}
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		if (lookup != null && lookup.isDone()){
+			fetch();
+		}
+		if (lookup != null){
+			return false;
+		}
+		return result != null || exception != null || readFuture.isDone();
+	}
+
+	@Override
+	public synchronized CrailResult get() throws InterruptedException, ExecutionException {
+		try {
+			return get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new ExecutionException(e);
+		}
+	}
+
+	@Override
+	public synchronized CrailResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		fetch();
+		if (exception != null){
+			throw new ExecutionException(exception);
+		}
+		if (result == null){
+			result = readFuture.get(timeout, unit);
+			try {
+				stream.close();
+			} catch (IOException e) {
+				throw new ExecutionException(e);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.ibm.crail.CrailReadRange;
+import com.ibm.crail.CrailResult;
+
+class CoreVectoredRead {
+	private CoreFileSystem fs;
+	private long fileOffset;
+	private long fileEnd;
+	private ByteBuffer buffer;
+	private LinkedList<CoreRangeFuture> ranges;
+	private Future<CrailResult> operation;
+	private boolean completed;
+	private ExecutionException failure;
+	
+	public CoreVectoredRead(CoreFileSystem fs, CoreRangeFuture range){
+		this.fs = fs;
+		this.fileOffset = range.getOffset();
+		this.fileEnd = range.getOffset() + range.getLength();
+		this.buffer = null;
+		this.ranges = new LinkedList<CoreRangeFuture>();
+		this.operation = null;
+		this.completed = false;
+		this.failure = null;
+		add(range);
+	}
+	
+	boolean canMerge(CoreRangeFuture range, int mergeGap, int maxLength){
+		long newEnd = Math.max(fileEnd, range.getOffset() + range.getLength());
+		return range.getOffset() - fileEnd <= mergeGap && newEnd - fileOffset <= maxLength;
+	}
+	
+	void add(CoreRangeFuture range){
+		ranges.add(range);
+		this.fileEnd = Math.max(fileEnd, range.getOffset() + range.getLength());
+		range.setGroup(this);
+	}
+	
+	ByteBuffer prepareBuffer() throws IOException {
+		if (ranges.size() == 1){
+			//read straight into the caller's buffer, but leave its limit alone
+			CoreRangeFuture range = ranges.getFirst();
+			ByteBuffer rangeBuffer = range.getRange().getBuffer().duplicate();
+			rangeBuffer.limit(range.getBufferPosition() + range.getLength());
+			rangeBuffer.position(range.getBufferPosition());
+			range.getRange().getBuffer().position(range.getBufferPosition() + range.getLength());
+			return rangeBuffer;
+		}
+		
+		this.buffer = fs.allocateBuffer();
+		buffer.clear();
+		buffer.limit((int) (fileEnd - fileOffset));
+		for (CoreRangeFuture range : ranges){
+			ByteBuffer rangeBuffer = range.getRange().getBuffer();
+			rangeBuffer.position(range.getBufferPosition() + range.getLength());
+		}
+		return buffer;
+	}
+	
+	long getOffset(){
+		return fileOffset;
+	}
+	
+	void setOperation(Future<CrailResult> operation){
+		this.operation = operation;
+	}
+	
+	synchronized boolean isDone() {
+		if (!completed && operation.isDone()){
+			try {
+				get();
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			} catch(ExecutionException e){
+				//recorded in failure, thrown again from get()
+			}
+		}
+		return completed;
+	}
+	
+	synchronized void get() throws InterruptedException, ExecutionException {
+		if (!completed){
+			CrailResult result = null;
+			try {
+				result = operation.get();
+			} catch(ExecutionException e){
+				fail(e);
+			}
+			complete(result);
+		}
+		if (failure != null){
+			throw failure;
+		}
+	}
+	
+	synchronized void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!completed){
+			CrailResult result = null;
+			try {
+				result = operation.get(timeout, unit);
+			} catch(ExecutionException e){
+				fail(e);
+			}
+			complete(result);
+		}
+		if (failure != null){
+			throw failure;
+		}
+	}
+	
+	//returns the staging buffer to the pool, also used when the read could not be issued
+	synchronized void release() throws IOException {
+		if (buffer != null){
+			ByteBuffer _buffer = buffer;
+			this.buffer = null;
+			fs.freeBuffer(_buffer);
+		}
+	}
+	
+	private void fail(ExecutionException e){
+		if (failure == null){
+			this.failure = e;
+		}
+	}
+	
+	private void complete(CrailResult result) throws ExecutionException {
+		try {
+			if (failure == null && result.getLen() != fileEnd - fileOffset){
+				fail(new ExecutionException(new IOException("vectored read incomplete, expected " + (fileEnd - fileOffset) + ", got " + result.getLen())));
+			}
+			if (failure == null && buffer != null){
+				for (CoreRangeFuture range : ranges){
+					ByteBuffer src = buffer.duplicate();
+					src.position((int) (range.getOffset() - fileOffset));
+					src.limit(src.position() + range.getLength());
+					ByteBuffer dst = range.getRange().getBuffer().duplicate();
+					dst.limit(range.getBufferPosition() + range.getLength());
+					dst.position(range.getBufferPosition());
+					dst.put(src);
+				}
+			}
+		} finally {
+			try {
+				release();
+			} catch(IOException e){
+				fail(new ExecutionException(e));
+			}
+			this.completed = true;
+		}
+		if (failure != null){
+			throw failure;
+		}
+	}
+}
+
+class CoreRangeFuture implements Future<CrailResult>, CrailResult {
+	private CrailReadRange range;
+	private long offset;
+	private int length;
+	private int bufferPosition;
+	private CoreVectoredRead group;
+	
+	public CoreRangeFuture(CrailReadRange range, long capacity){
+		this.range = range;
+		this.offset = range.getOffset();
+		this.length = (int) Math.max(0, Math.min(range.getLength(), capacity - offset));
+		this.bufferPosition = range.getBuffer().position();
+		this.group = null;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return group.isDone();
+	}
+
+	@Override
+	public CrailResult get() throws InterruptedException, ExecutionException {
+		group.get();
+		return this;
+	}
+
+	@Override
+	public CrailResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		group.get(timeout, unit);
+		return this;
+	}
+
+	@Override
+	public long getLen() {
+		return length;
+	}
+	
+	CrailReadRange getRange(){
+		return range;
+	}
+	
+	long getOffset(){
+		return offset;
+	}
+	
+	int getLength(){
+		return length;
+	}
+	
+	int getBufferPosition(){
+		return bufferPosition;
+	}
+	
+	void setGroup(CoreVectoredRead group){
+		this.group = group;
+	}
+}
@@ -22,7 +22,11 @@
 package com.ibm.crail.core;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.Random;
 import java.util.concurrent.Future;
@@ -32,6 +36,7 @@ import org.slf4j.Logger;
 
 import com.ibm.crail.CrailResult;
 import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.protocol.DirectoryRecord;
 import com.ibm.crail.utils.CrailUtils;
 
 
@@ -48,6 +53,10 @@ public class DirectoryInputStream implements Iterator<String> {
 	private int[] blockTickets;
 	private Random random;
 	private boolean randomize;
+	private CharsetDecoder decoder;
+	private CharBuffer nameBuf;
+	private StringBuilder pathBuilder;
+	private int prefixLength;
 	
 	public DirectoryInputStream(CoreInputStream stream, boolean randomize) throws Exception {
 		this.stream = stream;
@@ -65,18 +74,41 @@ public class DirectoryInputStream implements Iterator<String> {
 		for (int i = 0; i < blockTickets.length; i++){
 			blockTickets[i] = i;
 		}		
+		this.decoder = StandardCharsets.UTF_8.newDecoder();
+		this.nameBuf = CharBuffer.allocate(CrailConstants.DIRECTORY_RECORD);
+		this.pathBuilder = new StringBuilder(CrailUtils.combinePath(parent, ""));
+		this.prefixLength = pathBuilder.length();
 	}
 	
+	//records are parsed in place, the path string handed out is the only allocation per entry
 	public boolean hasNext() {
 		if (currentFile != null){
 			return true;
 		}
 		while(hasRecord()){
-			DirectoryRecord record = nextRecord();
-			if (record.isValid()){
-				currentFile = CrailUtils.combinePath(record.getParent(), record.getFile());
-				break;
+			int offset = blockTickets[consumedRecords]*CrailConstants.DIRECTORY_RECORD;
+			consumedRecords++;
+			int length = 0;
+			try {
+				length = DirectoryRecord.nameLength(internalBuf, offset);
+			} catch(IOException e){
+				throw new UncheckedIOException(e);
 			}
+			if (length < 0){
+				continue;
+			}
+			int oldlimit = internalBuf.limit();
+			internalBuf.limit(offset + DirectoryRecord.HEADER_SIZE + length);
+			internalBuf.position(offset + DirectoryRecord.HEADER_SIZE);
+			nameBuf.clear();
+			decoder.reset();
+			decoder.decode(internalBuf, nameBuf, true);
+			internalBuf.limit(oldlimit);
+			nameBuf.flip();
+			pathBuilder.setLength(prefixLength);
+			pathBuilder.append(nameBuf);
+			currentFile = pathBuilder.toString();
+			break;
 		}
 		return currentFile != null;
 	}
@@ -99,7 +131,7 @@ public class DirectoryInputStream implements Iterator<String> {
 		return false;
 	}
 
-	public DirectoryRecord nextRecord() {
+	public DirectoryRecord nextRecord() throws IOException {
 		DirectoryRecord record = new DirectoryRecord(parent);
 		int offset = blockTickets[consumedRecords]*CrailConstants.DIRECTORY_RECORD;
 		internalBuf.position(offset);
@@ -128,7 +160,8 @@ public class DirectoryInputStream implements Iterator<String> {
 			
 			return availableRecords - consumedRecords;
 		} catch(Exception e){
-			return 0;
+			LOG.info("error when reading directory " + parent + ", " + e.getMessage());
+			throw new UncheckedIOException(new IOException("error when reading directory " + parent + ", " + e.getMessage(), e));
 		}
 	}	
 	
@@ -0,0 +1,112 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.CrailNode;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.protocol.FileName;
+import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcNameNodeFuture;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+import com.ibm.crail.utils.CrailUtils;
+
+public class DirectoryListing implements Iterator<CrailNode> {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private CoreFileSystem fs;
+	private String parent;
+	private FileName directory;
+	private RpcResponseMessage.ListDirRes page;
+	private RpcNameNodeFuture<RpcResponseMessage.ListDirRes> nextPage;
+	private int consumed;
+	private UncheckedIOException failure;
+	
+	public DirectoryListing(CoreFileSystem fs, String parent, RpcNameNodeFuture<RpcResponseMessage.ListDirRes> firstPage) throws Exception {
+		this.fs = fs;
+		this.parent = parent;
+		this.directory = new FileName(parent);
+		this.page = null;
+		this.nextPage = firstPage;
+		this.consumed = 0;
+		this.failure = null;
+	}
+
+	//a failed page is not the end of the directory, the failure is rethrown on every later call
+	@Override
+	public boolean hasNext() {
+		if (failure != null){
+			throw failure;
+		}
+		while (page == null || consumed == page.getEntries()){
+			if (nextPage == null){
+				return false;
+			}
+			try {
+				page = nextPage.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+				if (!nextPage.isDone()){
+					throw new IOException("rpc timeout ");
+				}
+				consumed = 0;
+				nextPage = null;
+				if (page.getError() != NameNodeProtocol.ERR_OK){
+					LOG.info("listDirectory: " + NameNodeProtocol.messages[page.getError()] + ", path " + parent);
+					throw new IOException("listDirectory: " + NameNodeProtocol.messages[page.getError()] + ", path " + parent);
+				}
+				//the next page is fetched while this one is consumed
+				if (page.getCursor() >= 0){
+					nextPage = fs.getNamenodeClientRpc().listDirectory(directory, page.getCursor(), page.getGeneration());
+				}
+			} catch(IOException e){
+				fail(e);
+			} catch(Exception e){
+				fail(new IOException("error when listing directory " + parent + ", " + e.getMessage(), e));
+			}
+		}
+		return true;
+	}
+	
+	private void fail(IOException e) {
+		page = null;
+		nextPage = null;
+		failure = new UncheckedIOException(e);
+		throw failure;
+	}
+
+	@Override
+	public CrailNode next() {
+		if (!hasNext()){
+			throw new NoSuchElementException();
+		}
+		String path = CrailUtils.combinePath(parent, page.getName(consumed));
+		CoreNode node = new CoreNode(fs, page.getFileInfo(consumed), path, 0, 0);
+		consumed++;
+		return node;
+	}
+}
@@ -26,6 +26,7 @@ import java.nio.ByteBuffer;
 import java.util.concurrent.Future;
 
 import com.ibm.crail.CrailResult;
+import com.ibm.crail.namenode.protocol.DirectoryRecord;
 
 public class DirectoryOutputStream {
 	private CoreOutputStream stream;
@@ -24,6 +24,7 @@ package com.ibm.crail.datanode;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -87,10 +88,13 @@ public abstract class DataNode {
 		LOG.info("connected to namenode at " + nnAddr);		
 	}
 	
+	//the memory region holding a block this datanode serves, datanodes that return null cannot push transfers
+	public ByteBuffer getRegion(BlockInfo block) {
+		return null;
+	}
+	
 	public void setBlock(long addr, int length, int key) throws Exception {
-		int localAffinity = InetAddress.getLocalHost().getHostName().hashCode();
-		int storageTier = dataNodeTypes.get(getType());
-		DataNodeInfo dnInfo = new DataNodeInfo(storageTier, localAffinity, getAddress());
+		DataNodeInfo dnInfo = getInfo();
 		BlockInfo blockInfo = new BlockInfo(dnInfo, addr, length, key);
 		RpcResponseMessage.VoidRes res = namenodeClientRpc.setBlock(blockInfo).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
 		if (res.getError() != NameNodeProtocol.ERR_OK){
@@ -100,12 +104,20 @@ public abstract class DataNode {
 	}
 	
 	public DataNodeStatistics getDataNode() throws Exception{
-		int localAffinity = InetAddress.getLocalHost().getHostName().hashCode();
-		int storageTier = dataNodeTypes.get(getType());
-		DataNodeInfo dnInfo = new DataNodeInfo(storageTier, localAffinity, getAddress());
+		DataNodeInfo dnInfo = getInfo();
 		return this.namenodeClientRpc.getDataNode(dnInfo).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS).getStatistics();
 	}	
 	
+	public DataNodeInfo getInfo() throws Exception {
+		int localAffinity = InetAddress.getLocalHost().getHostName().hashCode();
+		int storageTier = dataNodeTypes.get(getType());
+		return new DataNodeInfo(storageTier, localAffinity, getAddress());
+	}
+	
+	RpcNameNodeClient getNameNodeClient() {
+		return namenodeClientRpc;
+	}
+	
 	public String getType() {
 		return this.getClass().getName();
 	};	
@@ -135,6 +147,9 @@ public abstract class DataNode {
 			dataNode.init(conf, args);
 			dataNode.printConf(LOG);
 			dataNode.connect();
+			Thread transfer = new Thread(new DataNodeTransfer(dataNode));
+			transfer.setDaemon(true);
+			transfer.start();
 			dataNode.run();
 			System.exit(0);
 		} catch(Exception e){
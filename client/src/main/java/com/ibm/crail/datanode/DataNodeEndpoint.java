@@ -35,6 +35,9 @@ public interface DataNodeEndpoint{
 	public abstract Future<DataResult> read(ByteBuffer buffer, ByteBuffer region, BlockInfo remoteMr, long remoteOffset) throws IOException,
 			InterruptedException;
 
+	//a read-only view of the block range for endpoints that address the block memory directly, null otherwise
+	public abstract ByteBuffer map(BlockInfo remoteMr, long remoteOffset, int length) throws IOException;
+
 	public abstract void close() throws IOException, InterruptedException;
 	
 	public abstract boolean isLocal();
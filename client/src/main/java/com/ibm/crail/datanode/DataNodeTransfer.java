@@ -0,0 +1,214 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.datanode;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.namenode.protocol.DataNodeInfo;
+import com.ibm.crail.namenode.protocol.TransferReport;
+import com.ibm.crail.namenode.protocol.TransferTask;
+import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+import com.ibm.crail.utils.CrailUtils;
+import com.ibm.disni.util.MemoryUtils;
+
+//pulls transfer tasks of server-side copies from the namenode and pushes the source blocks, which live 
+//on this datanode, into the destination blocks on other datanodes, progress goes back with the next poll,
+//tasks of copies that ended meanwhile come back cancelled and are dropped or aborted
+public class DataNodeTransfer implements Runnable {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private DataNode dataNode;
+	private DataNodeInfo dnInfo;
+	private HashMap<InetSocketAddress, DataNodeEndpoint> endpoints;
+	private LinkedList<TransferTask> tasks;
+	private ArrayList<TransferReport> finished;
+	private TransferTask current;
+	private boolean cancelled;
+	private long transferred;
+	private long lastPoll;
+	
+	public DataNodeTransfer(DataNode dataNode){
+		this.dataNode = dataNode;
+		this.dnInfo = null;
+		this.endpoints = new HashMap<InetSocketAddress, DataNodeEndpoint>();
+		this.tasks = new LinkedList<TransferTask>();
+		this.finished = new ArrayList<TransferReport>();
+		this.current = null;
+		this.cancelled = false;
+		this.transferred = 0;
+		this.lastPoll = 0;
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (dataNode.getAddress() == null){
+				Thread.sleep(CrailConstants.DATANODE_TRANSFER_INTERVAL);
+			}
+			this.dnInfo = dataNode.getInfo();
+		} catch(Exception e){
+			LOG.info("transfer service not started, " + e.getMessage());
+			return;
+		}
+		
+		while (true) {
+			try {
+				poll();
+				TransferTask task = tasks.peek();
+				if (task == null){
+					Thread.sleep(CrailConstants.DATANODE_TRANSFER_INTERVAL);
+					continue;
+				}
+				transfer(task);
+			} catch(Exception e){
+				LOG.info("transfer poll failed, " + e.getMessage());
+				try {
+					Thread.sleep(CrailConstants.DATANODE_TRANSFER_INTERVAL);
+				} catch(InterruptedException ie){
+					return;
+				}
+			}
+		}
+	}
+	
+	//reports every task still held, finished tasks are reported until the namenode acknowledged them
+	private void poll() throws Exception {
+		ArrayList<TransferReport> reports = new ArrayList<TransferReport>(finished);
+		for (TransferTask task : tasks){
+			long bytes = task == tasks.peek() ? transferred : 0;
+			reports.add(new TransferReport(task.getTaskId(), bytes, TransferReport.RUNNING));
+		}
+		lastPoll = System.currentTimeMillis();
+		RpcResponseMessage.GetTransferRes res = dataNode.getNameNodeClient().getTransfer(dnInfo, reports).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (res.getError() != NameNodeProtocol.ERR_OK){
+			LOG.info("getTransfer: " + NameNodeProtocol.messages[res.getError()]);
+			return;
+		}
+		finished.clear();
+		for (Long taskId : res.getCancelled()){
+			cancel(taskId);
+		}
+		tasks.addAll(res.getTasks());
+	}
+	
+	//queued tasks are dropped right away, the one in transfer stops after the current chunk
+	private void cancel(long taskId){
+		if (current != null && current.getTaskId() == taskId){
+			cancelled = true;
+			return;
+		}
+		Iterator<TransferTask> iter = tasks.iterator();
+		while (iter.hasNext()){
+			TransferTask task = iter.next();
+			if (task.getTaskId() == taskId){
+				iter.remove();
+				finished.add(new TransferReport(taskId, 0, TransferReport.FAILED));
+			}
+		}
+	}
+	
+	private void transfer(TransferTask task) {
+		BlockInfo srcBlock = task.getSrcBlock();
+		BlockInfo dstBlock = task.getDstBlock();
+		long bandwidth = task.getBandwidth();
+		if (bandwidth == 0 || (CrailConstants.DATANODE_TRANSFER_BANDWIDTH > 0 && CrailConstants.DATANODE_TRANSFER_BANDWIDTH < bandwidth)){
+			bandwidth = CrailConstants.DATANODE_TRANSFER_BANDWIDTH;
+		}
+		
+		current = task;
+		cancelled = false;
+		transferred = 0;
+		int status = TransferReport.DONE;
+		InetSocketAddress address = dstBlock.getDnInfo().getInetAddress();
+		try {
+			ByteBuffer region = dataNode.getRegion(srcBlock);
+			if (region == null){
+				throw new IOException("no memory region for block, lkey " + srcBlock.getLkey());
+			}
+			DataNodeEndpoint endpoint = getEndpoint(address);
+			int offset = (int) (srcBlock.getAddr() - MemoryUtils.getAddress(region));
+			long start = System.nanoTime();
+			while (transferred < task.getLength() && !cancelled){
+				int length = (int) Math.min(CrailConstants.BUFFER_SIZE, task.getLength() - transferred);
+				ByteBuffer slice = region.duplicate();
+				slice.limit(offset + (int) transferred + length);
+				slice.position(offset + (int) transferred);
+				endpoint.write(slice.slice(), region, dstBlock, transferred).get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+				transferred += length;
+				
+				//pace to the bandwidth limit, 0 means unlimited
+				if (bandwidth > 0){
+					long ahead = transferred*1000000000L/bandwidth - (System.nanoTime() - start);
+					if (ahead > 0){
+						TimeUnit.NANOSECONDS.sleep(ahead);
+					}
+				}
+				if (System.currentTimeMillis() - lastPoll > CrailConstants.DATANODE_TRANSFER_INTERVAL){
+					try {
+						poll();
+					} catch(Exception e){
+						LOG.info("transfer poll failed, " + e.getMessage());
+					}
+				}
+			}
+			if (cancelled){
+				LOG.info("transfer cancelled, taskId " + task.getTaskId() + ", transferred " + transferred);
+				status = TransferReport.FAILED;
+			}
+		} catch(Exception e){
+			LOG.info("transfer failed, taskId " + task.getTaskId() + ", " + e.getMessage());
+			status = TransferReport.FAILED;
+			DataNodeEndpoint endpoint = endpoints.remove(address);
+			if (endpoint != null){
+				try {
+					endpoint.close();
+				} catch(Exception ce){
+					LOG.info("closing endpoint failed, " + ce.getMessage());
+				}
+			}
+		}
+		current = null;
+		tasks.remove(task);
+		finished.add(new TransferReport(task.getTaskId(), transferred, status));
+	}
+	
+	private DataNodeEndpoint getEndpoint(InetSocketAddress address) throws IOException {
+		DataNodeEndpoint endpoint = endpoints.get(address);
+		if (endpoint == null){
+			endpoint = dataNode.createEndpoint(address);
+			endpoints.put(address, endpoint);
+		}
+		return endpoint;
+	}
+}
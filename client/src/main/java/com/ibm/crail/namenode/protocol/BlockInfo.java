@@ -26,17 +26,23 @@ import java.nio.ByteBuffer;
 
 public class BlockInfo {
 	public static int CSIZE = DataNodeInfo.CSIZE + 16;
+	public static final int MAX_REPLICATION = 3;
+	public static final int MAX_FRAGMENTS = 16;
+	public static int REPLICA_CSIZE = 4 + (MAX_FRAGMENTS - 1)*CSIZE;
+	private static final BlockInfo[] NO_REPLICAS = new BlockInfo[0];
 	
 	protected DataNodeInfo dnInfo;
 	protected long addr;
 	protected int length;
 	protected int lkey;	
+	protected BlockInfo[] replicas;
 	
 	public BlockInfo(){
 		this.dnInfo = new DataNodeInfo();
 		this.addr = 0;
 		this.length = 0;
 		this.lkey = 0;
+		this.replicas = NO_REPLICAS;
 	}
 	
 	public BlockInfo(DataNodeInfo dnInfo, long addr, int length, int lkey){
@@ -44,6 +50,7 @@ public class BlockInfo {
 		this.addr = addr;
 		this.length = length;
 		this.lkey = lkey;
+		this.replicas = NO_REPLICAS;
 	}
 	
 	public void setBlockInfo(BlockInfo blockInfo) {
@@ -51,7 +58,7 @@ public class BlockInfo {
 		this.addr = blockInfo.getAddr();
 		this.length = blockInfo.getLength();
 		this.lkey = blockInfo.getLkey();
-		
+		this.replicas = blockInfo.replicas;
 	}
 
 	public int write(ByteBuffer buffer){
@@ -69,6 +76,43 @@ public class BlockInfo {
 		this.lkey = buffer.getInt();
 	}
 
+	//replicas (or the remaining fragments of an erasure coded block) are not part of the block record, 
+	//messages that carry them ship them separately
+	public int writeReplicas(ByteBuffer buffer){
+		buffer.putInt(replicas.length);
+		int written = 4;
+		for (int i = 0; i < replicas.length; i++){
+			written += replicas[i].write(buffer);
+		}
+		return written;
+	}
+	
+	public void updateReplicas(ByteBuffer buffer) throws UnknownHostException{
+		int count = buffer.getInt();
+		if (count <= 0){
+			this.replicas = NO_REPLICAS;
+			return;
+		}
+		BlockInfo[] tmp = new BlockInfo[Math.min(count, MAX_FRAGMENTS - 1)];
+		for (int i = 0; i < tmp.length; i++){
+			tmp[i] = new BlockInfo();
+			tmp[i].update(buffer);
+		}
+		this.replicas = tmp;
+	}
+	
+	public int getReplicaCount() {
+		return replicas.length;
+	}
+	
+	public BlockInfo getReplica(int index) {
+		return replicas[index];
+	}
+	
+	public void setReplicas(BlockInfo[] replicas) {
+		this.replicas = replicas != null ? replicas : NO_REPLICAS;
+	}
+
 	public long getAddr() {
 		return addr;
 	}
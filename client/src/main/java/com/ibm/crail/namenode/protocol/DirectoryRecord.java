@@ -0,0 +1,129 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.utils.CrailUtils;
+
+//record layout: 1 byte flag holding the format version and the valid bit, 2 byte name length, name in UTF-8,
+//records sit in fixed slots of crail.directoryrecord bytes, so names are limited to the slot size minus the header
+public class DirectoryRecord {
+	public static final int HEADER_SIZE = 3;
+	public static final int FORMAT_VERSION = 1;
+	
+	private int valid;
+	private String parent;
+	private String filename;
+	
+	public DirectoryRecord(boolean valid, String path){
+		this.valid = valid == true ? 1 : 0;
+		this.parent = CrailUtils.getParent(path);
+		this.filename = CrailUtils.getName(path);
+	}	
+	
+	public DirectoryRecord(String parent) {
+		this.valid = 0;
+		this.parent = parent;
+		this.filename = null;
+		
+	}
+	
+	//invalidation only touches the flag, the name of a valid record is written without padding
+	public void write(ByteBuffer buffer) throws IOException {
+		buffer.put((byte) (FORMAT_VERSION << 1 | valid));
+		if (valid == 1){
+			byte barray[] = filename.getBytes(StandardCharsets.UTF_8);
+			if (barray.length > CrailConstants.DIRECTORY_RECORD - HEADER_SIZE){
+				throw new IOException("filename too long for directory record, filename " + filename);
+			}
+			buffer.putShort((short) barray.length);
+			buffer.put(barray);
+		}
+	}
+	
+	public void update(ByteBuffer buffer) throws IOException {
+		int oldlimit = buffer.limit();
+		int tmplimit = buffer.position() + CrailConstants.DIRECTORY_RECORD;
+		buffer.limit(tmplimit);
+		int length = nameLength(buffer, buffer.position());
+		if (length >= 0){
+			valid = 1;
+			byte barray[] = new byte[length];
+			buffer.position(buffer.position() + HEADER_SIZE);
+			buffer.get(barray);
+			filename = new String(barray, StandardCharsets.UTF_8);
+		} else {
+			valid = 0;
+			filename = "";
+		}
+		buffer.position(tmplimit);
+		buffer.limit(oldlimit);
+	}
+	
+	//length of the name of the record at the given offset, -1 for free, invalidated or not yet written slots,
+	//records written in a different format are rejected rather than skipped
+	public static int nameLength(ByteBuffer buffer, int offset) throws IOException {
+		int flag = buffer.get(offset) & 0xff;
+		int version = flag >> 1;
+		if (version == FORMAT_VERSION){
+			int length = buffer.getShort(offset + 1);
+			if ((flag & 1) == 0 || length < 0 || length > CrailConstants.DIRECTORY_RECORD - HEADER_SIZE){
+				return -1;
+			}
+			return length;
+		}
+		
+		//slots may hold stale bytes until the client owning them wrote its record, only report plausible foreign records
+		if (flag == 0 && buffer.getInt(offset) == 1){
+			int length = buffer.getInt(offset + 4);
+			if (length >= 0 && length <= CrailConstants.DIRECTORY_RECORD - 8){
+				throw new IOException("unsupported directory record format, version 0");
+			}
+		} else if (version > FORMAT_VERSION && (flag & 1) == 1){
+			int length = buffer.getShort(offset + 1);
+			if (length >= 0 && length <= CrailConstants.DIRECTORY_RECORD - HEADER_SIZE){
+				throw new IOException("unsupported directory record format, version " + version);
+			}
+		}
+		return -1;
+	}
+
+	public boolean isValid() {
+		return valid == 1;
+	}
+
+	public String toString() {
+		return valid + "\t\t" + filename;
+	}
+
+	public String getFile() {
+		return filename;
+	}
+
+	public String getParent() {
+		return parent;
+	}
+}
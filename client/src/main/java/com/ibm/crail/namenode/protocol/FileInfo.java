@@ -29,7 +29,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import com.ibm.crail.conf.CrailConstants;
 
 public class FileInfo {
-	public static final int CSIZE = 44;
+	public static final int CSIZE = 68;
 	
 	private long fd;
 	protected AtomicLong capacity;
@@ -37,6 +37,11 @@ public class FileInfo {
 	private long dirOffset;
 	private long token;
 	private long modificationTime;
+	private long blockSize;
+	private int replication;
+	private int dataFragments;
+	private int parityFragments;
+	private int codec;
 	
 	public FileInfo(){
 		this(-1, false);
@@ -50,6 +55,11 @@ public class FileInfo {
 		this.capacity = new AtomicLong(0);
 		this.token = 0;
 		this.modificationTime = 0;
+		this.blockSize = CrailConstants.BLOCK_SIZE;
+		this.replication = 1;
+		this.dataFragments = 0;
+		this.parityFragments = 0;
+		this.codec = 0;
 	}
 	
 	public void setFileInfo(FileInfo fileInfo){
@@ -60,6 +70,11 @@ public class FileInfo {
 		this.capacity.set(fileInfo.getCapacity());
 		this.token = fileInfo.getToken();
 		this.modificationTime = fileInfo.getModificationTime();
+		this.blockSize = fileInfo.getBlockSize();
+		this.replication = fileInfo.getReplication();
+		this.dataFragments = fileInfo.getDataFragments();
+		this.parityFragments = fileInfo.getParityFragments();
+		this.codec = fileInfo.getCodec();
 	}
 	
 	public int write(ByteBuffer buffer, boolean shipToken){
@@ -73,6 +88,11 @@ public class FileInfo {
 			buffer.putLong(0);
 		}
 		buffer.putLong(modificationTime);
+		buffer.putLong(blockSize);
+		buffer.putInt(replication);
+		buffer.putInt(dataFragments);
+		buffer.putInt(parityFragments);
+		buffer.putInt(codec);
 		
 		return CSIZE;
 	}
@@ -85,6 +105,11 @@ public class FileInfo {
 		dirOffset = buffer.getLong();
 		token = buffer.getLong();
 		modificationTime = buffer.getLong();
+		blockSize = buffer.getLong();
+		replication = buffer.getInt();
+		dataFragments = buffer.getInt();
+		parityFragments = buffer.getInt();
+		codec = buffer.getInt();
 	}
 	
 	public long getCapacity() {
@@ -93,9 +118,12 @@ public class FileInfo {
 	
 	public long setCapacity(long newcapacity) {
 		long oldcapacity = capacity.get();
-		if (newcapacity > oldcapacity){
-			capacity.compareAndSet(oldcapacity, newcapacity);
-			this.setModificationTime(System.currentTimeMillis());
+		while (newcapacity > oldcapacity){
+			if (capacity.compareAndSet(oldcapacity, newcapacity)){
+				this.setModificationTime(System.currentTimeMillis());
+				break;
+			}
+			oldcapacity = capacity.get();
 		}
 		return capacity.get();
 	}	
@@ -140,12 +168,55 @@ public class FileInfo {
 		this.dirOffset = dirOffset;
 	}
 
+	public long getBlockSize() {
+		return blockSize;
+	}
+
+	protected void setBlockSize(long blockSize) {
+		this.blockSize = blockSize;
+	}
+	
+	public int getReplication() {
+		return replication;
+	}
+	
+	protected void setReplication(int replication) {
+		this.replication = replication;
+	}
+	
+	//erasure coded files stripe each block over dataFragments + parityFragments datanode blocks
+	public boolean isErasureCoded() {
+		return dataFragments > 0;
+	}
+	
+	public int getDataFragments() {
+		return dataFragments;
+	}
+	
+	public int getParityFragments() {
+		return parityFragments;
+	}
+	
+	protected void setErasureCoding(int dataFragments, int parityFragments) {
+		this.dataFragments = dataFragments;
+		this.parityFragments = parityFragments;
+	}
+	
+	//compression codec used by the buffered streams, the namenode only records it
+	public int getCodec() {
+		return codec;
+	}
+	
+	protected void setCodec(int codec) {
+		this.codec = codec;
+	}
+
 	public long getFd() {
 		return fd;
 	}
 
 	public String toString() {
-		return "fd " + fd + ", capacity " + capacity + ", isdir " + isDir + ", dirOffset " + dirOffset + ", token " + token;
+		return "fd " + fd + ", capacity " + capacity + ", isdir " + isDir + ", dirOffset " + dirOffset + ", token " + token + ", blockSize " + blockSize + ", replication " + replication + ", fragments " + dataFragments + "+" + parityFragments + ", codec " + codec;
 	}
 
 	public boolean isDir() {
@@ -23,15 +23,18 @@ package com.ibm.crail.namenode.protocol;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.StringTokenizer;
 
 import com.ibm.crail.conf.CrailConstants;
 
 public class FileName {
 	public static int CSIZE = 4 + CrailConstants.DIRECTORY_DEPTH*4;
+	public static int NAME_CSIZE = 2 + CrailConstants.DIRECTORY_RECORD - DirectoryRecord.HEADER_SIZE;
 	
 	private int length;
 	private int[] components;
+	private String name;
 	
 	public FileName(){
 		this.length = 0;
@@ -39,6 +42,7 @@ public class FileName {
 		for (int i = 0; i < components.length; i++){
 			components[i] = 0;
 		}
+		this.name = "";
 	}
 	
 	public FileName(String name) throws IOException {
@@ -53,8 +57,12 @@ public class FileName {
 		while (tokenizer.hasMoreElements()) {
 			String token = tokenizer.nextToken();
 			components[i] = token.hashCode();
+			this.name = token;
 			i++;
 		}	
+		if (this.name.getBytes(StandardCharsets.UTF_8).length > NAME_CSIZE - 2){
+			throw new IOException("filename too long, filename " + name + ", max " + (NAME_CSIZE - 2));
+		}
 	}
 	
 	public FileName(FileName name){
@@ -63,6 +71,7 @@ public class FileName {
 		for (int i = 0; i < components.length; i++){
 			this.components[i] = name.components[i];
 		}	
+		this.name = name.name;
 	}
 	
 	public int write(ByteBuffer buffer) {
@@ -82,6 +91,20 @@ public class FileName {
 		}
 	}	
 
+	//the last path component is shipped only by requests that create directory entries
+	public int writeName(ByteBuffer buffer) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+		return 2 + bytes.length;
+	}
+	
+	public void updateName(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort()];
+		buffer.get(bytes);
+		this.name = new String(bytes, StandardCharsets.UTF_8);
+	}
+
 	public int getFileComponent(){
 		return getComponent(length - 1);
 	}	
@@ -98,6 +121,10 @@ public class FileName {
 		return length;
 	}
 	
+	public String getName(){
+		return name;
+	}
+	
 	
 	public int size(){
 		return CSIZE;
@@ -0,0 +1,74 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode.protocol;
+
+import java.nio.ByteBuffer;
+
+//progress of a transfer task, bytes are cumulative
+public class TransferReport {
+	public static final int CSIZE = 20;
+	
+	public static final int RUNNING = 0;
+	public static final int DONE = 1;
+	public static final int FAILED = 2;
+	
+	private long taskId;
+	private long bytes;
+	private int status;
+	
+	public TransferReport(){
+		this.taskId = 0;
+		this.bytes = 0;
+		this.status = RUNNING;
+	}
+	
+	public TransferReport(long taskId, long bytes, int status){
+		this.taskId = taskId;
+		this.bytes = bytes;
+		this.status = status;
+	}
+	
+	public int write(ByteBuffer buffer){
+		buffer.putLong(taskId);
+		buffer.putLong(bytes);
+		buffer.putInt(status);
+		return CSIZE;
+	}
+	
+	public void update(ByteBuffer buffer){
+		taskId = buffer.getLong();
+		bytes = buffer.getLong();
+		status = buffer.getInt();
+	}
+
+	public long getTaskId() {
+		return taskId;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode.protocol;
+
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+//a block range a datanode pushes from one of its own blocks into a block on another datanode
+public class TransferTask {
+	public static final int CSIZE = 24 + BlockInfo.CSIZE*2;
+	
+	private long taskId;
+	private BlockInfo srcBlock;
+	private BlockInfo dstBlock;
+	private int length;
+	private long bandwidth;
+	
+	public TransferTask(){
+		this.taskId = 0;
+		this.srcBlock = new BlockInfo();
+		this.dstBlock = new BlockInfo();
+		this.length = 0;
+		this.bandwidth = 0;
+	}
+	
+	public TransferTask(long taskId, BlockInfo srcBlock, BlockInfo dstBlock, int length, long bandwidth){
+		this.taskId = taskId;
+		this.srcBlock = srcBlock;
+		this.dstBlock = dstBlock;
+		this.length = length;
+		this.bandwidth = bandwidth;
+	}
+	
+	public int write(ByteBuffer buffer){
+		buffer.putLong(taskId);
+		srcBlock.write(buffer);
+		dstBlock.write(buffer);
+		buffer.putInt(length);
+		buffer.putInt(0);
+		buffer.putLong(bandwidth);
+		return CSIZE;
+	}
+	
+	public void update(ByteBuffer buffer) throws UnknownHostException {
+		taskId = buffer.getLong();
+		srcBlock.update(buffer);
+		dstBlock.update(buffer);
+		length = buffer.getInt();
+		buffer.getInt();
+		bandwidth = buffer.getLong();
+	}
+
+	public long getTaskId() {
+		return taskId;
+	}
+
+	public BlockInfo getSrcBlock() {
+		return srcBlock;
+	}
+
+	public BlockInfo getDstBlock() {
+		return dstBlock;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	//bytes per second, 0 means unlimited
+	public long getBandwidth() {
+		return bandwidth;
+	}
+	
+	public void setBandwidth(long bandwidth) {
+		this.bandwidth = bandwidth;
+	}
+
+	@Override
+	public String toString() {
+		return "taskId " + taskId + ", length " + length + ", bandwidth " + bandwidth;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+//a change to one entry of a watched directory, renames also carry the name the entry had before
+public class WatchEvent {
+	public static final short CREATE = 1;
+	public static final short DELETE = 2;
+	public static final short RENAME = 3;
+	public static final short CLOSE = 4;
+	
+	private short type;
+	private boolean dir;
+	private long fd;
+	private byte[] name;
+	private byte[] oldName;
+	
+	public WatchEvent(){
+		this.type = 0;
+		this.dir = false;
+		this.fd = 0;
+		this.name = new byte[0];
+		this.oldName = new byte[0];
+	}
+	
+	public WatchEvent(short type, long fd, boolean dir, String name){
+		this(type, fd, dir, name, "");
+	}
+	
+	public WatchEvent(short type, long fd, boolean dir, String name, String oldName){
+		this.type = type;
+		this.dir = dir;
+		this.fd = fd;
+		this.name = name.getBytes(StandardCharsets.UTF_8);
+		this.oldName = oldName.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	public int size(){
+		return 16 + name.length + oldName.length;
+	}
+	
+	public int write(ByteBuffer buffer){
+		buffer.putShort(type);
+		buffer.putShort((short) (dir ? 1 : 0));
+		buffer.putLong(fd);
+		buffer.putShort((short) name.length);
+		buffer.put(name);
+		buffer.putShort((short) oldName.length);
+		buffer.put(oldName);
+		return size();
+	}
+	
+	public void update(ByteBuffer buffer){
+		type = buffer.getShort();
+		dir = buffer.getShort() != 0;
+		fd = buffer.getLong();
+		name = new byte[buffer.getShort()];
+		buffer.get(name);
+		oldName = new byte[buffer.getShort()];
+		buffer.get(oldName);
+	}
+
+	public short getType() {
+		return type;
+	}
+
+	public boolean isDir() {
+		return dir;
+	}
+
+	public long getFd() {
+		return fd;
+	}
+
+	public String getName() {
+		return new String(name, StandardCharsets.UTF_8);
+	}
+	
+	//empty unless this is a rename
+	public String getOldName() {
+		return new String(oldName, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return "type " + type + ", fd " + fd + ", dir " + dir + ", name " + getName() + ", oldName " + getOldName();
+	}
+}
@@ -28,9 +28,9 @@ import com.ibm.crail.utils.CrailUtils;
 public class NameNodeProtocol {
 	private static final Logger LOG = CrailUtils.getLogger();
 	
-	public static short[] requestTypes = new short[16];
-	public static short[] responseTypes = new short[16];
-	public static String[] messages = new String[32];	
+	public static short[] requestTypes = new short[32];
+	public static short[] responseTypes = new short[32];
+	public static String[] messages = new String[64];	
 	
 	//rpc calls
 	public static final short CMD_CREATE_FILE = 1;	
@@ -44,6 +44,19 @@ public class NameNodeProtocol {
 	public static final short CMD_DUMP_NAMENODE = 10;
 	public static final short CMD_PING_NAMENODE = 11;
 	public static final short CMD_GET_DATANODE = 12;
+	public static final short CMD_LIST_DIR = 13;
+	public static final short CMD_GET_LOCATIONS = 14;
+	public static final short CMD_CONCAT_FILE = 15;
+	public static final short CMD_RESERVE_FILE = 16;
+	public static final short CMD_COMMIT_FILE = 17;
+	public static final short CMD_WAIT_FILE = 18;
+	public static final short CMD_WATCH_DIR = 19;
+	public static final short CMD_CLONE_FILE = 20;
+	public static final short CMD_COPY_FILE = 21;
+	public static final short CMD_COPY_STATUS = 22;
+	public static final short CMD_GET_TRANSFER = 23;
+	public static final short CMD_PIN_BLOCK = 24;
+	public static final short CMD_PUT_FILE = 25;
 	
 	//request types
 	public static final short REQ_CREATE_FILE = 1;	
@@ -57,6 +70,19 @@ public class NameNodeProtocol {
 	public static final short REQ_DUMP_NAMENODE = 10;
 	public static final short REQ_PING_NAMENODE = 11;
 	public static final short REQ_GET_DATANODE = 12;
+	public static final short REQ_LIST_DIR = 13;
+	public static final short REQ_GET_LOCATIONS = 14;
+	public static final short REQ_CONCAT_FILE = 15;
+	public static final short REQ_RESERVE_FILE = 16;
+	public static final short REQ_COMMIT_FILE = 17;
+	public static final short REQ_WAIT_FILE = 18;
+	public static final short REQ_WATCH_DIR = 19;
+	public static final short REQ_CLONE_FILE = 20;
+	public static final short REQ_COPY_FILE = 21;
+	public static final short REQ_COPY_STATUS = 22;
+	public static final short REQ_GET_TRANSFER = 23;
+	public static final short REQ_PIN_BLOCK = 24;
+	public static final short REQ_PUT_FILE = 25;
 	
 	//response types
 	public static final short RES_VOID = 1;
@@ -68,6 +94,19 @@ public class NameNodeProtocol {
 	public static final short RES_GET_LOCATION = 7;
 	public static final short RES_PING_NAMENODE = 9;
 	public static final short RES_GET_DATANODE = 10;
+	public static final short RES_LIST_DIR = 11;
+	public static final short RES_GET_LOCATIONS = 12;
+	public static final short RES_CONCAT_FILE = 13;
+	public static final short RES_RESERVE_FILE = 14;
+	public static final short RES_COMMIT_FILE = 15;
+	public static final short RES_WAIT_FILE = 16;
+	public static final short RES_WATCH_DIR = 17;
+	public static final short RES_CLONE_FILE = 18;
+	public static final short RES_COPY_FILE = 19;
+	public static final short RES_COPY_STATUS = 20;
+	public static final short RES_GET_TRANSFER = 21;
+	public static final short RES_PIN_BLOCK = 22;
+	public static final short RES_PUT_FILE = 23;
 	
 	//errors
 	public static short ERR_OK = 0;
@@ -99,6 +138,21 @@ public class NameNodeProtocol {
 	public static short ERR_DIR_LOCATION_AFFINITY_MISMATCH = 26;
 	public static short ERR_ADD_BLOCK_FAILED = 27;
 	public static short ERR_CREATE_FILE_BUG = 28;
+	public static short ERR_CONCAT_UNALIGNED = 29;
+	public static short ERR_CONCAT_INVALID = 30;
+	public static short ERR_ERASURE_INVALID = 31;
+	public static short ERR_ERASURE_PLACEMENT = 32;
+	public static short ERR_RESERVE_INVALID = 33;
+	public static short ERR_RESERVE_TOO_LARGE = 34;
+	public static short ERR_COMMIT_UNKNOWN = 35;
+	public static short ERR_DEFERRED = 36;
+	public static short ERR_WATCH_UNKNOWN = 37;
+	public static short ERR_CLONE_INVALID = 38;
+	public static short ERR_COPY_UNKNOWN = 39;
+	public static short ERR_LEASE_UNKNOWN = 40;
+	public static short ERR_DIR_COMPACTED = 41;
+	public static short ERR_APPEND_HOLE = 42;
+	public static short ERR_BLOCK_SHARED = 43;
 	
 	static {
 		messages[ERR_OK] = "ERROR: No error, all fine";
@@ -130,6 +184,21 @@ public class NameNodeProtocol {
 		messages[ERR_DIR_LOCATION_AFFINITY_MISMATCH] = "Directories cannot have local affinity";
 		messages[ERR_ADD_BLOCK_FAILED] = "Could not add block";
 		messages[ERR_CREATE_FILE_BUG] = "Could not retrieve parent block";
+		messages[ERR_CONCAT_UNALIGNED] = "Concat target not block aligned";
+		messages[ERR_CONCAT_INVALID] = "Concat requires two distinct uncompressed files";
+		messages[ERR_ERASURE_INVALID] = "Invalid erasure coding parameters";
+		messages[ERR_ERASURE_PLACEMENT] = "Not enough datanodes for erasure coded layout";
+		messages[ERR_RESERVE_INVALID] = "Append reservations require a plain file without token holder";
+		messages[ERR_RESERVE_TOO_LARGE] = "Append reservation spans too many blocks";
+		messages[ERR_COMMIT_UNKNOWN] = "No pending append reservation at this offset";
+		messages[ERR_DEFERRED] = "Response deferred";
+		messages[ERR_WATCH_UNKNOWN] = "Unknown or expired directory watch";
+		messages[ERR_CLONE_INVALID] = "Only files can be cloned";
+		messages[ERR_COPY_UNKNOWN] = "Unknown or finished copy";
+		messages[ERR_LEASE_UNKNOWN] = "Unknown or expired block lease";
+		messages[ERR_DIR_COMPACTED] = "Directory compacted while being listed";
+		messages[ERR_APPEND_HOLE] = "File has an append region that could not be allocated";
+		messages[ERR_BLOCK_SHARED] = "Block is shared with a clone and cannot be written";
 		
 		requestTypes[0] = 0;
 		requestTypes[CMD_CREATE_FILE] = REQ_CREATE_FILE;
@@ -143,6 +212,19 @@ public class NameNodeProtocol {
 		requestTypes[CMD_DUMP_NAMENODE] = REQ_DUMP_NAMENODE;
 		requestTypes[CMD_PING_NAMENODE] = REQ_PING_NAMENODE;	
 		requestTypes[CMD_GET_DATANODE] = REQ_GET_DATANODE;
+		requestTypes[CMD_LIST_DIR] = REQ_LIST_DIR;
+		requestTypes[CMD_GET_LOCATIONS] = REQ_GET_LOCATIONS;
+		requestTypes[CMD_CONCAT_FILE] = REQ_CONCAT_FILE;
+		requestTypes[CMD_RESERVE_FILE] = REQ_RESERVE_FILE;
+		requestTypes[CMD_COMMIT_FILE] = REQ_COMMIT_FILE;
+		requestTypes[CMD_WAIT_FILE] = REQ_WAIT_FILE;
+		requestTypes[CMD_WATCH_DIR] = REQ_WATCH_DIR;
+		requestTypes[CMD_CLONE_FILE] = REQ_CLONE_FILE;
+		requestTypes[CMD_COPY_FILE] = REQ_COPY_FILE;
+		requestTypes[CMD_COPY_STATUS] = REQ_COPY_STATUS;
+		requestTypes[CMD_GET_TRANSFER] = REQ_GET_TRANSFER;
+		requestTypes[CMD_PIN_BLOCK] = REQ_PIN_BLOCK;
+		requestTypes[CMD_PUT_FILE] = REQ_PUT_FILE;
 		
 		responseTypes[0] = 0;
 		responseTypes[CMD_CREATE_FILE] = RES_CREATE_FILE;
@@ -156,6 +238,19 @@ public class NameNodeProtocol {
 		responseTypes[CMD_DUMP_NAMENODE] = RES_VOID;
 		responseTypes[CMD_PING_NAMENODE] = RES_PING_NAMENODE;	
 		responseTypes[CMD_GET_DATANODE] = RES_GET_DATANODE;
+		responseTypes[CMD_LIST_DIR] = RES_LIST_DIR;
+		responseTypes[CMD_GET_LOCATIONS] = RES_GET_LOCATIONS;
+		responseTypes[CMD_CONCAT_FILE] = RES_CONCAT_FILE;
+		responseTypes[CMD_RESERVE_FILE] = RES_RESERVE_FILE;
+		responseTypes[CMD_COMMIT_FILE] = RES_COMMIT_FILE;
+		responseTypes[CMD_WAIT_FILE] = RES_WAIT_FILE;
+		responseTypes[CMD_WATCH_DIR] = RES_WATCH_DIR;
+		responseTypes[CMD_CLONE_FILE] = RES_CLONE_FILE;
+		responseTypes[CMD_COPY_FILE] = RES_COPY_FILE;
+		responseTypes[CMD_COPY_STATUS] = RES_COPY_STATUS;
+		responseTypes[CMD_GET_TRANSFER] = RES_GET_TRANSFER;
+		responseTypes[CMD_PIN_BLOCK] = RES_PIN_BLOCK;
+		responseTypes[CMD_PUT_FILE] = RES_PUT_FILE;
 	}
 	
 
@@ -22,27 +22,64 @@
 package com.ibm.crail.namenode.rpc;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 import com.ibm.crail.namenode.protocol.BlockInfo;
 import com.ibm.crail.namenode.protocol.DataNodeInfo;
 import com.ibm.crail.namenode.protocol.FileInfo;
 import com.ibm.crail.namenode.protocol.FileName;
+import com.ibm.crail.namenode.protocol.TransferReport;
 
 public interface RpcNameNodeClient {
 	public abstract RpcNameNodeFuture<RpcResponseMessage.CreateFileRes> createFile(
-			FileName filename, boolean isDir, int storageAffinity, int locationAffinity) throws IOException;
+			FileName filename, boolean isDir, int storageAffinity, int locationAffinity, long sizeHint, int replication, int dataFragments, int parityFragments, int codec) throws IOException;
 
 	public abstract RpcNameNodeFuture<RpcResponseMessage.GetFileRes> getFile(FileName filename,
 			boolean writeable) throws IOException;
 
 	public abstract RpcNameNodeFuture<RpcResponseMessage.VoidRes> setFile(FileInfo fileInfo,
 			boolean close) throws IOException;
+	
+	public abstract RpcNameNodeFuture<RpcResponseMessage.VoidRes> setFile(FileInfo fileInfo,
+			boolean close, byte[] inlineData) throws IOException;
 
 	public abstract RpcNameNodeFuture<RpcResponseMessage.DeleteFileRes> removeFile(
 			FileName filename, boolean recursive) throws IOException;
 
 	public abstract RpcNameNodeFuture<RpcResponseMessage.RenameRes> renameFile(
-			FileName srcHash, FileName dstHash) throws IOException;
+			FileName srcHash, FileName dstHash, boolean overwrite) throws IOException;
+
+	public abstract RpcNameNodeFuture<RpcResponseMessage.ConcatFileRes> concatFile(
+			FileName dstHash, FileName srcHash, FileName stagingHash, long dstCapacity) throws IOException;
+
+	public abstract RpcNameNodeFuture<RpcResponseMessage.ReserveFileRes> reserveFile(long fd,
+			long length, int storageAffinity, int locationAffinity) throws IOException;
+
+	public abstract RpcNameNodeFuture<RpcResponseMessage.CommitFileRes> commitFile(long fd,
+			long offset) throws IOException;
+
+	public abstract RpcNameNodeFuture<RpcResponseMessage.WaitFileRes> waitFile(long fd,
+			long capacity, long timeout) throws IOException;
+
+	public abstract RpcNameNodeFuture<RpcResponseMessage.WatchDirRes> watchDirectory(long fd,
+			long watchId, long timeout, boolean cancel) throws IOException;
+
+	public abstract RpcNameNodeFuture<RpcResponseMessage.CloneFileRes> cloneFile(FileName srcHash,
+			FileName dstHash) throws IOException;
+
+	public abstract RpcNameNodeFuture<RpcResponseMessage.CopyFileRes> copyFile(FileName srcHash,
+			FileName dstHash, int storageAffinity, int locationAffinity, long bandwidth) throws IOException;
+
+	public abstract RpcNameNodeFuture<RpcResponseMessage.CopyStatusRes> copyStatus(long copyId) throws IOException;
+
+	public abstract RpcNameNodeFuture<RpcResponseMessage.GetTransferRes> getTransfer(DataNodeInfo dnInfo, 
+			ArrayList<TransferReport> reports) throws IOException;
+
+	public abstract RpcNameNodeFuture<RpcResponseMessage.PinBlockRes> pinBlock(long fd,
+			long position, long leaseId, boolean renew) throws IOException;
+
+	public abstract RpcNameNodeFuture<RpcResponseMessage.PutFileRes> putFile(FileName fileName,
+			byte[] value) throws IOException;
 
 	public abstract RpcNameNodeFuture<RpcResponseMessage.GetBlockRes> getBlock(long fd,
 			long token, long position, int storageAffinity, int locationAffinity, long capacity) throws IOException;
@@ -50,6 +87,12 @@ public interface RpcNameNodeClient {
 	public abstract RpcNameNodeFuture<RpcResponseMessage.GetLocationRes> getLocation(
 			FileName fileName, long position) throws IOException;
 
+	public abstract RpcNameNodeFuture<RpcResponseMessage.GetLocationsRes> getLocations(
+			FileName fileName, long position, long length) throws IOException;
+
+	public abstract RpcNameNodeFuture<RpcResponseMessage.ListDirRes> listDirectory(
+			FileName fileName, long cursor, long generation) throws IOException;
+
 	public abstract RpcNameNodeFuture<RpcResponseMessage.VoidRes> setBlock(BlockInfo blockInfo)
 			throws Exception;
 
@@ -60,6 +60,58 @@ public interface RpcNameNodeService {
 			RpcResponseMessage.GetLocationRes response, RpcNameNodeState errorState)
 			throws Exception;
 
+	public abstract short getLocations(RpcRequestMessage.GetLocationsReq request,
+			RpcResponseMessage.GetLocationsRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short listDirectory(RpcRequestMessage.ListDirReq request,
+			RpcResponseMessage.ListDirRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short concatFile(RpcRequestMessage.ConcatFileReq request,
+			RpcResponseMessage.ConcatFileRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short reserveFile(RpcRequestMessage.ReserveFileReq request,
+			RpcResponseMessage.ReserveFileRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short commitFile(RpcRequestMessage.CommitFileReq request,
+			RpcResponseMessage.CommitFileRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short waitFile(RpcRequestMessage.WaitFileReq request,
+			RpcResponseMessage.WaitFileRes response, RpcNameNodeState errorState, 
+			RpcNameNodeDeferred deferred) throws Exception;
+
+	public abstract short watchDirectory(RpcRequestMessage.WatchDirReq request,
+			RpcResponseMessage.WatchDirRes response, RpcNameNodeState errorState, 
+			RpcNameNodeDeferred deferred) throws Exception;
+
+	public abstract short cloneFile(RpcRequestMessage.CloneFileReq request,
+			RpcResponseMessage.CloneFileRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short copyFile(RpcRequestMessage.CopyFileReq request,
+			RpcResponseMessage.CopyFileRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short copyStatus(RpcRequestMessage.CopyStatusReq request,
+			RpcResponseMessage.CopyStatusRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short getTransfer(RpcRequestMessage.GetTransferReq request,
+			RpcResponseMessage.GetTransferRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short pinBlock(RpcRequestMessage.PinBlockReq request,
+			RpcResponseMessage.PinBlockRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short putFile(RpcRequestMessage.PutFileReq request,
+			RpcResponseMessage.PutFileRes response, RpcNameNodeState errorState)
+			throws Exception;
+
 	public abstract short dump(RpcRequestMessage.DumpNameNodeReq request,
 			RpcResponseMessage.VoidRes response, RpcNameNodeState errorState)
 			throws Exception;
@@ -23,33 +23,51 @@ package com.ibm.crail.namenode.rpc;
 
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 
+import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.namenode.protocol.BlockInfo;
 import com.ibm.crail.namenode.protocol.DataNodeInfo;
 import com.ibm.crail.namenode.protocol.FileInfo;
 import com.ibm.crail.namenode.protocol.FileName;
+import com.ibm.crail.namenode.protocol.TransferReport;
 
 public class RpcRequestMessage {
 	public static class CreateFileReq implements NameNodeProtocol.NameNodeRpcMessage {
-		public static int CSIZE = FileName.CSIZE + 12;
+		public static int CSIZE = FileName.CSIZE + 36 + FileName.NAME_CSIZE;
 		
 		protected FileName filename;
 		protected boolean isDir;
 		protected int storageAffinity;
 		protected int locationAffinity;
+		protected long sizeHint;
+		protected int replication;
+		protected int dataFragments;
+		protected int parityFragments;
+		protected int codec;
 		
 		public CreateFileReq(){
 			this.filename = new FileName();
 			this.isDir = false;
 			this.storageAffinity = 0;
 			this.locationAffinity = 0;
+			this.sizeHint = 0;
+			this.replication = 1;
+			this.dataFragments = 0;
+			this.parityFragments = 0;
+			this.codec = 0;
 		}
 		
-		public CreateFileReq(FileName filename, boolean isDir, int storageAffinity, int locationAffinity) {
+		public CreateFileReq(FileName filename, boolean isDir, int storageAffinity, int locationAffinity, long sizeHint, int replication, int dataFragments, int parityFragments, int codec) {
 			this.filename = filename;
 			this.isDir = isDir;
 			this.storageAffinity = storageAffinity;
 			this.locationAffinity = locationAffinity;
+			this.sizeHint = sizeHint;
+			this.replication = replication;
+			this.dataFragments = dataFragments;
+			this.parityFragments = parityFragments;
+			this.codec = codec;
 		}
 
 		public FileName getFileName() {
@@ -68,6 +86,25 @@ public class RpcRequestMessage {
 			return locationAffinity;
 		}
 		
+		public long getSizeHint() {
+			return sizeHint;
+		}
+		
+		public int getReplication() {
+			return replication;
+		}
+		
+		public int getDataFragments() {
+			return dataFragments;
+		}
+		
+		public int getParityFragments() {
+			return parityFragments;
+		}
+		
+		public int getCodec() {
+			return codec;
+		}
 		
 		public int size() {
 			return CSIZE;
@@ -82,7 +119,13 @@ public class RpcRequestMessage {
 			buffer.putInt(isDir ? 1 : 0);
 			buffer.putInt(storageAffinity);
 			buffer.putInt(locationAffinity);
-			written += 12;
+			buffer.putLong(sizeHint);
+			buffer.putInt(replication);
+			buffer.putInt(dataFragments);
+			buffer.putInt(parityFragments);
+			buffer.putInt(codec);
+			written += 36;
+			written += filename.writeName(buffer);
 			
 			return written;
 		}		
@@ -93,6 +136,12 @@ public class RpcRequestMessage {
 			isDir = (tmp == 1) ? true : false;
 			storageAffinity = buffer.getInt();
 			locationAffinity = buffer.getInt();
+			sizeHint = buffer.getLong();
+			replication = buffer.getInt();
+			dataFragments = buffer.getInt();
+			parityFragments = buffer.getInt();
+			codec = buffer.getInt();
+			filename.updateName(buffer);
 		}
 	}
 	
@@ -144,19 +193,26 @@ public class RpcRequestMessage {
 	}
 	
 	public static class SetFileReq implements NameNodeProtocol.NameNodeRpcMessage {
-		public static int CSIZE = FileInfo.CSIZE + 4;
+		public static int CSIZE = FileInfo.CSIZE + 8 + CrailConstants.INLINE_DATA;
 		
 		protected FileInfo fileInfo;
 		protected boolean close;
+		protected byte[] inlineData;
 		
 		public SetFileReq(){
 			this.fileInfo = new FileInfo();
 			this.close = false;
+			this.inlineData = null;
 		}
 		
 		public SetFileReq(FileInfo fileInfo, boolean close) {
+			this(fileInfo, close, null);
+		}
+		
+		public SetFileReq(FileInfo fileInfo, boolean close, byte[] inlineData) {
 			this.fileInfo = fileInfo;
 			this.close = close;
+			this.inlineData = inlineData;
 		}
 
 		public FileInfo getFileInfo() {
@@ -167,6 +223,10 @@ public class RpcRequestMessage {
 			return close;
 		}
 		
+		public byte[] getInlineData() {
+			return inlineData;
+		}
+		
 		public int size() {
 			return CSIZE;
 		}
@@ -179,6 +239,14 @@ public class RpcRequestMessage {
 			int written = fileInfo.write(buffer, true);
 			buffer.putInt(close ? 1 : 0);
 			written += 4;
+			if (inlineData != null && inlineData.length <= CrailConstants.INLINE_DATA){
+				buffer.putInt(inlineData.length);
+				buffer.put(inlineData);
+				written += 4 + inlineData.length;
+			} else {
+				buffer.putInt(-1);
+				written += 4;
+			}
 			return written;
 		}		
 	
@@ -187,6 +255,13 @@ public class RpcRequestMessage {
 				fileInfo.update(buffer);
 				int tmp = buffer.getInt();
 				close = (tmp == 1) ? true : false;
+				int length = buffer.getInt();
+				if (length >= 0){
+					inlineData = new byte[length];
+					buffer.get(inlineData);
+				} else {
+					inlineData = null;
+				}
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -241,19 +316,22 @@ public class RpcRequestMessage {
 	}	
 	
 	public static class RenameFileReq implements NameNodeProtocol.NameNodeRpcMessage {
-		public static int CSIZE = FileName.CSIZE*2;
+		public static int CSIZE = FileName.CSIZE*2 + 4 + FileName.NAME_CSIZE;
 		
 		protected FileName srcFileName;
 		protected FileName dstFileName;
+		protected boolean overwrite;
 
 		public RenameFileReq(){
 			this.srcFileName = new FileName();
 			this.dstFileName = new FileName();
+			this.overwrite = false;
 		}
 		
-		public RenameFileReq(FileName srcFileName, FileName dstFileName) {
+		public RenameFileReq(FileName srcFileName, FileName dstFileName, boolean overwrite) {
 			this.srcFileName = srcFileName;
 			this.dstFileName = dstFileName;
+			this.overwrite = overwrite;
 		}
 
 		public FileName getSrcFileName() {
@@ -264,6 +342,9 @@ public class RpcRequestMessage {
 			return dstFileName;
 		}
 		
+		public boolean isOverwrite() {
+			return overwrite;
+		}
 		
 		public int size() {
 			return CSIZE;
@@ -276,12 +357,17 @@ public class RpcRequestMessage {
 		public int write(ByteBuffer buffer) {
 			int written = srcFileName.write(buffer);
 			written += dstFileName.write(buffer);
+			buffer.putInt(overwrite ? 1 : 0);
+			written += 4;
+			written += dstFileName.writeName(buffer);
 			return written;
 		}		
 
 		public void update(ByteBuffer buffer) {
 			srcFileName.update(buffer);
 			dstFileName.update(buffer);
+			overwrite = buffer.getInt() == 1;
+			dstFileName.updateName(buffer);
 		}		
 	}	
 	
@@ -408,6 +494,113 @@ public class RpcRequestMessage {
 		}		
 	}
 	
+	public static class GetLocationsReq implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = FileName.CSIZE + 16;
+		
+		protected FileName fileName;
+		protected long position;
+		protected long length;
+
+		public GetLocationsReq(){
+			this.fileName = new FileName();
+			this.position = 0;
+			this.length = 0;
+		}
+		
+		public GetLocationsReq(FileName fileName, long position, long length) {
+			this.fileName = fileName;
+			this.position = position;
+			this.length = length;
+		}
+
+		public FileName getFileName() {
+			return fileName;
+		}
+		
+		public long getPosition(){
+			return this.position;
+		}
+		
+		public long getLength(){
+			return this.length;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.REQ_GET_LOCATIONS;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			fileName.write(buffer);
+			buffer.putLong(position);
+			buffer.putLong(length);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			fileName.update(buffer);
+			position = buffer.getLong();
+			length = buffer.getLong();
+		}		
+	}
+	
+	public static class ListDirReq implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = FileName.CSIZE + 16;
+		
+		protected FileName fileName;
+		protected long cursor;
+		protected long generation;
+
+		public ListDirReq(){
+			this.fileName = new FileName();
+			this.cursor = 0;
+			this.generation = -1;
+		}
+		
+		public ListDirReq(FileName fileName, long cursor, long generation) {
+			this.fileName = fileName;
+			this.cursor = cursor;
+			this.generation = generation;
+		}
+
+		public FileName getFileName() {
+			return fileName;
+		}
+		
+		public long getCursor(){
+			return cursor;
+		}
+		
+		//generation of the directory when the previous page was served, -1 for the first page
+		public long getGeneration(){
+			return generation;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.REQ_LIST_DIR;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			fileName.write(buffer);
+			buffer.putLong(cursor);
+			buffer.putLong(generation);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			fileName.update(buffer);
+			cursor = buffer.getLong();
+			generation = buffer.getLong();
+		}		
+	}
+	
 	public static class SetBlockReq implements NameNodeProtocol.NameNodeRpcMessage {
 		public static int CSIZE = BlockInfo.CSIZE;
 		
@@ -548,7 +741,628 @@ public class RpcRequestMessage {
 		public void update(ByteBuffer buffer) {
 			op = buffer.getInt();
 		}		
-	}	
+	}
+	
+	public static class ConcatFileReq implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = FileName.CSIZE*3 + 8;
+		
+		protected FileName dstFileName;
+		protected FileName srcFileName;
+		protected FileName stagingFileName;
+		protected long dstCapacity;
+
+		public ConcatFileReq(){
+			this.dstFileName = new FileName();
+			this.srcFileName = new FileName();
+			this.stagingFileName = new FileName();
+			this.dstCapacity = -1;
+		}
+		
+		public ConcatFileReq(FileName dstFileName, FileName srcFileName, FileName stagingFileName, long dstCapacity) {
+			this.dstFileName = dstFileName;
+			this.srcFileName = srcFileName;
+			this.stagingFileName = stagingFileName;
+			this.dstCapacity = dstCapacity;
+		}
+
+		public FileName getDstFileName() {
+			return dstFileName;
+		}
+
+		public FileName getSrcFileName() {
+			return srcFileName;
+		}
+		
+		public FileName getStagingFileName() {
+			return stagingFileName;
+		}
+		
+		public long getDstCapacity() {
+			return dstCapacity;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.REQ_CONCAT_FILE;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			int written = dstFileName.write(buffer);
+			written += srcFileName.write(buffer);
+			written += stagingFileName.write(buffer);
+			buffer.putLong(dstCapacity);
+			written += 8;
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			dstFileName.update(buffer);
+			srcFileName.update(buffer);
+			stagingFileName.update(buffer);
+			dstCapacity = buffer.getLong();
+		}		
+	}
+	
+	public static class ReserveFileReq implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 24;
+		
+		protected long fd;
+		protected long length;
+		protected int storageAffinity;
+		protected int locationAffinity;
+
+		public ReserveFileReq(){
+			this.fd = 0;
+			this.length = 0;
+		}
+		
+		public ReserveFileReq(long fd, long length, int storageAffinity, int locationAffinity) {
+			this.fd = fd;
+			this.length = length;
+			this.storageAffinity = storageAffinity;
+			this.locationAffinity = locationAffinity;
+		}
+
+		public long getFd() {
+			return fd;
+		}
+
+		public long getLength() {
+			return length;
+		}
+		
+		public int getStorageAffinity(){
+			return storageAffinity;
+		}
+		
+		public int getLocationAffinity(){
+			return locationAffinity;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.REQ_RESERVE_FILE;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(fd);
+			buffer.putLong(length);
+			buffer.putInt(storageAffinity);
+			buffer.putInt(locationAffinity);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			fd = buffer.getLong();
+			length = buffer.getLong();
+			storageAffinity = buffer.getInt();
+			locationAffinity = buffer.getInt();
+		}		
+	}
+	
+	public static class CommitFileReq implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 16;
+		
+		protected long fd;
+		protected long offset;
+
+		public CommitFileReq(){
+			this.fd = 0;
+			this.offset = 0;
+		}
+		
+		public CommitFileReq(long fd, long offset) {
+			this.fd = fd;
+			this.offset = offset;
+		}
+
+		public long getFd() {
+			return fd;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.REQ_COMMIT_FILE;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(fd);
+			buffer.putLong(offset);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			fd = buffer.getLong();
+			offset = buffer.getLong();
+		}		
+	}
+	
+	public static class WaitFileReq implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 24;
+		
+		protected long fd;
+		protected long capacity;
+		protected long timeout;
+
+		public WaitFileReq(){
+			this.fd = 0;
+			this.capacity = 0;
+			this.timeout = 0;
+		}
+		
+		public WaitFileReq(long fd, long capacity, long timeout) {
+			this.fd = fd;
+			this.capacity = capacity;
+			this.timeout = timeout;
+		}
+
+		public long getFd() {
+			return fd;
+		}
+
+		public long getCapacity() {
+			return capacity;
+		}
+		
+		public long getTimeout() {
+			return timeout;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.REQ_WAIT_FILE;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(fd);
+			buffer.putLong(capacity);
+			buffer.putLong(timeout);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			fd = buffer.getLong();
+			capacity = buffer.getLong();
+			timeout = buffer.getLong();
+		}		
+	}
 	
+	public static class WatchDirReq implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 28;
+		
+		protected long fd;
+		protected long watchId;
+		protected long timeout;
+		protected boolean cancel;
 
+		public WatchDirReq(){
+			this.fd = 0;
+			this.watchId = 0;
+			this.timeout = 0;
+			this.cancel = false;
+		}
+		
+		public WatchDirReq(long fd, long watchId, long timeout, boolean cancel) {
+			this.fd = fd;
+			this.watchId = watchId;
+			this.timeout = timeout;
+			this.cancel = cancel;
+		}
+
+		public long getFd() {
+			return fd;
+		}
+
+		//zero subscribes to the directory
+		public long getWatchId() {
+			return watchId;
+		}
+		
+		public long getTimeout() {
+			return timeout;
+		}
+		
+		public boolean isCancel() {
+			return cancel;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.REQ_WATCH_DIR;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(fd);
+			buffer.putLong(watchId);
+			buffer.putLong(timeout);
+			buffer.putInt(cancel ? 1 : 0);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			fd = buffer.getLong();
+			watchId = buffer.getLong();
+			timeout = buffer.getLong();
+			cancel = buffer.getInt() != 0;
+		}		
+	}
+	
+	public static class CloneFileReq implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = FileName.CSIZE*2 + FileName.NAME_CSIZE;
+		
+		protected FileName srcFileName;
+		protected FileName dstFileName;
+
+		public CloneFileReq(){
+			this.srcFileName = new FileName();
+			this.dstFileName = new FileName();
+		}
+		
+		public CloneFileReq(FileName srcFileName, FileName dstFileName) {
+			this.srcFileName = srcFileName;
+			this.dstFileName = dstFileName;
+		}
+
+		public FileName getSrcFileName() {
+			return srcFileName;
+		}
+
+		public FileName getDstFileName() {
+			return dstFileName;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.REQ_CLONE_FILE;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			int written = srcFileName.write(buffer);
+			written += dstFileName.write(buffer);
+			written += dstFileName.writeName(buffer);
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			srcFileName.update(buffer);
+			dstFileName.update(buffer);
+			dstFileName.updateName(buffer);
+		}		
+	}
+	
+	public static class CopyFileReq implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = FileName.CSIZE*2 + 16 + FileName.NAME_CSIZE;
+		
+		protected FileName srcFileName;
+		protected FileName dstFileName;
+		protected int storageAffinity;
+		protected int locationAffinity;
+		protected long bandwidth;
+
+		public CopyFileReq(){
+			this.srcFileName = new FileName();
+			this.dstFileName = new FileName();
+			this.storageAffinity = 0;
+			this.locationAffinity = 0;
+			this.bandwidth = 0;
+		}
+		
+		public CopyFileReq(FileName srcFileName, FileName dstFileName, int storageAffinity, int locationAffinity, long bandwidth) {
+			this.srcFileName = srcFileName;
+			this.dstFileName = dstFileName;
+			this.storageAffinity = storageAffinity;
+			this.locationAffinity = locationAffinity;
+			this.bandwidth = bandwidth;
+		}
+
+		public FileName getSrcFileName() {
+			return srcFileName;
+		}
+
+		public FileName getDstFileName() {
+			return dstFileName;
+		}
+		
+		public int getStorageAffinity() {
+			return storageAffinity;
+		}		
+		
+		public int getLocationAffinity() {
+			return locationAffinity;
+		}
+		
+		//bytes per second, 0 means unlimited
+		public long getBandwidth() {
+			return bandwidth;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.REQ_COPY_FILE;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			int written = srcFileName.write(buffer);
+			written += dstFileName.write(buffer);
+			buffer.putInt(storageAffinity);
+			buffer.putInt(locationAffinity);
+			buffer.putLong(bandwidth);
+			written += 16;
+			written += dstFileName.writeName(buffer);
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			srcFileName.update(buffer);
+			dstFileName.update(buffer);
+			storageAffinity = buffer.getInt();
+			locationAffinity = buffer.getInt();
+			bandwidth = buffer.getLong();
+			dstFileName.updateName(buffer);
+		}		
+	}
+	
+	public static class CopyStatusReq implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 8;
+		
+		protected long copyId;
+
+		public CopyStatusReq(){
+			this.copyId = 0;
+		}
+		
+		public CopyStatusReq(long copyId) {
+			this.copyId = copyId;
+		}
+
+		public long getCopyId() {
+			return copyId;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.REQ_COPY_STATUS;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(copyId);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			copyId = buffer.getLong();
+		}		
+	}
+	
+	public static class GetTransferReq implements NameNodeProtocol.NameNodeRpcMessage {
+		public static final int MAX_REPORTS = 64;
+		public static int CSIZE = DataNodeInfo.CSIZE + 4 + MAX_REPORTS*TransferReport.CSIZE;
+		
+		protected DataNodeInfo dnInfo;
+		protected ArrayList<TransferReport> reports;
+
+		public GetTransferReq(){
+			this.dnInfo = new DataNodeInfo();
+			this.reports = new ArrayList<TransferReport>();
+		}
+		
+		public GetTransferReq(DataNodeInfo dnInfo, ArrayList<TransferReport> reports) {
+			this.dnInfo = dnInfo;
+			this.reports = reports;
+		}
+
+		public DataNodeInfo getInfo(){
+			return this.dnInfo;
+		}
+		
+		public ArrayList<TransferReport> getReports() {
+			return reports;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.REQ_GET_TRANSFER;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			int written = dnInfo.write(buffer);
+			int entries = Math.min(reports.size(), MAX_REPORTS);
+			buffer.putInt(entries);
+			written += 4;
+			for (int i = 0; i < entries; i++){
+				written += reports.get(i).write(buffer);
+			}
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			try {
+				dnInfo.update(buffer);
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+			int entries = buffer.getInt();
+			reports.clear();
+			for (int i = 0; i < entries; i++){
+				TransferReport report = new TransferReport();
+				report.update(buffer);
+				reports.add(report);
+			}
+		}		
+	}
+	
+	public static class PinBlockReq implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 28;
+		
+		protected long fd;
+		protected long position;
+		protected long leaseId;
+		protected boolean renew;
+
+		public PinBlockReq(){
+			this.fd = 0;
+			this.position = 0;
+			this.leaseId = 0;
+			this.renew = false;
+		}
+		
+		public PinBlockReq(long fd, long position, long leaseId, boolean renew) {
+			this.fd = fd;
+			this.position = position;
+			this.leaseId = leaseId;
+			this.renew = renew;
+		}
+
+		public long getFd() {
+			return fd;
+		}
+
+		public long getPosition() {
+			return position;
+		}
+		
+		//zero pins the block at position, otherwise the lease is released or renewed
+		public long getLeaseId() {
+			return leaseId;
+		}
+		
+		public boolean isRenew() {
+			return renew;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.REQ_PIN_BLOCK;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(fd);
+			buffer.putLong(position);
+			buffer.putLong(leaseId);
+			buffer.putInt(renew ? 1 : 0);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			fd = buffer.getLong();
+			position = buffer.getLong();
+			leaseId = buffer.getLong();
+			renew = buffer.getInt() != 0;
+		}		
+	}
+	
+	//creates or replaces a closed file whose whole content is carried inline
+	public static class PutFileReq implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = FileName.CSIZE + 4 + CrailConstants.INLINE_DATA + FileName.NAME_CSIZE;
+		
+		protected FileName filename;
+		protected byte[] value;
+		
+		public PutFileReq(){
+			this.filename = new FileName();
+			this.value = null;
+		}
+		
+		public PutFileReq(FileName filename, byte[] value) {
+			this.filename = filename;
+			this.value = value;
+		}
+
+		public FileName getFileName() {
+			return filename;
+		}
+		
+		public byte[] getValue() {
+			return value;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.REQ_PUT_FILE;
+		}		
+		
+		//values that do not fit are shipped as missing and rejected by the namenode
+		public int write(ByteBuffer buffer) {
+			int written = filename.write(buffer);
+			if (value != null && value.length <= CrailConstants.INLINE_DATA){
+				buffer.putInt(value.length);
+				buffer.put(value);
+				written += 4 + value.length;
+			} else {
+				buffer.putInt(-1);
+				written += 4;
+			}
+			written += filename.writeName(buffer);
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			filename.update(buffer);
+			int length = buffer.getInt();
+			if (length >= 0){
+				value = new byte[length];
+				buffer.get(value);
+			} else {
+				value = null;
+			}
+			filename.updateName(buffer);
+		}		
+	}
 }
@@ -24,12 +24,20 @@ package com.ibm.crail.namenode.rpc;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 
+import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.namenode.protocol.BlockInfo;
 import com.ibm.crail.namenode.protocol.DataNodeStatistics;
 import com.ibm.crail.namenode.protocol.FileInfo;
+import com.ibm.crail.namenode.protocol.TransferTask;
+import com.ibm.crail.namenode.protocol.WatchEvent;
 
 public class RpcResponseMessage {
+	//the largest response with a fixed layout, paged responses are bounded by it so they do not grow the rpc slots
+	public static int MAX_FIXED_CSIZE = Math.max(Math.max(GetFileRes.CSIZE, CopyFileRes.CSIZE), Math.max(Math.max(RenameRes.CSIZE, PinBlockRes.CSIZE), GetTransferRes.CSIZE));
+	
 	public static class VoidRes implements NameNodeProtocol.NameNodeRpcMessage {
 		private short error;
 		
@@ -62,7 +70,7 @@ public class RpcResponseMessage {
 	}
 	
 	public static class CreateFileRes implements NameNodeProtocol.NameNodeRpcMessage {
-		public static int CSIZE = FileInfo.CSIZE*2 + BlockInfo.CSIZE*2;
+		public static int CSIZE = FileInfo.CSIZE*2 + BlockInfo.CSIZE*2 + BlockInfo.REPLICA_CSIZE;
 		
 		private FileInfo fileInfo;
 		private FileInfo parentInfo;
@@ -95,6 +103,7 @@ public class RpcResponseMessage {
 			int written = fileInfo.write(buffer, shipToken);
 			written += parentInfo.write(buffer, false);
 			written += fileBlock.write(buffer);
+			written += fileBlock.writeReplicas(buffer);
 			written += dirBlock.write(buffer);
 			return written;
 		}		
@@ -104,6 +113,7 @@ public class RpcResponseMessage {
 				fileInfo.update(buffer);
 				parentInfo.update(buffer);
 				fileBlock.update(buffer);
+				fileBlock.updateReplicas(buffer);
 				dirBlock.update(buffer);
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
@@ -135,8 +145,13 @@ public class RpcResponseMessage {
 			return fileBlock;
 		}
 		
+		//files that start out inline have no block yet, an empty block of length 0 is shipped instead
 		public void setFileBlock(BlockInfo blockInfo){
-			this.fileBlock.setBlockInfo(blockInfo);
+			if (blockInfo != null){
+				this.fileBlock.setBlockInfo(blockInfo);
+			} else {
+				this.fileBlock = new BlockInfo();
+			}
 		}
 		
 		public BlockInfo getDirBlock(){
@@ -165,11 +180,12 @@ public class RpcResponseMessage {
 	}	
 	
 	public static class GetFileRes implements NameNodeProtocol.NameNodeRpcMessage {
-		public static int CSIZE = FileInfo.CSIZE + BlockInfo.CSIZE;
+		public static int CSIZE = FileInfo.CSIZE + BlockInfo.CSIZE + BlockInfo.REPLICA_CSIZE + 4 + CrailConstants.INLINE_DATA;
 		
 		private FileInfo fileInfo;
 		private BlockInfo fileBlock;
 		private boolean shipToken;
+		private byte[] inlineData;
 		private short error;
 
 		public GetFileRes() {
@@ -177,6 +193,7 @@ public class RpcResponseMessage {
 			this.fileBlock = new BlockInfo();
 			
 			this.shipToken = false;
+			this.inlineData = null;
 			this.error = 0;
 		}
 		
@@ -191,6 +208,15 @@ public class RpcResponseMessage {
 		public int write(ByteBuffer buffer) {
 			int written = fileInfo.write(buffer, shipToken);
 			written += fileBlock.write(buffer);
+			written += fileBlock.writeReplicas(buffer);
+			if (inlineData != null && inlineData.length <= CrailConstants.INLINE_DATA){
+				buffer.putInt(inlineData.length);
+				buffer.put(inlineData);
+				written += 4 + inlineData.length;
+			} else {
+				buffer.putInt(-1);
+				written += 4;
+			}
 			return written;
 		}		
 
@@ -198,6 +224,14 @@ public class RpcResponseMessage {
 			try {
 				fileInfo.update(buffer);
 				fileBlock.update(buffer);
+				fileBlock.updateReplicas(buffer);
+				int length = buffer.getInt();
+				if (length >= 0){
+					inlineData = new byte[length];
+					buffer.get(inlineData);
+				} else {
+					inlineData = null;
+				}
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -221,12 +255,22 @@ public class RpcResponseMessage {
 		public void setFileBlock(BlockInfo blockInfo){
 			if (blockInfo != null){
 				fileBlock.setBlockInfo(blockInfo);
+			} else {
+				fileBlock = new BlockInfo();
 			}
 		}
 		
 		public void shipToken(){
 			this.shipToken = true;
 		}
+		
+		public byte[] getInlineData() {
+			return inlineData;
+		}
+		
+		public void setInlineData(byte[] inlineData) {
+			this.inlineData = inlineData;
+		}
 
 		public short getError(){
 			return error;
@@ -436,7 +480,7 @@ public class RpcResponseMessage {
 
 
 	public static class GetBlockRes implements NameNodeProtocol.NameNodeRpcMessage {
-		public static int CSIZE = BlockInfo.CSIZE;
+		public static int CSIZE = BlockInfo.CSIZE + BlockInfo.REPLICA_CSIZE;
 		
 		private BlockInfo blockInfo;
 		private short error;
@@ -456,12 +500,14 @@ public class RpcResponseMessage {
 		
 		public int write(ByteBuffer buffer) {
 			int written = blockInfo.write(buffer);
+			written += blockInfo.writeReplicas(buffer);
 			return written;
 		}		
 
 		public void update(ByteBuffer buffer) {
 			try {
 				blockInfo.update(buffer);
+				blockInfo.updateReplicas(buffer);
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -548,6 +594,240 @@ public class RpcResponseMessage {
 		}		
 	}	
 	
+	public static class GetLocationsRes implements NameNodeProtocol.NameNodeRpcMessage {
+		//block and replica entries that fit the rpc slot, longer ranges are paged by the client
+		public static int MAX_BLOCKS = (MAX_FIXED_CSIZE - 12) / (BlockInfo.CSIZE + 4);
+		public static int CSIZE = 12 + MAX_BLOCKS*(BlockInfo.CSIZE + 4);
+		
+		private long blockSize;
+		private BlockInfo[] blockInfos;
+		private int blockCount;
+		private int entryCount;
+		private short error;
+		
+		public GetLocationsRes() {
+			this.blockSize = 0;
+			this.blockInfos = new BlockInfo[0];
+			this.blockCount = 0;
+			this.entryCount = 0;
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.RES_GET_LOCATIONS;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(blockSize);
+			buffer.putInt(blockCount);
+			int written = 12;
+			for (int i = 0; i < blockCount; i++){
+				written += blockInfos[i].write(buffer);
+				written += blockInfos[i].writeReplicas(buffer);
+			}
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			try {
+				blockCount = 0;
+				entryCount = 0;
+				blockSize = buffer.getLong();
+				int count = buffer.getInt();
+				for (int i = 0; i < count; i++){
+					BlockInfo slot = nextSlot();
+					slot.update(buffer);
+					slot.updateReplicas(buffer);
+					entryCount += 1 + slot.getReplicaCount();
+					blockCount++;
+				}
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		//replicas count against the message capacity, replicated files return fewer blocks per call
+		public boolean addBlockInfo(BlockInfo blockInfo) {
+			int entries = 1 + blockInfo.getReplicaCount();
+			if (entryCount + entries > MAX_BLOCKS){
+				return false;
+			}
+			nextSlot().setBlockInfo(blockInfo);
+			entryCount += entries;
+			blockCount++;
+			return true;
+		}
+		
+		public void reset() {
+			this.blockSize = 0;
+			this.blockCount = 0;
+			this.entryCount = 0;
+		}
+		
+		public long getBlockSize() {
+			return blockSize;
+		}
+
+		public void setBlockSize(long blockSize) {
+			this.blockSize = blockSize;
+		}
+		
+		public int getBlockCount() {
+			return blockCount;
+		}
+
+		public BlockInfo getBlockInfo(int index) {
+			return blockInfos[index];
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+		
+		private BlockInfo nextSlot() {
+			if (blockCount == blockInfos.length){
+				BlockInfo[] tmp = new BlockInfo[Math.min(MAX_BLOCKS, Math.max(4, blockInfos.length*2))];
+				System.arraycopy(blockInfos, 0, tmp, 0, blockInfos.length);
+				for (int i = blockInfos.length; i < tmp.length; i++){
+					tmp[i] = new BlockInfo();
+				}
+				blockInfos = tmp;
+			}
+			return blockInfos[blockCount];
+		}
+	}
+	
+	public static class ListDirRes implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int PAGE = MAX_FIXED_CSIZE - 20;
+		public static int CSIZE = 20 + PAGE;
+		
+		private long cursor;
+		private long generation;
+		private ArrayList<FileInfo> fileInfos;
+		private ArrayList<byte[]> names;
+		private int pageSize;
+		private short error;
+		
+		public ListDirRes() {
+			this.cursor = -1;
+			this.generation = 0;
+			this.fileInfos = new ArrayList<FileInfo>();
+			this.names = new ArrayList<byte[]>();
+			this.pageSize = 0;
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.RES_LIST_DIR;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(cursor);
+			buffer.putLong(generation);
+			buffer.putInt(fileInfos.size());
+			for (int i = 0; i < fileInfos.size(); i++){
+				fileInfos.get(i).write(buffer, false);
+				byte[] name = names.get(i);
+				buffer.putShort((short) name.length);
+				buffer.put(name);
+			}
+			return 20 + pageSize;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			try {
+				cursor = buffer.getLong();
+				generation = buffer.getLong();
+				int entries = buffer.getInt();
+				fileInfos.clear();
+				names.clear();
+				pageSize = 0;
+				for (int i = 0; i < entries; i++){
+					FileInfo fileInfo = new FileInfo();
+					fileInfo.update(buffer);
+					byte[] name = new byte[buffer.getShort()];
+					buffer.get(name);
+					fileInfos.add(fileInfo);
+					names.add(name);
+					pageSize += FileInfo.CSIZE + 2 + name.length;
+				}
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		public boolean addEntry(FileInfo fileInfo, String name) {
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			int entrySize = FileInfo.CSIZE + 2 + bytes.length;
+			if (pageSize + entrySize > Math.min(PAGE, CrailConstants.DIRECTORY_PAGE)){
+				return false;
+			}
+			FileInfo entry = new FileInfo();
+			entry.setFileInfo(fileInfo);
+			fileInfos.add(entry);
+			names.add(bytes);
+			pageSize += entrySize;
+			return true;
+		}
+		
+		public void reset() {
+			this.cursor = -1;
+			this.generation = 0;
+			this.fileInfos.clear();
+			this.names.clear();
+			this.pageSize = 0;
+		}
+		
+		public int getEntries() {
+			return fileInfos.size();
+		}
+		
+		public FileInfo getFileInfo(int index) {
+			return fileInfos.get(index);
+		}
+		
+		public String getName(int index) {
+			return new String(names.get(index), StandardCharsets.UTF_8);
+		}
+		
+		public long getCursor() {
+			return cursor;
+		}
+
+		public void setCursor(long cursor) {
+			this.cursor = cursor;
+		}
+
+		//changes whenever a compaction moved entries, a cursor is only valid within one generation
+		public long getGeneration() {
+			return generation;
+		}
+
+		public void setGeneration(long generation) {
+			this.generation = generation;
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
 	public static class GetDataNodeRes implements NameNodeProtocol.NameNodeRpcMessage {
 		public static int CSIZE = DataNodeStatistics.CSIZE;
 		
@@ -635,4 +915,817 @@ public class RpcResponseMessage {
 			this.error = error;
 		}
 	}
+	
+	public static class ConcatFileRes implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = FileInfo.CSIZE*4;
+		
+		private FileInfo dstFile;
+		private FileInfo srcFile;
+		private FileInfo srcParent;
+		private FileInfo stagingFile;
+		
+		private short error;
+
+		public ConcatFileRes() {
+			this.dstFile = new FileInfo();
+			this.srcFile = new FileInfo();
+			this.srcParent = new FileInfo();
+			this.stagingFile = new FileInfo();
+			
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.RES_CONCAT_FILE;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			int written = dstFile.write(buffer, false);
+			written += srcFile.write(buffer, false);
+			written += srcParent.write(buffer, false);
+			written += stagingFile.write(buffer, false);
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			try {
+				dstFile.update(buffer);
+				srcFile.update(buffer);
+				srcParent.update(buffer);
+				stagingFile.update(buffer);
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
+
+		public FileInfo getDstFile() {
+			return dstFile;
+		}
+
+		public FileInfo getSrcFile() {
+			return srcFile;
+		}
+		
+		public FileInfo getSrcParent() {
+			return srcParent;
+		}
+		
+		public FileInfo getStagingFile() {
+			return stagingFile;
+		}
+		
+		public void setDstFile(FileInfo dstFile) {
+			if (dstFile != null){
+				this.dstFile.setFileInfo(dstFile);
+			}
+		}
+		
+		public void setSrcFile(FileInfo srcFile) {
+			if (srcFile != null){
+				this.srcFile.setFileInfo(srcFile);
+			}
+		}
+		
+		public void setSrcParent(FileInfo srcParent) {
+			if (srcParent != null){
+				this.srcParent.setFileInfo(srcParent);
+			}
+		}
+		
+		public void setStagingFile(FileInfo stagingFile) {
+			if (stagingFile != null){
+				this.stagingFile.setFileInfo(stagingFile);
+			}
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
+	public static class ReserveFileRes implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int MAX_BLOCKS = (MAX_FIXED_CSIZE - 20) / (BlockInfo.CSIZE + 4);
+		public static int CSIZE = 20 + MAX_BLOCKS*(BlockInfo.CSIZE + 4);
+		
+		private long offset;
+		private long capacity;
+		private BlockInfo[] blockInfos;
+		private int blockCount;
+		private int entryCount;
+		private short error;
+		
+		public ReserveFileRes() {
+			this.offset = 0;
+			this.capacity = 0;
+			this.blockInfos = new BlockInfo[0];
+			this.blockCount = 0;
+			this.entryCount = 0;
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.RES_RESERVE_FILE;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(offset);
+			buffer.putLong(capacity);
+			buffer.putInt(blockCount);
+			int written = 20;
+			for (int i = 0; i < blockCount; i++){
+				written += blockInfos[i].write(buffer);
+				written += blockInfos[i].writeReplicas(buffer);
+			}
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			try {
+				blockCount = 0;
+				entryCount = 0;
+				offset = buffer.getLong();
+				capacity = buffer.getLong();
+				int count = buffer.getInt();
+				for (int i = 0; i < count; i++){
+					BlockInfo slot = nextSlot();
+					slot.update(buffer);
+					slot.updateReplicas(buffer);
+					entryCount += 1 + slot.getReplicaCount();
+					blockCount++;
+				}
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		public boolean addBlockInfo(BlockInfo blockInfo) {
+			int entries = 1 + blockInfo.getReplicaCount();
+			if (entryCount + entries > MAX_BLOCKS){
+				return false;
+			}
+			nextSlot().setBlockInfo(blockInfo);
+			entryCount += entries;
+			blockCount++;
+			return true;
+		}
+		
+		public long getOffset() {
+			return offset;
+		}
+
+		public void setOffset(long offset) {
+			this.offset = offset;
+		}
+		
+		public long getCapacity() {
+			return capacity;
+		}
+
+		public void setCapacity(long capacity) {
+			this.capacity = capacity;
+		}
+		
+		public int getBlockCount() {
+			return blockCount;
+		}
+
+		public BlockInfo getBlockInfo(int index) {
+			return blockInfos[index];
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+		
+		private BlockInfo nextSlot() {
+			if (blockCount == blockInfos.length){
+				BlockInfo[] tmp = new BlockInfo[Math.min(MAX_BLOCKS, Math.max(4, blockInfos.length*2))];
+				System.arraycopy(blockInfos, 0, tmp, 0, blockInfos.length);
+				for (int i = blockInfos.length; i < tmp.length; i++){
+					tmp[i] = new BlockInfo();
+				}
+				blockInfos = tmp;
+			}
+			return blockInfos[blockCount];
+		}
+	}
+	
+	public static class CommitFileRes implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 8;
+		
+		private long capacity;
+		private short error;
+		
+		public CommitFileRes() {
+			this.capacity = 0;
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.RES_COMMIT_FILE;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(capacity);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			capacity = buffer.getLong();
+		}
+		
+		public long getCapacity() {
+			return capacity;
+		}
+
+		public void setCapacity(long capacity) {
+			this.capacity = capacity;
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
+	public static class WaitFileRes implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 16 + CrailConstants.INLINE_DATA;
+		
+		private long capacity;
+		private boolean closed;
+		private byte[] inlineData;
+		private short error;
+		
+		public WaitFileRes() {
+			this.capacity = 0;
+			this.closed = false;
+			this.inlineData = null;
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.RES_WAIT_FILE;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(capacity);
+			buffer.putInt(closed ? 1 : 0);
+			int written = 12;
+			if (inlineData != null && inlineData.length <= CrailConstants.INLINE_DATA){
+				buffer.putInt(inlineData.length);
+				buffer.put(inlineData);
+				written += 4 + inlineData.length;
+			} else {
+				buffer.putInt(-1);
+				written += 4;
+			}
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			capacity = buffer.getLong();
+			closed = buffer.getInt() != 0;
+			int length = buffer.getInt();
+			if (length >= 0){
+				inlineData = new byte[length];
+				buffer.get(inlineData);
+			} else {
+				inlineData = null;
+			}
+		}
+		
+		public long getCapacity() {
+			return capacity;
+		}
+
+		public void setCapacity(long capacity) {
+			this.capacity = capacity;
+		}
+		
+		//no token holder and no pending append reservation, or the file was deleted
+		public boolean isClosed() {
+			return closed;
+		}
+
+		public void setClosed(boolean closed) {
+			this.closed = closed;
+		}
+		
+		public byte[] getInlineData() {
+			return inlineData;
+		}
+
+		public void setInlineData(byte[] inlineData) {
+			this.inlineData = inlineData;
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
+	public static class WatchDirRes implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 20 + ListDirRes.PAGE;
+		
+		private long watchId;
+		private boolean overflow;
+		private boolean closed;
+		private ArrayList<WatchEvent> events;
+		private int pageSize;
+		private short error;
+		
+		public WatchDirRes() {
+			this.watchId = 0;
+			this.overflow = false;
+			this.closed = false;
+			this.events = new ArrayList<WatchEvent>();
+			this.pageSize = 0;
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.RES_WATCH_DIR;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(watchId);
+			buffer.putInt(overflow ? 1 : 0);
+			buffer.putInt(closed ? 1 : 0);
+			buffer.putInt(events.size());
+			for (WatchEvent event : events){
+				event.write(buffer);
+			}
+			return 20 + pageSize;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			watchId = buffer.getLong();
+			overflow = buffer.getInt() != 0;
+			closed = buffer.getInt() != 0;
+			int entries = buffer.getInt();
+			events.clear();
+			pageSize = 0;
+			for (int i = 0; i < entries; i++){
+				WatchEvent event = new WatchEvent();
+				event.update(buffer);
+				events.add(event);
+				pageSize += event.size();
+			}
+		}
+		
+		public boolean addEvent(WatchEvent event) {
+			if (pageSize + event.size() > Math.min(ListDirRes.PAGE, CrailConstants.DIRECTORY_PAGE)){
+				return false;
+			}
+			events.add(event);
+			pageSize += event.size();
+			return true;
+		}
+		
+		public ArrayList<WatchEvent> getEvents() {
+			return events;
+		}
+		
+		public long getWatchId() {
+			return watchId;
+		}
+
+		public void setWatchId(long watchId) {
+			this.watchId = watchId;
+		}
+		
+		//events were dropped, the directory needs to be listed again
+		public boolean isOverflow() {
+			return overflow;
+		}
+
+		public void setOverflow(boolean overflow) {
+			this.overflow = overflow;
+		}
+		
+		//the directory was deleted, or the watch was cancelled
+		public boolean isClosed() {
+			return closed;
+		}
+
+		public void setClosed(boolean closed) {
+			this.closed = closed;
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
+	//the clone shares the full blocks of the source, the rest of the source is copied by the client
+	public static class CloneFileRes extends CreateFileRes {
+		public static int CSIZE = CreateFileRes.CSIZE + 8;
+		
+		private long srcCapacity;
+		
+		public CloneFileRes() {
+			super();
+			this.srcCapacity = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.RES_CLONE_FILE;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			int written = super.write(buffer);
+			buffer.putLong(srcCapacity);
+			return written + 8;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			super.update(buffer);
+			srcCapacity = buffer.getLong();
+		}
+		
+		public long getSrcCapacity() {
+			return srcCapacity;
+		}
+
+		public void setSrcCapacity(long srcCapacity) {
+			this.srcCapacity = srcCapacity;
+		}
+	}
+	
+	//the copy target is created right away, its content is pushed by the datanodes holding the source
+	public static class CopyFileRes extends CreateFileRes {
+		public static int CSIZE = CreateFileRes.CSIZE + 16;
+		
+		private long copyId;
+		private long total;
+		
+		public CopyFileRes() {
+			super();
+			this.copyId = 0;
+			this.total = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.RES_COPY_FILE;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			int written = super.write(buffer);
+			buffer.putLong(copyId);
+			buffer.putLong(total);
+			return written + 16;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			super.update(buffer);
+			copyId = buffer.getLong();
+			total = buffer.getLong();
+		}
+		
+		public long getCopyId() {
+			return copyId;
+		}
+
+		public void setCopyId(long copyId) {
+			this.copyId = copyId;
+		}
+		
+		public long getTotal() {
+			return total;
+		}
+
+		public void setTotal(long total) {
+			this.total = total;
+		}
+	}
+	
+	public static class CopyStatusRes implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 20;
+		
+		public static final int RUNNING = 0;
+		public static final int DONE = 1;
+		public static final int FAILED = 2;
+		
+		private long total;
+		private long copied;
+		private int state;
+		private short error;
+		
+		public CopyStatusRes() {
+			this.total = 0;
+			this.copied = 0;
+			this.state = RUNNING;
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.RES_COPY_STATUS;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(total);
+			buffer.putLong(copied);
+			buffer.putInt(state);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			total = buffer.getLong();
+			copied = buffer.getLong();
+			state = buffer.getInt();
+		}
+		
+		public long getTotal() {
+			return total;
+		}
+
+		public void setTotal(long total) {
+			this.total = total;
+		}
+		
+		public long getCopied() {
+			return copied;
+		}
+
+		public void setCopied(long copied) {
+			this.copied = copied;
+		}
+		
+		public int getState() {
+			return state;
+		}
+
+		public void setState(int state) {
+			this.state = state;
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
+	//new tasks for the datanode, plus the reported tasks it should abort because their copy has ended
+	public static class GetTransferRes implements NameNodeProtocol.NameNodeRpcMessage {
+		public static final int MAX_TASKS = 16;
+		public static final int MAX_CANCELLED = RpcRequestMessage.GetTransferReq.MAX_REPORTS;
+		public static int CSIZE = 8 + MAX_TASKS*TransferTask.CSIZE + MAX_CANCELLED*8;
+		
+		private ArrayList<TransferTask> tasks;
+		private ArrayList<Long> cancelled;
+		private short error;
+		
+		public GetTransferRes() {
+			this.tasks = new ArrayList<TransferTask>();
+			this.cancelled = new ArrayList<Long>();
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.RES_GET_TRANSFER;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putInt(tasks.size());
+			int written = 4;
+			for (TransferTask task : tasks){
+				written += task.write(buffer);
+			}
+			buffer.putInt(cancelled.size());
+			written += 4;
+			for (Long taskId : cancelled){
+				buffer.putLong(taskId);
+				written += 8;
+			}
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			int entries = buffer.getInt();
+			tasks.clear();
+			for (int i = 0; i < entries; i++){
+				TransferTask task = new TransferTask();
+				try {
+					task.update(buffer);
+				} catch (UnknownHostException e) {
+					e.printStackTrace();
+				}
+				tasks.add(task);
+			}
+			entries = buffer.getInt();
+			cancelled.clear();
+			for (int i = 0; i < entries; i++){
+				cancelled.add(buffer.getLong());
+			}
+		}
+		
+		public boolean addTask(TransferTask task) {
+			if (tasks.size() >= MAX_TASKS){
+				return false;
+			}
+			tasks.add(task);
+			return true;
+		}
+		
+		public ArrayList<TransferTask> getTasks() {
+			return tasks;
+		}
+		
+		public boolean addCancelled(long taskId) {
+			if (cancelled.size() >= MAX_CANCELLED){
+				return false;
+			}
+			cancelled.add(taskId);
+			return true;
+		}
+		
+		public ArrayList<Long> getCancelled() {
+			return cancelled;
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
+	//a pinned block is not handed out again before the lease is released or expired, even if the file goes away
+	public static class PinBlockRes implements NameNodeProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 16 + BlockInfo.CSIZE + BlockInfo.REPLICA_CSIZE;
+		
+		private long leaseId;
+		private long timeout;
+		private BlockInfo blockInfo;
+		private short error;
+		
+		public PinBlockRes() {
+			this.leaseId = 0;
+			this.timeout = 0;
+			this.blockInfo = new BlockInfo();
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.RES_PIN_BLOCK;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(leaseId);
+			buffer.putLong(timeout);
+			int written = 16;
+			written += blockInfo.write(buffer);
+			written += blockInfo.writeReplicas(buffer);
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			leaseId = buffer.getLong();
+			timeout = buffer.getLong();
+			try {
+				blockInfo.update(buffer);
+				blockInfo.updateReplicas(buffer);
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		public long getLeaseId() {
+			return leaseId;
+		}
+
+		public void setLeaseId(long leaseId) {
+			this.leaseId = leaseId;
+		}
+		
+		//milliseconds after which the namenode drops the lease on its own
+		public long getTimeout() {
+			return timeout;
+		}
+
+		public void setTimeout(long timeout) {
+			this.timeout = timeout;
+		}
+
+		public BlockInfo getBlockInfo() {
+			return blockInfo;
+		}
+
+		public void setBlockInfo(BlockInfo blockInfo) {
+			if (blockInfo != null){
+				this.blockInfo.setBlockInfo(blockInfo);
+			} 
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
+	//a replaced file hands its directory slot to the new one, only new keys need a directory record
+	public static class PutFileRes extends CreateFileRes {
+		public static int CSIZE = CreateFileRes.CSIZE + 4;
+		
+		private boolean replaced;
+		
+		public PutFileRes() {
+			super();
+			this.replaced = false;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return NameNodeProtocol.RES_PUT_FILE;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			int written = super.write(buffer);
+			buffer.putInt(replaced ? 1 : 0);
+			return written + 4;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			super.update(buffer);
+			replaced = buffer.getInt() != 0;
+		}
+		
+		public boolean isReplaced() {
+			return replaced;
+		}
+
+		public void setReplaced(boolean replaced) {
+			this.replaced = replaced;
+		}
+	}
 }
@@ -22,6 +22,7 @@
 package com.ibm.crail.tools;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Random;
@@ -31,16 +32,19 @@ import java.util.concurrent.LinkedBlockingQueue;
 
 import com.ibm.crail.CrailBufferedInputStream;
 import com.ibm.crail.CrailBufferedOutputStream;
+import com.ibm.crail.CrailCodec;
 import com.ibm.crail.CrailFile;
 import com.ibm.crail.CrailFS;
 import com.ibm.crail.CrailInputStream;
 import com.ibm.crail.CrailMultiStream;
 import com.ibm.crail.CrailOutputStream;
 import com.ibm.crail.CrailResult;
+import com.ibm.crail.CrailTable;
 import com.ibm.crail.conf.CrailConfiguration;
 import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.core.CoreFileSystem;
 import com.ibm.crail.utils.GetOpt;
+import com.ibm.crail.utils.ReedSolomon;
 
 public class CrailBenchmark {
 	private int warmup;
@@ -54,7 +58,7 @@ public class CrailBenchmark {
 		System.out.println(
 				"iobench -t <writeClusterHeap|writeClusterDirect|writeLocalHeap|writeLocalDirect|writeAsyncCluster|writeAsyncLocal|"
 				+ "readSequentialHeap|readSequentialDirect|readRandomHeap|readRandomDirect|readAsync|readMultiStream|"
-				+ "enumerateDir|keyGet|createFile|getFile>"
+				+ "enumerateDir|keyGet|keyValue|createFile|getFile|erasureCode|compression>"
 				+ "-f <filename> -s <size> -k <iterations> -b <batch> -e <experiments>");
 		System.exit(1);
 	}
@@ -755,6 +759,181 @@ public class CrailBenchmark {
 		fs.close();
 	}	
 	
+	//filename is the table, loop the number of keys and batch the number of keys per multi get
+	void keyValue(String filename, int size, int loop, int batch) throws Exception {
+		System.out.println("keyValue, table " + filename + ", size " + size + ", loop " + loop + ", batch " + batch);
+		CrailConfiguration conf = new CrailConfiguration();
+		CrailFS fs = CrailFS.newInstance(conf);
+		CrailTable table = fs.openTable(filename);
+		
+		batch = Math.max(1, batch);
+		ByteBuffer[] values = new ByteBuffer[batch];
+		String[] keys = new String[batch];
+		for (int i = 0; i < batch; i++){
+			values[i] = ByteBuffer.allocateDirect(size);
+		}
+		
+		//benchmark
+		System.out.println("starting benchmark...");
+		fs.resetStatistics();
+		long[] latencies = new long[loop];
+		long start = System.nanoTime();
+		for (int i = 0; i < loop; i++){
+			long opStart = System.nanoTime();
+			values[0].clear();
+			table.put("key" + i, values[0]).get();
+			latencies[i] = System.nanoTime() - opStart;
+		}
+		long end = System.nanoTime();
+		printKeyValueStats("put", start, end, latencies, loop);
+		
+		Random random = new Random();
+		int ops = 0;
+		start = System.nanoTime();
+		while (ops < loop){
+			int count = Math.min(batch, loop - ops);
+			String[] batchKeys = count == batch ? keys : new String[count];
+			for (int i = 0; i < count; i++){
+				batchKeys[i] = "key" + random.nextInt(loop);
+				values[i].clear();
+			}
+			long opStart = System.nanoTime();
+			Future<CrailResult>[] futures = table.get(batchKeys, count == batch ? values : Arrays.copyOf(values, count));
+			for (int i = 0; i < count; i++){
+				futures[i].get();
+			}
+			long latency = System.nanoTime() - opStart;
+			for (int i = 0; i < count; i++){
+				latencies[ops++] = latency;
+			}
+		}
+		end = System.nanoTime();
+		printKeyValueStats("get", start, end, latencies, loop);
+		
+		for (int i = 0; i < loop; i++){
+			table.delete("key" + i).get().syncDir();
+		}
+		fs.printStatistics("close");
+		fs.close();
+	}
+	
+	private void printKeyValueStats(String op, long start, long end, long[] latencies, int loop){
+		double executionTime = ((double) (end - start)) / 1000.0 / 1000.0 / 1000.0;
+		double opsPerSec = executionTime > 0 ? ((double) loop) / executionTime : 0.0;
+		long[] sorted = Arrays.copyOf(latencies, loop);
+		Arrays.sort(sorted);
+		System.out.println(op + " execution time " + executionTime);
+		System.out.println(op + " ops/sec " + opsPerSec);
+		if (loop > 0){
+			System.out.println(op + " latency [us] p50 " + sorted[(int) (loop*0.5)] / 1000 + ", p90 " + sorted[(int) (loop*0.9)] / 1000 
+					+ ", p99 " + sorted[(int) (loop*0.99)] / 1000 + ", p99.9 " + sorted[(int) (loop*0.999)] / 1000 + ", max " + sorted[loop - 1] / 1000);
+		}
+	}
+	
+	//pure codec throughput, size is the cell size and batch the number of data fragments
+	void erasureCode(int size, int loop, int batch) throws Exception {
+		int dataFragments = Math.max(1, batch);
+		int parityFragments = 2;
+		System.out.println("erasureCode, cellSize " + size + ", loop " + loop + ", fragments " + dataFragments + "+" + parityFragments);
+		ReedSolomon codec = new ReedSolomon(dataFragments, parityFragments);
+		ByteBuffer[] shards = new ByteBuffer[dataFragments + parityFragments];
+		ByteBuffer[] data = new ByteBuffer[dataFragments];
+		ByteBuffer[] parity = new ByteBuffer[parityFragments];
+		Random random = new Random();
+		byte[] content = new byte[size];
+		for (int i = 0; i < shards.length; i++){
+			shards[i] = ByteBuffer.allocateDirect(size);
+			if (i < dataFragments){
+				random.nextBytes(content);
+				shards[i].put(content);
+				shards[i].clear();
+				data[i] = shards[i];
+			} else {
+				parity[i - dataFragments] = shards[i];
+			}
+		}
+		
+		//benchmark
+		System.out.println("starting benchmark...");
+		double sumbytes = ((double) size) * dataFragments * loop;
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < loop; i++){
+			codec.encode(data, parity, size);
+		}
+		long end = System.currentTimeMillis();
+		printCodecThroughput("encode", start, end, sumbytes, loop);
+		
+		boolean[] present = new boolean[shards.length];
+		for (int i = 0; i < present.length; i++){
+			present[i] = i != 0;
+		}
+		start = System.currentTimeMillis();
+		for (int i = 0; i < loop; i++){
+			codec.decode(shards, present, size);
+		}
+		end = System.currentTimeMillis();
+		printCodecThroughput("decode", start, end, sumbytes, loop);
+	}
+	
+	//pure codec throughput on text-like data, size is the frame size and batch the codec type
+	void compression(int size, int loop, int batch) throws Exception {
+		CrailCodec codec = CrailCodec.createInstance(batch);
+		if (codec == null){
+			throw new Exception("no codec given, use -b " + CrailCodec.LZ + " (lz) or -b " + CrailCodec.DEFLATE + " (deflate)");
+		}
+		System.out.println("compression, frameSize " + size + ", loop " + loop + ", codec " + batch);
+		Random random = new Random();
+		String[] words = new String[256];
+		for (int i = 0; i < words.length; i++){
+			words[i] = Long.toString(random.nextLong() & 0xffffffL, 36) + " ";
+		}
+		ByteBuffer raw = ByteBuffer.allocateDirect(size);
+		while (raw.hasRemaining()){
+			byte[] word = words[random.nextInt(words.length)].getBytes();
+			raw.put(word, 0, Math.min(word.length, raw.remaining()));
+		}
+		raw.clear();
+		ByteBuffer compressed = ByteBuffer.allocateDirect(codec.maxCompressedLength(size));
+		ByteBuffer decompressed = ByteBuffer.allocateDirect(size);
+		
+		//benchmark
+		System.out.println("starting benchmark...");
+		double sumbytes = ((double) size) * loop;
+		int compressedLen = 0;
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < loop; i++){
+			raw.clear();
+			compressed.clear();
+			compressedLen = codec.compress(raw, compressed);
+		}
+		long end = System.currentTimeMillis();
+		printCodecThroughput("compress", start, end, sumbytes, loop);
+		
+		start = System.currentTimeMillis();
+		for (int i = 0; i < loop; i++){
+			compressed.clear().limit(compressedLen);
+			decompressed.clear();
+			codec.decompress(compressed, decompressed);
+		}
+		end = System.currentTimeMillis();
+		printCodecThroughput("decompress", start, end, sumbytes, loop);
+		System.out.println("compressed size " + compressedLen);
+		System.out.println("ratio " + (((double) size) / compressedLen));
+	}
+	
+	private void printCodecThroughput(String op, long start, long end, double sumbytes, int loop){
+		double executionTime = ((double) (end - start)) / 1000.0;
+		double throughput = 0.0;
+		double latency = 0.0;
+		if (executionTime > 0) {
+			throughput = sumbytes * 8.0 / executionTime / 1000.0 / 1000.0;
+			latency = 1000000.0 * executionTime / loop;
+		}
+		System.out.println(op + " execution time " + executionTime);
+		System.out.println(op + " throughput " + throughput);
+		System.out.println(op + " latency " + latency);
+	}
+	
 	private void warmUp(CrailFS fs, String filename, int operations, ConcurrentLinkedQueue<ByteBuffer> bufferList) throws Exception {
 		String warmupFilename = filename + ".warmup";
 		System.out.println("warmUp, warmupFile " + warmupFilename + ", operations " + operations);
@@ -903,6 +1082,21 @@ public class CrailBenchmark {
 				System.out.println("experiment " + i);
 				benchmark.keyGet(filename, size, loop);
 			}
+		} else if (type.equalsIgnoreCase("keyValue")) {
+			for (int i = 0; i < experiments; i++){
+				System.out.println("experiment " + i);
+				benchmark.keyValue(filename, size, loop, batch);
+			}
+		} else if (type.equalsIgnoreCase("erasureCode")) {
+			for (int i = 0; i < experiments; i++){
+				System.out.println("experiment " + i);
+				benchmark.erasureCode(size, loop, batch);
+			}
+		} else if (type.equalsIgnoreCase("compression")) {
+			for (int i = 0; i < experiments; i++){
+				System.out.println("experiment " + i);
+				benchmark.compression(size, loop, batch);
+			}
 		} else {
 			usage();
 			System.exit(0);
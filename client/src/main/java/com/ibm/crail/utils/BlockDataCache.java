@@ -0,0 +1,300 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.conf.CrailConstants;
+
+public class BlockDataCache {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private int pageSize;
+	private long maxPages;
+	private long allocatedPages;
+	private boolean fileBacked;
+	private File dir;
+	private int currentRegion;
+	private LinkedHashMap<PageKey, CachePage> pages;
+	private LinkedList<ByteBuffer> freeSlots;
+	
+	private AtomicLong cacheHits;
+	private AtomicLong cacheMisses;
+	private AtomicLong cacheInserts;
+	private AtomicLong cacheEvictions;
+	
+	public BlockDataCache() throws IOException {
+		this.pageSize = CrailConstants.DATA_CACHE_PAGE_SIZE;
+		this.maxPages = CrailConstants.DATA_CACHE_LIMIT / pageSize;
+		this.allocatedPages = 0;
+		this.fileBacked = CrailConstants.DATA_CACHE_TYPE.equalsIgnoreCase("file");
+		this.currentRegion = 0;
+		this.pages = new LinkedHashMap<PageKey, CachePage>(16, 0.75f, true);
+		this.freeSlots = new LinkedList<ByteBuffer>();
+		
+		this.cacheHits = new AtomicLong(0);
+		this.cacheMisses = new AtomicLong(0);
+		this.cacheInserts = new AtomicLong(0);
+		this.cacheEvictions = new AtomicLong(0);
+		
+		if (fileBacked){
+			dir = new File(CrailConstants.DATA_CACHE_PATH + "/" + System.currentTimeMillis());
+			if (!dir.exists()){
+				dir.mkdirs();
+			}
+			for (File child : dir.listFiles()) {
+				child.delete();
+			}
+		}
+		LOG.info("block data cache, type " + CrailConstants.DATA_CACHE_TYPE + ", pageSize " + pageSize + ", maxPages " + maxPages);
+	}
+	
+	public boolean read(long fd, long capacity, long modificationTime, long fileOffset, ByteBuffer buffer) {
+		long start = fileOffset;
+		long end = fileOffset + buffer.remaining();
+		ByteBuffer target = buffer.duplicate();
+		
+		synchronized(this){
+			for (long page = start / pageSize; page * pageSize < end; page++){
+				long pageStart = page * pageSize;
+				long required = Math.min(end, pageStart + pageSize) - pageStart;
+				PageKey key = new PageKey(fd, page);
+				CachePage cachePage = pages.get(key);
+				if (cachePage != null && !cachePage.matches(capacity, modificationTime)){
+					pages.remove(key);
+					freeSlots.add(cachePage.getData());
+					cachePage = null;
+				}
+				if (cachePage == null || cachePage.getLength() < required){
+					cacheMisses.incrementAndGet();
+					return false;
+				}
+			}
+			
+			for (long page = start / pageSize; page * pageSize < end; page++){
+				long pageStart = page * pageSize;
+				CachePage cachePage = pages.get(new PageKey(fd, page));
+				ByteBuffer src = cachePage.getData().duplicate();
+				src.clear();
+				src.position((int) (Math.max(start, pageStart) - pageStart));
+				src.limit((int) (Math.min(end, pageStart + pageSize) - pageStart));
+				target.put(src);
+			}
+		}
+		cacheHits.incrementAndGet();
+		return true;
+	}
+	
+	public void write(long fd, long capacity, long modificationTime, long fileOffset, ByteBuffer buffer) throws IOException {
+		long start = fileOffset;
+		long end = fileOffset + buffer.remaining();
+		
+		//only pages fully covered by the transfer (or ending at the end of the file) are cached
+		for (long page = (start + pageSize - 1) / pageSize; page * pageSize < end; page++){
+			long pageStart = page * pageSize;
+			long pageEnd = Math.min(pageStart + pageSize, capacity);
+			if (pageEnd > end || pageEnd <= pageStart){
+				break;
+			}
+			int length = (int) (pageEnd - pageStart);
+			PageKey key = new PageKey(fd, page);
+			
+			synchronized(this){
+				CachePage cachePage = pages.remove(key);
+				ByteBuffer slot = null;
+				if (cachePage != null){
+					if (cachePage.matches(capacity, modificationTime) && cachePage.getLength() >= length){
+						pages.put(key, cachePage);
+						continue;
+					}
+					slot = cachePage.getData();
+				} else {
+					slot = allocateSlot();
+				}
+				if (slot == null){
+					return;
+				}
+				
+				ByteBuffer src = buffer.duplicate();
+				src.position(buffer.position() + (int) (pageStart - start));
+				src.limit(src.position() + length);
+				slot.clear();
+				slot.put(src);
+				pages.put(key, new CachePage(capacity, modificationTime, length, slot));
+				cacheInserts.incrementAndGet();
+			}
+		}
+	}
+	
+	public long hits(){
+		return cacheHits.get();
+	}
+	
+	public long misses(){
+		return cacheMisses.get();
+	}
+	
+	public long inserts(){
+		return cacheInserts.get();
+	}
+	
+	public long evictions(){
+		return cacheEvictions.get();
+	}
+	
+	public double hitRate(){
+		long hits = cacheHits.get();
+		long total = hits + cacheMisses.get();
+		return total > 0 ? ((double) hits) / ((double) total) : 0.0;
+	}
+	
+	public synchronized long size(){
+		return pages.size();
+	}
+	
+	public void reset(){
+		this.cacheHits.set(0);
+		this.cacheMisses.set(0);
+		this.cacheInserts.set(0);
+		this.cacheEvictions.set(0);
+	}
+	
+	public synchronized void close(){
+		pages.clear();
+		freeSlots.clear();
+		if (fileBacked && dir.exists()){
+			for (File child : dir.listFiles()) {
+				child.delete();
+			}
+			dir.delete();
+		}
+	}
+	
+	//-----------
+	
+	private ByteBuffer allocateSlot() throws IOException {
+		if (!freeSlots.isEmpty()){
+			return freeSlots.poll();
+		}
+		if (allocatedPages < maxPages){
+			if (fileBacked){
+				allocateRegion();
+				return freeSlots.poll();
+			} else {
+				allocatedPages++;
+				return ByteBuffer.allocateDirect(pageSize);
+			}
+		}
+		
+		if (pages.isEmpty()){
+			return null;
+		}
+		Iterator<Map.Entry<PageKey, CachePage>> iter = pages.entrySet().iterator();
+		CachePage eldest = iter.next().getValue();
+		iter.remove();
+		cacheEvictions.incrementAndGet();
+		return eldest.getData();
+	}
+	
+	private void allocateRegion() throws IOException {
+		long regionPages = Math.min(maxPages - allocatedPages, CrailConstants.REGION_SIZE / pageSize);
+		long regionSize = regionPages * pageSize;
+		String path = dir.getAbsolutePath() + "/" + currentRegion++;
+		RandomAccessFile randomFile = new RandomAccessFile(path, "rw");
+		randomFile.setLength(regionSize);
+		FileChannel channel = randomFile.getChannel();
+		MappedByteBuffer mappedBuffer = channel.map(MapMode.READ_WRITE, 0, regionSize);
+		randomFile.close();
+		channel.close();
+		
+		for (int i = 0; i < regionPages; i++){
+			mappedBuffer.clear();
+			mappedBuffer.position(i * pageSize);
+			mappedBuffer.limit(i * pageSize + pageSize);
+			freeSlots.add(mappedBuffer.slice());
+		}
+		allocatedPages += regionPages;
+	}
+	
+	private static class PageKey {
+		private long fd;
+		private long page;
+		
+		public PageKey(long fd, long page){
+			this.fd = fd;
+			this.page = page;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(fd) * 31 + Long.hashCode(page);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof PageKey)){
+				return false;
+			}
+			PageKey other = (PageKey) obj;
+			return fd == other.fd && page == other.page;
+		}
+	}
+	
+	private static class CachePage {
+		private long capacity;
+		private long modificationTime;
+		private int length;
+		private ByteBuffer data;
+		
+		public CachePage(long capacity, long modificationTime, int length, ByteBuffer data){
+			this.capacity = capacity;
+			this.modificationTime = modificationTime;
+			this.length = length;
+			this.data = data;
+		}
+		
+		public boolean matches(long capacity, long modificationTime){
+			return this.capacity == capacity && this.modificationTime == modificationTime;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		public ByteBuffer getData() {
+			return data;
+		}
+	}
+}
@@ -48,16 +48,75 @@ public class CrailUtils {
 	}
 	
 	public static long blockStartAddress(long offset) {
-		long blockCount = offset / CrailConstants.BLOCK_SIZE;
-		return blockCount*CrailConstants.BLOCK_SIZE;
+		return blockStartAddress(offset, CrailConstants.BLOCK_SIZE);
+	}
+	
+	public static long blockStartAddress(long offset, long blockSize) {
+		return blockAddress(computeIndex(offset, blockSize), blockSize);
 	}
 	
 	public static long nextBlockAddress(long offset){
-		if ((offset % CrailConstants.BLOCK_SIZE) == 0){
+		return nextBlockAddress(offset, CrailConstants.BLOCK_SIZE);
+	}
+	
+	public static long nextBlockAddress(long offset, long blockSize){
+		int index = computeIndex(offset, blockSize);
+		long blockStart = blockAddress(index, blockSize);
+		if (blockStart == offset){
 			return offset;
 		} else {
-			return blockStartAddress(offset) + CrailConstants.BLOCK_SIZE;
+			return blockStart + blockLength(index, blockSize);
+		}
+	}
+	
+	public static long blockAddress(int index, long blockSize){
+		if (blockSize < CrailConstants.BLOCK_SIZE){
+			int slabBlocks = slabBlocks(blockSize);
+			if (index == 0){
+				return 0;
+			} else if (index < slabBlocks){
+				return blockSize << (index - 1);
+			}
+			return Long.highestOneBit(CrailConstants.BLOCK_SIZE) + (index - slabBlocks)*CrailConstants.BLOCK_SIZE;
+		}
+		return index*blockSize;
+	}
+	
+	public static long blockLength(int index, long blockSize){
+		if (blockSize < CrailConstants.BLOCK_SIZE){
+			if (index == 0){
+				return blockSize;
+			} else if (index < slabBlocks(blockSize)){
+				return blockSize << (index - 1);
+			}
+			return CrailConstants.BLOCK_SIZE;
+		}
+		return blockSize;
+	}
+	
+	//concat relinks the blocks of the source at this offset of the target, the sizes of slab file blocks only line up from the start
+	public static long concatAddress(long capacity, long blockSize){
+		if (blockSize < CrailConstants.BLOCK_SIZE){
+			return 0;
 		}
+		return blockStartAddress(capacity, blockSize);
+	}
+	
+	//number of blocks of a slab file that are smaller than crail.blocksize
+	private static int slabBlocks(long blockSize){
+		return Long.numberOfLeadingZeros(blockSize) - Long.numberOfLeadingZeros(Long.highestOneBit(CrailConstants.BLOCK_SIZE)) + 1;
+	}
+	
+	//files expected to stay below crail.slab.max start with the smallest slab that fits
+	public static long blockSizeForHint(long sizeHint){
+		if (CrailConstants.SLAB_MAX <= 0 || sizeHint <= 0 || sizeHint > CrailConstants.SLAB_MAX){
+			return CrailConstants.BLOCK_SIZE;
+		}
+		long blockSize = CrailConstants.SLAB_MIN;
+		while (blockSize < sizeHint){
+			blockSize = blockSize << 1;
+		}
+		return blockSize;
 	}
 
 	public static int minFileBuf(long fileSize, int bufSize) {
@@ -132,7 +191,22 @@ public class CrailUtils {
 	}
 
 	public static int computeIndex(long offset) {
-		long index = offset / CrailConstants.BLOCK_SIZE;
+		return computeIndex(offset, CrailConstants.BLOCK_SIZE);
+	}
+	
+	//files with a slab block size grow geometrically, two blocks of the slab size followed by blocks doubling in size,
+	//once the file reaches crail.blocksize rounded down to a power of two it continues with full blocks
+	public static int computeIndex(long offset, long blockSize) {
+		if (blockSize < CrailConstants.BLOCK_SIZE){
+			long limit = Long.highestOneBit(CrailConstants.BLOCK_SIZE);
+			if (offset < blockSize){
+				return 0;
+			} else if (offset < limit){
+				return Long.numberOfLeadingZeros(blockSize) - Long.numberOfLeadingZeros(offset) + 1;
+			}
+			return slabBlocks(blockSize) + (int) ((offset - limit) / CrailConstants.BLOCK_SIZE);
+		}
+		long index = offset / blockSize;
 		return (int) index;
 	}
 	
@@ -0,0 +1,99 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.ibm.crail.CrailCodec;
+
+public class DeflateCodec extends CrailCodec {
+	private Deflater deflater;
+	private Inflater inflater;
+	private byte[] in;
+	private byte[] out;
+	
+	public DeflateCodec(){
+		this.deflater = new Deflater(Deflater.BEST_SPEED, true);
+		this.inflater = new Inflater(true);
+		this.in = new byte[0];
+		this.out = new byte[0];
+	}
+
+	@Override
+	public int getType() {
+		return CrailCodec.DEFLATE;
+	}
+
+	@Override
+	public int maxCompressedLength(int len) {
+		return len + (len >> 12) + (len >> 14) + (len >> 25) + 64;
+	}
+
+	@Override
+	public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+		int len = src.remaining();
+		ensure(len, dst.remaining());
+		src.get(in, 0, len);
+		deflater.reset();
+		deflater.setInput(in, 0, len);
+		deflater.finish();
+		int outLen = deflater.deflate(out, 0, dst.remaining());
+		if (!deflater.finished()){
+			return -1;
+		}
+		dst.put(out, 0, outLen);
+		return outLen;
+	}
+
+	@Override
+	public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+		int len = src.remaining();
+		ensure(len, dst.remaining());
+		src.get(in, 0, len);
+		inflater.reset();
+		inflater.setInput(in, 0, len);
+		try {
+			int outLen = inflater.inflate(out, 0, dst.remaining());
+			if (!inflater.finished()){
+				throw new IOException("corrupt compressed block");
+			}
+			dst.put(out, 0, outLen);
+			return outLen;
+		} catch(DataFormatException e){
+			throw new IOException(e);
+		}
+	}
+	
+	private void ensure(int inLen, int outLen){
+		if (in.length < inLen){
+			in = new byte[inLen];
+		}
+		if (out.length < outLen){
+			out = new byte[outLen];
+		}
+	}
+}
@@ -23,96 +23,169 @@ package com.ibm.crail.utils;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 
 import com.ibm.crail.conf.CrailConstants;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class DirectBufferCache {
-	private LinkedBlockingQueue<ByteBuffer> cache;
+	private int[] classSizes;
+	private ArrayList<ConcurrentLinkedQueue<ByteBuffer>> sharedPools;
+	private ArrayList<IdentityHashMap<ByteBuffer, Carving>> carvings;
+	private ThreadLocal<ThreadCache> threadCache;
+	private ConcurrentLinkedQueue<ThreadCache> threadCaches;
+	private int threadCacheSize;
+	private long reclaimLimit;
+	private AtomicLong reclaimableBytes;
 	
-	private AtomicLong cacheGet;
-	private AtomicLong cachePut;
-	private AtomicLong cacheMisses;
-	private AtomicLong cacheOut;
-	private AtomicLong cacheMax;
+	private LongAdder cacheGet;
+	private LongAdder cachePut;
+	private LongAdder cacheMisses;
+	private LongAdder cacheAllocated;
+	private LongAdder cacheReclaimed;
+	private LongAdder cacheSize;
 	
 	public DirectBufferCache() throws IOException{
-		this.cache = new LinkedBlockingQueue<ByteBuffer>();
+		int count = 1;
+		for (long size = CrailConstants.BUFFER_MIN_SIZE; size < CrailConstants.BUFFER_SIZE; size <<= 1){
+			count++;
+		}
+		this.classSizes = new int[count];
+		this.sharedPools = new ArrayList<ConcurrentLinkedQueue<ByteBuffer>>(count);
+		this.carvings = new ArrayList<IdentityHashMap<ByteBuffer, Carving>>(count);
+		for (int i = 0; i < count - 1; i++){
+			classSizes[i] = CrailConstants.BUFFER_MIN_SIZE << i;
+			sharedPools.add(new ConcurrentLinkedQueue<ByteBuffer>());
+			carvings.add(new IdentityHashMap<ByteBuffer, Carving>());
+		}
+		classSizes[count - 1] = CrailConstants.BUFFER_SIZE;
+		sharedPools.add(new ConcurrentLinkedQueue<ByteBuffer>());
+		carvings.add(new IdentityHashMap<ByteBuffer, Carving>());
 		
-		this.cacheGet = new AtomicLong(0);
-		this.cachePut = new AtomicLong(0);
-		this.cacheMisses = new AtomicLong(0);
-		this.cacheOut = new AtomicLong(0);
-		this.cacheMax = new AtomicLong(0);
+		this.threadCaches = new ConcurrentLinkedQueue<ThreadCache>();
+		this.threadCache = new ThreadLocal<ThreadCache>(){
+			protected ThreadCache initialValue() {
+				ThreadCache cache = new ThreadCache(Thread.currentThread(), classSizes.length);
+				threadCaches.add(cache);
+				return cache;
+			}
+		};
+		this.threadCacheSize = CrailConstants.BUFFER_THREAD_CACHE;
+		this.reclaimLimit = CrailConstants.CACHE_LIMIT;
+		this.reclaimableBytes = new AtomicLong(0);
+		
+		this.cacheGet = new LongAdder();
+		this.cachePut = new LongAdder();
+		this.cacheMisses = new LongAdder();
+		this.cacheAllocated = new LongAdder();
+		this.cacheReclaimed = new LongAdder();
+		this.cacheSize = new LongAdder();
 	}
 	
 	public ByteBuffer getBuffer() throws IOException {
-		cacheGet.incrementAndGet();
-		cacheOut.incrementAndGet();
-		cacheMax.updateAndGet(x -> Math.max(x, cacheOut.get()));
+		return getBuffer(CrailConstants.BUFFER_SIZE);
+	}
+	
+	public ByteBuffer getBuffer(int size) throws IOException {
+		int sizeClass = sizeClass(size);
+		cacheGet.increment();
 		
-		ByteBuffer buffer = cache.poll();
+		ByteBuffer buffer = threadCache.get().poll(sizeClass);
+		if (buffer == null){
+			buffer = pollShared(sizeClass);
+		}
 		if (buffer == null){
 			synchronized(this){
-				buffer = cache.poll();
+				buffer = pollShared(sizeClass);
+				if (buffer == null){
+					reclaimThreadCaches();
+					buffer = pollShared(sizeClass);
+				}
 				if (buffer == null){
-					cacheMisses.incrementAndGet();
-					buffer = allocateBuffer();
+					cacheMisses.increment();
+					buffer = allocateClass(sizeClass);
 				}
 			}
 		} 
 		
 		buffer.clear();
+		buffer.limit(size);
 		return buffer;
 	}
 	
 	public void putBuffer(ByteBuffer buffer) throws IOException{
-		cachePut.incrementAndGet();
-		cacheOut.decrementAndGet();
-		putBufferInternal(buffer);
+		cachePut.increment();
+		int sizeClass = classOf(buffer.capacity());
+		if (sizeClass < 0){
+			return;
+		}
+		if (!threadCache.get().offer(sizeClass, buffer, threadCacheSize)){
+			putShared(sizeClass, buffer);
+		}
 	}
 	
 	public void putBufferInternal(ByteBuffer buffer) throws IOException{
-		cache.add(buffer);
+		putShared(classSizes.length - 1, buffer);
 	}	
 	
 	public long get() {
-		return cacheGet.get();
+		return cacheGet.sum();
 	}
 	
 	public long put(){
-		return cachePut.get();
+		return cachePut.sum();
 	}
 	
 	public long missed() {
-		return cacheMisses.get();
+		return cacheMisses.sum();
 	}
 	
 	public long max() {
-		return cacheMax.get();
+		return cacheAllocated.sum();
+	}
+	
+	public long reclaimed() {
+		return cacheReclaimed.sum();
 	}
 	
 	public long size() {
-		return cache.size();
+		return cacheSize.sum();
 	}	
 	
 	public void close(){
-		cache.clear();
+		for (int i = 0; i < classSizes.length; i++){
+			ConcurrentLinkedQueue<ByteBuffer> pool = sharedPools.get(i);
+			synchronized(pool){
+				pool.clear();
+				carvings.get(i).clear();
+			}
+		}
+		threadCaches.clear();
+		cacheSize.reset();
+		reclaimableBytes.set(0);
 	}
 
 	public void reset(){
-		this.cacheGet.set(0);
-		this.cachePut.set(0);
-		this.cacheMisses.set(0);
-		this.cacheOut.set(0);
-		this.cacheMax.set(0);
+		this.cacheGet.reset();
+		this.cachePut.reset();
+		this.cacheMisses.reset();
+		this.cacheAllocated.reset();
+		this.cacheReclaimed.reset();
 	}
 	
 	protected ByteBuffer allocateBuffer() throws IOException{
 		return ByteBuffer.allocateDirect(CrailConstants.BUFFER_SIZE);
 	}
+	
+	protected boolean isReclaimable(ByteBuffer buffer){
+		return true;
+	}
 
 	public ByteBuffer getAllocationBuffer(ByteBuffer buffer) {
 		return null;
@@ -125,5 +198,194 @@ public class DirectBufferCache {
 	public long missedMap() {
 		return 0;
 	}
+	
+	//-----------
+	
+	private int sizeClass(int size) throws IOException {
+		if (size < 0 || size > CrailConstants.BUFFER_SIZE){
+			throw new IOException("buffer size out of range, size " + size + ", max " + CrailConstants.BUFFER_SIZE);
+		}
+		int sizeClass = 0;
+		while (classSizes[sizeClass] < size){
+			sizeClass++;
+		}
+		return sizeClass;
+	}
+	
+	private int classOf(int capacity){
+		for (int i = 0; i < classSizes.length; i++){
+			if (classSizes[i] == capacity){
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	private ByteBuffer allocateClass(int sizeClass) throws IOException {
+		int topClass = classSizes.length - 1;
+		ByteBuffer chunk = pollShared(topClass);
+		if (chunk == null){
+			cacheAllocated.increment();
+			chunk = allocateBuffer();
+		}
+		if (sizeClass == topClass){
+			return chunk;
+		}
+		
+		//carve a full size buffer into buffers of the requested class, the chunk is remembered so the 
+		//slices can be put back together once they are all returned
+		int classSize = classSizes[sizeClass];
+		int count = chunk.capacity() / classSize;
+		Carving carving = new Carving(chunk, count);
+		ByteBuffer[] slices = new ByteBuffer[count];
+		ConcurrentLinkedQueue<ByteBuffer> pool = sharedPools.get(sizeClass);
+		synchronized(pool){
+			for (int i = 0; i < count; i++){
+				slices[i] = slice(chunk, i * classSize, classSize);
+				carvings.get(sizeClass).put(slices[i], carving);
+			}
+		}
+		for (int i = 1; i < count; i++){
+			putShared(sizeClass, slices[i]);
+		}
+		return slices[0];
+	}
+	
+	private ByteBuffer slice(ByteBuffer chunk, int position, int size){
+		chunk.clear();
+		chunk.position(position);
+		chunk.limit(position + size);
+		return chunk.slice();
+	}
+	
+	private ByteBuffer pollShared(int sizeClass){
+		ByteBuffer buffer = null;
+		if (sizeClass == classSizes.length - 1){
+			buffer = sharedPools.get(sizeClass).poll();
+		} else {
+			ConcurrentLinkedQueue<ByteBuffer> pool = sharedPools.get(sizeClass);
+			synchronized(pool){
+				buffer = pool.poll();
+				Carving carving = carvings.get(sizeClass).get(buffer);
+				if (carving != null){
+					carving.pooled--;
+				}
+			}
+		}
+		if (buffer != null){
+			cacheSize.decrement();
+			if (isReclaimable(buffer)){
+				reclaimableBytes.addAndGet(-buffer.capacity());
+			}
+		}
+		return buffer;
+	}
+	
+	private void putShared(int sizeClass, ByteBuffer buffer){
+		if (sizeClass < classSizes.length - 1 && putSlice(sizeClass, buffer)){
+			return;
+		}
+		if (isReclaimable(buffer)){
+			if (reclaimableBytes.addAndGet(buffer.capacity()) > reclaimLimit){
+				reclaimableBytes.addAndGet(-buffer.capacity());
+				cacheReclaimed.increment();
+				return;
+			}
+		}
+		sharedPools.get(sizeClass).add(buffer);
+		cacheSize.increment();
+	}
+	
+	//dropping a slice frees nothing while its siblings are alive, so slices always go back to the pool 
+	//and the byte limit is applied to the whole chunk once every slice of it has been returned
+	private boolean putSlice(int sizeClass, ByteBuffer buffer){
+		ConcurrentLinkedQueue<ByteBuffer> pool = sharedPools.get(sizeClass);
+		IdentityHashMap<ByteBuffer, Carving> carved = carvings.get(sizeClass);
+		Carving carving = null;
+		synchronized(pool){
+			carving = carved.get(buffer);
+			if (carving == null){
+				return false;
+			}
+			pool.add(buffer);
+			cacheSize.increment();
+			if (isReclaimable(buffer)){
+				reclaimableBytes.addAndGet(buffer.capacity());
+			}
+			carving.pooled++;
+			if (carving.pooled < carving.count){
+				return true;
+			}
+			for (Iterator<ByteBuffer> iter = pool.iterator(); iter.hasNext(); ){
+				ByteBuffer slice = iter.next();
+				if (carved.get(slice) == carving){
+					iter.remove();
+					carved.remove(slice);
+					cacheSize.decrement();
+					if (isReclaimable(slice)){
+						reclaimableBytes.addAndGet(-slice.capacity());
+					}
+				}
+			}
+		}
+		carving.chunk.clear();
+		putShared(classSizes.length - 1, carving.chunk);
+		return true;
+	}
+	
+	private void reclaimThreadCaches(){
+		for (Iterator<ThreadCache> iter = threadCaches.iterator(); iter.hasNext(); ){
+			ThreadCache cache = iter.next();
+			if (!cache.getOwner().isAlive()){
+				iter.remove();
+				for (int i = 0; i < classSizes.length; i++){
+					for (ByteBuffer buffer = cache.poll(i); buffer != null; buffer = cache.poll(i)){
+						putShared(i, buffer);
+					}
+				}
+			}
+		}
+	}
+	
+	private static class Carving {
+		private ByteBuffer chunk;
+		private int count;
+		private int pooled;
+		
+		public Carving(ByteBuffer chunk, int count){
+			this.chunk = chunk;
+			this.count = count;
+			this.pooled = 0;
+		}
+	}
+	
+	private static class ThreadCache {
+		private Thread owner;
+		private ArrayList<ArrayDeque<ByteBuffer>> buffers;
+		
+		public ThreadCache(Thread owner, int classes){
+			this.owner = owner;
+			this.buffers = new ArrayList<ArrayDeque<ByteBuffer>>(classes);
+			for (int i = 0; i < classes; i++){
+				buffers.add(new ArrayDeque<ByteBuffer>());
+			}
+		}
+		
+		public ByteBuffer poll(int sizeClass){
+			return buffers.get(sizeClass).poll();
+		}
+		
+		public boolean offer(int sizeClass, ByteBuffer buffer, int max){
+			ArrayDeque<ByteBuffer> queue = buffers.get(sizeClass);
+			if (queue.size() >= max){
+				return false;
+			}
+			queue.push(buffer);
+			return true;
+		}
+		
+		public Thread getOwner(){
+			return owner;
+		}
+	}
 }
-
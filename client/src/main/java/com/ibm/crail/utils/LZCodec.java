@@ -0,0 +1,204 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.ibm.crail.CrailCodec;
+
+//byte oriented LZ77 with the lz4 block layout: a token with literal and match length nibbles, 
+//the literals, a 2 byte little endian match offset, length nibbles of 15 continue in 255-terminated bytes
+public class LZCodec extends CrailCodec {
+	private static final int MIN_MATCH = 4;
+	private static final int HASH_BITS = 14;
+	private static final int MAX_OFFSET = 65535;
+	private static final int LAST_LITERALS = 5;
+	
+	private int[] table;
+	private byte[] in;
+	private byte[] out;
+	
+	public LZCodec(){
+		this.table = new int[1 << HASH_BITS];
+		this.in = new byte[0];
+		this.out = new byte[0];
+	}
+
+	@Override
+	public int getType() {
+		return CrailCodec.LZ;
+	}
+
+	@Override
+	public int maxCompressedLength(int len) {
+		return len + len / 255 + 16;
+	}
+
+	@Override
+	public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+		int len = src.remaining();
+		int max = maxCompressedLength(len);
+		ensure(len, max);
+		src.get(in, 0, len);
+		int outLen = compress(in, len, out);
+		if (outLen > dst.remaining()){
+			return -1;
+		}
+		dst.put(out, 0, outLen);
+		return outLen;
+	}
+
+	@Override
+	public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+		int len = src.remaining();
+		ensure(len, dst.remaining());
+		src.get(in, 0, len);
+		int outLen = decompress(in, len, out, dst.remaining());
+		dst.put(out, 0, outLen);
+		return outLen;
+	}
+	
+	//-------------------
+	
+	private int compress(byte[] in, int len, byte[] out){
+		for (int i = 0; i < table.length; i++){
+			table[i] = -1;
+		}
+		int op = 0;
+		int anchor = 0;
+		int ip = 0;
+		int limit = len - LAST_LITERALS - MIN_MATCH;
+		while (ip < limit){
+			int sequence = readInt(in, ip);
+			int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+			int ref = table[hash];
+			table[hash] = ip;
+			if (ref < 0 || ip - ref > MAX_OFFSET || readInt(in, ref) != sequence){
+				ip++;
+				continue;
+			}
+			int matchLen = MIN_MATCH;
+			int matchLimit = len - LAST_LITERALS;
+			while (ip + matchLen < matchLimit && in[ip + matchLen] == in[ref + matchLen]){
+				matchLen++;
+			}
+			op = writeSequence(in, anchor, ip - anchor, ip - ref, matchLen, out, op);
+			ip += matchLen;
+			anchor = ip;
+		}
+		int literals = len - anchor;
+		int token = Math.min(literals, 15) << 4;
+		out[op++] = (byte) token;
+		op = writeLength(literals, out, op);
+		System.arraycopy(in, anchor, out, op, literals);
+		return op + literals;
+	}
+	
+	private int writeSequence(byte[] in, int anchor, int literals, int offset, int matchLen, byte[] out, int op){
+		int match = matchLen - MIN_MATCH;
+		out[op++] = (byte) ((Math.min(literals, 15) << 4) | Math.min(match, 15));
+		op = writeLength(literals, out, op);
+		System.arraycopy(in, anchor, out, op, literals);
+		op += literals;
+		out[op++] = (byte) offset;
+		out[op++] = (byte) (offset >>> 8);
+		return writeLength(match, out, op);
+	}
+	
+	private int writeLength(int len, byte[] out, int op){
+		if (len < 15){
+			return op;
+		}
+		len -= 15;
+		while (len >= 255){
+			out[op++] = (byte) 255;
+			len -= 255;
+		}
+		out[op++] = (byte) len;
+		return op;
+	}
+	
+	private int decompress(byte[] in, int len, byte[] out, int maxLen) throws IOException {
+		int ip = 0;
+		int op = 0;
+		while (ip < len){
+			int token = in[ip++] & 0xff;
+			int literals = token >>> 4;
+			if (literals == 15){
+				int b;
+				do {
+					checkBounds(ip < len);
+					b = in[ip++] & 0xff;
+					literals += b;
+				} while (b == 255);
+			}
+			checkBounds(ip + literals <= len && op + literals <= maxLen);
+			System.arraycopy(in, ip, out, op, literals);
+			ip += literals;
+			op += literals;
+			if (ip == len){
+				break;
+			}
+			
+			checkBounds(ip + 2 <= len);
+			int offset = (in[ip] & 0xff) | ((in[ip + 1] & 0xff) << 8);
+			ip += 2;
+			int matchLen = token & 0x0f;
+			if (matchLen == 15){
+				int b;
+				do {
+					checkBounds(ip < len);
+					b = in[ip++] & 0xff;
+					matchLen += b;
+				} while (b == 255);
+			}
+			matchLen += MIN_MATCH;
+			checkBounds(offset > 0 && offset <= op && op + matchLen <= maxLen);
+			int ref = op - offset;
+			for (int i = 0; i < matchLen; i++){
+				out[op++] = out[ref++];
+			}
+		}
+		return op;
+	}
+	
+	private void ensure(int inLen, int outLen){
+		if (in.length < inLen){
+			in = new byte[inLen];
+		}
+		if (out.length < outLen){
+			out = new byte[outLen];
+		}
+	}
+	
+	private static int readInt(byte[] buf, int off){
+		return (buf[off] & 0xff) | ((buf[off + 1] & 0xff) << 8) | ((buf[off + 2] & 0xff) << 16) | ((buf[off + 3] & 0xff) << 24);
+	}
+	
+	private static void checkBounds(boolean condition) throws IOException {
+		if (!condition){
+			throw new IOException("corrupt compressed block");
+		}
+	}
+}
@@ -28,7 +28,8 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -39,7 +40,7 @@ import com.ibm.disni.util.MemoryUtils;
 public class MappedBufferCache extends DirectBufferCache {
 	private static final Logger LOG = CrailUtils.getLogger();
 	
-	private ConcurrentHashMap<Long, MappedByteBuffer> allocationMap;
+	private ConcurrentSkipListMap<Long, MappedByteBuffer> allocationMap;
 	private String id;
 	private String directory;
 	private File dir;
@@ -53,7 +54,7 @@ public class MappedBufferCache extends DirectBufferCache {
 	public MappedBufferCache() throws IOException {
 		super();
 		
-		this.allocationMap = new ConcurrentHashMap<Long, MappedByteBuffer>();
+		this.allocationMap = new ConcurrentSkipListMap<Long, MappedByteBuffer>();
 		id = "" + System.currentTimeMillis();
 		directory = CrailUtils.getCacheDirectory(id);
 		dir = new File(directory);
@@ -78,9 +79,17 @@ public class MappedBufferCache extends DirectBufferCache {
 	@Override
 	public ByteBuffer getAllocationBuffer(ByteBuffer buffer) {
 		long address = MemoryUtils.getAddress(buffer);
-		return allocationMap.get(address);
+		Map.Entry<Long, MappedByteBuffer> entry = allocationMap.floorEntry(address);
+		if (entry == null || address >= entry.getKey() + entry.getValue().capacity()){
+			return null;
+		}
+		return entry.getValue();
 	}	
 	
+	protected boolean isReclaimable(ByteBuffer buffer){
+		return getAllocationBuffer(buffer) == null;
+	}
+	
 	public long missedMap() {
 		return cacheMissesMap.get();
 	}
@@ -143,9 +152,7 @@ public class MappedBufferCache extends DirectBufferCache {
 		for (int j = 1; j < bufferCount; j++) {
 			int position = j * CrailConstants.BUFFER_SIZE;
 			ByteBuffer sliceBuffer = slice(mappedBuffer, position);
-			long address = MemoryUtils.getAddress(sliceBuffer);
 			this.putBufferInternal(sliceBuffer);
-			allocationMap.put(address, mappedBuffer);
 		}
 		mappedBuffer.clear();
 		
@@ -0,0 +1,241 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+//systematic Reed-Solomon code over GF(2^8), parity rows form a Cauchy matrix so that any 
+//dataShards out of dataShards + parityShards shards are enough to rebuild the others.
+//instances keep scratch space and are not thread safe
+public class ReedSolomon {
+	private static final int CHUNK_SIZE = 4096;
+	private static final byte[][] MUL = new byte[256][256];
+	private static final int[] EXP = new int[512];
+	private static final int[] LOG = new int[256];
+	
+	private int dataShards;
+	private int parityShards;
+	private byte[][] parityMatrix;
+	private byte[] inChunk;
+	private byte[][] outChunks;
+	
+	static {
+		int x = 1;
+		for (int i = 0; i < 255; i++){
+			EXP[i] = x;
+			LOG[x] = i;
+			x <<= 1;
+			if ((x & 0x100) != 0){
+				x ^= 0x11d;
+			}
+		}
+		for (int i = 255; i < EXP.length; i++){
+			EXP[i] = EXP[i - 255];
+		}
+		for (int a = 1; a < 256; a++){
+			for (int b = 1; b < 256; b++){
+				MUL[a][b] = (byte) EXP[LOG[a] + LOG[b]];
+			}
+		}
+	}
+	
+	public ReedSolomon(int dataShards, int parityShards) throws IOException {
+		if (dataShards <= 0 || parityShards <= 0 || dataShards + parityShards > 256){
+			throw new IOException("invalid shard count, data " + dataShards + ", parity " + parityShards);
+		}
+		this.dataShards = dataShards;
+		this.parityShards = parityShards;
+		this.parityMatrix = new byte[parityShards][dataShards];
+		for (int j = 0; j < parityShards; j++){
+			for (int i = 0; i < dataShards; i++){
+				parityMatrix[j][i] = (byte) inverse((dataShards + j) ^ i);
+			}
+		}
+		this.inChunk = new byte[CHUNK_SIZE];
+		this.outChunks = new byte[dataShards + parityShards][CHUNK_SIZE];
+	}
+	
+	//computes len bytes of each parity shard starting at the current buffer positions, positions are not modified
+	public void encode(ByteBuffer[] data, ByteBuffer[] parity, int len) {
+		codeRows(parityMatrix, data, parity, len);
+	}
+	
+	//rebuilds every shard that is not present but has a buffer, at least dataShards shards must be present
+	public void decode(ByteBuffer[] shards, boolean[] present, int len) throws IOException {
+		int[] sources = new int[dataShards];
+		int count = 0;
+		for (int i = 0; i < shards.length && count < dataShards; i++){
+			if (present[i]){
+				sources[count++] = i;
+			}
+		}
+		if (count < dataShards){
+			throw new IOException("not enough shards to decode, present " + count + ", required " + dataShards);
+		}
+		
+		byte[][] subMatrix = new byte[dataShards][];
+		for (int r = 0; r < dataShards; r++){
+			subMatrix[r] = encodingRow(sources[r]);
+		}
+		byte[][] decodeMatrix = invert(subMatrix);
+		
+		int missing = 0;
+		for (int i = 0; i < shards.length; i++){
+			if (!present[i] && shards[i] != null){
+				missing++;
+			}
+		}
+		byte[][] rows = new byte[missing][];
+		ByteBuffer[] outputs = new ByteBuffer[missing];
+		int index = 0;
+		for (int i = 0; i < shards.length; i++){
+			if (present[i] || shards[i] == null){
+				continue;
+			}
+			if (i < dataShards){
+				rows[index] = decodeMatrix[i];
+			} else {
+				rows[index] = multiply(parityMatrix[i - dataShards], decodeMatrix);
+			}
+			outputs[index] = shards[i];
+			index++;
+		}
+		ByteBuffer[] inputs = new ByteBuffer[dataShards];
+		for (int r = 0; r < dataShards; r++){
+			inputs[r] = shards[sources[r]];
+		}
+		codeRows(rows, inputs, outputs, len);
+	}
+	
+	public int getDataShards() {
+		return dataShards;
+	}
+
+	public int getParityShards() {
+		return parityShards;
+	}
+	
+	//-------------------
+	
+	private void codeRows(byte[][] rows, ByteBuffer[] inputs, ByteBuffer[] outputs, int len) {
+		for (int offset = 0; offset < len; offset += CHUNK_SIZE){
+			int chunk = Math.min(CHUNK_SIZE, len - offset);
+			for (int o = 0; o < outputs.length; o++){
+				byte[] out = outChunks[o];
+				for (int p = 0; p < chunk; p++){
+					out[p] = 0;
+				}
+			}
+			for (int i = 0; i < inputs.length; i++){
+				ByteBuffer input = inputs[i].duplicate();
+				input.position(input.position() + offset);
+				input.get(inChunk, 0, chunk);
+				for (int o = 0; o < outputs.length; o++){
+					int coefficient = rows[o][i] & 0xff;
+					if (coefficient == 0){
+						continue;
+					}
+					byte[] table = MUL[coefficient];
+					byte[] out = outChunks[o];
+					for (int p = 0; p < chunk; p++){
+						out[p] ^= table[inChunk[p] & 0xff];
+					}
+				}
+			}
+			for (int o = 0; o < outputs.length; o++){
+				ByteBuffer output = outputs[o].duplicate();
+				output.position(output.position() + offset);
+				output.put(outChunks[o], 0, chunk);
+			}
+		}
+	}
+	
+	private byte[] encodingRow(int shard){
+		if (shard >= dataShards){
+			return parityMatrix[shard - dataShards];
+		}
+		byte[] row = new byte[dataShards];
+		row[shard] = 1;
+		return row;
+	}
+	
+	private byte[] multiply(byte[] row, byte[][] matrix){
+		byte[] result = new byte[dataShards];
+		for (int c = 0; c < dataShards; c++){
+			int value = 0;
+			for (int k = 0; k < dataShards; k++){
+				value ^= MUL[row[k] & 0xff][matrix[k][c] & 0xff];
+			}
+			result[c] = (byte) value;
+		}
+		return result;
+	}
+	
+	private byte[][] invert(byte[][] matrix) throws IOException {
+		int n = matrix.length;
+		byte[][] work = new byte[n][];
+		byte[][] result = new byte[n][n];
+		for (int r = 0; r < n; r++){
+			work[r] = matrix[r].clone();
+			result[r][r] = 1;
+		}
+		for (int c = 0; c < n; c++){
+			int pivot = c;
+			while (pivot < n && work[pivot][c] == 0){
+				pivot++;
+			}
+			if (pivot == n){
+				throw new IOException("singular decoding matrix");
+			}
+			byte[] tmp = work[c];
+			work[c] = work[pivot];
+			work[pivot] = tmp;
+			tmp = result[c];
+			result[c] = result[pivot];
+			result[pivot] = tmp;
+			
+			byte[] scale = MUL[inverse(work[c][c] & 0xff)];
+			for (int k = 0; k < n; k++){
+				work[c][k] = scale[work[c][k] & 0xff];
+				result[c][k] = scale[result[c][k] & 0xff];
+			}
+			for (int r = 0; r < n; r++){
+				int factor = work[r][c] & 0xff;
+				if (r == c || factor == 0){
+					continue;
+				}
+				byte[] table = MUL[factor];
+				for (int k = 0; k < n; k++){
+					work[r][k] ^= table[work[c][k] & 0xff];
+					result[r][k] ^= table[result[c][k] & 0xff];
+				}
+			}
+		}
+		return result;
+	}
+	
+	private static int inverse(int a){
+		return EXP[255 - LOG[a]];
+	}
+}
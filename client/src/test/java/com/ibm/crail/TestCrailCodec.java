@@ -0,0 +1,173 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestCrailCodec extends TestCase {
+	private static final int[] TYPES = { CrailCodec.LZ, CrailCodec.DEFLATE };
+	
+	private Random random;
+
+	@Override
+	protected void setUp() throws Exception {
+		random = new Random(7);
+	}
+	
+	public void testEmpty() throws Exception {
+		checkRoundTrip(new byte[0]);
+	}
+	
+	public void testShortInputs() throws Exception {
+		for (int len = 1; len < 32; len++){
+			byte[] data = new byte[len];
+			random.nextBytes(data);
+			checkRoundTrip(data);
+		}
+	}
+	
+	public void testIncompressible() throws Exception {
+		byte[] data = new byte[100000];
+		random.nextBytes(data);
+		checkRoundTrip(data);
+	}
+	
+	public void testLongRun() throws Exception {
+		//overlapping matches at offset 1 and match lengths that need several continuation bytes
+		byte[] data = new byte[70000];
+		Arrays.fill(data, (byte) 'a');
+		checkRoundTrip(data);
+		for (int type : TYPES){
+			assertTrue(compress(CrailCodec.createInstance(type), data).remaining() < data.length / 100);
+		}
+	}
+	
+	public void testText() throws Exception {
+		StringBuilder text = new StringBuilder();
+		while (text.length() < 200000){
+			text.append("line ").append(random.nextInt(1000)).append(" of a mostly repetitive log file\n");
+		}
+		checkRoundTrip(text.toString().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	public void testMatchesBeyondWindow() throws Exception {
+		//a block repeated further back than the 64KB match window plus long literal runs in between
+		byte[] block = new byte[1000];
+		random.nextBytes(block);
+		byte[] data = new byte[200000];
+		random.nextBytes(data);
+		for (int offset = 0; offset + block.length <= data.length; offset += 70000){
+			System.arraycopy(block, 0, data, offset, block.length);
+		}
+		checkRoundTrip(data);
+	}
+	
+	public void testCodecReuse() throws Exception {
+		for (int type : TYPES){
+			CrailCodec codec = CrailCodec.createInstance(type);
+			for (int i = 0; i < 5; i++){
+				byte[] data = new byte[1000 + random.nextInt(50000)];
+				for (int j = 0; j < data.length; j++){
+					data[j] = (byte) random.nextInt(4);
+				}
+				assertTrue(Arrays.equals(data, decompress(codec, compress(codec, data), data.length)));
+			}
+		}
+	}
+	
+	public void testDestinationTooSmall() throws Exception {
+		byte[] data = new byte[4096];
+		random.nextBytes(data);
+		for (int type : TYPES){
+			CrailCodec codec = CrailCodec.createInstance(type);
+			ByteBuffer dst = ByteBuffer.allocate(data.length / 2);
+			assertEquals(-1, codec.compress(ByteBuffer.wrap(data), dst));
+		}
+	}
+	
+	public void testCorruptInput() throws Exception {
+		StringBuilder text = new StringBuilder();
+		while (text.length() < 10000){
+			text.append("corrupt me ");
+		}
+		byte[] data = text.toString().getBytes(StandardCharsets.UTF_8);
+		for (int type : TYPES){
+			CrailCodec codec = CrailCodec.createInstance(type);
+			ByteBuffer compressed = compress(codec, data);
+			compressed.limit(compressed.limit() / 2);
+			try {
+				byte[] result = decompress(codec, compressed, data.length);
+				assertFalse(Arrays.equals(data, result));
+			} catch(IOException e){
+			}
+		}
+	}
+	
+	public void testCodecNames() throws Exception {
+		assertEquals(CrailCodec.NONE, CrailCodec.getType("none"));
+		assertEquals(CrailCodec.LZ, CrailCodec.getType("LZ"));
+		assertEquals(CrailCodec.DEFLATE, CrailCodec.getType("deflate"));
+		assertNull(CrailCodec.createInstance(CrailCodec.NONE));
+		try {
+			CrailCodec.createInstance(42);
+			fail("unknown codec accepted");
+		} catch(IOException e){
+		}
+	}
+	
+	private void checkRoundTrip(byte[] data) throws IOException {
+		for (int type : TYPES){
+			CrailCodec codec = CrailCodec.createInstance(type);
+			assertEquals(type, codec.getType());
+			ByteBuffer compressed = compress(codec, data);
+			assertTrue(compressed.remaining() <= codec.maxCompressedLength(data.length));
+			byte[] result = decompress(CrailCodec.createInstance(type), compressed, data.length);
+			assertTrue("codec " + type + ", length " + data.length, Arrays.equals(data, result));
+		}
+	}
+	
+	private static ByteBuffer compress(CrailCodec codec, byte[] data) throws IOException {
+		ByteBuffer dst = ByteBuffer.allocateDirect(codec.maxCompressedLength(data.length));
+		ByteBuffer src = ByteBuffer.wrap(data);
+		int len = codec.compress(src, dst);
+		assertEquals(dst.position(), len);
+		assertFalse(src.hasRemaining());
+		dst.flip();
+		return dst;
+	}
+	
+	private static byte[] decompress(CrailCodec codec, ByteBuffer compressed, int rawLen) throws IOException {
+		ByteBuffer dst = ByteBuffer.allocateDirect(rawLen);
+		int len = codec.decompress(compressed.duplicate(), dst);
+		assertEquals(dst.position(), len);
+		dst.flip();
+		byte[] result = new byte[dst.remaining()];
+		dst.get(result);
+		return result;
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+
+public class TestBlockPin extends TestCase {
+	
+	public void testLeasesSharePin() throws Exception {
+		CountingPin pin = new CountingPin(60000);
+		pin.pin(0);
+		assertEquals(1, pin.pins);
+		assertTrue(pin.acquire());
+		assertTrue(pin.acquire());
+		CoreBufferLease first = new CoreBufferLease(pin);
+		CoreBufferLease second = new CoreBufferLease(pin);
+		assertEquals(2, pin.getRefCount());
+		
+		//closing one lease leaves the other one and the pin alone, a second close is a no-op
+		first.close();
+		first.close();
+		assertFalse(first.isValid());
+		assertTrue(second.isValid());
+		assertEquals(1, pin.getRefCount());
+		assertEquals(0, pin.releases);
+		
+		second.close();
+		assertEquals(0, pin.getRefCount());
+		assertEquals(0, pin.releases);
+		assertTrue(pin.isValid());
+		
+		//the pin goes once the stream moved on and no lease is left
+		pin.uncache();
+		assertEquals(1, pin.releases);
+		assertFalse(pin.isValid());
+		assertFalse(pin.acquire());
+	}
+	
+	public void testUncacheWaitsForLastLease() throws Exception {
+		CountingPin pin = new CountingPin(60000);
+		pin.pin(0);
+		assertTrue(pin.acquire());
+		CoreBufferLease lease = new CoreBufferLease(pin);
+		pin.uncache();
+		assertEquals(0, pin.releases);
+		assertTrue(lease.isValid());
+		lease.close();
+		assertEquals(1, pin.releases);
+	}
+	
+	public void testRenewExtendsAllLeases() throws Exception {
+		CountingPin pin = new CountingPin(0);
+		pin.pin(0);
+		assertFalse(pin.isValid());
+		assertFalse(pin.acquire());
+		
+		pin = new CountingPin(60000);
+		pin.pin(0);
+		assertTrue(pin.acquire());
+		assertTrue(pin.acquire());
+		CoreBufferLease first = new CoreBufferLease(pin);
+		CoreBufferLease second = new CoreBufferLease(pin);
+		first.renew();
+		assertEquals(1, pin.renewals);
+		assertEquals(1, pin.pins);
+		assertTrue(second.isValid());
+		first.close();
+		second.close();
+		pin.uncache();
+		assertEquals(1, pin.releases);
+	}
+	
+	public void testExpiredLeaseCannotRenew() throws Exception {
+		CountingPin pin = new CountingPin(60000);
+		pin.pin(0);
+		assertTrue(pin.acquire());
+		CoreBufferLease lease = new CoreBufferLease(pin);
+		pin.timeout = 0;
+		pin.renew();
+		assertFalse(lease.isValid());
+		try {
+			lease.renew();
+			fail("expired lease was renewed");
+		} catch(IOException e){
+		}
+		try {
+			lease.getBuffer();
+			fail("expired lease handed out its buffer");
+		} catch(IOException e){
+		}
+		lease.close();
+		pin.uncache();
+		assertEquals(1, pin.releases);
+	}
+	
+	public void testUnpinnedLease() throws Exception {
+		CoreBufferLease lease = new CoreBufferLease(null);
+		assertTrue(lease.isValid());
+		lease.renew();
+		lease.close();
+		assertFalse(lease.isValid());
+	}
+	
+	//answers pin requests locally and counts them
+	static class CountingPin extends CoreBlockPin {
+		long timeout;
+		int pins;
+		int renewals;
+		int releases;
+		
+		CountingPin(long timeout) {
+			super(null, 1);
+			this.timeout = timeout;
+		}
+		
+		RpcResponseMessage.PinBlockRes pinBlock(long position, long leaseId, boolean renew) throws Exception {
+			RpcResponseMessage.PinBlockRes pinRes = new RpcResponseMessage.PinBlockRes();
+			if (leaseId == 0){
+				pins++;
+				pinRes.setLeaseId(7);
+			} else if (renew){
+				renewals++;
+				pinRes.setLeaseId(leaseId);
+			} else {
+				releases++;
+				pinRes.setLeaseId(leaseId);
+			}
+			pinRes.setTimeout(timeout);
+			pinRes.setError(NameNodeProtocol.ERR_OK);
+			return pinRes;
+		}
+	}
+}
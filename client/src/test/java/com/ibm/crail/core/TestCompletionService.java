@@ -0,0 +1,174 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.CrailResult;
+import com.ibm.crail.datanode.DataNodeEndpoint;
+import com.ibm.crail.datanode.DataResult;
+import com.ibm.crail.namenode.protocol.BlockInfo;
+
+public class TestCompletionService extends TestCase {
+	private CoreCompletionService service;
+	
+	public void setUp() throws Exception {
+		service = new CoreCompletionService(0);
+	}
+	
+	public void tearDown() throws Exception {
+		service.close();
+	}
+	
+	public void testFutureCompletes() throws Exception {
+		FutureTask<String> future = task("done", null);
+		CompletionStage<String> stage = service.submit(future);
+		assertFalse(stage.toCompletableFuture().isDone());
+		future.run();
+		assertEquals("done", stage.toCompletableFuture().get(5, TimeUnit.SECONDS));
+	}
+	
+	public void testFailurePropagates() throws Exception {
+		IOException cause = new IOException("namenode gone");
+		FutureTask<String> future = task(null, cause);
+		CompletionStage<String> stage = service.submit(future);
+		future.run();
+		try {
+			stage.toCompletableFuture().get(5, TimeUnit.SECONDS);
+			fail("failure not propagated");
+		} catch(ExecutionException e){
+			assertSame(cause, e.getCause());
+		}
+	}
+	
+	public void testCloseAbortsPending() throws Exception {
+		CompletionStage<String> stage = service.submit(task("never", null));
+		service.close();
+		try {
+			stage.toCompletableFuture().get(5, TimeUnit.SECONDS);
+			fail("pending completion not aborted");
+		} catch(ExecutionException e){
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		try {
+			service.submit(task("late", null));
+			fail("submit accepted after close");
+		} catch(IOException e){
+		}
+	}
+	
+	public void testDataOperationAppliedByOwner() throws Exception {
+		RecordingStream stream = RecordingStream.create();
+		CoreDataOperation operation = new CoreDataOperation(stream, ByteBuffer.allocateDirect(64), 100);
+		FutureTask<DataResult> transfer = task((DataResult) new FixedResult(64), null);
+		operation.add(transfer);
+		operation.incProcessedLen(64);
+		
+		CompletionStage<CrailResult> stage = service.submit(operation);
+		transfer.run();
+		assertEquals(64, stage.toCompletableFuture().get(5, TimeUnit.SECONDS).getLen());
+		assertEquals(0, stream.updates);
+		
+		assertTrue(operation.isDone());
+		assertEquals(1, stream.updates);
+		assertEquals(164, stream.capacity);
+		assertSame(Thread.currentThread(), stream.updater);
+	}
+	
+	public void testDataOperationFailure() throws Exception {
+		RecordingStream stream = RecordingStream.create();
+		CoreDataOperation operation = new CoreDataOperation(stream, ByteBuffer.allocateDirect(64), 0);
+		FutureTask<DataResult> transfer = task((DataResult) null, new IOException("datanode gone"));
+		operation.add(transfer);
+		operation.incProcessedLen(64);
+		
+		CompletionStage<CrailResult> stage = service.submit(operation);
+		transfer.run();
+		try {
+			stage.toCompletableFuture().get(5, TimeUnit.SECONDS);
+			fail("failure not propagated");
+		} catch(ExecutionException e){
+		}
+		assertEquals(0, stream.updates);
+	}
+	
+	private static <T> FutureTask<T> task(final T value, final Exception error){
+		return new FutureTask<T>(new Callable<T>() {
+			public T call() throws Exception {
+				if (error != null){
+					throw error;
+				}
+				return value;
+			}
+		});
+	}
+	
+	static class FixedResult implements DataResult {
+		private int len;
+		
+		FixedResult(int len){
+			this.len = len;
+		}
+		
+		public int getLen() {
+			return len;
+		}
+	}
+	
+	//records stream updates, created without running the stream constructor
+	static class RecordingStream extends CoreStream {
+		volatile int updates;
+		volatile long capacity;
+		volatile Thread updater;
+		
+		private RecordingStream() throws Exception {
+			super(null, 0, 0);
+		}
+		
+		static RecordingStream create() throws Exception {
+			Field field = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			sun.misc.Unsafe unsafe = (sun.misc.Unsafe) field.get(null);
+			return (RecordingStream) unsafe.allocateInstance(RecordingStream.class);
+		}
+		
+		Future<DataResult> trigger(DataNodeEndpoint endpoint, CoreSubOperation opDesc, ByteBuffer buffer, ByteBuffer region, BlockInfo block) throws Exception {
+			throw new IOException("not supported");
+		}
+		
+		void update(long newCapacity) {
+			this.updates++;
+			this.capacity = newCapacity;
+			this.updater = Thread.currentThread();
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.CrailBufferLease;
+import com.ibm.crail.CrailBufferedInputStream;
+import com.ibm.crail.CrailInputStream;
+import com.ibm.crail.CrailReadRange;
+import com.ibm.crail.CrailResult;
+import com.ibm.crail.utils.CrailImmediateOperation;
+
+public class TestPositionalRead extends TestCase {
+	private static final int FILE_SIZE = 1 << 20;
+	private static final int THREADS = 8;
+	private static final int READS = 500;
+	
+	private byte[] content;
+	private PoolFileSystem fs;
+	
+	public void setUp() throws Exception {
+		content = new byte[FILE_SIZE];
+		new Random(42).nextBytes(content);
+		fs = PoolFileSystem.create();
+	}
+	
+	public void testConcurrentPositionalReads() throws Exception {
+		final CrailBufferedInputStream stream = new CrailBufferedInputStream(fs, new ArrayInputStream(content));
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++){
+			final long seed = t;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						Random random = new Random(seed);
+						byte[] buffer = new byte[4096];
+						for (int i = 0; i < READS; i++){
+							int length = 1 + random.nextInt(buffer.length);
+							long position = random.nextInt(FILE_SIZE);
+							int nread = stream.read(position, buffer, 0, length);
+							assertEquals(Math.min(length, FILE_SIZE - position), (long) nread);
+							for (int j = 0; j < nread; j++){
+								if (buffer[j] != content[(int) position + j]){
+									fail("wrong data at " + (position + j));
+								}
+							}
+						}
+					} catch(Throwable e){
+						error.compareAndSet(null, e);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+		if (error.get() != null){
+			throw new AssertionError(error.get());
+		}
+		assertEquals(0, stream.position());
+		assertEquals(content[0], (byte) stream.read());
+		stream.close();
+		assertEquals(0, fs.outstanding());
+	}
+	
+	public void testPositionalReadPastEnd() throws Exception {
+		CrailBufferedInputStream stream = new CrailBufferedInputStream(fs, new ArrayInputStream(content));
+		byte[] buffer = new byte[16];
+		assertEquals(-1, stream.read(FILE_SIZE, buffer, 0, buffer.length));
+		assertEquals(8, stream.read(FILE_SIZE - 8, buffer, 0, buffer.length));
+		stream.close();
+	}
+	
+	//serves reads from a byte array, positional reads keep no state of their own
+	static class ArrayInputStream implements CrailInputStream {
+		private byte[] data;
+		private long position;
+		private boolean open;
+		
+		ArrayInputStream(byte[] data){
+			this.data = data;
+			this.position = 0;
+			this.open = true;
+		}
+		
+		public synchronized Future<CrailResult> read(ByteBuffer dataBuf) throws Exception {
+			Future<CrailResult> future = read(position, dataBuf);
+			if (future != null){
+				position += future.get().getLen();
+			}
+			return future;
+		}
+		
+		public Future<CrailResult> read(long position, ByteBuffer dataBuf) throws Exception {
+			if (position >= data.length){
+				return null;
+			}
+			int len = (int) Math.min(dataBuf.remaining(), data.length - position);
+			dataBuf.put(data, (int) position, len);
+			return new CrailImmediateOperation(len);
+		}
+		
+		public CompletionStage<CrailResult> readAsync(ByteBuffer dataBuf) throws Exception {
+			throw new IOException("not supported");
+		}
+		
+		public Future<CrailResult> follow(ByteBuffer dataBuf, long timeout) throws Exception {
+			throw new IOException("not supported");
+		}
+		
+		public CrailBufferLease readZeroCopy(int length) throws Exception {
+			return null;
+		}
+		
+		public List<Future<CrailResult>> readVectored(List<CrailReadRange> ranges) throws Exception {
+			throw new IOException("not supported");
+		}
+		
+		public synchronized void seek(long pos) throws IOException {
+			this.position = pos;
+		}
+		
+		public synchronized int available() {
+			return (int) (data.length - position);
+		}
+		
+		public boolean isOpen() {
+			return open;
+		}
+		
+		public synchronized long position() {
+			return position;
+		}
+		
+		public void close() throws IOException {
+			this.open = false;
+		}
+	}
+	
+	//hands out plain direct buffers, created without running the file system constructor
+	static class PoolFileSystem extends CoreFileSystem {
+		private AtomicInteger outstanding;
+		
+		private PoolFileSystem() throws Exception {
+			super(null);
+		}
+		
+		static PoolFileSystem create() throws Exception {
+			Field field = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			sun.misc.Unsafe unsafe = (sun.misc.Unsafe) field.get(null);
+			PoolFileSystem fs = (PoolFileSystem) unsafe.allocateInstance(PoolFileSystem.class);
+			fs.outstanding = new AtomicInteger(0);
+			return fs;
+		}
+		
+		public ByteBuffer allocateBuffer() throws IOException {
+			outstanding.incrementAndGet();
+			return ByteBuffer.allocateDirect(8192);
+		}
+		
+		public void freeBuffer(ByteBuffer buffer) throws IOException {
+			outstanding.decrementAndGet();
+		}
+		
+		int outstanding(){
+			return outstanding.get();
+		}
+	}
+}
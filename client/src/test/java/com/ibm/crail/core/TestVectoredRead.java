@@ -0,0 +1,201 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.CrailReadRange;
+import com.ibm.crail.CrailResult;
+import com.ibm.crail.utils.CrailImmediateOperation;
+
+public class TestVectoredRead extends TestCase {
+	private static final int MERGE_GAP = 64;
+	private static final int MAX_LENGTH = 1024;
+	
+	private PoolFileSystem fs;
+	
+	public void setUp() throws Exception {
+		fs = PoolFileSystem.create();
+	}
+	
+	public void testMergeAdjacentAndGaps() throws Exception {
+		CoreVectoredRead group = new CoreVectoredRead(fs, range(0, 100, 1000));
+		assertTrue(group.canMerge(range(100, 100, 1000), MERGE_GAP, MAX_LENGTH));
+		assertTrue(group.canMerge(range(100 + MERGE_GAP, 100, 1000), MERGE_GAP, MAX_LENGTH));
+		assertFalse(group.canMerge(range(101 + MERGE_GAP, 100, 1000), MERGE_GAP, MAX_LENGTH));
+		assertFalse(group.canMerge(range(900, 200, 2000), MERGE_GAP, MAX_LENGTH));
+		//overlapping ranges merge without growing past the longer one
+		assertTrue(group.canMerge(range(10, 20, 1000), MERGE_GAP, MAX_LENGTH));
+	}
+	
+	public void testMergedReadScattersGaps() throws Exception {
+		CoreRangeFuture first = range(0, 16, 1000);
+		CoreRangeFuture second = range(32, 16, 1000);
+		CoreVectoredRead group = new CoreVectoredRead(fs, first);
+		group.add(second);
+		
+		ByteBuffer staging = group.prepareBuffer();
+		assertEquals(48, staging.remaining());
+		assertEquals(16, first.getRange().getBuffer().position());
+		for (int i = 0; i < 48; i++){
+			staging.put(i, (byte) i);
+		}
+		group.setOperation(new CrailImmediateOperation(48));
+		
+		assertTrue(first.isDone());
+		assertEquals(16, first.get().getLen());
+		assertEquals(16, second.get().getLen());
+		assertEquals(0, first.getRange().getBuffer().get(0));
+		assertEquals(15, first.getRange().getBuffer().get(15));
+		assertEquals(32, second.getRange().getBuffer().get(0));
+		assertEquals(47, second.getRange().getBuffer().get(15));
+		assertEquals(0, fs.outstanding());
+	}
+	
+	public void testSingleRangeKeepsCallerLimit() throws Exception {
+		CoreRangeFuture only = range(0, 100, 1000);
+		ByteBuffer callerBuffer = only.getRange().getBuffer();
+		int limit = callerBuffer.limit();
+		CoreVectoredRead group = new CoreVectoredRead(fs, only);
+		
+		ByteBuffer target = group.prepareBuffer();
+		assertFalse(callerBuffer == target);
+		assertEquals(limit, callerBuffer.limit());
+		assertEquals(100, target.remaining());
+		assertEquals(0, fs.outstanding());
+	}
+	
+	public void testReadPastEndOfFile() throws Exception {
+		assertEquals(40, range(60, 100, 100).getLength());
+		assertEquals(0, range(100, 100, 100).getLength());
+		assertEquals(0, range(200, 100, 100).getLength());
+	}
+	
+	public void testShortReadFailsAndFreesBuffer() throws Exception {
+		CoreRangeFuture first = range(0, 16, 1000);
+		CoreRangeFuture second = range(16, 16, 1000);
+		CoreVectoredRead group = new CoreVectoredRead(fs, first);
+		group.add(second);
+		group.prepareBuffer();
+		assertEquals(1, fs.outstanding());
+		group.setOperation(new CrailImmediateOperation(20));
+		
+		assertTrue(first.isDone());
+		assertEquals(0, fs.outstanding());
+		try {
+			first.get();
+			fail("short read not reported");
+		} catch(ExecutionException e){
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		try {
+			second.get(1, TimeUnit.SECONDS);
+			fail("short read not reported");
+		} catch(ExecutionException e){
+		}
+	}
+	
+	public void testFailedOperationFreesBuffer() throws Exception {
+		CoreRangeFuture first = range(0, 16, 1000);
+		CoreVectoredRead group = new CoreVectoredRead(fs, first);
+		group.add(range(16, 16, 1000));
+		group.prepareBuffer();
+		final IOException cause = new IOException("datanode gone");
+		group.setOperation(new Future<CrailResult>() {
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				return false;
+			}
+			public boolean isCancelled() {
+				return false;
+			}
+			public boolean isDone() {
+				return true;
+			}
+			public CrailResult get() throws InterruptedException, ExecutionException {
+				throw new ExecutionException(cause);
+			}
+			public CrailResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+				return get();
+			}
+		});
+		
+		assertTrue(first.isDone());
+		assertEquals(0, fs.outstanding());
+		try {
+			first.get();
+			fail("failure not reported");
+		} catch(ExecutionException e){
+			assertSame(cause, e.getCause());
+		}
+	}
+	
+	public void testReleaseUnissuedRead() throws Exception {
+		CoreVectoredRead group = new CoreVectoredRead(fs, range(0, 16, 1000));
+		group.add(range(16, 16, 1000));
+		group.prepareBuffer();
+		assertEquals(1, fs.outstanding());
+		group.release();
+		group.release();
+		assertEquals(0, fs.outstanding());
+	}
+	
+	private static CoreRangeFuture range(long offset, int length, long capacity){
+		return new CoreRangeFuture(new CrailReadRange(offset, ByteBuffer.allocateDirect(length)), capacity);
+	}
+	
+	//counts pooled buffers, created without running the file system constructor
+	static class PoolFileSystem extends CoreFileSystem {
+		private int outstanding;
+		
+		private PoolFileSystem() throws Exception {
+			super(null);
+		}
+		
+		static PoolFileSystem create() throws Exception {
+			Field field = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			sun.misc.Unsafe unsafe = (sun.misc.Unsafe) field.get(null);
+			return (PoolFileSystem) unsafe.allocateInstance(PoolFileSystem.class);
+		}
+		
+		public ByteBuffer allocateBuffer() throws IOException {
+			outstanding++;
+			return ByteBuffer.allocateDirect(MAX_LENGTH);
+		}
+		
+		public void freeBuffer(ByteBuffer buffer) throws IOException {
+			outstanding--;
+		}
+		
+		int outstanding(){
+			return outstanding;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail.namenode.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.conf.CrailConstants;
+
+public class TestDirectoryRecord extends TestCase {
+	private ByteBuffer buffer;
+
+	@Override
+	protected void setUp() throws Exception {
+		buffer = ByteBuffer.allocate(4*CrailConstants.DIRECTORY_RECORD);
+	}
+	
+	public void testRoundTrip() throws Exception {
+		write(new DirectoryRecord(true, "/dir/file.txt"), 1);
+		assertEquals("file.txt".length(), DirectoryRecord.nameLength(buffer, offset(1)));
+		
+		DirectoryRecord record = read(1);
+		assertTrue(record.isValid());
+		assertEquals("file.txt", record.getFile());
+		assertEquals("/dir", record.getParent());
+	}
+	
+	public void testMultiByteName() throws Exception {
+		String name = "f\u00e4\u00df\u4e2d";
+		write(new DirectoryRecord(true, "/" + name), 0);
+		assertEquals(name.getBytes(StandardCharsets.UTF_8).length, DirectoryRecord.nameLength(buffer, 0));
+		assertEquals(name, read(0).getFile());
+	}
+	
+	public void testInvalidation() throws Exception {
+		write(new DirectoryRecord(true, "/dir/file"), 2);
+		write(new DirectoryRecord(false, "/dir/file"), 2);
+		assertEquals(-1, DirectoryRecord.nameLength(buffer, offset(2)));
+		assertFalse(read(2).isValid());
+	}
+	
+	public void testEmptySlot() throws Exception {
+		assertEquals(-1, DirectoryRecord.nameLength(buffer, offset(3)));
+		assertFalse(read(3).isValid());
+	}
+	
+	public void testLongestName() throws Exception {
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < CrailConstants.DIRECTORY_RECORD - DirectoryRecord.HEADER_SIZE; i++){
+			name.append('x');
+		}
+		assertEquals(509, name.length());
+		new FileName("/dir/" + name);
+		write(new DirectoryRecord(true, "/dir/" + name), 1);
+		assertEquals(name.toString(), read(1).getFile());
+	}
+
+	public void testNameTooLong() throws Exception {
+		StringBuilder name = new StringBuilder("/");
+		for (int i = 0; i < CrailConstants.DIRECTORY_RECORD; i++){
+			name.append('x');
+		}
+		try {
+			write(new DirectoryRecord(true, name.toString()), 0);
+			fail("name longer than the record was accepted");
+		} catch(IOException e){
+		}
+	}
+	
+	public void testLegacyRecordRejected() throws Exception {
+		buffer.putInt(offset(1), 1);
+		buffer.putInt(offset(1) + 4, 4);
+		try {
+			DirectoryRecord.nameLength(buffer, offset(1));
+			fail("legacy record was not rejected");
+		} catch(IOException e){
+		}
+	}
+	
+	public void testNewerFormatRejected() throws Exception {
+		buffer.put(0, (byte) ((DirectoryRecord.FORMAT_VERSION + 1) << 1 | 1));
+		buffer.putShort(1, (short) 4);
+		try {
+			DirectoryRecord.nameLength(buffer, 0);
+			fail("newer record format was not rejected");
+		} catch(IOException e){
+		}
+	}
+	
+	public void testStaleBytesSkipped() throws Exception {
+		buffer.put(0, (byte) 0x7f);
+		buffer.putShort(1, (short) -1);
+		assertEquals(-1, DirectoryRecord.nameLength(buffer, 0));
+	}
+	
+	private int offset(int slot) {
+		return slot*CrailConstants.DIRECTORY_RECORD;
+	}
+	
+	private void write(DirectoryRecord record, int slot) throws Exception {
+		ByteBuffer slice = buffer.duplicate();
+		slice.position(offset(slot));
+		record.write(slice);
+	}
+	
+	private DirectoryRecord read(int slot) throws Exception {
+		DirectoryRecord record = new DirectoryRecord("/dir");
+		buffer.position(offset(slot));
+		record.update(buffer);
+		return record;
+	}
+}
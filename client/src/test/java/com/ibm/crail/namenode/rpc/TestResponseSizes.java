@@ -0,0 +1,78 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode.rpc;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.namenode.protocol.DataNodeInfo;
+import com.ibm.crail.namenode.protocol.FileInfo;
+
+public class TestResponseSizes extends TestCase {
+	
+	public void testPagedResponsesFitFixedMaximum() throws Exception {
+		assertTrue(RpcResponseMessage.ListDirRes.CSIZE <= RpcResponseMessage.MAX_FIXED_CSIZE);
+		assertTrue(RpcResponseMessage.WatchDirRes.CSIZE <= RpcResponseMessage.MAX_FIXED_CSIZE);
+		assertTrue(RpcResponseMessage.GetLocationsRes.CSIZE <= RpcResponseMessage.MAX_FIXED_CSIZE);
+		assertTrue(RpcResponseMessage.ReserveFileRes.CSIZE <= RpcResponseMessage.MAX_FIXED_CSIZE);
+		assertTrue(RpcResponseMessage.GetLocationsRes.MAX_BLOCKS > BlockInfo.MAX_FRAGMENTS);
+	}
+	
+	public void testLocationBatchFitsMessage() throws Exception {
+		RpcResponseMessage.GetLocationsRes response = new RpcResponseMessage.GetLocationsRes();
+		response.setBlockSize(1024);
+		BlockInfo block = new BlockInfo(new DataNodeInfo(), 4096, 1024, 7);
+		int added = 0;
+		while (response.addBlockInfo(block)){
+			added++;
+		}
+		assertEquals(RpcResponseMessage.GetLocationsRes.MAX_BLOCKS, added);
+		
+		ByteBuffer buffer = ByteBuffer.allocate(RpcResponseMessage.GetLocationsRes.CSIZE);
+		assertTrue(response.write(buffer) <= RpcResponseMessage.GetLocationsRes.CSIZE);
+		buffer.flip();
+		RpcResponseMessage.GetLocationsRes copy = new RpcResponseMessage.GetLocationsRes();
+		copy.update(buffer);
+		assertEquals(added, copy.getBlockCount());
+		assertEquals(1024, copy.getBlockSize());
+		assertEquals(4096, copy.getBlockInfo(added - 1).getAddr());
+	}
+	
+	public void testListingPageFitsMessage() throws Exception {
+		RpcResponseMessage.ListDirRes response = new RpcResponseMessage.ListDirRes();
+		FileInfo fileInfo = new FileInfo();
+		int added = 0;
+		while (response.addEntry(fileInfo, "file-" + added)){
+			added++;
+		}
+		assertTrue(added > 1);
+		ByteBuffer buffer = ByteBuffer.allocate(RpcResponseMessage.ListDirRes.CSIZE);
+		assertTrue(response.write(buffer) <= RpcResponseMessage.ListDirRes.CSIZE);
+		buffer.flip();
+		RpcResponseMessage.ListDirRes copy = new RpcResponseMessage.ListDirRes();
+		copy.update(buffer);
+		assertEquals(added, copy.getEntries());
+		assertEquals("file-" + (added - 1), copy.getName(added - 1));
+	}
+}
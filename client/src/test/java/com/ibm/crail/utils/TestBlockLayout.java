@@ -0,0 +1,87 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.utils;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.conf.CrailConstants;
+
+public class TestBlockLayout extends TestCase {
+	private static final long SLAB = 4096;
+	private long blockSize;
+
+	@Override
+	protected void setUp() throws Exception {
+		blockSize = CrailConstants.BLOCK_SIZE;
+		CrailConstants.BLOCK_SIZE = 65536;
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		CrailConstants.BLOCK_SIZE = blockSize;
+	}
+	
+	public void testFullBlocks() throws Exception {
+		assertEquals(0, CrailUtils.computeIndex(65535, 65536));
+		assertEquals(3, CrailUtils.computeIndex(3*65536 + 7, 65536));
+		assertEquals(3*65536, CrailUtils.blockStartAddress(3*65536 + 7, 65536));
+		assertEquals(4*65536, CrailUtils.nextBlockAddress(3*65536 + 7, 65536));
+		assertEquals(65536, CrailUtils.blockLength(5, 65536));
+	}
+	
+	public void testSlabFileGrows() throws Exception {
+		long[] starts = {0, 4096, 8192, 16384, 32768, 65536, 131072};
+		long[] lengths = {4096, 4096, 8192, 16384, 32768, 65536, 65536};
+		for (int i = 0; i < starts.length; i++){
+			assertEquals(starts[i], CrailUtils.blockAddress(i, SLAB));
+			assertEquals(lengths[i], CrailUtils.blockLength(i, SLAB));
+			assertEquals(i, CrailUtils.computeIndex(starts[i], SLAB));
+			assertEquals(i, CrailUtils.computeIndex(starts[i] + lengths[i] - 1, SLAB));
+			assertEquals(starts[i], CrailUtils.blockStartAddress(starts[i] + lengths[i] - 1, SLAB));
+			assertEquals(starts[i] + lengths[i], CrailUtils.nextBlockAddress(starts[i] + 1, SLAB));
+		}
+	}
+	
+	public void testBlocksAreContiguous() throws Exception {
+		long[] blockSizes = {SLAB, 16384, 65536, 3*65536};
+		for (long size : blockSizes){
+			long end = 0;
+			for (int i = 0; i < 40; i++){
+				assertEquals(end, CrailUtils.blockAddress(i, size));
+				end += CrailUtils.blockLength(i, size);
+			}
+		}
+	}
+	
+	public void testNonPowerOfTwoBlockSize() throws Exception {
+		CrailConstants.BLOCK_SIZE = 3*32768;
+		assertEquals(5, CrailUtils.computeIndex(65536, SLAB));
+		assertEquals(65536, CrailUtils.blockAddress(5, SLAB));
+		assertEquals(3*32768, CrailUtils.blockLength(5, SLAB));
+		assertEquals(6, CrailUtils.computeIndex(65536 + 3*32768, SLAB));
+	}
+	
+	public void testConcatAddress() throws Exception {
+		assertEquals(2*65536, CrailUtils.concatAddress(2*65536 + 100, 65536));
+		assertEquals(0, CrailUtils.concatAddress(20000, SLAB));
+	}
+}
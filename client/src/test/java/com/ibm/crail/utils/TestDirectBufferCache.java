@@ -0,0 +1,124 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.conf.CrailConstants;
+
+public class TestDirectBufferCache extends TestCase {
+	private static final int BUFFER_SIZE = 16384;
+	private static final int MIN_SIZE = 4096;
+	
+	private int bufferSize;
+	private int minSize;
+	private int threadCache;
+	private long cacheLimit;
+	
+	public void setUp() throws Exception {
+		bufferSize = CrailConstants.BUFFER_SIZE;
+		minSize = CrailConstants.BUFFER_MIN_SIZE;
+		threadCache = CrailConstants.BUFFER_THREAD_CACHE;
+		cacheLimit = CrailConstants.CACHE_LIMIT;
+		CrailConstants.BUFFER_SIZE = BUFFER_SIZE;
+		CrailConstants.BUFFER_MIN_SIZE = MIN_SIZE;
+		CrailConstants.BUFFER_THREAD_CACHE = 0;
+		CrailConstants.CACHE_LIMIT = 4 * BUFFER_SIZE;
+	}
+	
+	public void tearDown() throws Exception {
+		CrailConstants.BUFFER_SIZE = bufferSize;
+		CrailConstants.BUFFER_MIN_SIZE = minSize;
+		CrailConstants.BUFFER_THREAD_CACHE = threadCache;
+		CrailConstants.CACHE_LIMIT = cacheLimit;
+	}
+	
+	public void testSlicesCoalesceIntoParent() throws Exception {
+		DirectBufferCache cache = new DirectBufferCache();
+		ArrayList<ByteBuffer> slices = new ArrayList<ByteBuffer>();
+		for (int i = 0; i < BUFFER_SIZE / MIN_SIZE; i++){
+			ByteBuffer slice = cache.getBuffer(MIN_SIZE);
+			assertEquals(MIN_SIZE, slice.capacity());
+			slices.add(slice);
+		}
+		assertEquals(1, cache.max());
+		assertEquals(0, cache.size());
+		
+		for (ByteBuffer slice : slices){
+			cache.putBuffer(slice);
+		}
+		assertEquals(1, cache.size());
+		ByteBuffer full = cache.getBuffer();
+		assertEquals(BUFFER_SIZE, full.capacity());
+		assertEquals(1, cache.max());
+		assertEquals(0, cache.size());
+	}
+	
+	public void testPartialReturnKeepsSlices() throws Exception {
+		DirectBufferCache cache = new DirectBufferCache();
+		ByteBuffer kept = cache.getBuffer(MIN_SIZE);
+		ArrayList<ByteBuffer> slices = new ArrayList<ByteBuffer>();
+		for (int i = 1; i < BUFFER_SIZE / MIN_SIZE; i++){
+			slices.add(cache.getBuffer(MIN_SIZE));
+		}
+		for (ByteBuffer slice : slices){
+			cache.putBuffer(slice);
+		}
+		assertEquals(slices.size(), cache.size());
+		cache.getBuffer();
+		assertEquals(2, cache.max());
+		
+		//a slice handed out again still belongs to the same parent
+		ByteBuffer again = cache.getBuffer(MIN_SIZE);
+		cache.putBuffer(again);
+		cache.putBuffer(kept);
+		assertEquals(1, cache.size());
+	}
+	
+	public void testLimitCountsBytes() throws Exception {
+		DirectBufferCache cache = new DirectBufferCache();
+		ArrayList<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+		for (int i = 0; i < 6; i++){
+			buffers.add(cache.getBuffer());
+		}
+		for (ByteBuffer buffer : buffers){
+			cache.putBuffer(buffer);
+		}
+		assertEquals(4, cache.size());
+		assertEquals(2, cache.reclaimed());
+		
+		//carved slices count with their own size and are never dropped on their own
+		ArrayList<ByteBuffer> slices = new ArrayList<ByteBuffer>();
+		for (int i = 0; i < 2 * BUFFER_SIZE / MIN_SIZE; i++){
+			slices.add(cache.getBuffer(MIN_SIZE));
+		}
+		assertEquals(2, cache.size());
+		for (ByteBuffer slice : slices){
+			cache.putBuffer(slice);
+		}
+		assertEquals(4, cache.size());
+		assertEquals(2, cache.reclaimed());
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestReedSolomon extends TestCase {
+	private static final int LENGTH = 10000;
+	
+	private Random random;
+
+	@Override
+	protected void setUp() throws Exception {
+		random = new Random(42);
+	}
+	
+	public void testEncodeKeepsData() throws Exception {
+		ByteBuffer[] shards = encode(new ReedSolomon(4, 2));
+		ByteBuffer[] copy = copy(shards);
+		new ReedSolomon(4, 2).encode(slice(copy, 0, 4), slice(copy, 4, 2), LENGTH);
+		for (int i = 0; i < shards.length; i++){
+			assertEquals(shards[i], copy[i]);
+		}
+	}
+	
+	public void testSingleErasure() throws Exception {
+		ReedSolomon codec = new ReedSolomon(4, 2);
+		ByteBuffer[] shards = encode(codec);
+		for (int i = 0; i < shards.length; i++){
+			checkDecode(codec, shards, new int[]{i});
+		}
+	}
+	
+	public void testAllParityErasures() throws Exception {
+		for (int parity = 1; parity <= 4; parity++){
+			ReedSolomon codec = new ReedSolomon(6, parity);
+			ByteBuffer[] shards = encode(codec);
+			int total = 6 + parity;
+			for (int round = 0; round < 20; round++){
+				int[] erased = new int[parity];
+				boolean[] taken = new boolean[total];
+				for (int i = 0; i < parity; i++){
+					int shard = random.nextInt(total);
+					while (taken[shard]){
+						shard = (shard + 1) % total;
+					}
+					taken[shard] = true;
+					erased[i] = shard;
+				}
+				checkDecode(codec, shards, erased);
+			}
+		}
+	}
+	
+	public void testDataShardsOnlyParity() throws Exception {
+		ReedSolomon codec = new ReedSolomon(3, 3);
+		ByteBuffer[] shards = encode(codec);
+		checkDecode(codec, shards, new int[]{0, 1, 2});
+	}
+	
+	public void testTooManyErasures() throws Exception {
+		ReedSolomon codec = new ReedSolomon(4, 2);
+		ByteBuffer[] shards = encode(codec);
+		try {
+			checkDecode(codec, shards, new int[]{0, 2, 5});
+			fail("decoded with fewer than data shards");
+		} catch(IOException e){
+		}
+	}
+	
+	public void testInvalidLayout() throws Exception {
+		try {
+			new ReedSolomon(0, 2);
+			fail("accepted zero data shards");
+		} catch(IOException e){
+		}
+		try {
+			new ReedSolomon(200, 57);
+			fail("accepted more than 256 shards");
+		} catch(IOException e){
+		}
+	}
+	
+	private ByteBuffer[] encode(ReedSolomon codec) {
+		int total = codec.getDataShards() + codec.getParityShards();
+		ByteBuffer[] shards = new ByteBuffer[total];
+		for (int i = 0; i < total; i++){
+			shards[i] = ByteBuffer.allocate(LENGTH);
+			if (i < codec.getDataShards()){
+				random.nextBytes(shards[i].array());
+			}
+		}
+		codec.encode(slice(shards, 0, codec.getDataShards()), slice(shards, codec.getDataShards(), codec.getParityShards()), LENGTH);
+		return shards;
+	}
+	
+	private void checkDecode(ReedSolomon codec, ByteBuffer[] shards, int[] erased) throws IOException {
+		ByteBuffer[] damaged = copy(shards);
+		boolean[] present = new boolean[shards.length];
+		for (int i = 0; i < present.length; i++){
+			present[i] = true;
+		}
+		for (int shard : erased){
+			present[shard] = false;
+			random.nextBytes(damaged[shard].array());
+		}
+		codec.decode(damaged, present, LENGTH);
+		for (int i = 0; i < shards.length; i++){
+			assertEquals("shard " + i, shards[i], damaged[i]);
+		}
+	}
+	
+	private static ByteBuffer[] copy(ByteBuffer[] shards) {
+		ByteBuffer[] copy = new ByteBuffer[shards.length];
+		for (int i = 0; i < shards.length; i++){
+			copy[i] = ByteBuffer.wrap(shards[i].array().clone());
+		}
+		return copy;
+	}
+	
+	private static ByteBuffer[] slice(ByteBuffer[] shards, int from, int count) {
+		ByteBuffer[] slice = new ByteBuffer[count];
+		System.arraycopy(shards, from, slice, 0, count);
+		return slice;
+	}
+}
@@ -41,9 +41,11 @@ import org.apache.hadoop.fs.FileChecksum;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FsServerDefaults;
 import org.apache.hadoop.fs.FsStatus;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Options.ChecksumOpt;
 import org.apache.hadoop.fs.ParentNotDirectoryException;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.UnresolvedLinkException;
 import org.apache.hadoop.fs.UnsupportedFileSystemException;
 import org.apache.hadoop.fs.permission.FsPermission;
@@ -248,7 +250,7 @@ public class CrailHDFS extends AbstractFileSystem {
 		if (directFile.isDir()) {
 			permission = FsPermission.getDirDefault();
 		}		
-		FileStatus status = new FileStatus(directFile.getCapacity(), directFile.isDir(), CrailConstants.SHADOW_REPLICATION, CrailConstants.BLOCK_SIZE, directFile.getModificationTime(), directFile.getModificationTime(), permission, CrailConstants.USER, CrailConstants.USER, path.makeQualified(this.getUri(), this.workingDir));
+		FileStatus status = new FileStatus(directFile.getCapacity(), directFile.isDir(), CrailConstants.SHADOW_REPLICATION, directFile.getBlockSize(), directFile.getModificationTime(), directFile.getModificationTime(), permission, CrailConstants.USER, CrailConstants.USER, path.makeQualified(this.getUri(), this.workingDir));
 		return status;
 	}
 
@@ -256,17 +258,7 @@ public class CrailHDFS extends AbstractFileSystem {
 	public BlockLocation[] getFileBlockLocations(Path path, long start, long len) throws AccessControlException, FileNotFoundException, UnresolvedLinkException, IOException {
 		try {
 			CrailBlockLocation[] _locations = dfs.lookupFile(path.toUri().getRawPath(), false).get().getBlockLocations(start, len);
-			BlockLocation[] locations = new BlockLocation[_locations.length];
-			for (int i = 0; i < locations.length; i++){
-				locations[i] = new BlockLocation();
-				locations[i].setOffset(_locations[i].getOffset());
-				locations[i].setLength(_locations[i].getLength());
-				locations[i].setNames(_locations[i].getNames());
-				locations[i].setHosts(_locations[i].getHosts());
-				locations[i].setTopologyPaths(_locations[i].getTopology());
-				
-			}
-			return locations;
+			return toBlockLocations(_locations);
 		} catch(Exception e){
 			throw new IOException(e);
 		}
@@ -280,19 +272,10 @@ public class CrailHDFS extends AbstractFileSystem {
 	@Override
 	public FileStatus[] listStatus(Path path) throws AccessControlException, FileNotFoundException, UnresolvedLinkException, IOException {
 		try {
-			Iterator<String> iter = dfs.lookupDirectory(path.toUri().getRawPath()).get().listEntries();
+			Iterator<CrailNode> iter = dfs.lookupDirectory(path.toUri().getRawPath()).get().listNodes();
 			ArrayList<FileStatus> statusList = new ArrayList<FileStatus>();
 			while(iter.hasNext()){
-				String filepath = iter.next();
-				CrailFile directFile = dfs.lookupFile(filepath, false).get();
-				if (directFile != null){
-					FsPermission permission = FsPermission.getFileDefault();
-					if (directFile.isDir()) {
-						permission = FsPermission.getDirDefault();
-					}
-					FileStatus status = new FileStatus(directFile.getCapacity(), directFile.isDir(), CrailConstants.SHADOW_REPLICATION, CrailConstants.BLOCK_SIZE, directFile.getModificationTime(), directFile.getModificationTime(), permission, CrailConstants.USER, CrailConstants.USER, new Path(filepath).makeQualified(this.getUri(), workingDir));	
-					statusList.add(status);
-				}
+				statusList.add(toFileStatus(iter.next()));
 			}
 			FileStatus[] list = new FileStatus[statusList.size()];
 			statusList.toArray(list);
@@ -301,6 +284,86 @@ public class CrailHDFS extends AbstractFileSystem {
 			throw new FileNotFoundException(path.toUri().getRawPath());
 		}
 	}
+	
+	@Override
+	public RemoteIterator<LocatedFileStatus> listLocatedStatus(Path path) throws AccessControlException, FileNotFoundException, UnresolvedLinkException, IOException {
+		ArrayList<FileStatus> statusList = new ArrayList<FileStatus>();
+		ArrayList<String> files = new ArrayList<String>();
+		try {
+			Iterator<CrailNode> iter = dfs.lookupDirectory(path.toUri().getRawPath()).get().listNodes();
+			while(iter.hasNext()){
+				CrailNode node = iter.next();
+				statusList.add(toFileStatus(node));
+				if (!node.isDir()){
+					files.add(node.getPath());
+				}
+			}
+		} catch(Exception e){
+			throw new FileNotFoundException(path.toUri().getRawPath());
+		}
+		
+		try {
+			String[] paths = new String[files.size()];
+			long[] starts = new long[files.size()];
+			long[] lens = new long[files.size()];
+			int index = 0;
+			for (FileStatus status : statusList){
+				if (!status.isDirectory()){
+					paths[index] = files.get(index);
+					lens[index] = status.getLen();
+					index++;
+				}
+			}
+			CrailBlockLocation[][] _locations = dfs.getBlockLocations(paths, starts, lens);
+			
+			final ArrayList<LocatedFileStatus> locatedList = new ArrayList<LocatedFileStatus>(statusList.size());
+			index = 0;
+			for (FileStatus status : statusList){
+				BlockLocation[] locations = null;
+				if (!status.isDirectory()){
+					locations = toBlockLocations(_locations[index++]);
+				}
+				locatedList.add(new LocatedFileStatus(status, locations));
+			}
+			
+			return new RemoteIterator<LocatedFileStatus>() {
+				private Iterator<LocatedFileStatus> iter = locatedList.iterator();
+				
+				@Override
+				public boolean hasNext() throws IOException {
+					return iter.hasNext();
+				}
+
+				@Override
+				public LocatedFileStatus next() throws IOException {
+					return iter.next();
+				}
+			};
+		} catch(Exception e){
+			throw new IOException(e);
+		}
+	}
+	
+	private FileStatus toFileStatus(CrailNode node) {
+		FsPermission permission = FsPermission.getFileDefault();
+		if (node.isDir()) {
+			permission = FsPermission.getDirDefault();
+		}
+		return new FileStatus(node.getCapacity(), node.isDir(), CrailConstants.SHADOW_REPLICATION, node.getBlockSize(), node.getModificationTime(), node.getModificationTime(), permission, CrailConstants.USER, CrailConstants.USER, new Path(node.getPath()).makeQualified(this.getUri(), workingDir));
+	}
+	
+	private BlockLocation[] toBlockLocations(CrailBlockLocation[] _locations) throws IOException {
+		BlockLocation[] locations = new BlockLocation[_locations.length];
+		for (int i = 0; i < locations.length; i++){
+			locations[i] = new BlockLocation();
+			locations[i].setOffset(_locations[i].getOffset());
+			locations[i].setLength(_locations[i].getLength());
+			locations[i].setNames(_locations[i].getNames());
+			locations[i].setHosts(_locations[i].getHosts());
+			locations[i].setTopologyPaths(_locations[i].getTopology());
+		}
+		return locations;
+	}
 
 	@Override
 	public void setVerifyChecksum(boolean verifyChecksum) throws AccessControlException, IOException {
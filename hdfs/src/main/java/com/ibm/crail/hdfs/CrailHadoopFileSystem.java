@@ -35,7 +35,10 @@ import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FsStatus;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.util.Progressable;
 
@@ -204,19 +207,10 @@ public class CrailHadoopFileSystem extends FileSystem {
 	@Override
 	public FileStatus[] listStatus(Path path) throws FileNotFoundException, IOException {
 		try {
-			Iterator<String> iter = dfs.lookupDirectory(path.toUri().getRawPath()).get().listEntries();
+			Iterator<CrailNode> iter = dfs.lookupDirectory(path.toUri().getRawPath()).get().listNodes();
 			ArrayList<FileStatus> statusList = new ArrayList<FileStatus>();
 			while(iter.hasNext()){
-				String filepath = iter.next();
-				CrailFile directFile = dfs.lookupFile(filepath, false).get();
-				if (directFile != null){
-					FsPermission permission = FsPermission.getFileDefault();
-					if (directFile.isDir()) {
-						permission = FsPermission.getDirDefault();
-					}
-					FileStatus status = new FileStatus(directFile.getCapacity(), directFile.isDir(), CrailConstants.SHADOW_REPLICATION, CrailConstants.BLOCK_SIZE, directFile.getModificationTime(), directFile.getModificationTime(), permission, CrailConstants.USER, CrailConstants.USER, new Path(filepath).makeQualified(this.getUri(), this.workingDir));	
-					statusList.add(status);
-				}
+				statusList.add(toFileStatus(iter.next()));
 			}
 			FileStatus[] list = new FileStatus[statusList.size()];
 			statusList.toArray(list);
@@ -225,6 +219,68 @@ public class CrailHadoopFileSystem extends FileSystem {
 			throw new FileNotFoundException(path.toUri().getRawPath());
 		}
 	}
+	
+	@Override
+	protected RemoteIterator<LocatedFileStatus> listLocatedStatus(Path path, PathFilter filter) throws FileNotFoundException, IOException {
+		ArrayList<FileStatus> statusList = new ArrayList<FileStatus>();
+		ArrayList<String> files = new ArrayList<String>();
+		try {
+			Iterator<CrailNode> iter = dfs.lookupDirectory(path.toUri().getRawPath()).get().listNodes();
+			while(iter.hasNext()){
+				CrailNode node = iter.next();
+				FileStatus status = toFileStatus(node);
+				if (filter.accept(status.getPath())){
+					statusList.add(status);
+					if (!node.isDir()){
+						files.add(node.getPath());
+					}
+				}
+			}
+		} catch(Exception e){
+			throw new FileNotFoundException(path.toUri().getRawPath());
+		}
+		
+		try {
+			String[] paths = new String[files.size()];
+			long[] starts = new long[files.size()];
+			long[] lens = new long[files.size()];
+			int index = 0;
+			for (FileStatus status : statusList){
+				if (!status.isDirectory()){
+					paths[index] = files.get(index);
+					lens[index] = status.getLen();
+					index++;
+				}
+			}
+			CrailBlockLocation[][] _locations = dfs.getBlockLocations(paths, starts, lens);
+			
+			final ArrayList<LocatedFileStatus> locatedList = new ArrayList<LocatedFileStatus>(statusList.size());
+			index = 0;
+			for (FileStatus status : statusList){
+				BlockLocation[] locations = null;
+				if (!status.isDirectory()){
+					locations = toBlockLocations(_locations[index++]);
+				}
+				locatedList.add(new LocatedFileStatus(status, locations));
+			}
+			
+			return new RemoteIterator<LocatedFileStatus>() {
+				private Iterator<LocatedFileStatus> iter = locatedList.iterator();
+				
+				@Override
+				public boolean hasNext() throws IOException {
+					return iter.hasNext();
+				}
+
+				@Override
+				public LocatedFileStatus next() throws IOException {
+					return iter.next();
+				}
+			};
+		} catch(Exception e){
+			throw new IOException(e);
+		}
+	}
 
 	@Override
 	public void setWorkingDirectory(Path new_dir) {
@@ -270,7 +326,7 @@ public class CrailHadoopFileSystem extends FileSystem {
 		if (directFile.isDir()) {
 			permission = FsPermission.getDirDefault();
 		}
-		FileStatus status = new FileStatus(directFile.getCapacity(), directFile.isDir(), CrailConstants.SHADOW_REPLICATION, CrailConstants.BLOCK_SIZE, directFile.getModificationTime(), directFile.getModificationTime(), permission, CrailConstants.USER, CrailConstants.USER, path.makeQualified(this.getUri(), this.workingDir));
+		FileStatus status = new FileStatus(directFile.getCapacity(), directFile.isDir(), CrailConstants.SHADOW_REPLICATION, directFile.getBlockSize(), directFile.getModificationTime(), directFile.getModificationTime(), permission, CrailConstants.USER, CrailConstants.USER, path.makeQualified(this.getUri(), this.workingDir));
 		return status;
 	}
 
@@ -278,17 +334,7 @@ public class CrailHadoopFileSystem extends FileSystem {
 	public BlockLocation[] getFileBlockLocations(FileStatus file, long start, long len) throws IOException {
 		try {
 			CrailBlockLocation[] _locations = dfs.lookupFile(file.getPath().toUri().getRawPath(), false).get().getBlockLocations(start, len);
-			BlockLocation[] locations = new BlockLocation[_locations.length];
-			for (int i = 0; i < locations.length; i++){
-				locations[i] = new BlockLocation();
-				locations[i].setOffset(_locations[i].getOffset());
-				locations[i].setLength(_locations[i].getLength());
-				locations[i].setNames(_locations[i].getNames());
-				locations[i].setHosts(_locations[i].getHosts());
-				locations[i].setTopologyPaths(_locations[i].getTopology());
-				
-			}			
-			return locations;
+			return toBlockLocations(_locations);
 		} catch(Exception e){
 			throw new IOException(e);
 		}
@@ -298,22 +344,33 @@ public class CrailHadoopFileSystem extends FileSystem {
 	public BlockLocation[] getFileBlockLocations(Path path, long start, long len) throws IOException {
 		try {
 			CrailBlockLocation[] _locations = dfs.lookupFile(path.toUri().getRawPath(), false).get().getBlockLocations(start, len);
-			BlockLocation[] locations = new BlockLocation[_locations.length];
-			for (int i = 0; i < locations.length; i++){
-				locations[i] = new BlockLocation();
-				locations[i].setOffset(_locations[i].getOffset());
-				locations[i].setLength(_locations[i].getLength());
-				locations[i].setNames(_locations[i].getNames());
-				locations[i].setHosts(_locations[i].getHosts());
-				locations[i].setTopologyPaths(_locations[i].getTopology());
-				
-			}			
-			return locations;
+			return toBlockLocations(_locations);
 		} catch(Exception e){
 			throw new IOException(e);
 		}
 	}
 	
+	private FileStatus toFileStatus(CrailNode node) {
+		FsPermission permission = FsPermission.getFileDefault();
+		if (node.isDir()) {
+			permission = FsPermission.getDirDefault();
+		}
+		return new FileStatus(node.getCapacity(), node.isDir(), CrailConstants.SHADOW_REPLICATION, node.getBlockSize(), node.getModificationTime(), node.getModificationTime(), permission, CrailConstants.USER, CrailConstants.USER, new Path(node.getPath()).makeQualified(this.getUri(), this.workingDir));
+	}
+	
+	private BlockLocation[] toBlockLocations(CrailBlockLocation[] _locations) throws IOException {
+		BlockLocation[] locations = new BlockLocation[_locations.length];
+		for (int i = 0; i < locations.length; i++){
+			locations[i] = new BlockLocation();
+			locations[i].setOffset(_locations[i].getOffset());
+			locations[i].setLength(_locations[i].getLength());
+			locations[i].setNames(_locations[i].getNames());
+			locations[i].setHosts(_locations[i].getHosts());
+			locations[i].setTopologyPaths(_locations[i].getTopology());
+		}
+		return locations;
+	}
+	
 	@Override
 	public FsStatus getStatus(Path p) throws IOException {
 		statistics.incrementReadOps(1);
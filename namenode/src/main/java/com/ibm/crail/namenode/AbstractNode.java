@@ -24,34 +24,55 @@ package com.ibm.crail.namenode;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.DelayQueue;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.ibm.crail.conf.CrailConstants;
-import com.ibm.crail.core.DirectoryRecord;
 import com.ibm.crail.namenode.protocol.BlockInfo;
 import com.ibm.crail.namenode.protocol.FileInfo;
 import com.ibm.crail.namenode.protocol.FileName;
+import com.ibm.crail.namenode.protocol.WatchEvent;
 
 public abstract class AbstractNode extends FileInfo implements Delayed {
 	private static AtomicLong fdcount = new AtomicLong(0);
+	private static final long APPEND_FAILED = Long.MIN_VALUE;
 	
 	private int fileComponent;
+	private String name;
 	private AtomicLong dirOffsetCounter;
 	private ConcurrentHashMap<Integer, AbstractNode> children;
+	private ConcurrentSkipListMap<Long, AbstractNode> offsetIndex;
+	private DelayQueue<DirectorySlot> freeSlots;
+	private AtomicBoolean compactionPending;
+	private volatile long generation;
+	private volatile long listed;
+	private long slotted;
+	private volatile byte[] inlineData;
 	private long delay;
+	private long reserved;
+	private TreeMap<Long, Long> pendingAppends;
+	private ConcurrentLinkedQueue<CapacityWaiter> waiters;
+	private ConcurrentHashMap<Long, DirectoryWatch> watches;
+	private volatile AbstractNode parent;
 	
 	public static AbstractNode createRoot() throws IOException {
 		return new DirectoryBlocks(new FileName("/").getFileComponent());
 	}
 	
-	public static AbstractNode createNode(int fileComponent, boolean isDir) throws IOException {
+	public static AbstractNode createNode(int fileComponent, boolean isDir, long blockSize, int replication, int dataFragments, int parityFragments, int codec) throws IOException {
 		if (isDir){
 			return new DirectoryBlocks(fileComponent);
 		} else {
-			return new FileBlocks(fileComponent);
+			return new FileBlocks(fileComponent, blockSize, replication, dataFragments, parityFragments, codec);
 		}
 	}
 	
@@ -59,33 +80,199 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 		super(fdcount.incrementAndGet(), isDir);
 		
 		this.fileComponent = fileComponent;
+		this.name = "";
 		this.children = new ConcurrentHashMap<Integer, AbstractNode>();
+		this.offsetIndex = isDir ? new ConcurrentSkipListMap<Long, AbstractNode>() : null;
+		this.freeSlots = isDir ? new DelayQueue<DirectorySlot>() : null;
+		this.compactionPending = new AtomicBoolean(false);
+		this.generation = 0;
+		this.listed = 0;
+		this.slotted = 0;
 		this.delay = System.currentTimeMillis();
 		this.dirOffsetCounter = new AtomicLong(0);
 		this.setModificationTime(System.currentTimeMillis());
+		this.reserved = 0;
+		this.pendingAppends = null;
+		this.waiters = new ConcurrentLinkedQueue<CapacityWaiter>();
+		this.watches = isDir ? new ConcurrentHashMap<Long, DirectoryWatch>() : null;
+		this.parent = null;
 	}
 	
-	boolean addChild(AbstractNode child) throws Exception {
+	synchronized boolean addChild(AbstractNode child) throws Exception {
 		if (!this.isDir()){
 			return false;
 		} 
 		
 		AbstractNode old = children.putIfAbsent(child.getComponent(), child);
 		if (old == null){
-			child.setDirOffset(dirOffsetCounter.getAndAdd(CrailConstants.DIRECTORY_RECORD));
+			//slots are only reused once clients holding the old record can no longer write it
+			DirectorySlot slot = freeSlots.poll();
+			if (slot != null){
+				child.setDirOffset(slot.getOffset());
+			} else {
+				child.setDirOffset(dirOffsetCounter.getAndAdd(CrailConstants.DIRECTORY_RECORD));
+			}
+			offsetIndex.put(child.getDirOffset(), child);
+			child.parent = this;
+			child.slotted = System.currentTimeMillis();
 			return true;
 		} else {
 			return false;
 		}
 	}	
 
-	AbstractNode removeChild(AbstractNode child) {
+	//the new child takes over the directory slot of the file it replaces
+	synchronized boolean replaceChild(AbstractNode old, AbstractNode child) {
+		if (!this.isDir() || !children.replace(child.getComponent(), old, child)){
+			return false;
+		}
+		child.setDirOffset(old.getDirOffset());
+		offsetIndex.put(child.getDirOffset(), child);
+		child.parent = this;
+		child.slotted = System.currentTimeMillis();
+		return true;
+	}
+
+	synchronized AbstractNode removeChild(AbstractNode child) {
 		child = children.remove(child.getComponent());
+		if (child != null){
+			offsetIndex.remove(child.getDirOffset(), child);
+			freeSlots.add(new DirectorySlot(child.getDirOffset(), CrailConstants.TOKEN_EXPIRATION));
+		}
 		return child;
 	}
 	
-	void rename(int newFileComponent) throws Exception {
+	//undoes removeChild, the child gets its old slot back so that its directory record stays valid
+	synchronized boolean restoreChild(AbstractNode child, long dirOffset) throws Exception {
+		Iterator<DirectorySlot> iter = freeSlots.iterator();
+		while (iter.hasNext()){
+			if (iter.next().getOffset() != dirOffset){
+				continue;
+			}
+			if (children.putIfAbsent(child.getComponent(), child) != null){
+				return false;
+			}
+			iter.remove();
+			child.setDirOffset(dirOffset);
+			offsetIndex.put(dirOffset, child);
+			child.parent = this;
+			return true;
+		}
+		return addChild(child);
+	}
+	
+	//picks the children with the highest offsets to move into free slots, the slots stay reserved until the compaction 
+	//is applied, records younger than the token expiration may still be in flight and are not moved
+	synchronized DirectoryCompaction planCompaction() {
+		compactionPending.set(false);
+		TreeSet<Long> holes = new TreeSet<Long>();
+		DirectorySlot slot = freeSlots.poll();
+		while (slot != null){
+			holes.add(slot.getOffset());
+			slot = freeSlots.poll();
+		}
+		DirectoryCompaction compaction = new DirectoryCompaction(dirOffsetCounter.get(), holes);
+		
+		long settled = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(CrailConstants.TOKEN_EXPIRATION);
+		Iterator<Map.Entry<Long, AbstractNode>> tail = offsetIndex.descendingMap().entrySet().iterator();
+		Long hole = holes.pollFirst();
+		while (hole != null && tail.hasNext()){
+			Map.Entry<Long, AbstractNode> last = tail.next();
+			if (last.getKey() < hole || last.getValue().slotted > settled){
+				break;
+			}
+			compaction.addMove(last.getValue(), last.getKey(), hole);
+			hole = holes.pollFirst();
+		}
+		if (hole != null){
+			holes.add(hole);
+		}
+		return compaction;
+	}
+	
+	//moves the children whose new record was written and that were neither removed nor replaced in the meantime, 
+	//then shrinks the directory, the new records of voided moves have to be invalidated before their slots are released
+	synchronized void applyCompaction(DirectoryCompaction compaction) {
+		TreeSet<Long> holes = compaction.getHoles();
+		long reserved = -CrailConstants.DIRECTORY_RECORD;
+		boolean moved = false;
+		for (DirectoryCompaction.Move move : compaction.getMoves()){
+			AbstractNode child = move.getChild();
+			if (move.getState() != DirectoryCompaction.WRITTEN){
+				holes.add(move.getTo());
+			} else if (offsetIndex.get(move.getFrom()) == child && children.get(child.getComponent()) == child){
+				offsetIndex.remove(move.getFrom());
+				child.setDirOffset(move.getTo());
+				offsetIndex.put(move.getTo(), child);
+				holes.add(move.getFrom());
+				move.setState(DirectoryCompaction.APPLIED);
+				moved = true;
+			} else {
+				reserved = Math.max(reserved, move.getTo());
+				move.setState(DirectoryCompaction.VOIDED);
+			}
+		}
+		if (moved){
+			generation++;
+		}
+		
+		long pending = reserved;
+		for (DirectorySlot busy : freeSlots){
+			pending = Math.max(pending, busy.getOffset());
+		}
+		long newSize = offsetIndex.isEmpty() ? 0 : offsetIndex.lastKey() + CrailConstants.DIRECTORY_RECORD;
+		newSize = Math.max(newSize, pending + CrailConstants.DIRECTORY_RECORD);
+		for (Long free : holes){
+			if (free < newSize){
+				freeSlots.add(new DirectorySlot(free, CrailConstants.TOKEN_EXPIRATION));
+			}
+		}
+		dirOffsetCounter.set(newSize);
+		capacity.set(newSize);
+	}
+	
+	synchronized void releaseSlot(long offset) {
+		if (offset < dirOffsetCounter.get()){
+			freeSlots.add(new DirectorySlot(offset, CrailConstants.TOKEN_EXPIRATION));
+		}
+	}
+	
+	long getGeneration() {
+		return generation;
+	}
+	
+	void touchListing() {
+		this.listed = System.currentTimeMillis();
+	}
+	
+	//compaction is held back while listings may still be running, a paged listing that outlives this
+	//fails on the generation check instead of skipping moved entries
+	boolean isListing() {
+		return System.currentTimeMillis() - listed < TimeUnit.SECONDS.toMillis(CrailConstants.TOKEN_EXPIRATION);
+	}
+	
+	boolean isSparse() {
+		if (!this.isDir() || CrailConstants.DIRECTORY_COMPACTION <= 0){
+			return false;
+		}
+		long size = dirOffsetCounter.get();
+		if (size <= CrailConstants.BUFFER_SIZE){
+			return false;
+		}
+		return ((double) offsetIndex.size())*CrailConstants.DIRECTORY_RECORD < CrailConstants.DIRECTORY_COMPACTION*size;
+	}
+	
+	boolean scheduleCompaction() {
+		return compactionPending.compareAndSet(false, true);
+	}
+	
+	void compactionDone() {
+		compactionPending.set(false);
+	}
+	
+	void rename(int newFileComponent, String newName) throws Exception {
 		this.fileComponent = newFileComponent;
+		this.name = newName;
 	}	
 
 	public abstract BlockInfo getBlock(int index);
@@ -106,6 +293,182 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 		return children.values().iterator();
 	}
 	
+	//children in directory offset order, starting at the given offset
+	public Iterator<AbstractNode> childIterator(long dirOffset){
+		return offsetIndex.tailMap(dirOffset).values().iterator();
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	//inline content is only valid as long as it covers the whole file
+	byte[] getInlineData() {
+		byte[] data = inlineData;
+		if (data != null && data.length == getCapacity()){
+			return data;
+		}
+		return null;
+	}
+	
+	void setInlineData(byte[] inlineData) {
+		this.inlineData = inlineData;
+	}
+	
+	//append reservations hand out disjoint ranges behind the capacity, the capacity only advances over committed ranges,
+	//a range that is never committed stays a hole holding the capacity back until the file is opened for writing again
+	synchronized long reserve(long length) {
+		if (pendingAppends == null){
+			pendingAppends = new TreeMap<Long, Long>();
+		}
+		if (pendingAppends.containsValue(APPEND_FAILED)){
+			return -1;
+		}
+		long offset = Math.max(reserved, getCapacity());
+		reserved = offset + length;
+		pendingAppends.put(offset, System.nanoTime() + TimeUnit.SECONDS.toNanos(CrailConstants.TOKEN_EXPIRATION));
+		return offset;
+	}
+	
+	//late commits are accepted, the deadline only decides when the file counts as closed again
+	synchronized boolean commit(long offset) {
+		Long deadline = pendingAppends != null ? pendingAppends.get(offset) : null;
+		if (deadline == null || deadline == APPEND_FAILED){
+			return false;
+		}
+		pendingAppends.remove(offset);
+		updateAppends();
+		return true;
+	}
+	
+	//a range whose blocks could not be allocated is rolled back if nothing was reserved behind it, otherwise it becomes a hole
+	synchronized void abort(long offset, long length) {
+		if (pendingAppends == null || !pendingAppends.containsKey(offset)){
+			return;
+		}
+		if (reserved == offset + length){
+			pendingAppends.remove(offset);
+			reserved = offset;
+			updateAppends();
+		} else {
+			pendingAppends.put(offset, APPEND_FAILED);
+		}
+	}
+	
+	synchronized boolean hasPendingAppends() {
+		if (pendingAppends == null){
+			return false;
+		}
+		long now = System.nanoTime();
+		for (long deadline : pendingAppends.values()){
+			if (deadline >= now){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	//an exclusive writer continues behind the committed prefix, holes and ranges of writers that timed out are dropped
+	synchronized void dropAppends() {
+		if (pendingAppends != null){
+			pendingAppends.clear();
+			reserved = getCapacity();
+		}
+	}
+	
+	private void updateAppends() {
+		setCapacity(pendingAppends.isEmpty() ? reserved : pendingAppends.firstKey());
+	}
+	
+	boolean isClosed() {
+		return tokenFree() && !hasPendingAppends();
+	}
+	
+	//the waiter is checked again after being queued so a concurrent update cannot be missed
+	void addWaiter(CapacityWaiter waiter) {
+		waiters.add(waiter);
+		if (waiter.isReady(false)){
+			notifyWaiters(false);
+		}
+	}
+	
+	void notifyWaiters(boolean deleted) {
+		if (waiters.isEmpty()){
+			return;
+		}
+		Iterator<CapacityWaiter> iter = waiters.iterator();
+		while (iter.hasNext()){
+			CapacityWaiter waiter = iter.next();
+			if (waiter.isDone()){
+				iter.remove();
+			} else if (waiter.isReady(deleted)){
+				iter.remove();
+				waiter.complete(deleted);
+			}
+		}
+	}
+	
+	//the wait server drops the subscription once it is neither polled nor cancelled
+	DirectoryWatch addWatch(DelayQueue<DeferredCall> waitQueue) {
+		DirectoryWatch watch = new DirectoryWatch();
+		watches.put(watch.getId(), watch);
+		waitQueue.add(new DirectoryWatch.WatchReaper(this, watch, waitQueue));
+		return watch;
+	}
+	
+	DirectoryWatch getWatch(long id) {
+		return watches.get(id);
+	}
+	
+	DirectoryWatch removeWatch(long id) {
+		return watches.remove(id);
+	}
+	
+	void reapWatch(DirectoryWatch watch) {
+		if (watches.remove(watch.getId(), watch)){
+			watch.close();
+		}
+	}
+	
+	void postEvent(short type, AbstractNode child, String name) {
+		postEvent(type, child, name, "");
+	}
+	
+	void postEvent(short type, AbstractNode child, String name, String oldName) {
+		if (watches.isEmpty()){
+			return;
+		}
+		WatchEvent event = new WatchEvent(type, child.getFd(), child.isDir(), name, oldName);
+		Iterator<DirectoryWatch> iter = watches.values().iterator();
+		while (iter.hasNext()){
+			DirectoryWatch watch = iter.next();
+			if (watch.isStale()){
+				iter.remove();
+				watch.close();
+			} else {
+				watch.post(event);
+			}
+		}
+	}
+	
+	void closeWatches() {
+		Iterator<DirectoryWatch> iter = watches.values().iterator();
+		while (iter.hasNext()){
+			DirectoryWatch watch = iter.next();
+			iter.remove();
+			watch.close();
+		}
+	}
+	
+	//the directory this node was last added to
+	AbstractNode getParent() {
+		return parent;
+	}
+	
+	void setName(String name) {
+		this.name = name;
+	}
+	
 	boolean hasChildren(){
 		return children.size() > 0;
 	}
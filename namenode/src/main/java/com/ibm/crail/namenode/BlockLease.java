@@ -0,0 +1,57 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.crail.namenode.protocol.BlockInfo;
+
+//a pin on a block held by a client that reads the block in place, released by the client or on expiration,
+//the pin only delays freeing the block, the file can still write it
+class BlockLease extends DeferredCall {
+	private static AtomicLong idcount = new AtomicLong(0);
+	
+	private long id;
+	private BlockInfo block;
+	private NameNodeService service;
+	
+	BlockLease(NameNodeService service, BlockInfo block, long timeout){
+		super(timeout);
+		this.id = idcount.incrementAndGet();
+		this.block = block;
+		this.service = service;
+		FileBlocks.pin(block);
+	}
+	
+	long getId(){
+		return id;
+	}
+	
+	BlockInfo getBlock(){
+		return block;
+	}
+
+	@Override
+	void expire() throws Exception {
+		service.releaseLease(id);
+	}
+}
@@ -23,8 +23,13 @@ package com.ibm.crail.namenode;
 
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.slf4j.Logger;
@@ -47,9 +52,62 @@ public class BlockStore {
 	}
 
 	public short addBlock(BlockInfo blockInfo) throws UnknownHostException {
+		for (int i = 0; i < blockInfo.getReplicaCount(); i++){
+			addBlock(blockInfo.getReplica(i));
+		}
+		blockInfo.setReplicas(null);
+		
 		int storageTier = blockInfo.getDnInfo().getStorageTier();
+		if (blockInfo.getLength() < CrailConstants.BLOCK_SIZE){
+			return storageTiers[storageTier].addSlab(blockInfo);
+		}
 		return storageTiers[storageTier].addBlock(blockInfo);
 	}
+	
+	//the primary follows the affinities, replicas are placed on distinct datanodes as far as available
+	public BlockInfo getBlock(int storageAffinity, int locationAffinity, long blockSize, int replication) throws InterruptedException {
+		BlockInfo block = getBlock(storageAffinity, locationAffinity, blockSize);
+		if (block == null || replication <= 1){
+			return block;
+		}
+		
+		HashSet<String> excluded = new HashSet<String>();
+		excluded.add(block.getDnInfo().getInetAddress().toString());
+		ArrayList<BlockInfo> replicas = new ArrayList<BlockInfo>(replication - 1);
+		while (replicas.size() < replication - 1){
+			BlockInfo replica = getReplica(storageAffinity, excluded);
+			if (replica == null){
+				break;
+			}
+			excluded.add(replica.getDnInfo().getInetAddress().toString());
+			replicas.add(replica);
+		}
+		block.setReplicas(replicas.toArray(new BlockInfo[replicas.size()]));
+		return block;
+	}
+	
+	public BlockInfo getBlock(int storageAffinity, int locationAffinity, long blockSize) throws InterruptedException {
+		if (blockSize >= CrailConstants.BLOCK_SIZE){
+			return getBlock(storageAffinity, locationAffinity);
+		}
+		
+		BlockInfo block = null;
+		if (storageAffinity > 0){
+			if (storageAffinity < storageTiers.length){
+				block = storageTiers[storageAffinity].getSlab((int) blockSize, locationAffinity);
+			}
+		}
+		if (block == null){
+			for (int i = 0; i < storageTiers.length; i++){
+				block = storageTiers[i].getSlab((int) blockSize, locationAffinity);
+				if (block != null){
+					break;
+				}
+			}
+		}
+		
+		return block;
+	}
 
 	public BlockInfo getBlock(int storageAffinity, int locationAffinity) throws InterruptedException {
 		BlockInfo block = null;
@@ -70,6 +128,17 @@ public class BlockStore {
 		return block;
 	}
 
+	private BlockInfo getReplica(int storageAffinity, Set<String> excluded) throws InterruptedException {
+		BlockInfo block = null;
+		if (storageAffinity > 0 && storageAffinity < storageTiers.length){
+			block = storageTiers[storageAffinity].getBlock(excluded);
+		}
+		for (int i = 0; block == null && i < storageTiers.length; i++){
+			block = storageTiers[i].getBlock(excluded);
+		}
+		return block;
+	}
+
 	public DataNodeBlocks getDataNode(DataNodeInfo dnInfo) {
 		int tier = dnInfo.getStorageTier();
 		return storageTiers[tier].getDataNode(dnInfo);
@@ -85,6 +154,8 @@ class StorageTier {
 	private ConcurrentHashMap<Integer, DataNodeArray> affinitySets;
 	private DataNodeArray anySet;
 	private BlockSelection blockSelection;
+	private ConcurrentHashMap<Integer, LinkedBlockingQueue<BlockInfo>> slabs;
+	private HashMap<String, SlabCarving> carvings;
 	
 	public StorageTier(int storageTier){
 		if (CrailConstants.NAMENODE_BLOCKSELECTION.equalsIgnoreCase("roundrobin")){
@@ -96,6 +167,8 @@ class StorageTier {
 		this.membership = new ConcurrentHashMap<String, DataNodeBlocks>();
 		this.affinitySets = new ConcurrentHashMap<Integer, DataNodeArray>();
 		this.anySet = new DataNodeArray(blockSelection);
+		this.slabs = new ConcurrentHashMap<Integer, LinkedBlockingQueue<BlockInfo>>();
+		this.carvings = new HashMap<String, SlabCarving>();
 //		this.anyCounter = new AtomicIntegerModulo();
 	}
 	
@@ -126,6 +199,80 @@ class StorageTier {
 		return block;
 	}
 
+	BlockInfo getBlock(Set<String> excluded) throws InterruptedException {
+		return anySet.get(excluded);
+	}
+
+	//slabs are carved from full blocks on demand and kept per size class once freed
+	BlockInfo getSlab(int slabSize, int affinity) throws InterruptedException {
+		LinkedBlockingQueue<BlockInfo> slabQueue = getSlabQueue(slabSize);
+		synchronized(carvings){
+			BlockInfo slab = slabQueue.poll();
+			if (slab != null){
+				SlabCarving carving = carvings.get(slabKey(slab));
+				if (carving != null){
+					carving.free--;
+				}
+				return slab;
+			}
+		}
+		
+		BlockInfo block = getBlock(affinity);
+		if (block == null){
+			return null;
+		}
+		SlabCarving carving = new SlabCarving(block, block.getLength() / slabSize);
+		BlockInfo slab = new BlockInfo(block.getDnInfo(), block.getAddr(), slabSize, block.getLkey());
+		synchronized(carvings){
+			carvings.put(slabKey(slab), carving);
+			for (long offset = slabSize; offset + slabSize <= block.getLength(); offset += slabSize){
+				BlockInfo free = new BlockInfo(block.getDnInfo(), block.getAddr() + offset, slabSize, block.getLkey());
+				carvings.put(slabKey(free), carving);
+				slabQueue.add(free);
+			}
+			carving.free = carving.slabs - 1;
+		}
+		return slab;
+	}
+	
+	//once all slabs of a block are free again the block goes back to its datanode as a whole
+	short addSlab(BlockInfo slab) throws UnknownHostException {
+		LinkedBlockingQueue<BlockInfo> slabQueue = getSlabQueue(slab.getLength());
+		SlabCarving carving = null;
+		synchronized(carvings){
+			carving = carvings.get(slabKey(slab));
+			slabQueue.add(slab);
+			if (carving == null || ++carving.free < carving.slabs){
+				return NameNodeProtocol.ERR_OK;
+			}
+			Iterator<BlockInfo> iter = slabQueue.iterator();
+			while (iter.hasNext()){
+				BlockInfo free = iter.next();
+				if (carvings.get(slabKey(free)) == carving){
+					iter.remove();
+					carvings.remove(slabKey(free));
+				}
+			}
+		}
+		return addBlock(carving.block);
+	}
+	
+	private static String slabKey(BlockInfo slab){
+		return slab.getDnInfo().key() + ":" + slab.getAddr();
+	}
+	
+	private LinkedBlockingQueue<BlockInfo> getSlabQueue(int slabSize){
+		LinkedBlockingQueue<BlockInfo> slabQueue = slabs.get(slabSize);
+		if (slabQueue == null){
+			slabQueue = new LinkedBlockingQueue<BlockInfo>();
+			LinkedBlockingQueue<BlockInfo> oldQueue = slabs.putIfAbsent(slabSize, slabQueue);
+			if (oldQueue != null){
+				slabQueue = oldQueue;
+			}
+		}
+		return slabQueue;
+	}
+
 	DataNodeBlocks getDataNode(DataNodeInfo dataNode) {
 		return membership.get(dataNode.getInetAddress().toString());
 	}
@@ -195,8 +342,21 @@ class StorageTier {
 		public int getNext(int size) {
 			return ThreadLocalRandom.current().nextInt(size);
 		}
-	}	
-	
+	}
+
+	//the full block a set of slabs was carved from, free counts the slabs currently pooled
+	private static class SlabCarving {
+		private BlockInfo block;
+		private int slabs;
+		private int free;
+
+		public SlabCarving(BlockInfo block, int slabs){
+			this.block = block;
+			this.slabs = slabs;
+			this.free = 0;
+		}
+	}
+
 	private class DataNodeArray {
 		private ArrayList<DataNodeBlocks> arrayList;
 		private ReentrantReadWriteLock lock;
@@ -218,6 +378,10 @@ class StorageTier {
 		}
 		
 		private BlockInfo get() throws InterruptedException {
+			return get(null);
+		}
+		
+		private BlockInfo get(Set<String> excluded) throws InterruptedException {
 			lock.readLock().lock();
 			try {
 				BlockInfo block = null;
@@ -226,6 +390,9 @@ class StorageTier {
 				for (int i = 0; i < size; i++){
 					int index = (startIndex + i) % size;
 					DataNodeBlocks anyDn = arrayList.get(index);
+					if (excluded != null && excluded.contains(anyDn.getInetAddress().toString())){
+						continue;
+					}
 					block = anyDn.getFreeBlock();
 					if (block != null){
 						break;
@@ -0,0 +1,61 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail.namenode;
+
+import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcNameNodeDeferred;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+
+//a parked waitFile call, answered on the first capacity change, close or delete of the file, or on expiration
+class CapacityWaiter extends DeferredCall {
+	private AbstractNode file;
+	private long capacity;
+	private RpcResponseMessage.WaitFileRes response;
+	private RpcNameNodeDeferred deferred;
+	
+	CapacityWaiter(AbstractNode file, long capacity, long timeout, RpcResponseMessage.WaitFileRes response, RpcNameNodeDeferred deferred){
+		super(timeout);
+		this.file = file;
+		this.capacity = capacity;
+		this.response = response;
+		this.deferred = deferred;
+	}
+	
+	boolean isReady(boolean deleted){
+		return deleted || file.getCapacity() > capacity || file.isClosed();
+	}
+	
+	void complete(boolean deleted){
+		if (finish()){
+			response.setCapacity(file.getCapacity());
+			response.setClosed(deleted || file.isClosed());
+			response.setInlineData(file.getInlineData());
+			deferred.complete(NameNodeProtocol.ERR_OK);
+		}
+	}
+	
+	@Override
+	void expire(){
+		complete(false);
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.utils.CrailUtils;
+
+public class CompactionServer implements Runnable {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private NameNodeService rpcService;
+	private BlockingQueue<AbstractNode> compactionQueue;
+	private DirectoryWriter writer;
+	
+	public CompactionServer(NameNodeService service, BlockingQueue<AbstractNode> compactionQueue, DirectoryWriter writer){
+		this.rpcService = service;
+		this.compactionQueue = compactionQueue;
+		this.writer = writer;
+	}
+
+	@Override
+	public void run() {
+		while(true){
+			try{
+				AbstractNode directory = compactionQueue.take();
+				rpcService.compactDirectory(directory, writer);
+			} catch(Exception e){
+				LOG.info("Exception during compaction: " + e.getMessage());
+			}
+		}
+	}
+
+}
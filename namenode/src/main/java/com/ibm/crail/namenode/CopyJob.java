@@ -0,0 +1,254 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.namenode.protocol.TransferReport;
+import com.ibm.crail.namenode.protocol.TransferTask;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+
+//a server-side file copy, split into one transfer task per source block (replica, fragment) which the 
+//datanode holding the source pushes into the pre-allocated destination block, the bandwidth is the budget
+//of the whole copy and is split across the source datanodes, which run their tasks in parallel, source and
+//destination blocks stay pinned until the copy has ended and every handed out task has reported back, so
+//that a concurrent delete cannot recycle a block a datanode still reads or writes
+class CopyJob {
+	private static AtomicLong idcount = new AtomicLong(0);
+	private static AtomicLong taskcount = new AtomicLong(0);
+	
+	private long id;
+	private AbstractNode source;
+	private AbstractNode destination;
+	private long capacity;
+	private long bandwidth;
+	private long total;
+	private int state;
+	private long created;
+	private long finished;
+	private HashMap<Long, Long> progress;
+	private HashMap<Long, Long> dispatched;
+	private int pending;
+	private ArrayList<BlockInfo> pinned;
+	private HashSet<Long> dataNodes;
+	private ArrayList<TransferTask> tasks;
+	
+	CopyJob(AbstractNode source, AbstractNode destination, long capacity, long bandwidth){
+		this.id = idcount.incrementAndGet();
+		this.source = source;
+		this.destination = destination;
+		this.capacity = capacity;
+		this.bandwidth = bandwidth;
+		this.total = 0;
+		this.state = RpcResponseMessage.CopyStatusRes.RUNNING;
+		this.created = System.currentTimeMillis();
+		this.finished = 0;
+		this.progress = new HashMap<Long, Long>();
+		this.dispatched = new HashMap<Long, Long>();
+		this.pending = 0;
+		this.pinned = new ArrayList<BlockInfo>();
+		this.dataNodes = new HashSet<Long>();
+		this.tasks = new ArrayList<TransferTask>();
+	}
+	
+	synchronized TransferTask addTask(BlockInfo srcBlock, BlockInfo dstBlock, int length){
+		TransferTask task = new TransferTask(taskcount.incrementAndGet(), srcBlock, dstBlock, length, bandwidth);
+		progress.put(task.getTaskId(), 0L);
+		dataNodes.add(srcBlock.getDnInfo().key());
+		total += length;
+		pending++;
+		tasks.add(task);
+		return task;
+	}
+	
+	//called once all tasks are added, each source datanode gets an equal share of the budget
+	synchronized void splitBandwidth(){
+		if (bandwidth == 0 || dataNodes.isEmpty()){
+			return;
+		}
+		long share = Math.max(1, bandwidth / dataNodes.size());
+		for (TransferTask task : tasks){
+			task.setBandwidth(share);
+		}
+	}
+	
+	synchronized void pin(BlockInfo block){
+		FileBlocks.pin(block);
+		pinned.add(block);
+	}
+	
+	//returns false if the task should not be handed out anymore
+	synchronized boolean dispatch(long taskId){
+		if (state != RpcResponseMessage.CopyStatusRes.RUNNING || !progress.containsKey(taskId)){
+			return false;
+		}
+		dispatched.put(taskId, System.currentTimeMillis());
+		return true;
+	}
+	
+	//returns true if the report ended the copy, either way, tasks of an ended copy are only checked off
+	synchronized boolean report(TransferReport report){
+		long taskId = report.getTaskId();
+		if (!dispatched.containsKey(taskId)){
+			return false;
+		}
+		if (state != RpcResponseMessage.CopyStatusRes.RUNNING){
+			if (report.getStatus() == TransferReport.RUNNING){
+				dispatched.put(taskId, System.currentTimeMillis());
+			} else {
+				dispatched.remove(taskId);
+			}
+			return false;
+		}
+		if (report.getStatus() == TransferReport.FAILED){
+			dispatched.remove(taskId);
+			return fail();
+		}
+		progress.put(taskId, report.getBytes());
+		if (report.getStatus() == TransferReport.DONE){
+			dispatched.remove(taskId);
+			pending--;
+		} else {
+			dispatched.put(taskId, System.currentTimeMillis());
+		}
+		if (pending == 0){
+			state = RpcResponseMessage.CopyStatusRes.DONE;
+			finished = System.currentTimeMillis();
+			return true;
+		}
+		return false;
+	}
+	
+	//returns true if the copy was still running
+	synchronized boolean fail(){
+		if (state != RpcResponseMessage.CopyStatusRes.RUNNING){
+			return false;
+		}
+		state = RpcResponseMessage.CopyStatusRes.FAILED;
+		finished = System.currentTimeMillis();
+		return true;
+	}
+	
+	//copies without transfer tasks (empty or inline files) are done right away
+	synchronized boolean complete(){
+		if (state != RpcResponseMessage.CopyStatusRes.RUNNING || pending > 0){
+			return false;
+		}
+		state = RpcResponseMessage.CopyStatusRes.DONE;
+		finished = System.currentTimeMillis();
+		return true;
+	}
+	
+	//a handed out task the datanode should abort, the copy has ended without it
+	synchronized boolean isCancelled(long taskId){
+		return state != RpcResponseMessage.CopyStatusRes.RUNNING && dispatched.containsKey(taskId);
+	}
+	
+	//an ended copy whose handed out tasks all reported back, or went silent for the token expiration
+	synchronized boolean isSettled(){
+		if (state == RpcResponseMessage.CopyStatusRes.RUNNING){
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		long expiration = TimeUnit.SECONDS.toMillis(CrailConstants.TOKEN_EXPIRATION);
+		Iterator<Long> iter = dispatched.values().iterator();
+		while (iter.hasNext()){
+			if (now - iter.next() > expiration){
+				iter.remove();
+			}
+		}
+		return dispatched.isEmpty();
+	}
+	
+	//a running copy is stale once a handed out task, or a datanode that still has to pick up tasks, 
+	//has not been heard of for the token expiration, a finished copy once nobody asked for its status
+	synchronized boolean isStale(Map<Long, Long> lastPolls){
+		long now = System.currentTimeMillis();
+		long expiration = TimeUnit.SECONDS.toMillis(CrailConstants.TOKEN_EXPIRATION);
+		if (state != RpcResponseMessage.CopyStatusRes.RUNNING){
+			return now - finished > expiration;
+		}
+		for (Long seen : dispatched.values()){
+			if (now - seen > expiration){
+				return true;
+			}
+		}
+		for (Long key : dataNodes){
+			Long seen = lastPolls.get(key);
+			if (now - Math.max(created, seen == null ? 0 : seen) > expiration){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	synchronized long getCopied(){
+		long copied = 0;
+		for (Long bytes : progress.values()){
+			copied += bytes;
+		}
+		return copied;
+	}
+	
+	synchronized int getState(){
+		return state;
+	}
+	
+	synchronized long getTotal(){
+		return total;
+	}
+	
+	long getId(){
+		return id;
+	}
+	
+	AbstractNode getSource(){
+		return source;
+	}
+	
+	AbstractNode getDestination(){
+		return destination;
+	}
+	
+	//the capacity of the source at the time the copy started
+	long getCapacity(){
+		return capacity;
+	}
+	
+	synchronized ArrayList<BlockInfo> releasePinned(){
+		ArrayList<BlockInfo> blocks = new ArrayList<BlockInfo>(pinned);
+		pinned.clear();
+		return blocks;
+	}
+	
+	synchronized ArrayList<Long> getTasks(){
+		return new ArrayList<Long>(progress.keySet());
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//a parked rpc or a lease, ended either by the event it waits for or by the wait server once the timeout expires
+abstract class DeferredCall implements Delayed {
+	private long expiration;
+	private AtomicBoolean done;
+	
+	DeferredCall(long timeout){
+		this.expiration = System.currentTimeMillis() + timeout;
+		this.done = new AtomicBoolean(false);
+	}
+	
+	//only the first caller gets to answer
+	boolean finish(){
+		return done.compareAndSet(false, true);
+	}
+	
+	boolean isDone(){
+		return done.get();
+	}
+	
+	//only while the call is out of the wait queue, the queue orders by expiration
+	void extend(long timeout){
+		this.expiration = System.currentTimeMillis() + timeout;
+	}
+	
+	abstract void expire() throws Exception;
+
+	@Override
+	public long getDelay(TimeUnit unit) {
+		long diff = expiration - System.currentTimeMillis();
+		return unit.convert(diff, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public int compareTo(Delayed o) {
+		DeferredCall other = (DeferredCall) o;
+		return Long.compare(expiration, other.expiration);
+	}
+}
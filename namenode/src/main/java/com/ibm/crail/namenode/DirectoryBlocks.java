@@ -46,6 +46,20 @@ public class DirectoryBlocks extends AbstractNode {
 		return old == null;
 	}
 
+	//hands all blocks at or beyond the given index over to the target node
+	void moveBlocks(int fromIndex, DirectoryBlocks target) {
+		Iterator<Integer> iter = blocks.keySet().iterator();
+		while (iter.hasNext()){
+			Integer index = iter.next();
+			if (index >= fromIndex){
+				BlockInfo blockInfo = blocks.remove(index);
+				if (blockInfo != null){
+					target.addBlock(index, blockInfo);
+				}
+			}
+		}
+	}
+
 	@Override
 	public void freeBlocks(BlockStore blockStore) throws UnknownHostException {
 		Iterator<BlockInfo> iter = blocks.values().iterator();
@@ -0,0 +1,99 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.util.ArrayList;
+import java.util.TreeSet;
+
+//a compaction of one directory, planned and applied under the directory lock, the records are rewritten in between
+class DirectoryCompaction {
+	static final int PLANNED = 0;
+	static final int WRITTEN = 1;
+	static final int APPLIED = 2;
+	static final int VOIDED = 3;
+	
+	private long size;
+	private TreeSet<Long> holes;
+	private ArrayList<Move> moves;
+	
+	DirectoryCompaction(long size, TreeSet<Long> holes){
+		this.size = size;
+		this.holes = holes;
+		this.moves = new ArrayList<Move>();
+	}
+	
+	long getSize() {
+		return size;
+	}
+	
+	TreeSet<Long> getHoles() {
+		return holes;
+	}
+	
+	ArrayList<Move> getMoves() {
+		return moves;
+	}
+	
+	void addMove(AbstractNode child, long from, long to) {
+		moves.add(new Move(child, from, to));
+	}
+	
+	static class Move {
+		private AbstractNode child;
+		private String name;
+		private long from;
+		private long to;
+		private int state;
+		
+		Move(AbstractNode child, long from, long to){
+			this.child = child;
+			this.name = child.getName();
+			this.from = from;
+			this.to = to;
+			this.state = PLANNED;
+		}
+		
+		AbstractNode getChild() {
+			return child;
+		}
+		
+		String getName() {
+			return name;
+		}
+		
+		long getFrom() {
+			return from;
+		}
+		
+		long getTo() {
+			return to;
+		}
+		
+		int getState() {
+			return state;
+		}
+		
+		void setState(int state) {
+			this.state = state;
+		}
+	}
+}
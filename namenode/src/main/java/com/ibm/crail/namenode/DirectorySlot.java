@@ -0,0 +1,54 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+class DirectorySlot implements Delayed {
+	private long offset;
+	private long expiration;
+	
+	DirectorySlot(long offset, long delay){
+		this.offset = offset;
+		this.expiration = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(delay);
+	}
+
+	long getOffset() {
+		return offset;
+	}
+
+	@Override
+	public long getDelay(TimeUnit unit) {
+		long diff = expiration - System.currentTimeMillis();
+		return unit.convert(diff, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public int compareTo(Delayed o) {
+		DirectorySlot other = (DirectorySlot) o;
+		if (expiration != other.expiration){
+			return expiration < other.expiration ? -1 : 1;
+		}
+		return Long.compare(offset, other.offset);
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.protocol.WatchEvent;
+import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcNameNodeDeferred;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+
+//a subscription on a directory, events are handed to a parked poll right away, otherwise they queue up
+//in order, a queued close is replaced by later events of the same file and back to back renames are merged,
+//creates and deletes are always delivered, once more events queue up than the limit the events are dropped
+//and the subscriber is told to list the directory again
+class DirectoryWatch {
+	private static AtomicLong idcount = new AtomicLong(0);
+	
+	private long id;
+	private LinkedList<WatchEvent> events;
+	private HashMap<Long, WatchEvent> latest;
+	private boolean overflow;
+	private boolean closed;
+	private WatchPoll pending;
+	private long lastPoll;
+	
+	DirectoryWatch(){
+		this.id = idcount.incrementAndGet();
+		this.events = new LinkedList<WatchEvent>();
+		this.latest = new HashMap<Long, WatchEvent>();
+		this.overflow = false;
+		this.closed = false;
+		this.pending = null;
+		this.lastPoll = System.currentTimeMillis();
+	}
+	
+	synchronized void post(WatchEvent event){
+		if (closed){
+			return;
+		}
+		if (!overflow){
+			WatchEvent last = latest.get(event.getFd());
+			if (last != null && last.getType() == WatchEvent.CLOSE){
+				events.remove(last);
+			} else if (last != null && last.getType() == WatchEvent.RENAME && event.getType() == WatchEvent.RENAME){
+				events.remove(last);
+				event = new WatchEvent(WatchEvent.RENAME, event.getFd(), event.isDir(), event.getName(), last.getOldName());
+			}
+			events.add(event);
+			latest.put(event.getFd(), event);
+			if (events.size() > CrailConstants.DIRECTORY_WATCH_QUEUE){
+				events.clear();
+				latest.clear();
+				overflow = true;
+			}
+		}
+		deliver();
+	}
+	
+	//returns false if the response is complete, true if the call has been parked
+	synchronized boolean poll(RpcResponseMessage.WatchDirRes response, RpcNameNodeDeferred deferred, long timeout, DelayQueue<DeferredCall> waitQueue){
+		lastPoll = System.currentTimeMillis();
+		if (pending != null){
+			//a retry of a poll the client gave up on
+			answer(pending);
+		}
+		response.setWatchId(id);
+		if (timeout == 0 || hasEvents()){
+			drain(response);
+			return false;
+		}
+		pending = new WatchPoll(this, response, deferred, timeout);
+		waitQueue.add(pending);
+		return true;
+	}
+	
+	synchronized void close(){
+		closed = true;
+		events.clear();
+		latest.clear();
+		deliver();
+	}
+	
+	synchronized boolean isClosed(){
+		return closed;
+	}
+	
+	//subscribers that neither poll nor cancel are dropped after the token expiration
+	synchronized boolean isStale(){
+		return pending == null && System.currentTimeMillis() - lastPoll > TimeUnit.SECONDS.toMillis(CrailConstants.TOKEN_EXPIRATION);
+	}
+	
+	//time until the subscription turns stale if nobody polls
+	synchronized long staleIn(){
+		long expiration = TimeUnit.SECONDS.toMillis(CrailConstants.TOKEN_EXPIRATION);
+		if (pending != null){
+			return expiration;
+		}
+		return Math.max(1, lastPoll + expiration - System.currentTimeMillis() + 1);
+	}
+	
+	synchronized void expire(WatchPoll poll){
+		answer(poll);
+	}
+	
+	long getId(){
+		return id;
+	}
+	
+	private boolean hasEvents(){
+		return closed || overflow || !events.isEmpty();
+	}
+	
+	private void deliver(){
+		if (pending != null && hasEvents()){
+			answer(pending);
+		}
+	}
+	
+	private void answer(WatchPoll poll){
+		if (pending == poll){
+			pending = null;
+			lastPoll = System.currentTimeMillis();
+		}
+		if (poll.finish()){
+			drain(poll.response);
+			poll.deferred.complete(NameNodeProtocol.ERR_OK);
+		}
+	}
+	
+	private void drain(RpcResponseMessage.WatchDirRes response){
+		response.setClosed(closed);
+		response.setOverflow(overflow);
+		overflow = false;
+		Iterator<WatchEvent> iter = events.iterator();
+		while (iter.hasNext()){
+			WatchEvent event = iter.next();
+			if (!response.addEvent(event)){
+				break;
+			}
+			iter.remove();
+			if (latest.get(event.getFd()) == event){
+				latest.remove(event.getFd());
+			}
+		}
+	}
+	
+	static class WatchPoll extends DeferredCall {
+		private DirectoryWatch watch;
+		private RpcResponseMessage.WatchDirRes response;
+		private RpcNameNodeDeferred deferred;
+		
+		WatchPoll(DirectoryWatch watch, RpcResponseMessage.WatchDirRes response, RpcNameNodeDeferred deferred, long timeout){
+			super(timeout);
+			this.watch = watch;
+			this.response = response;
+			this.deferred = deferred;
+		}
+
+		@Override
+		void expire() {
+			watch.expire(this);
+		}
+	}
+	
+	//reaps the subscription from the wait server, so abandoned watches on a quiet directory do not leak
+	static class WatchReaper extends DeferredCall {
+		private AbstractNode directory;
+		private DirectoryWatch watch;
+		private DelayQueue<DeferredCall> waitQueue;
+		
+		WatchReaper(AbstractNode directory, DirectoryWatch watch, DelayQueue<DeferredCall> waitQueue){
+			super(watch.staleIn());
+			this.directory = directory;
+			this.watch = watch;
+			this.waitQueue = waitQueue;
+		}
+
+		@Override
+		void expire() {
+			if (watch.isClosed()){
+				return;
+			}
+			if (watch.isStale()){
+				directory.reapWatch(watch);
+			} else {
+				waitQueue.add(new WatchReaper(directory, watch, waitQueue));
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail.namenode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.conf.CrailConfiguration;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.datanode.DataNode;
+import com.ibm.crail.namenode.protocol.DirectoryRecord;
+import com.ibm.crail.datanode.DataNodeEndpoint;
+import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.utils.CrailUtils;
+import com.ibm.crail.utils.EndpointCache;
+
+//writes directory records on behalf of the namenode, used by compaction to keep the directory file in sync
+public class DirectoryWriter {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private EndpointCache endpointCache;
+	private ByteBuffer buffer;
+	
+	public DirectoryWriter(EndpointCache endpointCache){
+		this.endpointCache = endpointCache;
+		this.buffer = ByteBuffer.allocateDirect(CrailConstants.DIRECTORY_RECORD);
+	}
+	
+	//datanode clients are only set up when compaction is enabled, the namenode then writes records like a client does
+	public static DirectoryWriter createInstance(CrailConfiguration conf) throws Exception {
+		StringTokenizer tokenizer = new StringTokenizer(CrailConstants.DATANODE_TYPES, ",");
+		LinkedList<DataNode> dataNodeClients = new LinkedList<DataNode>(); 
+		while (tokenizer.hasMoreTokens()){
+			DataNode dataNode = DataNode.createInstance(tokenizer.nextToken());
+			dataNode.init(conf, null);
+			dataNodeClients.add(dataNode);
+		}
+		return new DirectoryWriter(new EndpointCache(0, dataNodeClients));
+	}
+	
+	//writes a valid record for the child at the given offset, false if the record could not be written
+	boolean place(AbstractNode directory, String name, long offset) {
+		try {
+			write(directory, offset, new DirectoryRecord(true, CrailUtils.combinePath("/", name)));
+			return true;
+		} catch(Exception e){
+			LOG.info("directory record write failed, fd " + directory.getFd() + ", offset " + offset + ", " + e.getMessage());
+			return false;
+		}
+	}
+	
+	//invalidates the record at the given offset
+	boolean clear(AbstractNode directory, String name, long offset) {
+		try {
+			write(directory, offset, new DirectoryRecord(false, CrailUtils.combinePath("/", name)));
+			return true;
+		} catch(Exception e){
+			LOG.info("directory record invalidation failed, fd " + directory.getFd() + ", offset " + offset + ", " + e.getMessage());
+			return false;
+		}
+	}
+	
+	private void write(AbstractNode directory, long offset, DirectoryRecord record) throws Exception {
+		BlockInfo block = directory.getBlock(CrailUtils.computeIndex(offset, directory.getBlockSize()));
+		if (block == null){
+			throw new IOException("no directory block for offset " + offset);
+		}
+		long blockOffset = offset % directory.getBlockSize();
+		write(block, blockOffset, record);
+		for (int i = 0; i < block.getReplicaCount(); i++){
+			write(block.getReplica(i), blockOffset, record);
+		}
+	}
+	
+	private void write(BlockInfo block, long blockOffset, DirectoryRecord record) throws Exception {
+		buffer.clear();
+		record.write(buffer);
+		buffer.flip();
+		DataNodeEndpoint endpoint = endpointCache.getDataEndpoint(block.getDnInfo());
+		endpoint.write(buffer, buffer, block, blockOffset).get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+}
@@ -23,20 +23,42 @@ package com.ibm.crail.namenode;
 
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.utils.CrailUtils;
 
 public class FileBlocks extends AbstractNode {
+	//blocks referenced by more than one file (clones), mapped to their reference count
+	private static ConcurrentHashMap<BlockInfo, Integer> sharedBlocks = new ConcurrentHashMap<BlockInfo, Integer>();
+	//blocks that must not be handed out again yet (copies in flight), and those of them whose files are gone already
+	private static ConcurrentHashMap<BlockInfo, Integer> pinnedBlocks = new ConcurrentHashMap<BlockInfo, Integer>();
+	private static HashSet<BlockInfo> orphanedBlocks = new HashSet<BlockInfo>();
+	
 	private ArrayList<BlockInfo> blocks;
 	private final ReentrantReadWriteLock lock;
 	private final Lock readLock;
 	private final Lock writeLock;
 	
-	public FileBlocks(int fileComponent) {
+	public FileBlocks(int fileComponent, long blockSize) {
+		this(fileComponent, blockSize, 1);
+	}
+	
+	public FileBlocks(int fileComponent, long blockSize, int replication) {
+		this(fileComponent, blockSize, replication, 0, 0, 0);
+	}
+	
+	public FileBlocks(int fileComponent, long blockSize, int replication, int dataFragments, int parityFragments, int codec) {
 		super(fileComponent, false);
+		this.setBlockSize(blockSize);
+		this.setReplication(replication);
+		this.setErasureCoding(dataFragments, parityFragments);
+		this.setCodec(codec);
 		this.blocks = new ArrayList<BlockInfo>(128);
 		this.lock = new ReentrantReadWriteLock();
 		this.readLock = lock.readLock();
@@ -74,6 +96,127 @@ public class FileBlocks extends AbstractNode {
 		}
 	}
 
+	//drops the partial last block of this file, or all blocks of a slab file, and moves the blocks of source behind the full ones,
+	//the capacity this file is expected to have is checked under the locks, returns false if it changed
+	boolean appendBlocks(long capacity, FileBlocks source, FileBlocks released) {
+		FileBlocks first = this.getFd() < source.getFd() ? this : source;
+		FileBlocks second = first == this ? source : this;
+		first.writeLock.lock();
+		second.writeLock.lock();
+		try {
+			long blockSize = getBlockSize();
+			long srcCapacity = source.getCapacity();
+			long concatAddress = CrailUtils.concatAddress(capacity, blockSize);
+			int index = CrailUtils.computeIndex(concatAddress, blockSize);
+			int count = srcCapacity == 0 ? 0 : CrailUtils.computeIndex(srcCapacity - 1, blockSize) + 1;
+			if (getCapacity() != capacity || blocks.size() < index || source.blocks.size() < count){
+				return false;
+			}
+			while (blocks.size() > index){
+				released.blocks.add(blocks.remove(blocks.size() - 1));
+			}
+			List<BlockInfo> moved = source.blocks.subList(0, count);
+			blocks.addAll(moved);
+			moved.clear();
+			setCapacity(concatAddress + srcCapacity);
+			return true;
+		} finally {
+			second.writeLock.unlock();
+			first.writeLock.unlock();
+		}
+	}
+
+	//shares the first count blocks of source with this (empty) file
+	boolean cloneBlocks(FileBlocks source, int count) {
+		FileBlocks first = this.getFd() < source.getFd() ? this : source;
+		FileBlocks second = first == this ? source : this;
+		first.writeLock.lock();
+		second.writeLock.lock();
+		try {
+			if (!blocks.isEmpty() || source.blocks.size() < count){
+				return false;
+			}
+			for (int i = 0; i < count; i++){
+				BlockInfo block = source.blocks.get(i);
+				share(block);
+				blocks.add(block);
+			}
+			return true;
+		} finally {
+			second.writeLock.unlock();
+			first.writeLock.unlock();
+		}
+	}
+	
+	static boolean isShared(BlockInfo block) {
+		return sharedBlocks.containsKey(block);
+	}
+	
+	static void share(BlockInfo block) {
+		while (true){
+			Integer refs = sharedBlocks.get(block);
+			if (refs == null ? sharedBlocks.putIfAbsent(block, 2) == null : sharedBlocks.replace(block, refs, refs + 1)){
+				return;
+			}
+		}
+	}
+	
+	//drops one reference, returns true if the caller held the last one and the block is not pinned, 
+	//unshared and unpinned blocks never touch a lock
+	static boolean release(BlockInfo block) {
+		while (true){
+			Integer refs = sharedBlocks.get(block);
+			if (refs == null){
+				return retire(block);
+			}
+			if (refs > 2 ? sharedBlocks.replace(block, refs, refs - 1) : sharedBlocks.remove(block, refs)){
+				return false;
+			}
+		}
+	}
+	
+	//pins only delay freeing, a pinned block stays readable and writable in its file
+	static void pin(BlockInfo block) {
+		synchronized(pinnedBlocks){
+			Integer pins = pinnedBlocks.get(block);
+			pinnedBlocks.put(block, pins == null ? 1 : pins + 1);
+		}
+	}
+	
+	//returns true if the block was released while pinned and this was the last pin, the caller frees it then
+	static boolean unpin(BlockInfo block) {
+		synchronized(pinnedBlocks){
+			Integer pins = pinnedBlocks.get(block);
+			if (pins == null){
+				return false;
+			}
+			if (pins > 1){
+				pinnedBlocks.put(block, pins - 1);
+				return false;
+			}
+			pinnedBlocks.remove(block);
+			return orphanedBlocks.remove(block);
+		}
+	}
+	
+	static boolean isPinned(BlockInfo block) {
+		return pinnedBlocks.containsKey(block);
+	}
+	
+	private static boolean retire(BlockInfo block) {
+		if (!pinnedBlocks.containsKey(block)){
+			return true;
+		}
+		synchronized(pinnedBlocks){
+			if (!pinnedBlocks.containsKey(block)){
+				return true;
+			}
+			orphanedBlocks.add(block);
+			return false;
+		}
+	}
+
+	//shared blocks go back to the block store with their last reference only
 	@Override
 	public void freeBlocks(BlockStore blockStore) throws UnknownHostException {
 		readLock.lock();
@@ -81,7 +224,9 @@ public class FileBlocks extends AbstractNode {
 			Iterator<BlockInfo> iter = blocks.iterator();
 			while (iter.hasNext()){
 				BlockInfo blockInfo = iter.next();
-				blockStore.addBlock(blockInfo);
+				if (release(blockInfo)){
+					blockStore.addBlock(blockInfo);
+				}
 			}	
 		} finally {
 			readLock.unlock();
@@ -22,6 +22,7 @@
 package com.ibm.crail.namenode;
 
 import java.util.concurrent.DelayQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.slf4j.Logger;
 
@@ -42,7 +43,9 @@ public class NameNode {
 		CrailConstants.verify();
 		
 		DelayQueue<AbstractNode> deleteQueue = new DelayQueue<AbstractNode>();
-		NameNodeService service = new NameNodeService(deleteQueue);
+		LinkedBlockingQueue<AbstractNode> compactionQueue = new LinkedBlockingQueue<AbstractNode>();
+		DelayQueue<DeferredCall> waitQueue = new DelayQueue<DeferredCall>();
+		NameNodeService service = new NameNodeService(deleteQueue, compactionQueue, waitQueue);
 		
 		RpcNameNode rpcNameNode = RpcNameNode.createInstance(CrailConstants.NAMENODE_RPC_TYPE);
 		GCServer gcServer = new GCServer(service, deleteQueue);
@@ -50,6 +53,16 @@ public class NameNode {
 		Thread gc = new Thread(gcServer);
 		gc.start();
 		
+		if (CrailConstants.DIRECTORY_COMPACTION > 0){
+			CompactionServer compactionServer = new CompactionServer(service, compactionQueue, DirectoryWriter.createInstance(conf));
+			Thread compaction = new Thread(compactionServer);
+			compaction.start();
+		}
+		
+		WaitServer waitServer = new WaitServer(waitQueue);
+		Thread wait = new Thread(waitServer);
+		wait.start();
+		
 		rpcNameNode.run(service);
 		System.exit(0);;
 //		gc.join();
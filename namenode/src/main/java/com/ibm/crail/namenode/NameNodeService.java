@@ -22,19 +22,27 @@
 package com.ibm.crail.namenode;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 
 import com.ibm.crail.conf.CrailConstants;
-import com.ibm.crail.core.DirectoryRecord;
 import com.ibm.crail.namenode.protocol.BlockInfo;
 import com.ibm.crail.namenode.protocol.DataNodeInfo;
 import com.ibm.crail.namenode.protocol.FileInfo;
 import com.ibm.crail.namenode.protocol.FileName;
+import com.ibm.crail.namenode.protocol.TransferReport;
+import com.ibm.crail.namenode.protocol.TransferTask;
+import com.ibm.crail.namenode.protocol.WatchEvent;
 import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcNameNodeDeferred;
 import com.ibm.crail.namenode.rpc.RpcNameNodeService;
 import com.ibm.crail.namenode.rpc.RpcNameNodeState;
 import com.ibm.crail.namenode.rpc.RpcRequestMessage;
@@ -47,9 +55,20 @@ public class NameNodeService implements RpcNameNodeService {
 	//data structures for datanodes, blocks, files
 	private BlockStore blockStore;
 	private DelayQueue<AbstractNode> deleteQueue;
+	private BlockingQueue<AbstractNode> compactionQueue;
+	private DelayQueue<DeferredCall> waitQueue;
 	private FileStore fileTree;
 	private ConcurrentHashMap<Long, AbstractNode> fileTable;	
 	
+	//server-side copies, transfer tasks are queued per source datanode until the datanode polls for them
+	private ConcurrentHashMap<Long, CopyJob> copyTable;
+	private ConcurrentHashMap<Long, CopyJob> taskTable;
+	private ConcurrentHashMap<Long, ConcurrentLinkedQueue<TransferTask>> transferQueues;
+	private ConcurrentHashMap<Long, Long> transferPolls;
+	
+	//blocks pinned by clients reading them in place
+	private ConcurrentHashMap<Long, BlockLease> leaseTable;
+	
 	//statistics
 	private AtomicLong totalOps;
 	private AtomicLong createOps;
@@ -62,11 +81,18 @@ public class NameNodeService implements RpcNameNodeService {
 	private AtomicLong getWriteOps;
 	private AtomicLong getReadOps;
 	
-	NameNodeService(DelayQueue<AbstractNode> deleteQueue) throws IOException {
+	NameNodeService(DelayQueue<AbstractNode> deleteQueue, BlockingQueue<AbstractNode> compactionQueue, DelayQueue<DeferredCall> waitQueue) throws IOException {
 		this.blockStore = new BlockStore();
 		this.deleteQueue = deleteQueue;
+		this.compactionQueue = compactionQueue;
+		this.waitQueue = waitQueue;
 		this.fileTree = new FileStore();
 		this.fileTable = new ConcurrentHashMap<Long, AbstractNode>();
+		this.copyTable = new ConcurrentHashMap<Long, CopyJob>();
+		this.taskTable = new ConcurrentHashMap<Long, CopyJob>();
+		this.transferQueues = new ConcurrentHashMap<Long, ConcurrentLinkedQueue<TransferTask>>();
+		this.transferPolls = new ConcurrentHashMap<Long, Long>();
+		this.leaseTable = new ConcurrentHashMap<Long, BlockLease>();
 		
 		AbstractNode root = fileTree.getRoot();
 		fileTable.put(root.getFd(), root);
@@ -96,11 +122,24 @@ public class NameNodeService implements RpcNameNodeService {
 		boolean writeable = isDir ? false : true; 
 		int storageAffinity = request.getStorageAffinity();
 		int locationAffinity = request.getLocationAffinity();
+		int replication = isDir ? 1 : Math.max(1, Math.min(request.getReplication(), BlockInfo.MAX_REPLICATION));
+		int dataFragments = isDir ? 0 : Math.max(0, request.getDataFragments());
+		int parityFragments = dataFragments > 0 ? request.getParityFragments() : 0;
+		int codec = isDir ? 0 : request.getCodec();
+		//replicas are allocated from full blocks only, erasure coded blocks span one full block per data fragment
+		long blockSize = isDir || replication > 1 ? CrailConstants.BLOCK_SIZE : CrailUtils.blockSizeForHint(request.getSizeHint());
+		if (dataFragments > 0){
+			replication = 1;
+			blockSize = CrailConstants.BLOCK_SIZE*dataFragments;
+		}
 		
 		//check params
 		if (isDir && locationAffinity > 0){
 			return NameNodeProtocol.ERR_DIR_LOCATION_AFFINITY_MISMATCH;
 		}
+		if (dataFragments > 0 && (parityFragments <= 0 || dataFragments + parityFragments > BlockInfo.MAX_FRAGMENTS)){
+			return NameNodeProtocol.ERR_ERASURE_INVALID;
+		}
 		
 		//rpc
 		AbstractNode parentInfo = fileTree.retrieveParent(fileHash, errorState);
@@ -114,17 +153,21 @@ public class NameNodeService implements RpcNameNodeService {
 			return NameNodeProtocol.ERR_PARENT_NOT_DIR;
 		}
 		
-		AbstractNode fileInfo = FileBlocks.createNode(fileHash.getFileComponent(), isDir);
+		AbstractNode fileInfo = FileBlocks.createNode(fileHash.getFileComponent(), isDir, blockSize, replication, dataFragments, parityFragments, codec);
+		fileInfo.setName(fileHash.getName());
 		if (!parentInfo.addChild(fileInfo)){
 			return NameNodeProtocol.ERR_FILE_EXISTS;
 		}
 		
-		BlockInfo fileBlock = blockStore.getBlock(storageAffinity, locationAffinity);
-		if (fileBlock == null){
-			return NameNodeProtocol.ERR_NO_FREE_BLOCKS;
-		}			
-		if (!fileInfo.addBlock(0, fileBlock)){
-			return NameNodeProtocol.ERR_ADD_BLOCK_FAILED;
+		BlockInfo fileBlock = null;
+		if (!mayStayInline(fileInfo)){
+			fileBlock = getFileBlock(fileInfo, 0, storageAffinity, locationAffinity);
+			if (fileBlock == null){
+				return fileInfo.isErasureCoded() ? NameNodeProtocol.ERR_ERASURE_PLACEMENT : NameNodeProtocol.ERR_NO_FREE_BLOCKS;
+			}			
+			if (!fileInfo.addBlock(0, fileBlock)){
+				return NameNodeProtocol.ERR_ADD_BLOCK_FAILED;
+			}
 		}
 		
 		int index = CrailUtils.computeIndex(fileInfo.getDirOffset());
@@ -138,13 +181,16 @@ public class NameNodeService implements RpcNameNodeService {
 				blockStore.addBlock(parentBlock);
 				parentBlock = parentInfo.getBlock(index);
 				if (parentBlock == null){
-					blockStore.addBlock(fileBlock);
+					if (fileBlock != null){
+						blockStore.addBlock(fileBlock);
+					}
 					return NameNodeProtocol.ERR_CREATE_FILE_FAILED;
 				}
 			}
 		}
-		parentInfo.incCapacity(CrailConstants.DIRECTORY_RECORD);
+		parentInfo.setCapacity(fileInfo.getDirOffset() + CrailConstants.DIRECTORY_RECORD);
 		fileTable.put(fileInfo.getFd(), fileInfo);
+		parentInfo.postEvent(WatchEvent.CREATE, fileInfo, fileInfo.getName());
 		
 		if (writeable) {
 			fileInfo.updateToken();
@@ -183,12 +229,15 @@ public class NameNodeService implements RpcNameNodeService {
 		if (fileInfo == null){
 			return NameNodeProtocol.ERR_GET_FILE_FAILED;
 		}
-		if (writeable && !fileInfo.tokenFree()){
+		if (writeable && (!fileInfo.tokenFree() || fileInfo.hasPendingAppends())){
 			return NameNodeProtocol.ERR_TOKEN_TAKEN;			
 		} 
 		
 		if (writeable){
+			fileInfo.dropAppends();
 			fileInfo.updateToken();
+		} else if (fileInfo.isDir()){
+			fileInfo.touchListing();
 		}
 		fileTable.put(fileInfo.getFd(), fileInfo);
 		
@@ -196,6 +245,7 @@ public class NameNodeService implements RpcNameNodeService {
 		
 		response.setFileInfo(fileInfo);
 		response.setFileBlock(fileBlock);
+		response.setInlineData(fileInfo.getInlineData());
 		if (writeable){
 			response.shipToken();
 		}
@@ -217,6 +267,7 @@ public class NameNodeService implements RpcNameNodeService {
 		//get params
 		FileInfo fileInfo = request.getFileInfo();
 		boolean close = request.isClose();
+		byte[] inlineData = request.getInlineData();
 
 		//rpc
 		AbstractNode storedFile = fileTable.get(fileInfo.getFd());
@@ -226,11 +277,21 @@ public class NameNodeService implements RpcNameNodeService {
 		
 		if (!storedFile.isDir() && storedFile.getToken() > 0 && storedFile.getToken() == fileInfo.getToken()){
 			storedFile.setCapacity(fileInfo.getCapacity());	
+			//stale inline content is ignored once the capacity moves past it
+			if (inlineData != null && inlineData.length == storedFile.getCapacity()){
+				storedFile.setInlineData(inlineData);
+			}
 		}
 		
 		if (close){
+			boolean written = !storedFile.isDir() && !storedFile.tokenFree();
 			storedFile.resetToken();
+			AbstractNode parentInfo = storedFile.getParent();
+			if (written && parentInfo != null){
+				parentInfo.postEvent(WatchEvent.CLOSE, storedFile, storedFile.getName());
+			}
 		}
+		storedFile.notifyWaiters(false);
 		
 		if (CrailConstants.DEBUG){
 			LOG.info("setFile: " + fileInfo.toString() + ", close " + close);
@@ -275,7 +336,13 @@ public class NameNodeService implements RpcNameNodeService {
 		}
 		
 		fileTable.remove(fileInfo.getFd());
+		fileInfo.notifyWaiters(true);
+		parentInfo.postEvent(WatchEvent.DELETE, fileInfo, fileInfo.getName());
+		if (fileInfo.isDir()){
+			fileInfo.closeWatches();
+		}
 		appendToDeleteQueue(fileInfo);
+		appendToCompactionQueue(parentInfo);
 		
 		if (CrailConstants.DEBUG){
 			LOG.info("removeFile: filename, fd " + fileInfo.getFd());
@@ -333,23 +400,45 @@ public class NameNodeService implements RpcNameNodeService {
 		} 
 		
 		AbstractNode dstFile = fileTree.retrieveFile(dstFileHash, errorState);
+		AbstractNode replaced = null;
 		if (dstFile != null && !dstFile.isDir()){
-			return NameNodeProtocol.ERR_FILE_EXISTS;
+			if (!request.isOverwrite() || srcFile.isDir() || dstFile == srcFile){
+				return NameNodeProtocol.ERR_FILE_EXISTS;
+			}
+			replaced = dstFile;
 		}		
 		if (dstFile != null && dstFile.isDir()){
 			dstParent = dstFile;
 		} 
 		
+		long srcOffset = srcFile.getDirOffset();
 		srcFile = srcParent.removeChild(srcFile);
 		if (srcFile == null){
 			return NameNodeProtocol.ERR_SRC_FILE_NOT_FOUND;
 		}
-		srcFile.rename(dstFileHash.getFileComponent());
-		if (!dstParent.addChild(srcFile)){
-			return NameNodeProtocol.ERR_FILE_EXISTS;
+		String srcName = srcFile.getName();
+		srcFile.rename(dstFileHash.getFileComponent(), dstFileHash.getName());
+		if (replaced != null){
+			if (!dstParent.replaceChild(replaced, srcFile)){
+				return restoreSource(srcParent, srcFile, srcFileHash.getFileComponent(), srcName, srcOffset);
+			}
+			fileTable.remove(replaced.getFd());
+			replaced.notifyWaiters(true);
+			dstParent.postEvent(WatchEvent.DELETE, replaced, replaced.getName());
+			appendToDeleteQueue(replaced);
+			dstFile = srcFile;
+		} else if (!dstParent.addChild(srcFile)){
+			return restoreSource(srcParent, srcFile, srcFileHash.getFileComponent(), srcName, srcOffset);
 		} else {
 			dstFile = srcFile;
 		}
+		appendToCompactionQueue(srcParent);
+		if (srcParent == dstParent){
+			dstParent.postEvent(WatchEvent.RENAME, srcFile, srcFile.getName(), srcName);
+		} else {
+			srcParent.postEvent(WatchEvent.DELETE, srcFile, srcName);
+			dstParent.postEvent(WatchEvent.CREATE, srcFile, srcFile.getName());
+		}
 		
 		//directory block
 		index = CrailUtils.computeIndex(srcFile.getDirOffset());
@@ -368,7 +457,7 @@ public class NameNodeService implements RpcNameNodeService {
 				}
 			} 
 		}
-		dstParent.incCapacity(CrailConstants.DIRECTORY_RECORD);
+		dstParent.setCapacity(srcFile.getDirOffset() + CrailConstants.DIRECTORY_RECORD);
 		//end
 		
 		response.setDstParent(dstParent);
@@ -386,200 +475,1267 @@ public class NameNodeService implements RpcNameNodeService {
 		return NameNodeProtocol.ERR_OK;
 	}	
 	
+	//the destination changed between the lookup and the move, the source goes back into its old slot
+	private short restoreSource(AbstractNode srcParent, AbstractNode srcFile, int srcComponent, String srcName, long srcOffset) throws Exception {
+		srcFile.rename(srcComponent, srcName);
+		if (!srcParent.restoreChild(srcFile, srcOffset)){
+			LOG.info("renameFile: cannot restore source " + srcName + ", fd " + srcFile.getFd());
+			fileTable.remove(srcFile.getFd());
+			appendToDeleteQueue(srcFile);
+			return NameNodeProtocol.ERR_TREE_CORRUPT;
+		}
+		return NameNodeProtocol.ERR_FILE_EXISTS;
+	}
+	
 	@Override
-	public short getDataNode(RpcRequestMessage.GetDataNodeReq request, RpcResponseMessage.GetDataNodeRes response, RpcNameNodeState errorState) throws Exception {
+	public short concatFile(RpcRequestMessage.ConcatFileReq request, RpcResponseMessage.ConcatFileRes response, RpcNameNodeState errorState) throws Exception {
 		//check protocol
-		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_GET_DATANODE, request, response)){
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_CONCAT_FILE, request, response)){
 			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
-		}			
+		}
 		
 		//get params
-		DataNodeInfo dnInfo = request.getInfo();
+		FileName dstFileHash = request.getDstFileName();
+		FileName srcFileHash = request.getSrcFileName();
 		
 		//rpc
-		DataNodeBlocks dnInfoNn = blockStore.getDataNode(dnInfo);
-		if (dnInfoNn == null){
-			return NameNodeProtocol.ERR_DATANODE_NOT_REGISTERED;
+		AbstractNode dstFile = fileTree.retrieveFile(dstFileHash, errorState);
+		if (errorState.getError() != NameNodeProtocol.ERR_OK){
+			return errorState.getError();
+		}		
+		if (dstFile == null){
+			return NameNodeProtocol.ERR_GET_FILE_FAILED;
 		}
 		
-		response.setFreeBlockCount(dnInfoNn.getBlockCount());
-		
-		return NameNodeProtocol.ERR_OK;
-	}	
-
-	@Override
-	public short setBlock(RpcRequestMessage.SetBlockReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) throws Exception {
-		//check protocol
-		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_SET_BLOCK, request, response)){
-			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		AbstractNode srcParent = fileTree.retrieveParent(srcFileHash, errorState);
+		if (errorState.getError() != NameNodeProtocol.ERR_OK){
+			return errorState.getError();
 		}		
+		if (srcParent == null) {
+			return NameNodeProtocol.ERR_GET_FILE_FAILED;
+		} 
 		
-		//get params
-		BlockInfo blockInfo = request.getBlockInfo();
-		DataNodeInfo dnInfoExt = new DataNodeInfo(blockInfo.getDnInfo().getStorageTier(), blockInfo.getDnInfo().getLocationAffinity(), blockInfo.getDnInfo().getInetAddress());
+		AbstractNode srcFile = fileTree.retrieveFile(srcFileHash, errorState);
+		if (errorState.getError() != NameNodeProtocol.ERR_OK){
+			return errorState.getError();
+		}		
+		if (srcFile == null){
+			return NameNodeProtocol.ERR_SRC_FILE_NOT_FOUND;
+		}
 		
-		//rpc
-		int realBlocks = (int) (((long) blockInfo.getLength()) / CrailConstants.BLOCK_SIZE) ;
-		long offset = 0;
-		short error = NameNodeProtocol.ERR_OK;
-		for (int i = 0; i < realBlocks; i++){
-			long newAddr = blockInfo.getAddr() + offset;
-			BlockInfo nnBlock = new BlockInfo(dnInfoExt, newAddr, (int) CrailConstants.BLOCK_SIZE, blockInfo.getLkey());
-			error = blockStore.addBlock(nnBlock);
-			offset += CrailConstants.BLOCK_SIZE;
-			
-			if (error != NameNodeProtocol.ERR_OK){
-				break;
+		//the staging file holds the partial last block of the target followed by the source, laid out like the target
+		AbstractNode stagingFile = null;
+		if (request.getStagingFileName().getLength() > 0){
+			AbstractNode stagingParent = fileTree.retrieveParent(request.getStagingFileName(), errorState);
+			if (errorState.getError() != NameNodeProtocol.ERR_OK){
+				return errorState.getError();
+			}
+			stagingFile = fileTree.retrieveFile(request.getStagingFileName(), errorState);
+			if (errorState.getError() != NameNodeProtocol.ERR_OK){
+				return errorState.getError();
+			}
+			if (stagingFile == null || stagingParent != srcParent){
+				return NameNodeProtocol.ERR_CONCAT_INVALID;
 			}
 		}
+		AbstractNode linkedFile = stagingFile != null ? stagingFile : srcFile;
 		
-		return error;
+		//check params
+		//compressed files end with their frame index and cannot be joined byte-wise
+		if (dstFile.isDir() || srcFile.isDir() || linkedFile.isDir() || dstFile == srcFile || dstFile == linkedFile || dstFile.getCodec() != 0 || linkedFile.getCodec() != 0){
+			return NameNodeProtocol.ERR_CONCAT_INVALID;
+		}
+		if (!dstFile.tokenFree() || !srcFile.tokenFree() || !linkedFile.tokenFree() || dstFile.hasPendingAppends() || srcFile.hasPendingAppends() || linkedFile.hasPendingAppends()){
+			return NameNodeProtocol.ERR_TOKEN_TAKEN;
+		}
+		
+		//blocks can only be relinked behind a full block, inline content never reached the datanodes
+		long blockSize = dstFile.getBlockSize();
+		long dstCapacity = dstFile.getCapacity();
+		long concatAddress = CrailUtils.concatAddress(dstCapacity, blockSize);
+		if (linkedFile.getBlockSize() != blockSize || linkedFile.getReplication() != dstFile.getReplication() || linkedFile.getParityFragments() != dstFile.getParityFragments() || linkedFile.getInlineData() != null){
+			return NameNodeProtocol.ERR_CONCAT_UNALIGNED;
+		}
+		if (stagingFile == null && concatAddress != dstCapacity){
+			return NameNodeProtocol.ERR_CONCAT_UNALIGNED;
+		}
+		if (stagingFile != null && (dstCapacity != request.getDstCapacity() || stagingFile.getCapacity() != dstCapacity - concatAddress + srcFile.getCapacity())){
+			return NameNodeProtocol.ERR_CONCAT_INVALID;
+		}
+		
+		//ranges of appenders that timed out are dropped, their blocks are truncated or relinked below
+		dstFile.dropAppends();
+		linkedFile.dropAppends();
+		FileBlocks released = new FileBlocks(dstFile.getComponent(), blockSize);
+		if (!((FileBlocks) dstFile).appendBlocks(dstCapacity, (FileBlocks) linkedFile, released)){
+			return NameNodeProtocol.ERR_CONCAT_INVALID;
+		}
+		dstFile.setInlineData(null);
+		dstFile.notifyWaiters(false);
+		appendToDeleteQueue(released);
+		
+		response.setDstFile(dstFile);
+		response.setSrcFile(srcFile);
+		response.setSrcParent(srcParent);
+		response.setStagingFile(stagingFile);
+		
+		//the remaining blocks of the source, if any, are freed with the source
+		removeConcatSource(srcParent, srcFile);
+		if (stagingFile != null){
+			removeConcatSource(srcParent, stagingFile);
+		}
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("concatFile: dst fd " + dstFile.getFd() + ", staged " + (stagingFile != null) + ", capacity " + dstFile.getCapacity());
+		}
+		
+		return NameNodeProtocol.ERR_OK;
 	}
-
+	
+	private void removeConcatSource(AbstractNode parent, AbstractNode file) throws Exception {
+		file = parent.removeChild(file);
+		if (file != null){
+			fileTable.remove(file.getFd());
+			file.notifyWaiters(true);
+			parent.postEvent(WatchEvent.DELETE, file, file.getName());
+			appendToDeleteQueue(file);
+			appendToCompactionQueue(parent);
+		}
+	}
+	
 	@Override
-	public short getBlock(RpcRequestMessage.GetBlockReq request, RpcResponseMessage.GetBlockRes response, RpcNameNodeState errorState) throws Exception {
+	public short reserveFile(RpcRequestMessage.ReserveFileReq request, RpcResponseMessage.ReserveFileRes response, RpcNameNodeState errorState) throws Exception {
 		//check protocol
-		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_GET_BLOCK, request, response)){
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_RESERVE_FILE, request, response)){
 			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
-		}			
+		}
 		
 		//get params
 		long fd = request.getFd();
-		long token = request.getToken();
-		long position = request.getPosition();
-		int storageAffinity = request.getStorageAffinity();
-		int locationAffinitiy = request.getLocationAffinity();
-		long capacity = request.getCapacity();
+		long length = request.getLength();
 		
-		//check params
-		if (position < 0){
-			return NameNodeProtocol.ERR_POSITION_NEGATIV;
-		}
-	
 		//rpc
 		AbstractNode fileInfo = fileTable.get(fd);
 		if (fileInfo == null){
-			return NameNodeProtocol.ERR_FILE_NOT_OPEN;			
+			return NameNodeProtocol.ERR_FILE_NOT_OPEN;
 		}
 		
-		int index = CrailUtils.computeIndex(position);
-		if (index < 0){
-			return NameNodeProtocol.ERR_POSITION_NEGATIV;			
+		//check params
+		//frames and stripes cannot be written by independent writers, inline content never reached the datanodes
+		if (length <= 0){
+			return NameNodeProtocol.ERR_RESERVE_INVALID;
+		}
+		if (fileInfo.isDir() || fileInfo.isErasureCoded() || fileInfo.getCodec() != 0 || (fileInfo.getCapacity() > 0 && fileInfo.getInlineData() != null)){
+			return NameNodeProtocol.ERR_RESERVE_INVALID;
+		}
+		if (!fileInfo.tokenFree()){
+			return NameNodeProtocol.ERR_TOKEN_TAKEN;
+		}
+		long blockSize = fileInfo.getBlockSize();
+		long offset = fileInfo.reserve(length);
+		if (offset < 0){
+			return NameNodeProtocol.ERR_APPEND_HOLE;
 		}
 		
-		BlockInfo block = fileInfo.getBlock(index);
-		if (block == null && fileInfo.getToken() == token){
-			block = blockStore.getBlock(storageAffinity, locationAffinitiy);
+		//all blocks covering the range exist before the offset is handed out, writers fetch them without a token,
+		//the block count depends on the offset once slab files grow
+		int firstIndex = CrailUtils.computeIndex(offset, blockSize);
+		int lastIndex = CrailUtils.computeIndex(offset + length - 1, blockSize);
+		if (lastIndex - firstIndex + 1 > RpcResponseMessage.ReserveFileRes.MAX_BLOCKS / fileInfo.getReplication()){
+			fileInfo.abort(offset, length);
+			return NameNodeProtocol.ERR_RESERVE_TOO_LARGE;
+		}
+		for (int index = firstIndex; index <= lastIndex; index++){
+			BlockInfo block = allocateBlock(fileInfo, index, request.getStorageAffinity(), request.getLocationAffinity());
 			if (block == null){
+				fileInfo.abort(offset, length);
 				return NameNodeProtocol.ERR_NO_FREE_BLOCKS;
 			}
-			if (!fileInfo.addBlock(index, block)){
-				return NameNodeProtocol.ERR_ADD_BLOCK_FAILED;
-			}
-			block = fileInfo.getBlock(index);
-			if (block == null){
-				return NameNodeProtocol.ERR_ADD_BLOCK_FAILED;
-			}
-			fileInfo.setCapacity(capacity);
-			this.getWriteOps.incrementAndGet();
-		} else if (block == null && token > 0){ 
-			return NameNodeProtocol.ERR_TOKEN_MISMATCH;
-		} else if (block == null && token == 0){ 
-			return NameNodeProtocol.ERR_CAPACITY_EXCEEDED;
-		} else {
-			this.getReadOps.incrementAndGet();
+			response.addBlockInfo(block);
+		}
+		response.setOffset(offset);
+		response.setCapacity(fileInfo.getCapacity());
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("reserveFile: fd " + fd + ", offset " + offset + ", length " + length + ", blocks " + response.getBlockCount());
 		}
 		
-		response.setBlockInfo(block);
 		return NameNodeProtocol.ERR_OK;
 	}
 	
 	@Override
-	public short getLocation(RpcRequestMessage.GetLocationReq request, RpcResponseMessage.GetLocationRes response, RpcNameNodeState errorState) throws Exception {
+	public short commitFile(RpcRequestMessage.CommitFileReq request, RpcResponseMessage.CommitFileRes response, RpcNameNodeState errorState) throws Exception {
 		//check protocol
-		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_GET_LOCATION, request, response)){
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_COMMIT_FILE, request, response)){
 			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
-		}			
+		}
 		
 		//get params
-		FileName fileName = request.getFileName();
-		long position = request.getPosition();
-		
-		//check params
-		if (position < 0){
-			return NameNodeProtocol.ERR_POSITION_NEGATIV;
-		}	
+		long fd = request.getFd();
+		long offset = request.getOffset();
 		
 		//rpc
-		AbstractNode fileInfo = fileTree.retrieveFile(fileName, errorState);
-		if (errorState.getError() != NameNodeProtocol.ERR_OK){
-			return errorState.getError();
-		}		
+		AbstractNode fileInfo = fileTable.get(fd);
 		if (fileInfo == null){
-			return NameNodeProtocol.ERR_GET_FILE_FAILED;
-		}	
-		
-		int index = CrailUtils.computeIndex(position);
-		if (index < 0){
-			return NameNodeProtocol.ERR_POSITION_NEGATIV;			
-		}		
-		BlockInfo block = fileInfo.getBlock(index);
-		if (block == null){
-			return NameNodeProtocol.ERR_OFFSET_TOO_LARGE;
+			return NameNodeProtocol.ERR_FILE_NOT_OPEN;
 		}
+		if (!fileInfo.commit(offset)){
+			return NameNodeProtocol.ERR_COMMIT_UNKNOWN;
+		}
+		fileInfo.notifyWaiters(false);
+		response.setCapacity(fileInfo.getCapacity());
 		
-		response.setBlockInfo(block);
+		if (CrailConstants.DEBUG){
+			LOG.info("commitFile: fd " + fd + ", offset " + offset + ", capacity " + fileInfo.getCapacity());
+		}
 		
 		return NameNodeProtocol.ERR_OK;
 	}
-
-	//------------------------
 	
 	@Override
-	public short dump(RpcRequestMessage.DumpNameNodeReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) throws Exception {
-		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_DUMP_NAMENODE, request, response)){
+	public short waitFile(RpcRequestMessage.WaitFileReq request, RpcResponseMessage.WaitFileRes response, RpcNameNodeState errorState, RpcNameNodeDeferred deferred) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_WAIT_FILE, request, response)){
 			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
-		}			
+		}
 		
-		System.out.println("#fd\t\tfilecomp\t\tcapacity\t\tisdir\t\t\tdiroffset");
-		fileTree.dump();
-		System.out.println("#fd\t\tfilecomp\t\tcapacity\t\tisdir\t\t\tdiroffset");
-		dumpFastMap();
+		//get params
+		long fd = request.getFd();
+		long capacity = request.getCapacity();
+		long timeout = Math.max(0, Math.min(request.getTimeout(), CrailConstants.NAMENODE_POLL_TIMEOUT));
 		
-		return NameNodeProtocol.ERR_OK;
-	}	
+		//rpc
+		AbstractNode fileInfo = fileTable.get(fd);
+		if (fileInfo == null || fileInfo.isDir()){
+			response.setClosed(true);
+			return NameNodeProtocol.ERR_OK;
+		}
+		
+		//answer right away if there is something new, otherwise park the call until the file changes
+		CapacityWaiter waiter = new CapacityWaiter(fileInfo, capacity, timeout, response, deferred);
+		if (timeout == 0 || waiter.isReady(false)){
+			response.setCapacity(fileInfo.getCapacity());
+			response.setClosed(fileInfo.isClosed());
+			response.setInlineData(fileInfo.getInlineData());
+			return NameNodeProtocol.ERR_OK;
+		}
+		waitQueue.add(waiter);
+		fileInfo.addWaiter(waiter);
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("waitFile: fd " + fd + ", capacity " + capacity + ", timeout " + timeout);
+		}
+		
+		return NameNodeProtocol.ERR_DEFERRED;
+	}
 	
 	@Override
-	public short ping(RpcRequestMessage.PingNameNodeReq request, RpcResponseMessage.PingNameNodeRes response, RpcNameNodeState errorState) throws Exception {
-		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_PING_NAMENODE, request, response)){
+	public short watchDirectory(RpcRequestMessage.WatchDirReq request, RpcResponseMessage.WatchDirRes response, RpcNameNodeState errorState, RpcNameNodeDeferred deferred) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_WATCH_DIR, request, response)){
 			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
-		}			
+		}
 		
-		LOG.info("totalOps " + totalOps.get());
-		LOG.info("createOps " + createOps.get());
-		LOG.info("lookupOps " + lookupOps.get());
-		LOG.info("setOps " + setOps.get());
-		LOG.info("removeOps " + removeOps.get());
-		LOG.info("renameOps " + renameOps.get());
-		LOG.info("getOps " + getOps.get());
-		LOG.info("getErr " + getErr.get());
-		LOG.info("getWriteOps " + getWriteOps.get());
-		LOG.info("getReadOps " + getReadOps.get());
+		//get params
+		long fd = request.getFd();
+		long watchId = request.getWatchId();
+		long timeout = Math.max(0, Math.min(request.getTimeout(), CrailConstants.NAMENODE_POLL_TIMEOUT));
+		boolean cancel = request.isCancel();
 		
-		response.setData(request.getOp()+1);
+		//rpc
+		AbstractNode dirInfo = fileTable.get(fd);
+		if (dirInfo == null){
+			response.setWatchId(watchId);
+			response.setClosed(true);
+			return NameNodeProtocol.ERR_OK;
+		}
+		if (!dirInfo.isDir()){
+			return NameNodeProtocol.ERR_FILE_IS_NOT_DIR;
+		}
+		
+		if (watchId == 0){
+			DirectoryWatch watch = dirInfo.addWatch(waitQueue);
+			response.setWatchId(watch.getId());
+			return NameNodeProtocol.ERR_OK;
+		}
+		DirectoryWatch watch = cancel ? dirInfo.removeWatch(watchId) : dirInfo.getWatch(watchId);
+		if (watch == null){
+			return NameNodeProtocol.ERR_WATCH_UNKNOWN;
+		}
+		if (cancel){
+			watch.close();
+			response.setWatchId(watchId);
+			response.setClosed(true);
+			return NameNodeProtocol.ERR_OK;
+		}
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("watchDirectory: fd " + fd + ", watchId " + watchId + ", timeout " + timeout);
+		}
 		
+		if (watch.poll(response, deferred, timeout, waitQueue)){
+			return NameNodeProtocol.ERR_DEFERRED;
+		}
 		return NameNodeProtocol.ERR_OK;
 	}
 	
-	
-	//--------------- helper functions
-	
-	void appendToDeleteQueue(AbstractNode fileInfo) throws Exception {
-		if (fileInfo != null) {
-			fileInfo.setDelay(CrailConstants.TOKEN_EXPIRATION);
-			deleteQueue.add(fileInfo);			
+	@Override
+	public short cloneFile(RpcRequestMessage.CloneFileReq request, RpcResponseMessage.CloneFileRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_CLONE_FILE, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
 		}
-	}	
+		
+		//get params
+		FileName srcFileHash = request.getSrcFileName();
+		FileName dstFileHash = request.getDstFileName();
+		
+		//rpc
+		AbstractNode srcFile = fileTree.retrieveFile(srcFileHash, errorState);
+		if (errorState.getError() != NameNodeProtocol.ERR_OK){
+			return errorState.getError();
+		}		
+		if (srcFile == null){
+			return NameNodeProtocol.ERR_SRC_FILE_NOT_FOUND;
+		}
+		if (srcFile.isDir()){
+			return NameNodeProtocol.ERR_CLONE_INVALID;
+		}
+		if (!srcFile.tokenFree() || srcFile.hasPendingAppends()){
+			return NameNodeProtocol.ERR_TOKEN_TAKEN;
+		}
+		
+		AbstractNode parentInfo = fileTree.retrieveParent(dstFileHash, errorState);
+		if (errorState.getError() != NameNodeProtocol.ERR_OK){
+			return errorState.getError();
+		}		
+		if (parentInfo == null) {
+			return NameNodeProtocol.ERR_PARENT_MISSING;
+		} 	
+		if (!parentInfo.isDir()){
+			return NameNodeProtocol.ERR_PARENT_NOT_DIR;
+		}
+		
+		//full blocks are shared, a partial last block is written by the client, inline content is copied here
+		long blockSize = srcFile.getBlockSize();
+		long capacity = srcFile.getCapacity();
+		byte[] inlineData = srcFile.getInlineData();
+		int count = inlineData != null ? 0 : CrailUtils.computeIndex(capacity, blockSize);
+		AbstractNode fileInfo = FileBlocks.createNode(dstFileHash.getFileComponent(), false, blockSize, srcFile.getReplication(), srcFile.getDataFragments(), srcFile.getParityFragments(), srcFile.getCodec());
+		fileInfo.setName(dstFileHash.getName());
+		if (!((FileBlocks) fileInfo).cloneBlocks((FileBlocks) srcFile, count)){
+			freeFile(fileInfo);
+			return NameNodeProtocol.ERR_ADD_BLOCK_FAILED;
+		}
+		if (!parentInfo.addChild(fileInfo)){
+			freeFile(fileInfo);
+			return NameNodeProtocol.ERR_FILE_EXISTS;
+		}
+		
+		BlockInfo fileBlock = fileInfo.getBlock(0);
+		if (fileBlock == null && !mayStayInline(fileInfo)){
+			fileBlock = getFileBlock(fileInfo, 0, 0, 0);
+			if (fileBlock == null){
+				return fileInfo.isErasureCoded() ? NameNodeProtocol.ERR_ERASURE_PLACEMENT : NameNodeProtocol.ERR_NO_FREE_BLOCKS;
+			}			
+			if (!fileInfo.addBlock(0, fileBlock)){
+				return NameNodeProtocol.ERR_ADD_BLOCK_FAILED;
+			}
+		}
+		if (inlineData != null){
+			fileInfo.setCapacity(capacity);
+			fileInfo.setInlineData(inlineData);
+		} else {
+			fileInfo.setCapacity(CrailUtils.blockAddress(count, blockSize));
+		}
+		
+		int index = CrailUtils.computeIndex(fileInfo.getDirOffset());
+		BlockInfo parentBlock = parentInfo.getBlock(index);
+		if (parentBlock == null){
+			parentBlock = blockStore.getBlock(0, 0);
+			if (parentBlock == null){
+				return NameNodeProtocol.ERR_NO_FREE_BLOCKS;
+			}			
+			if (!parentInfo.addBlock(index, parentBlock)){
+				blockStore.addBlock(parentBlock);
+				parentBlock = parentInfo.getBlock(index);
+				if (parentBlock == null){
+					return NameNodeProtocol.ERR_CREATE_FILE_FAILED;
+				}
+			}
+		}
+		parentInfo.setCapacity(fileInfo.getDirOffset() + CrailConstants.DIRECTORY_RECORD);
+		fileTable.put(fileInfo.getFd(), fileInfo);
+		parentInfo.postEvent(WatchEvent.CREATE, fileInfo, fileInfo.getName());
+		
+		fileInfo.updateToken();
+		response.shipToken(true);
+		response.setParentInfo(parentInfo);
+		response.setFileInfo(fileInfo);
+		response.setFileBlock(fileBlock);
+		response.setDirBlock(parentBlock);
+		response.setSrcCapacity(capacity);
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("cloneFile: src fd " + srcFile.getFd() + ", fd " + fileInfo.getFd() + ", shared blocks " + count + ", capacity " + capacity);
+		}
+		
+		return NameNodeProtocol.ERR_OK;
+	}
+	
+	@Override
+	public short copyFile(RpcRequestMessage.CopyFileReq request, RpcResponseMessage.CopyFileRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_COPY_FILE, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		//get params
+		FileName srcFileHash = request.getSrcFileName();
+		FileName dstFileHash = request.getDstFileName();
+		int storageAffinity = request.getStorageAffinity();
+		int locationAffinity = request.getLocationAffinity();
+		long bandwidth = Math.max(0, request.getBandwidth());
+		
+		//rpc
+		AbstractNode srcFile = fileTree.retrieveFile(srcFileHash, errorState);
+		if (errorState.getError() != NameNodeProtocol.ERR_OK){
+			return errorState.getError();
+		}		
+		if (srcFile == null){
+			return NameNodeProtocol.ERR_SRC_FILE_NOT_FOUND;
+		}
+		if (srcFile.isDir()){
+			return NameNodeProtocol.ERR_CLONE_INVALID;
+		}
+		if (!srcFile.tokenFree() || srcFile.hasPendingAppends()){
+			return NameNodeProtocol.ERR_TOKEN_TAKEN;
+		}
+		
+		AbstractNode parentInfo = fileTree.retrieveParent(dstFileHash, errorState);
+		if (errorState.getError() != NameNodeProtocol.ERR_OK){
+			return errorState.getError();
+		}		
+		if (parentInfo == null) {
+			return NameNodeProtocol.ERR_PARENT_MISSING;
+		} 	
+		if (!parentInfo.isDir()){
+			return NameNodeProtocol.ERR_PARENT_NOT_DIR;
+		}
+		
+		//the destination gets the layout of the source and all its blocks up front, inline content is copied here
+		long blockSize = srcFile.getBlockSize();
+		long capacity = srcFile.getCapacity();
+		byte[] inlineData = srcFile.getInlineData();
+		int count = inlineData != null || capacity == 0 ? 0 : CrailUtils.computeIndex(capacity - 1, blockSize) + 1;
+		AbstractNode fileInfo = FileBlocks.createNode(dstFileHash.getFileComponent(), false, blockSize, srcFile.getReplication(), srcFile.getDataFragments(), srcFile.getParityFragments(), srcFile.getCodec());
+		fileInfo.setName(dstFileHash.getName());
+		for (int index = 0; index < Math.max(count, mayStayInline(fileInfo) ? 0 : 1); index++){
+			if (count > 0 && srcFile.getBlock(index) == null){
+				freeFile(fileInfo);
+				return NameNodeProtocol.ERR_OFFSET_TOO_LARGE;
+			}
+			BlockInfo block = getFileBlock(fileInfo, index, storageAffinity, locationAffinity);
+			if (block == null){
+				freeFile(fileInfo);
+				return fileInfo.isErasureCoded() ? NameNodeProtocol.ERR_ERASURE_PLACEMENT : NameNodeProtocol.ERR_NO_FREE_BLOCKS;
+			}
+			if (!fileInfo.addBlock(index, block)){
+				blockStore.addBlock(block);
+				freeFile(fileInfo);
+				return NameNodeProtocol.ERR_ADD_BLOCK_FAILED;
+			}
+		}
+		if (!parentInfo.addChild(fileInfo)){
+			freeFile(fileInfo);
+			return NameNodeProtocol.ERR_FILE_EXISTS;
+		}
+		
+		CopyJob job = new CopyJob(srcFile, fileInfo, capacity, bandwidth);
+		ArrayList<TransferTask> tasks = new ArrayList<TransferTask>();
+		for (int index = 0; index < count; index++){
+			BlockInfo srcBlock = srcFile.getBlock(index);
+			BlockInfo dstBlock = fileInfo.getBlock(index);
+			job.pin(srcBlock);
+			job.pin(dstBlock);
+			if (fileInfo.isErasureCoded()){
+				//fragments are copied one to one, each fragment holds one full block
+				int fragments = Math.min(srcBlock.getReplicaCount(), dstBlock.getReplicaCount()) + 1;
+				for (int f = 0; f < fragments; f++){
+					BlockInfo srcFragment = f == 0 ? srcBlock : srcBlock.getReplica(f - 1);
+					BlockInfo dstFragment = f == 0 ? dstBlock : dstBlock.getReplica(f - 1);
+					tasks.add(job.addTask(srcFragment, dstFragment, (int) CrailConstants.BLOCK_SIZE));
+				}
+			} else {
+				//every destination replica is filled from one of the source replicas, spreading the load
+				int length = (int) Math.min(CrailUtils.blockLength(index, blockSize), capacity - CrailUtils.blockAddress(index, blockSize));
+				int srcReplicas = srcBlock.getReplicaCount() + 1;
+				for (int r = 0; r <= dstBlock.getReplicaCount(); r++){
+					int s = r % srcReplicas;
+					BlockInfo srcReplica = s == 0 ? srcBlock : srcBlock.getReplica(s - 1);
+					BlockInfo dstReplica = r == 0 ? dstBlock : dstBlock.getReplica(r - 1);
+					tasks.add(job.addTask(srcReplica, dstReplica, length));
+				}
+			}
+		}
+		job.splitBandwidth();
+		if (inlineData != null){
+			fileInfo.setCapacity(capacity);
+			fileInfo.setInlineData(inlineData);
+		}
+		
+		int index = CrailUtils.computeIndex(fileInfo.getDirOffset());
+		BlockInfo parentBlock = parentInfo.getBlock(index);
+		if (parentBlock == null){
+			parentBlock = blockStore.getBlock(0, 0);
+			if (parentBlock == null){
+				return NameNodeProtocol.ERR_NO_FREE_BLOCKS;
+			}			
+			if (!parentInfo.addBlock(index, parentBlock)){
+				blockStore.addBlock(parentBlock);
+				parentBlock = parentInfo.getBlock(index);
+				if (parentBlock == null){
+					return NameNodeProtocol.ERR_CREATE_FILE_FAILED;
+				}
+			}
+		}
+		parentInfo.setCapacity(fileInfo.getDirOffset() + CrailConstants.DIRECTORY_RECORD);
+		fileTable.put(fileInfo.getFd(), fileInfo);
+		parentInfo.postEvent(WatchEvent.CREATE, fileInfo, fileInfo.getName());
+		
+		//the namenode holds the token of the destination until the last transfer task reported back
+		fileInfo.updateToken();
+		copyTable.put(job.getId(), job);
+		for (TransferTask task : tasks){
+			taskTable.put(task.getTaskId(), job);
+			long key = task.getSrcBlock().getDnInfo().key();
+			ConcurrentLinkedQueue<TransferTask> queue = transferQueues.get(key);
+			if (queue == null){
+				queue = new ConcurrentLinkedQueue<TransferTask>();
+				ConcurrentLinkedQueue<TransferTask> oldQueue = transferQueues.putIfAbsent(key, queue);
+				if (oldQueue != null){
+					queue = oldQueue;
+				}
+			}
+			queue.add(task);
+		}
+		if (job.complete()){
+			finishCopy(job);
+		}
+		
+		response.shipToken(false);
+		response.setParentInfo(parentInfo);
+		response.setFileInfo(fileInfo);
+		response.setFileBlock(fileInfo.getBlock(0));
+		response.setDirBlock(parentBlock);
+		response.setCopyId(job.getId());
+		response.setTotal(job.getTotal());
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("copyFile: src fd " + srcFile.getFd() + ", fd " + fileInfo.getFd() + ", copyId " + job.getId() + ", tasks " + tasks.size() + ", capacity " + capacity + ", bandwidth " + bandwidth);
+		}
+		
+		return NameNodeProtocol.ERR_OK;
+	}
+	
+	@Override
+	public short copyStatus(RpcRequestMessage.CopyStatusReq request, RpcResponseMessage.CopyStatusRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_COPY_STATUS, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		//get params
+		long copyId = request.getCopyId();
+		
+		//rpc
+		expireCopies();
+		CopyJob job = copyTable.get(copyId);
+		if (job == null){
+			return NameNodeProtocol.ERR_COPY_UNKNOWN;
+		}
+		response.setTotal(job.getTotal());
+		response.setCopied(job.getCopied());
+		response.setState(job.getState());
+		
+		//the final state is reported once, unless tasks are still outstanding
+		if (job.getState() != RpcResponseMessage.CopyStatusRes.RUNNING && settleCopy(job)){
+			copyTable.remove(copyId);
+		}
+		
+		return NameNodeProtocol.ERR_OK;
+	}
+	
+	@Override
+	public short getTransfer(RpcRequestMessage.GetTransferReq request, RpcResponseMessage.GetTransferRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_GET_TRANSFER, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		//get params
+		DataNodeInfo dnInfo = request.getInfo();
+		ArrayList<TransferReport> reports = request.getReports();
+		
+		//rpc
+		if (blockStore.getDataNode(dnInfo) == null){
+			return NameNodeProtocol.ERR_DATANODE_NOT_REGISTERED;
+		}
+		long key = dnInfo.key();
+		transferPolls.put(key, System.currentTimeMillis());
+		
+		//a datanode only gets new tasks once it has none running
+		boolean busy = false;
+		for (TransferReport report : reports){
+			CopyJob job = taskTable.get(report.getTaskId());
+			if (job == null){
+				continue;
+			}
+			if (report.getStatus() == TransferReport.RUNNING){
+				busy = true;
+			}
+			if (job.report(report)){
+				finishCopy(job);
+			}
+			if (job.isCancelled(report.getTaskId())){
+				response.addCancelled(report.getTaskId());
+			} else if (job.getState() != RpcResponseMessage.CopyStatusRes.RUNNING){
+				settleCopy(job);
+			}
+		}
+		expireCopies();
+		
+		ConcurrentLinkedQueue<TransferTask> queue = transferQueues.get(key);
+		while (!busy && queue != null && response.getTasks().size() < RpcResponseMessage.GetTransferRes.MAX_TASKS){
+			TransferTask task = queue.poll();
+			if (task == null){
+				break;
+			}
+			CopyJob job = taskTable.get(task.getTaskId());
+			if (job != null && job.dispatch(task.getTaskId())){
+				response.addTask(task);
+			}
+		}
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("getTransfer: datanode " + dnInfo.getInetAddress() + ", reports " + reports.size() + ", tasks " + response.getTasks().size());
+		}
+		
+		return NameNodeProtocol.ERR_OK;
+	}
+	
+	@Override
+	public short pinBlock(RpcRequestMessage.PinBlockReq request, RpcResponseMessage.PinBlockRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_PIN_BLOCK, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		//get params
+		long fd = request.getFd();
+		long position = request.getPosition();
+		long leaseId = request.getLeaseId();
+		
+		//rpc
+		if (leaseId > 0 && request.isRenew()){
+			long timeout = TimeUnit.SECONDS.toMillis(CrailConstants.TOKEN_EXPIRATION);
+			if (!renewLease(leaseId, timeout)){
+				return NameNodeProtocol.ERR_LEASE_UNKNOWN;
+			}
+			response.setLeaseId(leaseId);
+			response.setTimeout(timeout);
+			return NameNodeProtocol.ERR_OK;
+		}
+		if (leaseId > 0){
+			if (!releaseLease(leaseId)){
+				return NameNodeProtocol.ERR_LEASE_UNKNOWN;
+			}
+			response.setLeaseId(leaseId);
+			return NameNodeProtocol.ERR_OK;
+		}
+		
+		//check params
+		if (position < 0){
+			return NameNodeProtocol.ERR_POSITION_NEGATIV;
+		}
+		
+		AbstractNode fileInfo = fileTable.get(fd);
+		if (fileInfo == null){
+			return NameNodeProtocol.ERR_FILE_NOT_OPEN;
+		}
+		BlockInfo block = fileInfo.getBlock(CrailUtils.computeIndex(position, fileInfo.getBlockSize()));
+		if (block == null){
+			return NameNodeProtocol.ERR_CAPACITY_EXCEEDED;
+		}
+		
+		long timeout = TimeUnit.SECONDS.toMillis(CrailConstants.TOKEN_EXPIRATION);
+		BlockLease lease = new BlockLease(this, block, timeout);
+		leaseTable.put(lease.getId(), lease);
+		waitQueue.add(lease);
+		response.setLeaseId(lease.getId());
+		response.setTimeout(timeout);
+		response.setBlockInfo(block);
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("pinBlock: fd " + fd + ", position " + position + ", leaseId " + lease.getId());
+		}
+		
+		return NameNodeProtocol.ERR_OK;
+	}
+	
+	//the file is complete before it enters the tree, readers see either the old or the new content of the key
+	@Override
+	public short putFile(RpcRequestMessage.PutFileReq request, RpcResponseMessage.PutFileRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_PUT_FILE, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		//get params
+		FileName fileHash = request.getFileName();
+		byte[] value = request.getValue();
+		
+		//check params
+		if (value == null || CrailConstants.INLINE_DATA == 0 || value.length > CrailConstants.INLINE_DATA){
+			return NameNodeProtocol.ERR_CAPACITY_EXCEEDED;
+		}
+		
+		//rpc
+		AbstractNode parentInfo = fileTree.retrieveParent(fileHash, errorState);
+		if (errorState.getError() != NameNodeProtocol.ERR_OK){
+			return errorState.getError();
+		}		
+		if (parentInfo == null) {
+			return NameNodeProtocol.ERR_PARENT_MISSING;
+		} 	
+		if (!parentInfo.isDir()){
+			return NameNodeProtocol.ERR_PARENT_NOT_DIR;
+		}
+		AbstractNode replaced = fileTree.retrieveFile(fileHash, errorState);
+		if (errorState.getError() != NameNodeProtocol.ERR_OK){
+			return errorState.getError();
+		}
+		if (replaced != null && replaced.isDir()){
+			return NameNodeProtocol.ERR_FILE_EXISTS;
+		}
+		if (replaced != null && (!replaced.tokenFree() || replaced.hasPendingAppends())){
+			return NameNodeProtocol.ERR_TOKEN_TAKEN;
+		}
+		
+		AbstractNode fileInfo = FileBlocks.createNode(fileHash.getFileComponent(), false, CrailUtils.blockSizeForHint(value.length), 1, 0, 0, 0);
+		fileInfo.setName(fileHash.getName());
+		fileInfo.setCapacity(value.length);
+		fileInfo.setInlineData(value);
+		if (replaced != null){
+			if (!parentInfo.replaceChild(replaced, fileInfo)){
+				return NameNodeProtocol.ERR_FILE_EXISTS;
+			}
+			fileTable.remove(replaced.getFd());
+			replaced.notifyWaiters(true);
+			parentInfo.postEvent(WatchEvent.DELETE, replaced, replaced.getName());
+			appendToDeleteQueue(replaced);
+		} else if (!parentInfo.addChild(fileInfo)){
+			return NameNodeProtocol.ERR_FILE_EXISTS;
+		}
+		
+		//directory block
+		int index = CrailUtils.computeIndex(fileInfo.getDirOffset());
+		BlockInfo parentBlock = parentInfo.getBlock(index);
+		if (parentBlock == null){
+			parentBlock = blockStore.getBlock(0, 0);
+			if (parentBlock == null){
+				return NameNodeProtocol.ERR_NO_FREE_BLOCKS;
+			}			
+			if (!parentInfo.addBlock(index, parentBlock)){
+				blockStore.addBlock(parentBlock);
+				parentBlock = parentInfo.getBlock(index);
+				if (parentBlock == null){
+					return NameNodeProtocol.ERR_CREATE_FILE_FAILED;
+				}
+			}
+		}
+		parentInfo.setCapacity(fileInfo.getDirOffset() + CrailConstants.DIRECTORY_RECORD);
+		fileTable.put(fileInfo.getFd(), fileInfo);
+		parentInfo.postEvent(WatchEvent.CREATE, fileInfo, fileInfo.getName());
+		parentInfo.postEvent(WatchEvent.CLOSE, fileInfo, fileInfo.getName());
+		
+		response.shipToken(false);
+		response.setParentInfo(parentInfo);
+		response.setFileInfo(fileInfo);
+		response.setFileBlock(null);
+		response.setDirBlock(parentBlock);
+		response.setReplaced(replaced != null);
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("putFile: fd " + fileInfo.getFd() + ", parent " + parentInfo.getFd() + ", replaced " + (replaced != null) + ", capacity " + fileInfo.getCapacity() + ", dirOffset " + fileInfo.getDirOffset());
+		}
+		
+		return NameNodeProtocol.ERR_OK;
+	}
+	
+	@Override
+	public short getLocations(RpcRequestMessage.GetLocationsReq request, RpcResponseMessage.GetLocationsRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_GET_LOCATIONS, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		}			
+		
+		//get params
+		FileName fileName = request.getFileName();
+		long position = request.getPosition();
+		long length = request.getLength();
+		
+		//check params
+		if (position < 0 || length < 0){
+			return NameNodeProtocol.ERR_POSITION_NEGATIV;
+		}	
+		
+		//rpc
+		AbstractNode fileInfo = fileTree.retrieveFile(fileName, errorState);
+		if (errorState.getError() != NameNodeProtocol.ERR_OK){
+			return errorState.getError();
+		}		
+		if (fileInfo == null){
+			return NameNodeProtocol.ERR_GET_FILE_FAILED;
+		}	
+		
+		response.reset();
+		long blockSize = fileInfo.getBlockSize();
+		response.setBlockSize(blockSize);
+		for (int index = CrailUtils.computeIndex(position, blockSize); CrailUtils.blockAddress(index, blockSize) < position + length; index++){
+			BlockInfo block = fileInfo.getBlock(index);
+			if (block == null && fileInfo.getBlock(0) == null){
+				//inline files have no blocks to report
+				break;
+			} else if (block == null){
+				return NameNodeProtocol.ERR_OFFSET_TOO_LARGE;
+			}
+			if (!response.addBlockInfo(block)){
+				break;
+			}
+		}
+		
+		return NameNodeProtocol.ERR_OK;
+	}
+	
+	@Override
+	public short listDirectory(RpcRequestMessage.ListDirReq request, RpcResponseMessage.ListDirRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_LIST_DIR, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		//get params
+		FileName fileName = request.getFileName();
+		long cursor = request.getCursor();
+		long generation = request.getGeneration();
+		
+		//check params
+		if (cursor < 0){
+			return NameNodeProtocol.ERR_POSITION_NEGATIV;
+		}
+		
+		//rpc
+		AbstractNode dirInfo = fileTree.retrieveFile(fileName, errorState);
+		if (errorState.getError() != NameNodeProtocol.ERR_OK){
+			return errorState.getError();
+		}		
+		if (dirInfo == null){
+			return NameNodeProtocol.ERR_GET_FILE_FAILED;
+		}
+		if (!dirInfo.isDir()){
+			return NameNodeProtocol.ERR_FILE_IS_NOT_DIR;
+		}
+		
+		//pages are filled under the directory lock so a compaction cannot move entries in between
+		response.reset();
+		synchronized(dirInfo){
+			if (generation >= 0 && generation != dirInfo.getGeneration()){
+				return NameNodeProtocol.ERR_DIR_COMPACTED;
+			}
+			dirInfo.touchListing();
+			response.setGeneration(dirInfo.getGeneration());
+			Iterator<AbstractNode> iter = dirInfo.childIterator(cursor);
+			while (iter.hasNext()){
+				AbstractNode child = iter.next();
+				if (!response.addEntry(child, child.getName())){
+					response.setCursor(child.getDirOffset());
+					break;
+				}
+			}
+		}
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("listDirectory: fd " + dirInfo.getFd() + ", cursor " + cursor + ", entries " + response.getEntries() + ", next " + response.getCursor());
+		}
+		
+		return NameNodeProtocol.ERR_OK;
+	}
+	
+	@Override
+	public short getDataNode(RpcRequestMessage.GetDataNodeReq request, RpcResponseMessage.GetDataNodeRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_GET_DATANODE, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		}			
+		
+		//get params
+		DataNodeInfo dnInfo = request.getInfo();
+		
+		//rpc
+		DataNodeBlocks dnInfoNn = blockStore.getDataNode(dnInfo);
+		if (dnInfoNn == null){
+			return NameNodeProtocol.ERR_DATANODE_NOT_REGISTERED;
+		}
+		
+		response.setFreeBlockCount(dnInfoNn.getBlockCount());
+		
+		return NameNodeProtocol.ERR_OK;
+	}	
+
+	@Override
+	public short setBlock(RpcRequestMessage.SetBlockReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_SET_BLOCK, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		}		
+		
+		//get params
+		BlockInfo blockInfo = request.getBlockInfo();
+		DataNodeInfo dnInfoExt = new DataNodeInfo(blockInfo.getDnInfo().getStorageTier(), blockInfo.getDnInfo().getLocationAffinity(), blockInfo.getDnInfo().getInetAddress());
+		
+		//rpc
+		int realBlocks = (int) (((long) blockInfo.getLength()) / CrailConstants.BLOCK_SIZE) ;
+		long offset = 0;
+		short error = NameNodeProtocol.ERR_OK;
+		for (int i = 0; i < realBlocks; i++){
+			long newAddr = blockInfo.getAddr() + offset;
+			BlockInfo nnBlock = new BlockInfo(dnInfoExt, newAddr, (int) CrailConstants.BLOCK_SIZE, blockInfo.getLkey());
+			error = blockStore.addBlock(nnBlock);
+			offset += CrailConstants.BLOCK_SIZE;
+			
+			if (error != NameNodeProtocol.ERR_OK){
+				break;
+			}
+		}
+		
+		return error;
+	}
+
+	@Override
+	public short getBlock(RpcRequestMessage.GetBlockReq request, RpcResponseMessage.GetBlockRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_GET_BLOCK, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		}			
+		
+		//get params
+		long fd = request.getFd();
+		long token = request.getToken();
+		long position = request.getPosition();
+		int storageAffinity = request.getStorageAffinity();
+		int locationAffinitiy = request.getLocationAffinity();
+		long capacity = request.getCapacity();
+		
+		//check params
+		if (position < 0){
+			return NameNodeProtocol.ERR_POSITION_NEGATIV;
+		}
+	
+		//rpc
+		AbstractNode fileInfo = fileTable.get(fd);
+		if (fileInfo == null){
+			return NameNodeProtocol.ERR_FILE_NOT_OPEN;			
+		}
+		
+		int index = CrailUtils.computeIndex(position, fileInfo.getBlockSize());
+		if (index < 0){
+			return NameNodeProtocol.ERR_POSITION_NEGATIV;			
+		}
+		
+		BlockInfo block = fileInfo.getBlock(index);
+		if (block == null && fileInfo.getToken() == token){
+			block = getFileBlock(fileInfo, index, storageAffinity, locationAffinitiy);
+			if (block == null){
+				return fileInfo.isErasureCoded() ? NameNodeProtocol.ERR_ERASURE_PLACEMENT : NameNodeProtocol.ERR_NO_FREE_BLOCKS;
+			}
+			if (!fileInfo.addBlock(index, block)){
+				return NameNodeProtocol.ERR_ADD_BLOCK_FAILED;
+			}
+			block = fileInfo.getBlock(index);
+			if (block == null){
+				return NameNodeProtocol.ERR_ADD_BLOCK_FAILED;
+			}
+			fileInfo.setCapacity(capacity);
+			fileInfo.notifyWaiters(false);
+			this.getWriteOps.incrementAndGet();
+		} else if (block != null && token > 0 && fileInfo.getToken() == token && FileBlocks.isShared(block)){
+			//the namenode cannot copy the data of a shared block, writing it would change every clone
+			return NameNodeProtocol.ERR_BLOCK_SHARED;
+		} else if (block == null && token > 0){ 
+			return NameNodeProtocol.ERR_TOKEN_MISMATCH;
+		} else if (block == null && token == 0){ 
+			return NameNodeProtocol.ERR_CAPACITY_EXCEEDED;
+		} else {
+			this.getReadOps.incrementAndGet();
+		}
+		
+		response.setBlockInfo(block);
+		return NameNodeProtocol.ERR_OK;
+	}
+	
+	@Override
+	public short getLocation(RpcRequestMessage.GetLocationReq request, RpcResponseMessage.GetLocationRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_GET_LOCATION, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		}			
+		
+		//get params
+		FileName fileName = request.getFileName();
+		long position = request.getPosition();
+		
+		//check params
+		if (position < 0){
+			return NameNodeProtocol.ERR_POSITION_NEGATIV;
+		}	
+		
+		//rpc
+		AbstractNode fileInfo = fileTree.retrieveFile(fileName, errorState);
+		if (errorState.getError() != NameNodeProtocol.ERR_OK){
+			return errorState.getError();
+		}		
+		if (fileInfo == null){
+			return NameNodeProtocol.ERR_GET_FILE_FAILED;
+		}	
+		
+		int index = CrailUtils.computeIndex(position, fileInfo.getBlockSize());
+		if (index < 0){
+			return NameNodeProtocol.ERR_POSITION_NEGATIV;			
+		}		
+		BlockInfo block = fileInfo.getBlock(index);
+		if (block == null){
+			return NameNodeProtocol.ERR_OFFSET_TOO_LARGE;
+		}
+		
+		response.setBlockInfo(block);
+		
+		return NameNodeProtocol.ERR_OK;
+	}
+
+	//------------------------
+	
+	@Override
+	public short dump(RpcRequestMessage.DumpNameNodeReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) throws Exception {
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_DUMP_NAMENODE, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		}			
+		
+		System.out.println("#fd\t\tfilecomp\t\tcapacity\t\tisdir\t\t\tdiroffset");
+		fileTree.dump();
+		System.out.println("#fd\t\tfilecomp\t\tcapacity\t\tisdir\t\t\tdiroffset");
+		dumpFastMap();
+		
+		return NameNodeProtocol.ERR_OK;
+	}	
+	
+	@Override
+	public short ping(RpcRequestMessage.PingNameNodeReq request, RpcResponseMessage.PingNameNodeRes response, RpcNameNodeState errorState) throws Exception {
+		if (!NameNodeProtocol.verifyProtocol(NameNodeProtocol.CMD_PING_NAMENODE, request, response)){
+			return NameNodeProtocol.ERR_PROTOCOL_MISMATCH;
+		}			
+		
+		LOG.info("totalOps " + totalOps.get());
+		LOG.info("createOps " + createOps.get());
+		LOG.info("lookupOps " + lookupOps.get());
+		LOG.info("setOps " + setOps.get());
+		LOG.info("removeOps " + removeOps.get());
+		LOG.info("renameOps " + renameOps.get());
+		LOG.info("getOps " + getOps.get());
+		LOG.info("getErr " + getErr.get());
+		LOG.info("getWriteOps " + getWriteOps.get());
+		LOG.info("getReadOps " + getReadOps.get());
+		
+		response.setData(request.getOp()+1);
+		
+		return NameNodeProtocol.ERR_OK;
+	}
+	
+	
+	//--------------- helper functions
+	
+	//writers keep small files inline, their first block is allocated by getBlock once the content spills
+	boolean mayStayInline(AbstractNode fileInfo) {
+		return CrailConstants.INLINE_DATA > 0 && !fileInfo.isDir() && !fileInfo.isErasureCoded();
+	}
+	
+	//erasure coded blocks need one datanode block per fragment, all on distinct datanodes
+	BlockInfo getFileBlock(AbstractNode fileInfo, int index, int storageAffinity, int locationAffinity) throws Exception {
+		if (!fileInfo.isErasureCoded()){
+			return blockStore.getBlock(storageAffinity, locationAffinity, CrailUtils.blockLength(index, fileInfo.getBlockSize()), fileInfo.getReplication());
+		}
+		int fragments = fileInfo.getDataFragments() + fileInfo.getParityFragments();
+		BlockInfo block = blockStore.getBlock(storageAffinity, locationAffinity, CrailConstants.BLOCK_SIZE, fragments);
+		if (block != null && block.getReplicaCount() + 1 < fragments){
+			blockStore.addBlock(block);
+			return null;
+		}
+		return block;
+	}
+	
+	//concurrent reservations may race for the same trailing block, the loser picks up the winner's block
+	BlockInfo allocateBlock(AbstractNode fileInfo, int index, int storageAffinity, int locationAffinity) throws Exception {
+		BlockInfo block = fileInfo.getBlock(index);
+		while (block == null){
+			BlockInfo previous = fileInfo.getBlock(index - 1);
+			if (index > 0 && previous == null){
+				previous = allocateBlock(fileInfo, index - 1, storageAffinity, locationAffinity);
+				if (previous == null){
+					return null;
+				}
+			}
+			block = getFileBlock(fileInfo, index, storageAffinity, locationAffinity);
+			if (block == null){
+				return null;
+			}
+			if (!fileInfo.addBlock(index, block)){
+				blockStore.addBlock(block);
+			}
+			block = fileInfo.getBlock(index);
+		}
+		return block;
+	}
+	
+	void appendToDeleteQueue(AbstractNode fileInfo) throws Exception {
+		if (fileInfo != null) {
+			fileInfo.setDelay(CrailConstants.TOKEN_EXPIRATION);
+			deleteQueue.add(fileInfo);			
+		}
+	}	
+	
+	void appendToCompactionQueue(AbstractNode directory) throws Exception {
+		if (directory.isSparse() && directory.scheduleCompaction()){
+			compactionQueue.add(directory);
+		}
+	}
+	
+	//directories that are being listed are skipped, the next delete or rename schedules them again
+	void compactDirectory(AbstractNode directory, DirectoryWriter writer) throws Exception {
+		if (!(directory instanceof DirectoryBlocks)){
+			return;
+		}
+		if (directory.isListing()){
+			directory.compactionDone();
+			return;
+		}
+		//the records are rewritten without the directory lock, rpcs on the directory go on meanwhile
+		DirectoryCompaction compaction = directory.planCompaction();
+		for (DirectoryCompaction.Move move : compaction.getMoves()){
+			if (writer.place(directory, move.getName(), move.getTo())){
+				move.setState(DirectoryCompaction.WRITTEN);
+			}
+		}
+		directory.applyCompaction(compaction);
+		for (DirectoryCompaction.Move move : compaction.getMoves()){
+			if (move.getState() == DirectoryCompaction.APPLIED){
+				writer.clear(directory, move.getName(), move.getFrom());
+			} else if (move.getState() == DirectoryCompaction.VOIDED){
+				writer.clear(directory, move.getName(), move.getTo());
+				directory.releaseSlot(move.getTo());
+			}
+		}
+		long oldSize = compaction.getSize();
+		long newSize = directory.getCapacity();
+		if (newSize < oldSize){
+			//trailing blocks are released through the delete queue, clients may still hold them
+			int fromIndex = newSize == 0 ? 0 : CrailUtils.computeIndex(newSize - 1) + 1;
+			DirectoryBlocks released = new DirectoryBlocks(directory.getComponent());
+			((DirectoryBlocks) directory).moveBlocks(fromIndex, released);
+			appendToDeleteQueue(released);
+		}
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("compactDirectory: fd " + directory.getFd() + ", size " + oldSize + ", new size " + newSize);
+		}
+	}
+	
+	//releases the destination token of a copy that just ended, the pins go once its tasks are settled
+	void finishCopy(CopyJob job) throws Exception {
+		AbstractNode fileInfo = job.getDestination();
+		if (job.getState() == RpcResponseMessage.CopyStatusRes.DONE){
+			fileInfo.setCapacity(job.getCapacity());
+		}
+		fileInfo.resetToken();
+		fileInfo.notifyWaiters(false);
+		AbstractNode parentInfo = fileInfo.getParent();
+		if (parentInfo != null && job.getState() == RpcResponseMessage.CopyStatusRes.DONE){
+			parentInfo.postEvent(WatchEvent.CLOSE, fileInfo, fileInfo.getName());
+		}
+		settleCopy(job);
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("finishCopy: copyId " + job.getId() + ", fd " + fileInfo.getFd() + ", state " + job.getState() + ", copied " + job.getCopied());
+		}
+	}
+	
+	//unpins source and destination once no datanode works on the copy anymore, blocks whose files 
+	//were deleted meanwhile go back to the block store here, returns false while tasks are outstanding
+	boolean settleCopy(CopyJob job) throws Exception {
+		if (!job.isSettled()){
+			return false;
+		}
+		for (BlockInfo block : job.releasePinned()){
+			if (FileBlocks.unpin(block)){
+				blockStore.addBlock(block);
+			}
+		}
+		for (Long taskId : job.getTasks()){
+			taskTable.remove(taskId);
+		}
+		return true;
+	}
+	
+	//fails copies whose datanodes went silent or whose destination is gone, keeps the destination token of
+	//the others alive and drops results nobody picked up
+	void expireCopies() throws Exception {
+		Iterator<CopyJob> iter = copyTable.values().iterator();
+		while (iter.hasNext()){
+			CopyJob job = iter.next();
+			boolean running = job.getState() == RpcResponseMessage.CopyStatusRes.RUNNING;
+			if (running && (job.isStale(transferPolls) || fileTable.get(job.getDestination().getFd()) == null)){
+				if (job.fail()){
+					finishCopy(job);
+				}
+			} else if (running){
+				job.getDestination().updateToken();
+			} else if (settleCopy(job) && job.isStale(transferPolls)){
+				iter.remove();
+			}
+		}
+	}
+	
+	//a block whose file has been deleted meanwhile goes back to the block store with its last lease
+	boolean releaseLease(long leaseId) throws Exception {
+		BlockLease lease = leaseTable.remove(leaseId);
+		if (lease == null || !lease.finish()){
+			return false;
+		}
+		if (FileBlocks.unpin(lease.getBlock())){
+			blockStore.addBlock(lease.getBlock());
+		}
+		return true;
+	}
+	
+	//fails if the wait server has taken the lease out of the queue already, it is about to expire then
+	boolean renewLease(long leaseId, long timeout) {
+		BlockLease lease = leaseTable.get(leaseId);
+		if (lease == null || lease.isDone() || !waitQueue.remove(lease)){
+			return false;
+		}
+		lease.extend(timeout);
+		waitQueue.add(lease);
+		return true;
+	}
 	
 	void freeFile(AbstractNode fileInfo) throws Exception {
 		if (fileInfo != null) {
@@ -0,0 +1,52 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.ibm.crail.namenode;
+
+import java.util.concurrent.DelayQueue;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.utils.CrailUtils;
+
+public class WaitServer implements Runnable {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private DelayQueue<DeferredCall> waitQueue;
+	
+	public WaitServer(DelayQueue<DeferredCall> waitQueue){
+		this.waitQueue = waitQueue;
+	}
+
+	@Override
+	public void run() {
+		while(true){
+			try{
+				DeferredCall call = waitQueue.take();
+				call.expire();
+			} catch(Exception e){
+				LOG.info("Exception during wait expiration: " + e.getMessage());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import junit.framework.TestCase;
+
+public class TestAppendReservations extends TestCase {
+	private FileBlocks file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = new FileBlocks(1, 1024);
+	}
+	
+	public void testCommitInOrder() throws Exception {
+		long first = file.reserve(100);
+		long second = file.reserve(50);
+		assertEquals(0, first);
+		assertEquals(100, second);
+		assertEquals(0, file.getCapacity());
+		assertTrue(file.commit(first));
+		assertEquals(100, file.getCapacity());
+		assertTrue(file.commit(second));
+		assertEquals(150, file.getCapacity());
+		assertFalse(file.hasPendingAppends());
+	}
+	
+	public void testCommitOutOfOrder() throws Exception {
+		long first = file.reserve(100);
+		long second = file.reserve(50);
+		assertTrue(file.commit(second));
+		assertEquals(0, file.getCapacity());
+		assertTrue(file.hasPendingAppends());
+		assertTrue(file.commit(first));
+		assertEquals(150, file.getCapacity());
+	}
+	
+	public void testUnknownCommit() throws Exception {
+		long first = file.reserve(100);
+		assertFalse(file.commit(first + 1));
+		assertTrue(file.commit(first));
+		assertFalse(file.commit(first));
+	}
+	
+	public void testAbortLastRollsBack() throws Exception {
+		long first = file.reserve(100);
+		long second = file.reserve(50);
+		file.abort(second, 50);
+		assertTrue(file.commit(first));
+		assertEquals(100, file.getCapacity());
+		assertEquals(100, file.reserve(10));
+	}
+	
+	public void testAbortedRangeIsHole() throws Exception {
+		long first = file.reserve(100);
+		long second = file.reserve(50);
+		file.abort(first, 100);
+		assertFalse(file.commit(first));
+		assertTrue(file.commit(second));
+		assertEquals(0, file.getCapacity());
+		assertEquals(-1, file.reserve(10));
+		assertFalse(file.hasPendingAppends());
+	}
+	
+	public void testDropAppends() throws Exception {
+		long first = file.reserve(100);
+		long second = file.reserve(50);
+		file.abort(first, 100);
+		file.commit(second);
+		file.dropAppends();
+		assertEquals(0, file.getCapacity());
+		assertFalse(file.commit(second));
+		assertEquals(0, file.reserve(10));
+	}
+}
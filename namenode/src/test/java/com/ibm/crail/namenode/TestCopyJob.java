@@ -0,0 +1,148 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.namenode.protocol.DataNodeInfo;
+import com.ibm.crail.namenode.protocol.TransferReport;
+import com.ibm.crail.namenode.protocol.TransferTask;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+
+public class TestCopyJob extends TestCase {
+	private BlockInfo first;
+	private BlockInfo second;
+	private BlockInfo target;
+	private long tokenExpiration;
+
+	@Override
+	protected void setUp() throws Exception {
+		DataNodeInfo dn1 = new DataNodeInfo(0, 0, new InetSocketAddress("10.0.0.1", 50020));
+		DataNodeInfo dn2 = new DataNodeInfo(0, 0, new InetSocketAddress("10.0.0.2", 50020));
+		first = new BlockInfo(dn1, 0, 1024, 1);
+		second = new BlockInfo(dn2, 0, 1024, 2);
+		target = new BlockInfo(dn2, 4096, 1024, 2);
+		tokenExpiration = CrailConstants.TOKEN_EXPIRATION;
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		CrailConstants.TOKEN_EXPIRATION = tokenExpiration;
+	}
+	
+	public void testDoneOnceAllTasksReported() throws Exception {
+		CopyJob job = new CopyJob(null, null, 2048, 0);
+		TransferTask a = job.addTask(first, target, 1024);
+		TransferTask b = job.addTask(second, target, 1024);
+		assertFalse(job.complete());
+		assertTrue(job.dispatch(a.getTaskId()));
+		assertTrue(job.dispatch(b.getTaskId()));
+		assertFalse(job.report(new TransferReport(a.getTaskId(), 512, TransferReport.RUNNING)));
+		assertFalse(job.report(new TransferReport(a.getTaskId(), 1024, TransferReport.DONE)));
+		assertEquals(RpcResponseMessage.CopyStatusRes.RUNNING, job.getState());
+		assertTrue(job.report(new TransferReport(b.getTaskId(), 1024, TransferReport.DONE)));
+		assertEquals(RpcResponseMessage.CopyStatusRes.DONE, job.getState());
+		assertEquals(2048, job.getCopied());
+		assertTrue(job.isSettled());
+	}
+	
+	public void testFailureCancelsOutstandingTasks() throws Exception {
+		CopyJob job = new CopyJob(null, null, 2048, 0);
+		TransferTask a = job.addTask(first, target, 1024);
+		TransferTask b = job.addTask(second, target, 1024);
+		job.dispatch(a.getTaskId());
+		job.dispatch(b.getTaskId());
+		assertTrue(job.report(new TransferReport(a.getTaskId(), 0, TransferReport.FAILED)));
+		assertEquals(RpcResponseMessage.CopyStatusRes.FAILED, job.getState());
+		assertFalse(job.isCancelled(a.getTaskId()));
+		assertTrue(job.isCancelled(b.getTaskId()));
+		assertFalse(job.isSettled());
+		
+		//still running on the datanode, keeps the copy from settling
+		assertFalse(job.report(new TransferReport(b.getTaskId(), 512, TransferReport.RUNNING)));
+		assertTrue(job.isCancelled(b.getTaskId()));
+		assertFalse(job.isSettled());
+		
+		assertFalse(job.report(new TransferReport(b.getTaskId(), 512, TransferReport.FAILED)));
+		assertFalse(job.isCancelled(b.getTaskId()));
+		assertTrue(job.isSettled());
+	}
+	
+	public void testEndedCopyDispatchesNothing() throws Exception {
+		CopyJob job = new CopyJob(null, null, 1024, 0);
+		TransferTask a = job.addTask(first, target, 1024);
+		assertTrue(job.fail());
+		assertFalse(job.fail());
+		assertFalse(job.dispatch(a.getTaskId()));
+		assertFalse(job.isCancelled(a.getTaskId()));
+		assertTrue(job.isSettled());
+	}
+	
+	public void testCompleteWithoutTasks() throws Exception {
+		CopyJob job = new CopyJob(null, null, 0, 0);
+		assertTrue(job.complete());
+		assertEquals(RpcResponseMessage.CopyStatusRes.DONE, job.getState());
+		assertFalse(job.fail());
+	}
+	
+	public void testSilentTaskSettles() throws Exception {
+		CrailConstants.TOKEN_EXPIRATION = 0;
+		CopyJob job = new CopyJob(null, null, 1024, 0);
+		TransferTask a = job.addTask(first, target, 1024);
+		job.dispatch(a.getTaskId());
+		job.fail();
+		Thread.sleep(5);
+		assertTrue(job.isSettled());
+	}
+	
+	public void testBandwidthSplitAcrossDataNodes() throws Exception {
+		CopyJob job = new CopyJob(null, null, 3072, 1000);
+		TransferTask a = job.addTask(first, target, 1024);
+		TransferTask b = job.addTask(first, target, 1024);
+		TransferTask c = job.addTask(second, target, 1024);
+		job.splitBandwidth();
+		assertEquals(500, a.getBandwidth());
+		assertEquals(500, b.getBandwidth());
+		assertEquals(500, c.getBandwidth());
+		
+		CopyJob unlimited = new CopyJob(null, null, 1024, 0);
+		TransferTask d = unlimited.addTask(first, target, 1024);
+		unlimited.splitBandwidth();
+		assertEquals(0, d.getBandwidth());
+	}
+	
+	public void testPinDelaysFree() throws Exception {
+		BlockInfo block = new BlockInfo(first.getDnInfo(), 8192, 1024, 1);
+		assertFalse(FileBlocks.unpin(block));
+		FileBlocks.pin(block);
+		FileBlocks.pin(block);
+		assertFalse(FileBlocks.release(block));
+		assertFalse(FileBlocks.unpin(block));
+		assertTrue(FileBlocks.unpin(block));
+		assertFalse(FileBlocks.isPinned(block));
+		assertTrue(FileBlocks.release(block));
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.util.ArrayList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.conf.CrailConstants;
+
+public class TestDirectoryCompaction extends TestCase {
+	private static final int RECORD = CrailConstants.DIRECTORY_RECORD;
+	
+	private NameNodeService service;
+	private DirectoryBlocks directory;
+	private AbstractNode[] children;
+	private RecordingWriter writer;
+	private long tokenExpiration;
+	
+	@Override
+	protected void setUp() throws Exception {
+		tokenExpiration = CrailConstants.TOKEN_EXPIRATION;
+		CrailConstants.TOKEN_EXPIRATION = 0;
+		service = new NameNodeService(new DelayQueue<AbstractNode>(), new LinkedBlockingQueue<AbstractNode>(), new DelayQueue<DeferredCall>());
+		directory = new DirectoryBlocks(1);
+		children = new AbstractNode[4];
+		for (int i = 0; i < children.length; i++){
+			children[i] = child(10 + i, "f" + i);
+			assertTrue(directory.addChild(children[i]));
+			assertEquals(i*RECORD, children[i].getDirOffset());
+		}
+		writer = new RecordingWriter();
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		CrailConstants.TOKEN_EXPIRATION = tokenExpiration;
+	}
+	
+	public void testTailMovesIntoHoles() throws Exception {
+		directory.removeChild(children[0]);
+		directory.removeChild(children[1]);
+		long generation = directory.getGeneration();
+		
+		service.compactDirectory(directory, writer);
+		assertEquals(0, children[3].getDirOffset());
+		assertEquals(RECORD, children[2].getDirOffset());
+		assertEquals(2*RECORD, directory.getCapacity());
+		assertEquals(generation + 1, directory.getGeneration());
+		assertEquals("place f3 0", writer.log.get(0));
+		assertEquals("place f2 " + RECORD, writer.log.get(1));
+		assertTrue(writer.log.contains("clear f3 " + 3*RECORD));
+		assertTrue(writer.log.contains("clear f2 " + 2*RECORD));
+	}
+	
+	public void testDirectoryUnlockedWhileWriting() throws Exception {
+		directory.removeChild(children[0]);
+		final AbstractNode added = child(20, "g");
+		writer.onPlace = new Runnable() {
+			public void run() {
+				Thread thread = new Thread(new Runnable() {
+					public void run() {
+						try {
+							directory.addChild(added);
+						} catch(Exception e){
+						}
+					}
+				});
+				thread.start();
+				try {
+					thread.join(5000);
+				} catch(InterruptedException e){
+				}
+				assertFalse(thread.isAlive());
+			}
+		};
+		
+		service.compactDirectory(directory, writer);
+		assertTrue(writer.unlocked);
+		assertEquals(0, children[3].getDirOffset());
+		assertEquals(4*RECORD, added.getDirOffset());
+		assertEquals(5*RECORD, directory.getCapacity());
+	}
+	
+	public void testRemovedWhileWritingIsVoided() throws Exception {
+		directory.removeChild(children[0]);
+		writer.onPlace = new Runnable() {
+			public void run() {
+				directory.removeChild(children[3]);
+			}
+		};
+		long generation = directory.getGeneration();
+		
+		service.compactDirectory(directory, writer);
+		assertEquals(3*RECORD, children[3].getDirOffset());
+		assertEquals(generation, directory.getGeneration());
+		assertTrue(writer.log.contains("clear f3 0"));
+		assertFalse(writer.log.contains("clear f3 " + 3*RECORD));
+		
+		//the voided slot is free again
+		AbstractNode added = child(20, "g");
+		assertTrue(directory.addChild(added));
+		assertTrue(added.getDirOffset() < 4*RECORD);
+	}
+	
+	private static AbstractNode child(int component, String name) throws Exception {
+		AbstractNode child = new FileBlocks(component, 1024);
+		child.rename(component, name);
+		return child;
+	}
+	
+	static class RecordingWriter extends DirectoryWriter {
+		private ArrayList<String> log = new ArrayList<String>();
+		private Runnable onPlace;
+		private boolean unlocked = true;
+		
+		RecordingWriter(){
+			super(null);
+		}
+		
+		boolean place(AbstractNode directory, String name, long offset) {
+			unlocked &= !Thread.holdsLock(directory);
+			log.add("place " + name + " " + offset);
+			if (onPlace != null){
+				onPlace.run();
+				onPlace = null;
+			}
+			return true;
+		}
+		
+		boolean clear(AbstractNode directory, String name, long offset) {
+			unlocked &= !Thread.holdsLock(directory);
+			log.add("clear " + name + " " + offset);
+			return true;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.protocol.WatchEvent;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+
+public class TestDirectoryWatch extends TestCase {
+	private DirectoryWatch watch;
+	private DelayQueue<DeferredCall> waitQueue;
+	private long tokenExpiration;
+
+	@Override
+	protected void setUp() throws Exception {
+		watch = new DirectoryWatch();
+		waitQueue = new DelayQueue<DeferredCall>();
+		tokenExpiration = CrailConstants.TOKEN_EXPIRATION;
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		CrailConstants.TOKEN_EXPIRATION = tokenExpiration;
+	}
+	
+	public void testCreateIsNotCoalesced() throws Exception {
+		watch.post(new WatchEvent(WatchEvent.CREATE, 1, false, "a"));
+		watch.post(new WatchEvent(WatchEvent.RENAME, 1, false, "b", "a"));
+		ArrayList<WatchEvent> events = drain();
+		assertEquals(2, events.size());
+		assertEquals(WatchEvent.CREATE, events.get(0).getType());
+		assertEquals("a", events.get(0).getName());
+		assertEquals(WatchEvent.RENAME, events.get(1).getType());
+		assertEquals("b", events.get(1).getName());
+		assertEquals("a", events.get(1).getOldName());
+	}
+	
+	public void testRenamesMerge() throws Exception {
+		watch.post(new WatchEvent(WatchEvent.RENAME, 1, false, "b", "a"));
+		watch.post(new WatchEvent(WatchEvent.RENAME, 1, false, "c", "b"));
+		ArrayList<WatchEvent> events = drain();
+		assertEquals(1, events.size());
+		assertEquals("c", events.get(0).getName());
+		assertEquals("a", events.get(0).getOldName());
+	}
+	
+	public void testCloseIsReplaced() throws Exception {
+		watch.post(new WatchEvent(WatchEvent.CLOSE, 1, false, "a"));
+		watch.post(new WatchEvent(WatchEvent.CREATE, 2, false, "b"));
+		watch.post(new WatchEvent(WatchEvent.CLOSE, 1, false, "a"));
+		watch.post(new WatchEvent(WatchEvent.DELETE, 1, false, "a"));
+		ArrayList<WatchEvent> events = drain();
+		assertEquals(2, events.size());
+		assertEquals(WatchEvent.CREATE, events.get(0).getType());
+		assertEquals(WatchEvent.DELETE, events.get(1).getType());
+		assertEquals(1, events.get(1).getFd());
+	}
+	
+	public void testDrainedEventsAreNotMerged() throws Exception {
+		watch.post(new WatchEvent(WatchEvent.CLOSE, 1, false, "a"));
+		assertEquals(1, drain().size());
+		watch.post(new WatchEvent(WatchEvent.CLOSE, 1, false, "a"));
+		assertEquals(1, drain().size());
+	}
+	
+	public void testOverflow() throws Exception {
+		for (int i = 0; i <= CrailConstants.DIRECTORY_WATCH_QUEUE; i++){
+			watch.post(new WatchEvent(WatchEvent.CREATE, i, false, "f" + i));
+		}
+		RpcResponseMessage.WatchDirRes response = new RpcResponseMessage.WatchDirRes();
+		assertFalse(watch.poll(response, null, 0, waitQueue));
+		assertTrue(response.isOverflow());
+		assertTrue(response.getEvents().isEmpty());
+		assertTrue(drain().isEmpty());
+	}
+	
+	public void testWireFormat() throws Exception {
+		WatchEvent event = new WatchEvent(WatchEvent.RENAME, 7, true, "new", "old");
+		ByteBuffer buffer = ByteBuffer.allocate(event.size());
+		assertEquals(event.size(), event.write(buffer));
+		assertFalse(buffer.hasRemaining());
+		buffer.flip();
+		WatchEvent copy = new WatchEvent();
+		copy.update(buffer);
+		assertEquals(WatchEvent.RENAME, copy.getType());
+		assertEquals(7, copy.getFd());
+		assertTrue(copy.isDir());
+		assertEquals("new", copy.getName());
+		assertEquals("old", copy.getOldName());
+	}
+	
+	public void testReaperDropsAbandonedWatch() throws Exception {
+		CrailConstants.TOKEN_EXPIRATION = 0;
+		DirectoryBlocks dir = new DirectoryBlocks(1);
+		DirectoryWatch abandoned = dir.addWatch(waitQueue);
+		DeferredCall reaper = waitQueue.poll(1, TimeUnit.SECONDS);
+		assertNotNull(reaper);
+		Thread.sleep(5);
+		reaper.expire();
+		assertTrue(abandoned.isClosed());
+		assertNull(dir.getWatch(abandoned.getId()));
+	}
+	
+	private ArrayList<WatchEvent> drain(){
+		RpcResponseMessage.WatchDirRes response = new RpcResponseMessage.WatchDirRes();
+		assertFalse(watch.poll(response, null, 0, waitQueue));
+		return response.getEvents();
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.namenode.protocol.DataNodeInfo;
+import com.ibm.crail.namenode.protocol.FileInfo;
+import com.ibm.crail.namenode.protocol.FileName;
+import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcNameNodeState;
+import com.ibm.crail.namenode.rpc.RpcRequestMessage;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+
+public class TestInlineFiles extends TestCase {
+	private NameNodeService service;
+	private RpcNameNodeState errorState;
+	private int inlineData;
+
+	@Override
+	protected void setUp() throws Exception {
+		inlineData = CrailConstants.INLINE_DATA;
+		CrailConstants.INLINE_DATA = 256;
+		service = new NameNodeService(new DelayQueue<AbstractNode>(), new LinkedBlockingQueue<AbstractNode>(), new DelayQueue<DeferredCall>());
+		errorState = new RpcNameNodeState() {
+			private short error = NameNodeProtocol.ERR_OK;
+			
+			public short getError() {
+				return error;
+			}
+
+			public void setError(short error) {
+				this.error = error;
+			}
+		};
+		DataNodeInfo dnInfo = new DataNodeInfo(0, 0, new InetSocketAddress("127.0.0.1", 50020));
+		BlockInfo region = new BlockInfo(dnInfo, 0, (int) (4*CrailConstants.BLOCK_SIZE), 1);
+		assertEquals(NameNodeProtocol.ERR_OK, service.setBlock(new RpcRequestMessage.SetBlockReq(region), new RpcResponseMessage.VoidRes(), errorState));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		CrailConstants.INLINE_DATA = inlineData;
+	}
+	
+	public void testInlineRoundTrip() throws Exception {
+		FileInfo file = create("/small");
+		byte[] content = "inline content".getBytes();
+		file.setCapacity(content.length);
+		assertEquals(NameNodeProtocol.ERR_OK, service.setFile(new RpcRequestMessage.SetFileReq(file, true, content), new RpcResponseMessage.VoidRes(), errorState));
+		
+		RpcResponseMessage.GetFileRes fileRes = lookup("/small");
+		assertEquals(content.length, fileRes.getFile().getCapacity());
+		assertTrue(Arrays.equals(content, fileRes.getInlineData()));
+		assertEquals(0, fileRes.getFileBlock().getLength());
+		
+		RpcResponseMessage.GetLocationsRes locationsRes = new RpcResponseMessage.GetLocationsRes();
+		assertEquals(NameNodeProtocol.ERR_OK, service.getLocations(new RpcRequestMessage.GetLocationsReq(new FileName("/small"), 0, content.length), locationsRes, errorState));
+		assertEquals(0, locationsRes.getBlockCount());
+	}
+	
+	public void testSpilledFileGetsBlock() throws Exception {
+		FileInfo file = create("/large");
+		RpcResponseMessage.GetBlockRes blockRes = new RpcResponseMessage.GetBlockRes();
+		RpcRequestMessage.GetBlockReq blockReq = new RpcRequestMessage.GetBlockReq(file.getFd(), file.getToken(), 0, 0, 0, 0);
+		assertEquals(NameNodeProtocol.ERR_OK, service.getBlock(blockReq, blockRes, errorState));
+		assertEquals(CrailConstants.BLOCK_SIZE, blockRes.getBlockInfo().getLength());
+		
+		file.setCapacity(CrailConstants.INLINE_DATA + 1);
+		assertEquals(NameNodeProtocol.ERR_OK, service.setFile(new RpcRequestMessage.SetFileReq(file, true, null), new RpcResponseMessage.VoidRes(), errorState));
+		RpcResponseMessage.GetFileRes fileRes = lookup("/large");
+		assertNull(fileRes.getInlineData());
+		assertEquals(blockRes.getBlockInfo().getAddr(), fileRes.getFileBlock().getAddr());
+		assertEquals(CrailConstants.BLOCK_SIZE, fileRes.getFileBlock().getLength());
+	}
+	
+	public void testInlineDisabledAllocatesEagerly() throws Exception {
+		CrailConstants.INLINE_DATA = 0;
+		RpcResponseMessage.CreateFileRes createRes = new RpcResponseMessage.CreateFileRes();
+		RpcRequestMessage.CreateFileReq createReq = new RpcRequestMessage.CreateFileReq(new FileName("/eager"), false, 0, 0, 0, 1, 0, 0, 0);
+		assertEquals(NameNodeProtocol.ERR_OK, service.createFile(createReq, createRes, errorState));
+		assertEquals(CrailConstants.BLOCK_SIZE, createRes.getFileBlock().getLength());
+	}
+	
+	public void testConcatStagesInlineSource() throws Exception {
+		FileInfo dst = create("/dst");
+		long dstBlock = allocate(dst, 0);
+		close(dst, CrailConstants.BLOCK_SIZE, null);
+		FileInfo src = create("/src");
+		close(src, 100, new byte[100]);
+		
+		//inline bytes never reached a block, the namenode sends the client to the staging path
+		assertEquals(NameNodeProtocol.ERR_CONCAT_UNALIGNED, concat("/dst", "/src", "", -1));
+		
+		FileInfo staging = create("/.src.concat");
+		long stagingBlock = allocate(staging, 0);
+		close(staging, 100, null);
+		assertEquals(NameNodeProtocol.ERR_OK, concat("/dst", "/src", "/.src.concat", CrailConstants.BLOCK_SIZE));
+		
+		RpcResponseMessage.GetFileRes fileRes = lookup("/dst");
+		assertEquals(CrailConstants.BLOCK_SIZE + 100, fileRes.getFile().getCapacity());
+		assertNull(fileRes.getInlineData());
+		assertEquals(dstBlock, fileRes.getFileBlock().getAddr());
+		assertEquals(stagingBlock, block("/dst", CrailConstants.BLOCK_SIZE));
+	}
+	
+	public void testConcatStagesUnalignedSource() throws Exception {
+		FileInfo dst = create("/dst");
+		allocate(dst, 0);
+		close(dst, 1000, null);
+		FileInfo src = create("/src");
+		allocate(src, 0);
+		close(src, 300, null);
+		assertEquals(NameNodeProtocol.ERR_CONCAT_UNALIGNED, concat("/dst", "/src", "", -1));
+		
+		//the staging file holds the partial target block followed by the source
+		FileInfo staging = create("/.src.concat");
+		long stagingBlock = allocate(staging, 0);
+		close(staging, 1000, null);
+		assertEquals(NameNodeProtocol.ERR_CONCAT_INVALID, concat("/dst", "/src", "/.src.concat", 1000));
+		staging = reopen("/.src.concat");
+		close(staging, 1300, null);
+		assertEquals(NameNodeProtocol.ERR_OK, concat("/dst", "/src", "/.src.concat", 1000));
+		
+		RpcResponseMessage.GetFileRes fileRes = lookup("/dst");
+		assertEquals(1300, fileRes.getFile().getCapacity());
+		assertEquals(stagingBlock, fileRes.getFileBlock().getAddr());
+		assertEquals(NameNodeProtocol.ERR_GET_FILE_FAILED, service.getFile(new RpcRequestMessage.GetFileReq(new FileName("/src"), false), new RpcResponseMessage.GetFileRes(), errorState));
+	}
+	
+	private FileInfo create(String path) throws Exception {
+		RpcResponseMessage.CreateFileRes createRes = new RpcResponseMessage.CreateFileRes();
+		RpcRequestMessage.CreateFileReq createReq = new RpcRequestMessage.CreateFileReq(new FileName(path), false, 0, 0, 0, 1, 0, 0, 0);
+		assertEquals(NameNodeProtocol.ERR_OK, service.createFile(createReq, createRes, errorState));
+		assertEquals(0, createRes.getFileBlock().getLength());
+		assertTrue(createRes.getFile().getToken() > 0);
+		return createRes.getFile();
+	}
+	
+	private long allocate(FileInfo file, int index) throws Exception {
+		RpcResponseMessage.GetBlockRes blockRes = new RpcResponseMessage.GetBlockRes();
+		RpcRequestMessage.GetBlockReq blockReq = new RpcRequestMessage.GetBlockReq(file.getFd(), file.getToken(), index*CrailConstants.BLOCK_SIZE, 0, 0, 0);
+		assertEquals(NameNodeProtocol.ERR_OK, service.getBlock(blockReq, blockRes, errorState));
+		return blockRes.getBlockInfo().getAddr();
+	}
+	
+	private void close(FileInfo file, long capacity, byte[] inlineData) throws Exception {
+		file.setCapacity(capacity);
+		assertEquals(NameNodeProtocol.ERR_OK, service.setFile(new RpcRequestMessage.SetFileReq(file, true, inlineData), new RpcResponseMessage.VoidRes(), errorState));
+	}
+	
+	private FileInfo reopen(String path) throws Exception {
+		RpcResponseMessage.GetFileRes fileRes = new RpcResponseMessage.GetFileRes();
+		assertEquals(NameNodeProtocol.ERR_OK, service.getFile(new RpcRequestMessage.GetFileReq(new FileName(path), true), fileRes, errorState));
+		assertTrue(fileRes.getFile().getToken() > 0);
+		return fileRes.getFile();
+	}
+	
+	private short concat(String dst, String src, String staging, long dstCapacity) throws Exception {
+		FileName stagingName = staging.isEmpty() ? new FileName() : new FileName(staging);
+		RpcRequestMessage.ConcatFileReq concatReq = new RpcRequestMessage.ConcatFileReq(new FileName(dst), new FileName(src), stagingName, dstCapacity);
+		return service.concatFile(concatReq, new RpcResponseMessage.ConcatFileRes(), errorState);
+	}
+	
+	private long block(String path, long offset) throws Exception {
+		RpcResponseMessage.GetLocationsRes locationsRes = new RpcResponseMessage.GetLocationsRes();
+		assertEquals(NameNodeProtocol.ERR_OK, service.getLocations(new RpcRequestMessage.GetLocationsReq(new FileName(path), offset, 1), locationsRes, errorState));
+		assertEquals(1, locationsRes.getBlockCount());
+		return locationsRes.getBlockInfo(0).getAddr();
+	}
+	
+	//the response goes through its wire format, as the client would see it
+	private RpcResponseMessage.GetFileRes lookup(String path) throws Exception {
+		RpcResponseMessage.GetFileRes fileRes = new RpcResponseMessage.GetFileRes();
+		assertEquals(NameNodeProtocol.ERR_OK, service.getFile(new RpcRequestMessage.GetFileReq(new FileName(path), false), fileRes, errorState));
+		ByteBuffer buffer = ByteBuffer.allocate(RpcResponseMessage.GetFileRes.CSIZE);
+		fileRes.write(buffer);
+		buffer.flip();
+		RpcResponseMessage.GetFileRes received = new RpcResponseMessage.GetFileRes();
+		received.update(buffer);
+		return received;
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.namenode.protocol.DataNodeInfo;
+import com.ibm.crail.namenode.protocol.FileInfo;
+import com.ibm.crail.namenode.protocol.FileName;
+import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcNameNodeState;
+import com.ibm.crail.namenode.rpc.RpcRequestMessage;
+import com.ibm.crail.namenode.rpc.RpcResponseMessage;
+
+public class TestPutFile extends TestCase {
+	private NameNodeService service;
+	private RpcNameNodeState errorState;
+	private int inlineData;
+
+	@Override
+	protected void setUp() throws Exception {
+		inlineData = CrailConstants.INLINE_DATA;
+		CrailConstants.INLINE_DATA = 256;
+		service = new NameNodeService(new DelayQueue<AbstractNode>(), new LinkedBlockingQueue<AbstractNode>(), new DelayQueue<DeferredCall>());
+		errorState = new RpcNameNodeState() {
+			private short error = NameNodeProtocol.ERR_OK;
+			
+			public short getError() {
+				return error;
+			}
+
+			public void setError(short error) {
+				this.error = error;
+			}
+		};
+		DataNodeInfo dnInfo = new DataNodeInfo(0, 0, new InetSocketAddress("127.0.0.1", 50020));
+		BlockInfo region = new BlockInfo(dnInfo, 0, (int) (4*CrailConstants.BLOCK_SIZE), 1);
+		assertEquals(NameNodeProtocol.ERR_OK, service.setBlock(new RpcRequestMessage.SetBlockReq(region), new RpcResponseMessage.VoidRes(), errorState));
+		RpcResponseMessage.CreateFileRes createRes = new RpcResponseMessage.CreateFileRes();
+		RpcRequestMessage.CreateFileReq createReq = new RpcRequestMessage.CreateFileReq(new FileName("/table"), true, 0, 0, 0, 1, 0, 0, 0);
+		assertEquals(NameNodeProtocol.ERR_OK, service.createFile(createReq, createRes, errorState));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		CrailConstants.INLINE_DATA = inlineData;
+	}
+	
+	public void testPutNewKey() throws Exception {
+		byte[] value = "value".getBytes();
+		RpcResponseMessage.PutFileRes putRes = put("/table/key", value);
+		assertEquals(NameNodeProtocol.ERR_OK, putRes.getError());
+		assertFalse(putRes.isReplaced());
+		assertEquals(0, putRes.getFileBlock().getLength());
+		assertTrue(putRes.getDirBlock().getLength() > 0);
+		assertEquals(value.length, putRes.getFile().getCapacity());
+		
+		RpcResponseMessage.GetFileRes fileRes = lookup("/table/key", true);
+		assertEquals(NameNodeProtocol.ERR_OK, fileRes.getError());
+		assertTrue(Arrays.equals(value, fileRes.getInlineData()));
+	}
+	
+	public void testPutReplacesKeyInItsSlot() throws Exception {
+		RpcResponseMessage.PutFileRes first = put("/table/key", "old".getBytes());
+		RpcResponseMessage.PutFileRes second = put("/table/key", "new value".getBytes());
+		assertEquals(NameNodeProtocol.ERR_OK, second.getError());
+		assertTrue(second.isReplaced());
+		assertEquals(first.getFile().getDirOffset(), second.getFile().getDirOffset());
+		assertFalse(first.getFile().getFd() == second.getFile().getFd());
+		
+		RpcResponseMessage.GetFileRes fileRes = lookup("/table/key", false);
+		assertEquals(second.getFile().getFd(), fileRes.getFile().getFd());
+		assertTrue(Arrays.equals("new value".getBytes(), fileRes.getInlineData()));
+	}
+	
+	public void testPutRejectsOpenKey() throws Exception {
+		put("/table/key", "old".getBytes());
+		assertEquals(NameNodeProtocol.ERR_OK, lookup("/table/key", true).getError());
+		assertEquals(NameNodeProtocol.ERR_TOKEN_TAKEN, put("/table/key", "new".getBytes()).getError());
+		assertTrue(Arrays.equals("old".getBytes(), lookup("/table/key", false).getInlineData()));
+	}
+	
+	public void testPutRejectsLargeValue() throws Exception {
+		assertEquals(NameNodeProtocol.ERR_CAPACITY_EXCEEDED, put("/table/key", new byte[CrailConstants.INLINE_DATA + 1]).getError());
+		assertEquals(NameNodeProtocol.ERR_GET_FILE_FAILED, lookup("/table/key", false).getError());
+	}
+	
+	public void testPutRequestFitsMessage() throws Exception {
+		byte[] value = new byte[CrailConstants.INLINE_DATA];
+		value[value.length - 1] = 7;
+		RpcRequestMessage.PutFileReq request = new RpcRequestMessage.PutFileReq(new FileName("/table/key"), value);
+		ByteBuffer buffer = ByteBuffer.allocate(RpcRequestMessage.PutFileReq.CSIZE);
+		request.write(buffer);
+		buffer.flip();
+		RpcRequestMessage.PutFileReq received = new RpcRequestMessage.PutFileReq();
+		received.update(buffer);
+		assertTrue(Arrays.equals(value, received.getValue()));
+		assertEquals("key", received.getFileName().getName());
+	}
+	
+	public void testRestoreChildKeepsSlot() throws Exception {
+		AbstractNode dir = AbstractNode.createRoot();
+		AbstractNode file = AbstractNode.createNode(new FileName("/a").getFileComponent(), false, CrailConstants.BLOCK_SIZE, 1, 0, 0, 0);
+		AbstractNode other = AbstractNode.createNode(new FileName("/b").getFileComponent(), false, CrailConstants.BLOCK_SIZE, 1, 0, 0, 0);
+		assertTrue(dir.addChild(file));
+		long offset = file.getDirOffset();
+		assertSame(file, dir.removeChild(file));
+		assertTrue(dir.restoreChild(file, offset));
+		assertEquals(offset, file.getDirOffset());
+		
+		//the slot is taken again and is not handed out to a new child
+		assertTrue(dir.addChild(other));
+		assertFalse(offset == other.getDirOffset());
+	}
+	
+	public void testRestoreChildRefusesTakenName() throws Exception {
+		AbstractNode dir = AbstractNode.createRoot();
+		int component = new FileName("/a").getFileComponent();
+		AbstractNode file = AbstractNode.createNode(component, false, CrailConstants.BLOCK_SIZE, 1, 0, 0, 0);
+		AbstractNode other = AbstractNode.createNode(component, false, CrailConstants.BLOCK_SIZE, 1, 0, 0, 0);
+		assertTrue(dir.addChild(file));
+		long offset = file.getDirOffset();
+		dir.removeChild(file);
+		assertTrue(dir.addChild(other));
+		assertFalse(dir.restoreChild(file, offset));
+	}
+	
+	private RpcResponseMessage.PutFileRes put(String path, byte[] value) throws Exception {
+		RpcResponseMessage.PutFileRes putRes = new RpcResponseMessage.PutFileRes();
+		putRes.setError(service.putFile(new RpcRequestMessage.PutFileReq(new FileName(path), value), putRes, errorState));
+		return putRes;
+	}
+	
+	private RpcResponseMessage.GetFileRes lookup(String path, boolean writeable) throws Exception {
+		RpcResponseMessage.GetFileRes fileRes = new RpcResponseMessage.GetFileRes();
+		fileRes.setError(service.getFile(new RpcRequestMessage.GetFileReq(new FileName(path), writeable), fileRes, errorState));
+		return fileRes;
+	}
+}
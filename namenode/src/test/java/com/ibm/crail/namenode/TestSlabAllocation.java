@@ -0,0 +1,102 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.namenode.protocol.BlockInfo;
+import com.ibm.crail.namenode.protocol.DataNodeInfo;
+
+public class TestSlabAllocation extends TestCase {
+	private static final int BLOCK = 65536;
+	private static final int SLAB = 16384;
+	private long blockSize;
+	private BlockStore blockStore;
+
+	@Override
+	protected void setUp() throws Exception {
+		blockSize = CrailConstants.BLOCK_SIZE;
+		CrailConstants.BLOCK_SIZE = BLOCK;
+		blockStore = new BlockStore();
+		DataNodeInfo dnInfo = new DataNodeInfo(0, 0, new InetSocketAddress("127.0.0.1", 50020));
+		blockStore.addBlock(new BlockInfo(dnInfo, BLOCK, BLOCK, 1));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		CrailConstants.BLOCK_SIZE = blockSize;
+	}
+	
+	public void testSlabsCarvedFromOneBlock() throws Exception {
+		BlockInfo[] slabs = allocate(BLOCK / SLAB);
+		for (int i = 0; i < slabs.length; i++){
+			assertEquals(SLAB, slabs[i].getLength());
+			assertTrue(slabs[i].getAddr() >= BLOCK && slabs[i].getAddr() + SLAB <= 2*BLOCK);
+		}
+		assertNull(blockStore.getBlock(0, 0, SLAB));
+		assertNull(blockStore.getBlock(0, 0));
+	}
+	
+	public void testFreedSlabsCoalesce() throws Exception {
+		BlockInfo[] slabs = allocate(BLOCK / SLAB);
+		for (BlockInfo slab : slabs){
+			blockStore.addBlock(slab);
+		}
+		BlockInfo block = blockStore.getBlock(0, 0);
+		assertNotNull(block);
+		assertEquals(BLOCK, block.getAddr());
+		assertEquals(BLOCK, block.getLength());
+		assertNull(blockStore.getBlock(0, 0, SLAB));
+	}
+	
+	public void testPartialFreeKeepsSlabs() throws Exception {
+		BlockInfo[] slabs = allocate(BLOCK / SLAB);
+		for (int i = 1; i < slabs.length; i++){
+			blockStore.addBlock(slabs[i]);
+		}
+		assertNull(blockStore.getBlock(0, 0));
+		BlockInfo slab = blockStore.getBlock(0, 0, SLAB);
+		assertNotNull(slab);
+		blockStore.addBlock(slab);
+		blockStore.addBlock(slabs[0]);
+		assertNotNull(blockStore.getBlock(0, 0));
+	}
+	
+	public void testSizeClassesCarveSeparately() throws Exception {
+		BlockInfo small = blockStore.getBlock(0, 0, SLAB);
+		assertNull(blockStore.getBlock(0, 0, 2*SLAB));
+		blockStore.addBlock(small);
+		assertNotNull(blockStore.getBlock(0, 0, 2*SLAB));
+	}
+	
+	private BlockInfo[] allocate(int count) throws Exception {
+		BlockInfo[] slabs = new BlockInfo[count];
+		for (int i = 0; i < count; i++){
+			slabs[i] = blockStore.getBlock(0, 0, SLAB);
+			assertNotNull(slabs[i]);
+		}
+		return slabs;
+	}
+}
@@ -39,12 +39,14 @@ public class DaRPCNameNode implements RpcNameNode {
 	
 	private RpcEndpointGroup<DaRPCNameNodeRequest, DaRPCNameNodeResponse> namenodeClientGroup;
 	private RpcClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> namenodeClientEp;
+	private RpcClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> namenodePollEp;
 	
 	private RpcEndpointGroup<DaRPCNameNodeRequest, DaRPCNameNodeResponse> namenodeServerGroup;
 	private RdmaServerEndpoint<RpcClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse>> namenodeServerEp;
 	
 	public DaRPCNameNode(){
 		this.namenodeClientEp = null;
+		this.namenodePollEp = null;
 		this.namenodeClientGroup = null;
 		this.namenodeServerEp = null;
 		this.namenodeServerGroup = null;
@@ -67,7 +69,10 @@ public class DaRPCNameNode implements RpcNameNode {
 		InetSocketAddress nnAddr = CrailUtils.getNameNodeAddress();
 		LOG.info("connecting to namenode at " + nnAddr);
 		namenodeClientEp.connect(nnAddr, 1000);
-		DaRPCNameNodeClient namenodeClientRpc = new DaRPCNameNodeClient(namenodeClientEp);
+		//parked long polls must not hold the queue slots of regular metadata rpcs
+		this.namenodePollEp = namenodeClientGroup.createClientEndpoint();
+		namenodePollEp.connect(nnAddr, 1000);
+		DaRPCNameNodeClient namenodeClientRpc = new DaRPCNameNodeClient(namenodeClientEp, namenodePollEp);
 		return namenodeClientRpc;
 		
 	}
@@ -107,6 +112,9 @@ public class DaRPCNameNode implements RpcNameNode {
 			if (namenodeClientEp != null){
 				namenodeClientEp.close();
 			}
+			if (namenodePollEp != null){
+				namenodePollEp.close();
+			}
 			if (namenodeClientGroup != null){
 				namenodeClientGroup.close();
 			}
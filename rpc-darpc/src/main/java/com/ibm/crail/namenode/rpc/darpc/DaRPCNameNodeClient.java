@@ -22,6 +22,9 @@
 package com.ibm.crail.namenode.rpc.darpc;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
 
 import org.slf4j.Logger;
 
@@ -30,6 +33,7 @@ import com.ibm.crail.namenode.protocol.BlockInfo;
 import com.ibm.crail.namenode.protocol.DataNodeInfo;
 import com.ibm.crail.namenode.protocol.FileInfo;
 import com.ibm.crail.namenode.protocol.FileName;
+import com.ibm.crail.namenode.protocol.TransferReport;
 import com.ibm.crail.namenode.rpc.NameNodeProtocol;
 import com.ibm.crail.namenode.rpc.RpcNameNodeClient;
 import com.ibm.crail.namenode.rpc.RpcNameNodeFuture;
@@ -45,19 +49,25 @@ public class DaRPCNameNodeClient implements RpcNameNodeClient {
 	
 	private RpcClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> rpcEndpoint;
 	private RpcStream<DaRPCNameNodeRequest, DaRPCNameNodeResponse> stream;
+	private RpcClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> pollEndpoint;
+	private RpcStream<DaRPCNameNodeRequest, DaRPCNameNodeResponse> pollStream;
+	private LinkedList<RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse>> polls;
 	
-	public DaRPCNameNodeClient(RpcClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> endpoint) throws IOException {
+	public DaRPCNameNodeClient(RpcClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> endpoint, RpcClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> pollEndpoint) throws IOException {
 		this.rpcEndpoint = endpoint;
 		this.stream = endpoint.createStream();
+		this.pollEndpoint = pollEndpoint;
+		this.pollStream = pollEndpoint.createStream();
+		this.polls = new LinkedList<RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse>>();
 	}	
 	
 	@Override
-	public RpcNameNodeFuture<RpcResponseMessage.CreateFileRes> createFile(FileName filename, boolean isDir, int storageAffinity, int locationAffinity) throws IOException {
+	public RpcNameNodeFuture<RpcResponseMessage.CreateFileRes> createFile(FileName filename, boolean isDir, int storageAffinity, int locationAffinity, long sizeHint, int replication, int dataFragments, int parityFragments, int codec) throws IOException {
 		if (CrailConstants.DEBUG){
-			LOG.debug("RPC: createFile, isDir " + isDir + ", affinity " + locationAffinity);
+			LOG.debug("RPC: createFile, isDir " + isDir + ", affinity " + locationAffinity + ", sizeHint " + sizeHint + ", replication " + replication + ", fragments " + dataFragments + "+" + parityFragments + ", codec " + codec);
 		}
 		
-		RpcRequestMessage.CreateFileReq createFileReq = new RpcRequestMessage.CreateFileReq(filename, isDir, storageAffinity, locationAffinity);
+		RpcRequestMessage.CreateFileReq createFileReq = new RpcRequestMessage.CreateFileReq(filename, isDir, storageAffinity, locationAffinity, sizeHint, replication, dataFragments, parityFragments, codec);
 		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(createFileReq);
 		request.setCommand(NameNodeProtocol.CMD_CREATE_FILE);
 		
@@ -93,11 +103,16 @@ public class DaRPCNameNodeClient implements RpcNameNodeClient {
 	
 	@Override
 	public DaRPCNameNodeFuture<RpcResponseMessage.VoidRes> setFile(FileInfo fileInfo, boolean close) throws IOException {
+		return setFile(fileInfo, close, null);
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.VoidRes> setFile(FileInfo fileInfo, boolean close, byte[] inlineData) throws IOException {
 		if (CrailConstants.DEBUG){
-			LOG.debug("RPC: setFile, id " + fileInfo.getFd() + ", close " + close);
+			LOG.debug("RPC: setFile, id " + fileInfo.getFd() + ", close " + close + ", inline " + (inlineData != null));
 		}
 		
-		RpcRequestMessage.SetFileReq setFileReq = new RpcRequestMessage.SetFileReq(fileInfo, close);
+		RpcRequestMessage.SetFileReq setFileReq = new RpcRequestMessage.SetFileReq(fileInfo, close, inlineData);
 		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(setFileReq);
 		request.setCommand(NameNodeProtocol.CMD_SET_FILE);
 		
@@ -132,12 +147,12 @@ public class DaRPCNameNodeClient implements RpcNameNodeClient {
 	}
 	
 	@Override
-	public DaRPCNameNodeFuture<RpcResponseMessage.RenameRes> renameFile(FileName srcHash, FileName dstHash) throws IOException {
+	public DaRPCNameNodeFuture<RpcResponseMessage.RenameRes> renameFile(FileName srcHash, FileName dstHash, boolean overwrite) throws IOException {
 		if (CrailConstants.DEBUG){
 			LOG.debug("RPC: renameFile");
 		}
 		
-		RpcRequestMessage.RenameFileReq renameReq = new RpcRequestMessage.RenameFileReq(srcHash, dstHash);
+		RpcRequestMessage.RenameFileReq renameReq = new RpcRequestMessage.RenameFileReq(srcHash, dstHash, overwrite);
 		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(renameReq);
 		request.setCommand(NameNodeProtocol.CMD_RENAME_FILE);
 		
@@ -151,6 +166,186 @@ public class DaRPCNameNodeClient implements RpcNameNodeClient {
 		return nameNodeFuture;	
 	}
 	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.CloneFileRes> cloneFile(FileName srcHash, FileName dstHash) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: cloneFile");
+		}
+		
+		RpcRequestMessage.CloneFileReq cloneReq = new RpcRequestMessage.CloneFileReq(srcHash, dstHash);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(cloneReq);
+		request.setCommand(NameNodeProtocol.CMD_CLONE_FILE);
+		
+		RpcResponseMessage.CloneFileRes cloneRes = new RpcResponseMessage.CloneFileRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(cloneRes);
+		
+		RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcResponseMessage.CloneFileRes> nameNodeFuture = new DaRPCNameNodeFuture<RpcResponseMessage.CloneFileRes>(future, cloneRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.CopyFileRes> copyFile(FileName srcHash, FileName dstHash, int storageAffinity, int locationAffinity, long bandwidth) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: copyFile, storageAffinity " + storageAffinity + ", locationAffinity " + locationAffinity + ", bandwidth " + bandwidth);
+		}
+		
+		RpcRequestMessage.CopyFileReq copyReq = new RpcRequestMessage.CopyFileReq(srcHash, dstHash, storageAffinity, locationAffinity, bandwidth);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(copyReq);
+		request.setCommand(NameNodeProtocol.CMD_COPY_FILE);
+		
+		RpcResponseMessage.CopyFileRes copyRes = new RpcResponseMessage.CopyFileRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(copyRes);
+		
+		RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcResponseMessage.CopyFileRes> nameNodeFuture = new DaRPCNameNodeFuture<RpcResponseMessage.CopyFileRes>(future, copyRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.CopyStatusRes> copyStatus(long copyId) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: copyStatus, copyId " + copyId);
+		}
+		
+		RpcRequestMessage.CopyStatusReq statusReq = new RpcRequestMessage.CopyStatusReq(copyId);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(statusReq);
+		request.setCommand(NameNodeProtocol.CMD_COPY_STATUS);
+		
+		RpcResponseMessage.CopyStatusRes statusRes = new RpcResponseMessage.CopyStatusRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(statusRes);
+		
+		RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcResponseMessage.CopyStatusRes> nameNodeFuture = new DaRPCNameNodeFuture<RpcResponseMessage.CopyStatusRes>(future, statusRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.GetTransferRes> getTransfer(DataNodeInfo dnInfo, ArrayList<TransferReport> reports) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getTransfer, reports " + reports.size());
+		}
+		
+		RpcRequestMessage.GetTransferReq transferReq = new RpcRequestMessage.GetTransferReq(dnInfo, reports);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(transferReq);
+		request.setCommand(NameNodeProtocol.CMD_GET_TRANSFER);
+		
+		RpcResponseMessage.GetTransferRes transferRes = new RpcResponseMessage.GetTransferRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(transferRes);
+		
+		RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcResponseMessage.GetTransferRes> nameNodeFuture = new DaRPCNameNodeFuture<RpcResponseMessage.GetTransferRes>(future, transferRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.ConcatFileRes> concatFile(FileName dstHash, FileName srcHash, FileName stagingHash, long dstCapacity) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: concatFile");
+		}
+		
+		RpcRequestMessage.ConcatFileReq concatReq = new RpcRequestMessage.ConcatFileReq(dstHash, srcHash, stagingHash, dstCapacity);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(concatReq);
+		request.setCommand(NameNodeProtocol.CMD_CONCAT_FILE);
+		
+		RpcResponseMessage.ConcatFileRes concatRes = new RpcResponseMessage.ConcatFileRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(concatRes);
+		
+		RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcResponseMessage.ConcatFileRes> nameNodeFuture = new DaRPCNameNodeFuture<RpcResponseMessage.ConcatFileRes>(future, concatRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.ReserveFileRes> reserveFile(long fd, long length, int storageAffinity, int locationAffinity) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: reserveFile, fd " + fd + ", length " + length);
+		}
+		
+		RpcRequestMessage.ReserveFileReq reserveReq = new RpcRequestMessage.ReserveFileReq(fd, length, storageAffinity, locationAffinity);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(reserveReq);
+		request.setCommand(NameNodeProtocol.CMD_RESERVE_FILE);
+		
+		RpcResponseMessage.ReserveFileRes reserveRes = new RpcResponseMessage.ReserveFileRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(reserveRes);
+		
+		RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcResponseMessage.ReserveFileRes> nameNodeFuture = new DaRPCNameNodeFuture<RpcResponseMessage.ReserveFileRes>(future, reserveRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.CommitFileRes> commitFile(long fd, long offset) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: commitFile, fd " + fd + ", offset " + offset);
+		}
+		
+		RpcRequestMessage.CommitFileReq commitReq = new RpcRequestMessage.CommitFileReq(fd, offset);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(commitReq);
+		request.setCommand(NameNodeProtocol.CMD_COMMIT_FILE);
+		
+		RpcResponseMessage.CommitFileRes commitRes = new RpcResponseMessage.CommitFileRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(commitRes);
+		
+		RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcResponseMessage.CommitFileRes> nameNodeFuture = new DaRPCNameNodeFuture<RpcResponseMessage.CommitFileRes>(future, commitRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.WaitFileRes> waitFile(long fd, long capacity, long timeout) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: waitFile, fd " + fd + ", capacity " + capacity + ", timeout " + timeout);
+		}
+		
+		RpcRequestMessage.WaitFileReq waitReq = new RpcRequestMessage.WaitFileReq(fd, capacity, timeout);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(waitReq);
+		request.setCommand(NameNodeProtocol.CMD_WAIT_FILE);
+		
+		RpcResponseMessage.WaitFileRes waitRes = new RpcResponseMessage.WaitFileRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(waitRes);
+		
+		RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = timeout > 0 ? issuePoll(request, response) : issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcResponseMessage.WaitFileRes> nameNodeFuture = new DaRPCNameNodeFuture<RpcResponseMessage.WaitFileRes>(future, waitRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.WatchDirRes> watchDirectory(long fd, long watchId, long timeout, boolean cancel) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: watchDirectory, fd " + fd + ", watchId " + watchId + ", timeout " + timeout + ", cancel " + cancel);
+		}
+		
+		RpcRequestMessage.WatchDirReq watchReq = new RpcRequestMessage.WatchDirReq(fd, watchId, timeout, cancel);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(watchReq);
+		request.setCommand(NameNodeProtocol.CMD_WATCH_DIR);
+		
+		RpcResponseMessage.WatchDirRes watchRes = new RpcResponseMessage.WatchDirRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(watchRes);
+		
+		RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = timeout > 0 && !cancel ? issuePoll(request, response) : issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcResponseMessage.WatchDirRes> nameNodeFuture = new DaRPCNameNodeFuture<RpcResponseMessage.WatchDirRes>(future, watchRes);
+		
+		return nameNodeFuture;	
+	}
+	
 	@Override
 	public DaRPCNameNodeFuture<RpcResponseMessage.GetBlockRes> getBlock(long fd, long token, long position, int storageAffinity, int locationAffinity, long capacity) throws IOException {
 		if (CrailConstants.DEBUG){
@@ -171,6 +366,46 @@ public class DaRPCNameNodeClient implements RpcNameNodeClient {
 		return nameNodeFuture;	
 	}
 	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.PinBlockRes> pinBlock(long fd, long position, long leaseId, boolean renew) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: pinBlock, fd " + fd + ", position " + position + ", leaseId " + leaseId + ", renew " + renew);
+		}
+		
+		RpcRequestMessage.PinBlockReq pinBlockReq = new RpcRequestMessage.PinBlockReq(fd, position, leaseId, renew);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(pinBlockReq);
+		request.setCommand(NameNodeProtocol.CMD_PIN_BLOCK);
+		
+		RpcResponseMessage.PinBlockRes pinBlockRes = new RpcResponseMessage.PinBlockRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(pinBlockRes);
+		
+		RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcResponseMessage.PinBlockRes> nameNodeFuture = new DaRPCNameNodeFuture<RpcResponseMessage.PinBlockRes>(future, pinBlockRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.PutFileRes> putFile(FileName fileName, byte[] value) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: putFile, fileName " + fileName.getName() + ", length " + value.length);
+		}
+		
+		RpcRequestMessage.PutFileReq putFileReq = new RpcRequestMessage.PutFileReq(fileName, value);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(putFileReq);
+		request.setCommand(NameNodeProtocol.CMD_PUT_FILE);
+		
+		RpcResponseMessage.PutFileRes putFileRes = new RpcResponseMessage.PutFileRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(putFileRes);
+		
+		RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcResponseMessage.PutFileRes> nameNodeFuture = new DaRPCNameNodeFuture<RpcResponseMessage.PutFileRes>(future, putFileRes);
+		
+		return nameNodeFuture;	
+	}
+	
 	@Override
 	public DaRPCNameNodeFuture<RpcResponseMessage.GetLocationRes> getLocation(FileName fileName, long position) throws IOException {
 		if (CrailConstants.DEBUG){
@@ -191,6 +426,46 @@ public class DaRPCNameNodeClient implements RpcNameNodeClient {
 		return nameNodeFuture;			
 	}	
 	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.GetLocationsRes> getLocations(FileName fileName, long position, long length) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getLocations, position " + position + ", length " + length);
+		}		
+		
+		RpcRequestMessage.GetLocationsReq getLocationsReq = new RpcRequestMessage.GetLocationsReq(fileName, position, length);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(getLocationsReq);
+		request.setCommand(NameNodeProtocol.CMD_GET_LOCATIONS);
+
+		RpcResponseMessage.GetLocationsRes getLocationsRes = new RpcResponseMessage.GetLocationsRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(getLocationsRes);
+		
+		RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcResponseMessage.GetLocationsRes> nameNodeFuture = new DaRPCNameNodeFuture<RpcResponseMessage.GetLocationsRes>(future, getLocationsRes);
+		
+		return nameNodeFuture;			
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcResponseMessage.ListDirRes> listDirectory(FileName fileName, long cursor, long generation) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: listDirectory, cursor " + cursor + ", generation " + generation);
+		}		
+		
+		RpcRequestMessage.ListDirReq listDirReq = new RpcRequestMessage.ListDirReq(fileName, cursor, generation);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(listDirReq);
+		request.setCommand(NameNodeProtocol.CMD_LIST_DIR);
+
+		RpcResponseMessage.ListDirRes listDirRes = new RpcResponseMessage.ListDirRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(listDirRes);
+		
+		RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcResponseMessage.ListDirRes> nameNodeFuture = new DaRPCNameNodeFuture<RpcResponseMessage.ListDirRes>(future, listDirRes);
+		
+		return nameNodeFuture;			
+	}
+	
 	@Override
 	public DaRPCNameNodeFuture<RpcResponseMessage.VoidRes> setBlock(BlockInfo blockInfo) throws Exception {
 		if (CrailConstants.DEBUG){
@@ -271,4 +546,25 @@ public class DaRPCNameNodeClient implements RpcNameNodeClient {
 			throw e;
 		}
 	}
+	
+	//long polls go to their own connection, the number in flight is capped so the namenode never parks more than the queue holds
+	private synchronized RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> issuePoll(DaRPCNameNodeRequest request, DaRPCNameNodeResponse response) throws IOException{
+		Iterator<RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse>> iter = polls.iterator();
+		while (iter.hasNext()){
+			if (iter.next().isDone()){
+				iter.remove();
+			}
+		}
+		if (polls.size() >= CrailConstants.NAMENODE_POLL_MAX){
+			throw new IOException("too many concurrent long polls, limit " + CrailConstants.NAMENODE_POLL_MAX);
+		}
+		try {
+			RpcFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = pollStream.request(request, response, false);
+			polls.add(future);
+			return future;
+		} catch(IOException e){
+			LOG.info("ERROR: long poll failed, messagesSend " + pollEndpoint.getMessagesSent() + ", messagesReceived " + pollEndpoint.getMessagesReceived() + ", isConnected " + pollEndpoint.isConnected() + ", qpNum " + pollEndpoint.getQp().getQp_num());
+			throw e;
+		}
+	}
 }
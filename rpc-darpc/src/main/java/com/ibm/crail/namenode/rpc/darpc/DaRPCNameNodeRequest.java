@@ -32,7 +32,7 @@ import com.ibm.darpc.RdmaRpcMessage;
 
 public class DaRPCNameNodeRequest implements RdmaRpcMessage {
 	public static final Logger LOG = CrailUtils.getLogger();
-	public static final int CSIZE = 4 + Math.max(RpcRequestMessage.SetFileReq.CSIZE, RpcRequestMessage.RenameFileReq.CSIZE);
+	public static final int CSIZE = 4 + Math.max(Math.max(RpcRequestMessage.CreateFileReq.CSIZE, RpcRequestMessage.CopyFileReq.CSIZE), Math.max(Math.max(RpcRequestMessage.SetFileReq.CSIZE, RpcRequestMessage.RenameFileReq.CSIZE), Math.max(Math.max(RpcRequestMessage.GetTransferReq.CSIZE, RpcRequestMessage.ConcatFileReq.CSIZE), RpcRequestMessage.PutFileReq.CSIZE)));
 	
 	private short cmd;
 	private short type;
@@ -47,6 +47,19 @@ public class DaRPCNameNodeRequest implements RdmaRpcMessage {
 	private RpcRequestMessage.GetDataNodeReq getDataNodeReq;
 	private RpcRequestMessage.DumpNameNodeReq dumpNameNodeReq;
 	private RpcRequestMessage.PingNameNodeReq pingNameNodeReq;
+	private RpcRequestMessage.ListDirReq listDirReq;
+	private RpcRequestMessage.GetLocationsReq getLocationsReq;
+	private RpcRequestMessage.ConcatFileReq concatFileReq;
+	private RpcRequestMessage.ReserveFileReq reserveFileReq;
+	private RpcRequestMessage.CommitFileReq commitFileReq;
+	private RpcRequestMessage.WaitFileReq waitFileReq;
+	private RpcRequestMessage.WatchDirReq watchDirReq;
+	private RpcRequestMessage.CloneFileReq cloneFileReq;
+	private RpcRequestMessage.CopyFileReq copyFileReq;
+	private RpcRequestMessage.CopyStatusReq copyStatusReq;
+	private RpcRequestMessage.GetTransferReq getTransferReq;
+	private RpcRequestMessage.PinBlockReq pinBlockReq;
+	private RpcRequestMessage.PutFileReq putFileReq;
 
 	public DaRPCNameNodeRequest() {
 		this.cmd = 0;
@@ -62,6 +75,19 @@ public class DaRPCNameNodeRequest implements RdmaRpcMessage {
 		this.dumpNameNodeReq = new RpcRequestMessage.DumpNameNodeReq();
 		this.pingNameNodeReq = new RpcRequestMessage.PingNameNodeReq();
 		this.getDataNodeReq = new RpcRequestMessage.GetDataNodeReq();
+		this.listDirReq = new RpcRequestMessage.ListDirReq();
+		this.getLocationsReq = new RpcRequestMessage.GetLocationsReq();
+		this.concatFileReq = new RpcRequestMessage.ConcatFileReq();
+		this.reserveFileReq = new RpcRequestMessage.ReserveFileReq();
+		this.commitFileReq = new RpcRequestMessage.CommitFileReq();
+		this.waitFileReq = new RpcRequestMessage.WaitFileReq();
+		this.watchDirReq = new RpcRequestMessage.WatchDirReq();
+		this.cloneFileReq = new RpcRequestMessage.CloneFileReq();
+		this.copyFileReq = new RpcRequestMessage.CopyFileReq();
+		this.copyStatusReq = new RpcRequestMessage.CopyStatusReq();
+		this.getTransferReq = new RpcRequestMessage.GetTransferReq();
+		this.pinBlockReq = new RpcRequestMessage.PinBlockReq();
+		this.putFileReq = new RpcRequestMessage.PutFileReq();
 	}
 	
 	public DaRPCNameNodeRequest(RpcRequestMessage.CreateFileReq message) {
@@ -118,6 +144,71 @@ public class DaRPCNameNodeRequest implements RdmaRpcMessage {
 		this.pingNameNodeReq = message;
 	}
 	
+	public DaRPCNameNodeRequest(RpcRequestMessage.ListDirReq message) {
+		this.type = message.getType();
+		this.listDirReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.GetLocationsReq message) {
+		this.type = message.getType();
+		this.getLocationsReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.ConcatFileReq message) {
+		this.type = message.getType();
+		this.concatFileReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.ReserveFileReq message) {
+		this.type = message.getType();
+		this.reserveFileReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.CommitFileReq message) {
+		this.type = message.getType();
+		this.commitFileReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.WaitFileReq message) {
+		this.type = message.getType();
+		this.waitFileReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.WatchDirReq message) {
+		this.type = message.getType();
+		this.watchDirReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.CloneFileReq message) {
+		this.type = message.getType();
+		this.cloneFileReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.CopyFileReq message) {
+		this.type = message.getType();
+		this.copyFileReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.CopyStatusReq message) {
+		this.type = message.getType();
+		this.copyStatusReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.GetTransferReq message) {
+		this.type = message.getType();
+		this.getTransferReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.PinBlockReq message) {
+		this.type = message.getType();
+		this.pinBlockReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.PutFileReq message) {
+		this.type = message.getType();
+		this.putFileReq = message;
+	}
+	
 	public void setCommand(short command) {
 		this.cmd = command;
 	}	
@@ -165,6 +256,45 @@ public class DaRPCNameNodeRequest implements RdmaRpcMessage {
 		case NameNodeProtocol.REQ_PING_NAMENODE:
 			written += pingNameNodeReq.write(buffer);
 			break;
+		case NameNodeProtocol.REQ_LIST_DIR:
+			written += listDirReq.write(buffer);
+			break;
+		case NameNodeProtocol.REQ_GET_LOCATIONS:
+			written += getLocationsReq.write(buffer);
+			break;
+		case NameNodeProtocol.REQ_CONCAT_FILE:
+			written += concatFileReq.write(buffer);
+			break;
+		case NameNodeProtocol.REQ_RESERVE_FILE:
+			written += reserveFileReq.write(buffer);
+			break;
+		case NameNodeProtocol.REQ_COMMIT_FILE:
+			written += commitFileReq.write(buffer);
+			break;
+		case NameNodeProtocol.REQ_WAIT_FILE:
+			written += waitFileReq.write(buffer);
+			break;
+		case NameNodeProtocol.REQ_WATCH_DIR:
+			written += watchDirReq.write(buffer);
+			break;
+		case NameNodeProtocol.REQ_CLONE_FILE:
+			written += cloneFileReq.write(buffer);
+			break;
+		case NameNodeProtocol.REQ_COPY_FILE:
+			written += copyFileReq.write(buffer);
+			break;
+		case NameNodeProtocol.REQ_COPY_STATUS:
+			written += copyStatusReq.write(buffer);
+			break;
+		case NameNodeProtocol.REQ_GET_TRANSFER:
+			written += getTransferReq.write(buffer);
+			break;
+		case NameNodeProtocol.REQ_PIN_BLOCK:
+			written += pinBlockReq.write(buffer);
+			break;
+		case NameNodeProtocol.REQ_PUT_FILE:
+			written += putFileReq.write(buffer);
+			break;
 		}
 		
 		return written;
@@ -208,6 +338,45 @@ public class DaRPCNameNodeRequest implements RdmaRpcMessage {
 		case NameNodeProtocol.REQ_PING_NAMENODE:
 			pingNameNodeReq.update(buffer);
 			break;
+		case NameNodeProtocol.REQ_LIST_DIR:
+			listDirReq.update(buffer);
+			break;
+		case NameNodeProtocol.REQ_GET_LOCATIONS:
+			getLocationsReq.update(buffer);
+			break;
+		case NameNodeProtocol.REQ_CONCAT_FILE:
+			concatFileReq.update(buffer);
+			break;
+		case NameNodeProtocol.REQ_RESERVE_FILE:
+			reserveFileReq.update(buffer);
+			break;
+		case NameNodeProtocol.REQ_COMMIT_FILE:
+			commitFileReq.update(buffer);
+			break;
+		case NameNodeProtocol.REQ_WAIT_FILE:
+			waitFileReq.update(buffer);
+			break;
+		case NameNodeProtocol.REQ_WATCH_DIR:
+			watchDirReq.update(buffer);
+			break;
+		case NameNodeProtocol.REQ_CLONE_FILE:
+			cloneFileReq.update(buffer);
+			break;
+		case NameNodeProtocol.REQ_COPY_FILE:
+			copyFileReq.update(buffer);
+			break;
+		case NameNodeProtocol.REQ_COPY_STATUS:
+			copyStatusReq.update(buffer);
+			break;
+		case NameNodeProtocol.REQ_GET_TRANSFER:
+			getTransferReq.update(buffer);
+			break;
+		case NameNodeProtocol.REQ_PIN_BLOCK:
+			pinBlockReq.update(buffer);
+			break;
+		case NameNodeProtocol.REQ_PUT_FILE:
+			putFileReq.update(buffer);
+			break;
 		}
 	}
 
@@ -262,4 +431,56 @@ public class DaRPCNameNodeRequest implements RdmaRpcMessage {
 	public RpcRequestMessage.PingNameNodeReq pingNameNode(){
 		return this.pingNameNodeReq;
 	}
+	
+	public RpcRequestMessage.ListDirReq listDirectory(){
+		return this.listDirReq;
+	}
+	
+	public RpcRequestMessage.GetLocationsReq getLocations(){
+		return this.getLocationsReq;
+	}
+	
+	public RpcRequestMessage.ConcatFileReq concatFile(){
+		return this.concatFileReq;
+	}
+	
+	public RpcRequestMessage.ReserveFileReq reserveFile(){
+		return this.reserveFileReq;
+	}
+	
+	public RpcRequestMessage.CommitFileReq commitFile(){
+		return this.commitFileReq;
+	}
+	
+	public RpcRequestMessage.WaitFileReq waitFile(){
+		return this.waitFileReq;
+	}
+	
+	public RpcRequestMessage.WatchDirReq watchDirectory(){
+		return this.watchDirReq;
+	}
+	
+	public RpcRequestMessage.CloneFileReq cloneFile(){
+		return this.cloneFileReq;
+	}
+	
+	public RpcRequestMessage.CopyFileReq copyFile(){
+		return this.copyFileReq;
+	}
+	
+	public RpcRequestMessage.CopyStatusReq copyStatus(){
+		return this.copyStatusReq;
+	}
+	
+	public RpcRequestMessage.GetTransferReq getTransfer(){
+		return this.getTransferReq;
+	}
+	
+	public RpcRequestMessage.PinBlockReq pinBlock(){
+		return this.pinBlockReq;
+	}
+	
+	public RpcRequestMessage.PutFileReq putFile(){
+		return this.putFileReq;
+	}
 }
@@ -29,7 +29,7 @@ import com.ibm.crail.namenode.rpc.RpcResponseMessage;
 import com.ibm.darpc.RdmaRpcMessage;
 
 public class DaRPCNameNodeResponse implements RdmaRpcMessage, RpcNameNodeState {
-	public static final int CSIZE = 4 + Math.max(RpcResponseMessage.GetBlockRes.CSIZE, RpcResponseMessage.RenameRes.CSIZE);
+	public static final int CSIZE = 4 + Math.max(Math.max(Math.max(RpcResponseMessage.ListDirRes.CSIZE, RpcResponseMessage.WatchDirRes.CSIZE), Math.max(RpcResponseMessage.GetLocationsRes.CSIZE, RpcResponseMessage.ReserveFileRes.CSIZE)), Math.max(Math.max(RpcResponseMessage.GetBlockRes.CSIZE, RpcResponseMessage.GetFileRes.CSIZE), Math.max(Math.max(RpcResponseMessage.RenameRes.CSIZE, RpcResponseMessage.CloneFileRes.CSIZE), Math.max(Math.max(RpcResponseMessage.CopyFileRes.CSIZE, RpcResponseMessage.GetTransferRes.CSIZE), RpcResponseMessage.PutFileRes.CSIZE))));
 	
 	private short type;
 	private short error;
@@ -42,6 +42,19 @@ public class DaRPCNameNodeResponse implements RdmaRpcMessage, RpcNameNodeState {
 	private RpcResponseMessage.GetLocationRes getLocationRes;	
 	private RpcResponseMessage.GetDataNodeRes getDataNodeRes;
 	private RpcResponseMessage.PingNameNodeRes pingNameNodeRes;
+	private RpcResponseMessage.ListDirRes listDirRes;
+	private RpcResponseMessage.GetLocationsRes getLocationsRes;
+	private RpcResponseMessage.ConcatFileRes concatFileRes;
+	private RpcResponseMessage.ReserveFileRes reserveFileRes;
+	private RpcResponseMessage.CommitFileRes commitFileRes;
+	private RpcResponseMessage.WaitFileRes waitFileRes;
+	private RpcResponseMessage.WatchDirRes watchDirRes;
+	private RpcResponseMessage.CloneFileRes cloneFileRes;
+	private RpcResponseMessage.CopyFileRes copyFileRes;
+	private RpcResponseMessage.CopyStatusRes copyStatusRes;
+	private RpcResponseMessage.GetTransferRes getTransferRes;
+	private RpcResponseMessage.PinBlockRes pinBlockRes;
+	private RpcResponseMessage.PutFileRes putFileRes;
 	
 	public DaRPCNameNodeResponse() {
 		this.type = 0;
@@ -56,6 +69,19 @@ public class DaRPCNameNodeResponse implements RdmaRpcMessage, RpcNameNodeState {
 		this.getLocationRes = new RpcResponseMessage.GetLocationRes();
 		this.getDataNodeRes = new RpcResponseMessage.GetDataNodeRes();
 		this.pingNameNodeRes = new RpcResponseMessage.PingNameNodeRes();
+		this.listDirRes = new RpcResponseMessage.ListDirRes();
+		this.getLocationsRes = new RpcResponseMessage.GetLocationsRes();
+		this.concatFileRes = new RpcResponseMessage.ConcatFileRes();
+		this.reserveFileRes = new RpcResponseMessage.ReserveFileRes();
+		this.commitFileRes = new RpcResponseMessage.CommitFileRes();
+		this.waitFileRes = new RpcResponseMessage.WaitFileRes();
+		this.watchDirRes = new RpcResponseMessage.WatchDirRes();
+		this.cloneFileRes = new RpcResponseMessage.CloneFileRes();
+		this.copyFileRes = new RpcResponseMessage.CopyFileRes();
+		this.copyStatusRes = new RpcResponseMessage.CopyStatusRes();
+		this.getTransferRes = new RpcResponseMessage.GetTransferRes();
+		this.pinBlockRes = new RpcResponseMessage.PinBlockRes();
+		this.putFileRes = new RpcResponseMessage.PutFileRes();
 	}
 	
 	public DaRPCNameNodeResponse(RpcResponseMessage.VoidRes message) {
@@ -103,6 +129,71 @@ public class DaRPCNameNodeResponse implements RdmaRpcMessage, RpcNameNodeState {
 		this.pingNameNodeRes = message;
 	}
 	
+	public DaRPCNameNodeResponse(RpcResponseMessage.ListDirRes message) {
+		this.type = message.getType();
+		this.listDirRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.GetLocationsRes message) {
+		this.type = message.getType();
+		this.getLocationsRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.ConcatFileRes message) {
+		this.type = message.getType();
+		this.concatFileRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.ReserveFileRes message) {
+		this.type = message.getType();
+		this.reserveFileRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.CommitFileRes message) {
+		this.type = message.getType();
+		this.commitFileRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.WaitFileRes message) {
+		this.type = message.getType();
+		this.waitFileRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.WatchDirRes message) {
+		this.type = message.getType();
+		this.watchDirRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.CloneFileRes message) {
+		this.type = message.getType();
+		this.cloneFileRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.CopyFileRes message) {
+		this.type = message.getType();
+		this.copyFileRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.CopyStatusRes message) {
+		this.type = message.getType();
+		this.copyStatusRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.GetTransferRes message) {
+		this.type = message.getType();
+		this.getTransferRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.PinBlockRes message) {
+		this.type = message.getType();
+		this.pinBlockRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.PutFileRes message) {
+		this.type = message.getType();
+		this.putFileRes = message;
+	}
+	
 	public void setType(short type) throws Exception {
 		this.type = type;
 		switch(type){
@@ -151,6 +242,71 @@ public class DaRPCNameNodeResponse implements RdmaRpcMessage, RpcNameNodeState {
 				throw new Exception("Response type not set");
 			}
 			break;
+		case NameNodeProtocol.RES_LIST_DIR:
+			if (listDirRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case NameNodeProtocol.RES_GET_LOCATIONS:
+			if (getLocationsRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case NameNodeProtocol.RES_CONCAT_FILE:
+			if (concatFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case NameNodeProtocol.RES_RESERVE_FILE:
+			if (reserveFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case NameNodeProtocol.RES_COMMIT_FILE:
+			if (commitFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case NameNodeProtocol.RES_WAIT_FILE:
+			if (waitFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case NameNodeProtocol.RES_WATCH_DIR:
+			if (watchDirRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case NameNodeProtocol.RES_CLONE_FILE:
+			if (cloneFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case NameNodeProtocol.RES_COPY_FILE:
+			if (copyFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case NameNodeProtocol.RES_COPY_STATUS:
+			if (copyStatusRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case NameNodeProtocol.RES_GET_TRANSFER:
+			if (getTransferRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case NameNodeProtocol.RES_PIN_BLOCK:
+			if (pinBlockRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case NameNodeProtocol.RES_PUT_FILE:
+			if (putFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
 		}		
 	}	
 
@@ -191,6 +347,45 @@ public class DaRPCNameNodeResponse implements RdmaRpcMessage, RpcNameNodeState {
 		case NameNodeProtocol.RES_PING_NAMENODE:
 			written += pingNameNodeRes.write(buffer);
 			break;			
+		case NameNodeProtocol.RES_LIST_DIR:
+			written += listDirRes.write(buffer);
+			break;
+		case NameNodeProtocol.RES_GET_LOCATIONS:
+			written += getLocationsRes.write(buffer);
+			break;
+		case NameNodeProtocol.RES_CONCAT_FILE:
+			written += concatFileRes.write(buffer);
+			break;
+		case NameNodeProtocol.RES_RESERVE_FILE:
+			written += reserveFileRes.write(buffer);
+			break;
+		case NameNodeProtocol.RES_COMMIT_FILE:
+			written += commitFileRes.write(buffer);
+			break;
+		case NameNodeProtocol.RES_WAIT_FILE:
+			written += waitFileRes.write(buffer);
+			break;
+		case NameNodeProtocol.RES_WATCH_DIR:
+			written += watchDirRes.write(buffer);
+			break;
+		case NameNodeProtocol.RES_CLONE_FILE:
+			written += cloneFileRes.write(buffer);
+			break;
+		case NameNodeProtocol.RES_COPY_FILE:
+			written += copyFileRes.write(buffer);
+			break;
+		case NameNodeProtocol.RES_COPY_STATUS:
+			written += copyStatusRes.write(buffer);
+			break;
+		case NameNodeProtocol.RES_GET_TRANSFER:
+			written += getTransferRes.write(buffer);
+			break;
+		case NameNodeProtocol.RES_PIN_BLOCK:
+			written += pinBlockRes.write(buffer);
+			break;
+		case NameNodeProtocol.RES_PUT_FILE:
+			written += putFileRes.write(buffer);
+			break;
 		}
 		
 		return written;
@@ -237,6 +432,58 @@ public class DaRPCNameNodeResponse implements RdmaRpcMessage, RpcNameNodeState {
 			pingNameNodeRes.update(buffer);
 			pingNameNodeRes.setError(error);
 			break;		
+		case NameNodeProtocol.RES_LIST_DIR:
+			listDirRes.update(buffer);
+			listDirRes.setError(error);
+			break;
+		case NameNodeProtocol.RES_GET_LOCATIONS:
+			getLocationsRes.update(buffer);
+			getLocationsRes.setError(error);
+			break;
+		case NameNodeProtocol.RES_CONCAT_FILE:
+			concatFileRes.update(buffer);
+			concatFileRes.setError(error);
+			break;
+		case NameNodeProtocol.RES_RESERVE_FILE:
+			reserveFileRes.update(buffer);
+			reserveFileRes.setError(error);
+			break;
+		case NameNodeProtocol.RES_COMMIT_FILE:
+			commitFileRes.update(buffer);
+			commitFileRes.setError(error);
+			break;
+		case NameNodeProtocol.RES_WAIT_FILE:
+			waitFileRes.update(buffer);
+			waitFileRes.setError(error);
+			break;
+		case NameNodeProtocol.RES_WATCH_DIR:
+			watchDirRes.update(buffer);
+			watchDirRes.setError(error);
+			break;
+		case NameNodeProtocol.RES_CLONE_FILE:
+			cloneFileRes.update(buffer);
+			cloneFileRes.setError(error);
+			break;
+		case NameNodeProtocol.RES_COPY_FILE:
+			copyFileRes.update(buffer);
+			copyFileRes.setError(error);
+			break;
+		case NameNodeProtocol.RES_COPY_STATUS:
+			copyStatusRes.update(buffer);
+			copyStatusRes.setError(error);
+			break;
+		case NameNodeProtocol.RES_GET_TRANSFER:
+			getTransferRes.update(buffer);
+			getTransferRes.setError(error);
+			break;
+		case NameNodeProtocol.RES_PIN_BLOCK:
+			pinBlockRes.update(buffer);
+			pinBlockRes.setError(error);
+			break;
+		case NameNodeProtocol.RES_PUT_FILE:
+			putFileRes.update(buffer);
+			putFileRes.setError(error);
+			break;
 		}
 	}
 	
@@ -287,4 +534,56 @@ public class DaRPCNameNodeResponse implements RdmaRpcMessage, RpcNameNodeState {
 	public RpcResponseMessage.PingNameNodeRes pingNameNode(){
 		return this.pingNameNodeRes;
 	}
+	
+	public RpcResponseMessage.ListDirRes listDirectory(){
+		return this.listDirRes;
+	}
+	
+	public RpcResponseMessage.GetLocationsRes getLocations(){
+		return this.getLocationsRes;
+	}
+	
+	public RpcResponseMessage.ConcatFileRes concatFile(){
+		return this.concatFileRes;
+	}
+	
+	public RpcResponseMessage.ReserveFileRes reserveFile(){
+		return this.reserveFileRes;
+	}
+	
+	public RpcResponseMessage.CommitFileRes commitFile(){
+		return this.commitFileRes;
+	}
+	
+	public RpcResponseMessage.WaitFileRes waitFile(){
+		return this.waitFileRes;
+	}
+	
+	public RpcResponseMessage.WatchDirRes watchDirectory(){
+		return this.watchDirRes;
+	}
+	
+	public RpcResponseMessage.CloneFileRes cloneFile(){
+		return this.cloneFileRes;
+	}
+	
+	public RpcResponseMessage.CopyFileRes copyFile(){
+		return this.copyFileRes;
+	}
+	
+	public RpcResponseMessage.CopyStatusRes copyStatus(){
+		return this.copyStatusRes;
+	}
+	
+	public RpcResponseMessage.GetTransferRes getTransfer(){
+		return this.getTransferRes;
+	}
+	
+	public RpcResponseMessage.PinBlockRes pinBlock(){
+		return this.pinBlockRes;
+	}
+	
+	public RpcResponseMessage.PutFileRes putFile(){
+		return this.putFileRes;
+	}
 }
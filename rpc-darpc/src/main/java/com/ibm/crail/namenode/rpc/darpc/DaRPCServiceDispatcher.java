@@ -26,6 +26,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 
 import com.ibm.crail.namenode.rpc.NameNodeProtocol;
+import com.ibm.crail.namenode.rpc.RpcNameNodeDeferred;
 import com.ibm.crail.namenode.rpc.RpcNameNodeService;
 import com.ibm.crail.utils.CrailUtils;
 import com.ibm.darpc.RpcClientEndpoint;
@@ -100,6 +101,13 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol {
 			case NameNodeProtocol.CMD_GET_LOCATION:
 				error = service.getLocation(request.getLocation(), response.getLocation(), response);
 				break;				
+			case NameNodeProtocol.CMD_GET_LOCATIONS:
+				error = service.getLocations(request.getLocations(), response.getLocations(), response);
+				break;
+			case NameNodeProtocol.CMD_LIST_DIR:
+				this.lookupOps.incrementAndGet();
+				error = service.listDirectory(request.listDirectory(), response.listDirectory(), response);
+				break;
 			case NameNodeProtocol.CMD_SET_BLOCK:
 				error = service.setBlock(request.setBlock(), response.getVoid(), response);
 				break;
@@ -112,6 +120,39 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol {
 			case NameNodeProtocol.CMD_PING_NAMENODE:
 				error = service.ping(request.pingNameNode(), response.pingNameNode(), response);
 				break;
+			case NameNodeProtocol.CMD_CONCAT_FILE:
+				error = service.concatFile(request.concatFile(), response.concatFile(), response);
+				break;
+			case NameNodeProtocol.CMD_RESERVE_FILE:
+				error = service.reserveFile(request.reserveFile(), response.reserveFile(), response);
+				break;
+			case NameNodeProtocol.CMD_COMMIT_FILE:
+				error = service.commitFile(request.commitFile(), response.commitFile(), response);
+				break;
+			case NameNodeProtocol.CMD_WAIT_FILE:
+				error = service.waitFile(request.waitFile(), response.waitFile(), response, new DeferredResponse(event));
+				break;
+			case NameNodeProtocol.CMD_WATCH_DIR:
+				error = service.watchDirectory(request.watchDirectory(), response.watchDirectory(), response, new DeferredResponse(event));
+				break;
+			case NameNodeProtocol.CMD_CLONE_FILE:
+				error = service.cloneFile(request.cloneFile(), response.cloneFile(), response);
+				break;
+			case NameNodeProtocol.CMD_COPY_FILE:
+				error = service.copyFile(request.copyFile(), response.copyFile(), response);
+				break;
+			case NameNodeProtocol.CMD_COPY_STATUS:
+				error = service.copyStatus(request.copyStatus(), response.copyStatus(), response);
+				break;
+			case NameNodeProtocol.CMD_GET_TRANSFER:
+				error = service.getTransfer(request.getTransfer(), response.getTransfer(), response);
+				break;
+			case NameNodeProtocol.CMD_PIN_BLOCK:
+				error = service.pinBlock(request.pinBlock(), response.pinBlock(), response);
+				break;
+			case NameNodeProtocol.CMD_PUT_FILE:
+				error = service.putFile(request.putFile(), response.putFile(), response);
+				break;
 			default:
 				error = NameNodeProtocol.ERR_INVALID_RPC_CMD;
 				LOG.info("Rpc command not valid, opcode " + request.getCmd());
@@ -122,6 +163,9 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol {
 			e.printStackTrace();
 		}
 		
+		if (error == NameNodeProtocol.ERR_DEFERRED){
+			return;
+		}
 		try {
 			response.setError(error);
 			this.totalOps.incrementAndGet();
@@ -132,6 +176,27 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol {
 		}
 	}
 
+	//parked responses are sent from whichever thread completes them
+	private class DeferredResponse implements RpcNameNodeDeferred {
+		private RpcServerEvent<DaRPCNameNodeRequest, DaRPCNameNodeResponse> event;
+		
+		public DeferredResponse(RpcServerEvent<DaRPCNameNodeRequest, DaRPCNameNodeResponse> event){
+			this.event = event;
+		}
+
+		@Override
+		public void complete(short error) {
+			try {
+				event.getResponse().setError(error);
+				totalOps.incrementAndGet();
+				event.triggerResponse();
+			} catch(Exception e){
+				LOG.info("ERROR: deferred RPC failed");
+				e.printStackTrace();
+			}
+		}
+	}
+
 	@Override
 	public void close(
 			RpcClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> endpoint) {
@@ -33,6 +33,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 
@@ -45,6 +46,7 @@ import com.ibm.crail.datanode.rdma.client.RdmaDataNodeActiveEndpointFactory;
 import com.ibm.crail.datanode.rdma.client.RdmaDataNodeActiveGroup;
 import com.ibm.crail.datanode.rdma.client.RdmaDataNodePassiveEndpointFactory;
 import com.ibm.crail.datanode.rdma.client.RdmaDataNodePassiveGroup;
+import com.ibm.crail.namenode.protocol.BlockInfo;
 import com.ibm.crail.namenode.protocol.DataNodeStatistics;
 import com.ibm.crail.utils.CrailUtils;
 import com.ibm.disni.endpoints.*;
@@ -56,6 +58,7 @@ public class RdmaDataNode extends DataNode {
 	
 	//server-side
 	private InetSocketAddress serverAddr;
+	private ConcurrentHashMap<Integer, ByteBuffer> regions;
 	
 	//client-side
 	private MrCache clientMrCache = null;
@@ -63,6 +66,7 @@ public class RdmaDataNode extends DataNode {
 	
 	public RdmaDataNode(){
 		this.serverAddr = null;
+		this.regions = new ConcurrentHashMap<Integer, ByteBuffer>();
 		this.clientGroup = null;
 		this.clientMrCache = null;
 	}
@@ -136,6 +140,11 @@ public class RdmaDataNode extends DataNode {
 		return serverAddr;
 	}	
 	
+	@Override
+	public ByteBuffer getRegion(BlockInfo block) {
+		return regions.get(block.getLkey());
+	}
+	
 	public void run () throws Exception {
 		this.serverAddr = getDataNodeAddress();
 		if (serverAddr == null){
@@ -202,6 +211,7 @@ public class RdmaDataNode extends DataNode {
 						//register buffer
 						allocatedSize += dataBuffer.capacity();
 						IbvMr mr = datanodeServerEndpoint.registerMemory(dataBuffer).execute().free().getMr();
+						regions.put(mr.getLkey(), dataBuffer);
 						
 						//write index file
 						String indexFilePath = indexDirPath + "/" + mr.getLkey();
@@ -291,4 +291,9 @@ public class RdmaDataNodeActiveEndpoint extends RdmaActiveClientEndpoint impleme
 	public boolean isLocal() {
 		return false;
 	}
+
+	@Override
+	public ByteBuffer map(BlockInfo remoteMr, long remoteOffset, int length) throws IOException {
+		return null;
+	}
 }
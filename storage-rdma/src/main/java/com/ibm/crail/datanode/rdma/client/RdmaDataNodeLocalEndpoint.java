@@ -158,6 +158,39 @@ public class RdmaDataNodeLocalEndpoint implements DataNodeEndpoint {
 		return future;
 	}
 
+	//a read-only view of the mapped data file, no copy is made
+	@Override
+	public ByteBuffer map(BlockInfo remoteMr, long remoteOffset, int length) throws IOException {
+		if (length > CrailConstants.BLOCK_SIZE){
+			throw new IOException("map size too large");
+		}	
+		if (length <= 0){
+			throw new IOException("map size too small, len " + length);
+		}
+		if (remoteOffset < 0){
+			throw new IOException("remote offset too small " + remoteOffset);
+		}
+		
+		ByteBuffer mappedBuffer = bufferMap.get(remoteMr.getLkey());
+		if (mappedBuffer == null){
+			throw new IOException("No mapped buffer for this key");
+		}
+		RdmaBlockIndex blockIndex = indexMap.get(remoteMr.getLkey());
+		if (blockIndex == null){
+			throw new IOException("No index for this key");
+		}		
+
+		long blockOffset = remoteMr.getAddr() - blockIndex.getAddr();
+		if (blockOffset + remoteOffset + length > RdmaConstants.DATANODE_RDMA_ALLOCATION_SIZE){
+			long tmpAddr = blockOffset + remoteOffset + length;
+			throw new IOException("remote fileOffset + remoteOffset + len too large " + tmpAddr);
+		}
+		ByteBuffer view = mappedBuffer.duplicate();
+		view.limit((int) (blockOffset + remoteOffset + length));
+		view.position((int) (blockOffset + remoteOffset));
+		return view.slice().asReadOnlyBuffer();
+	}
+
 	@Override
 	public void close() throws IOException, InterruptedException {
 	}
@@ -388,4 +388,9 @@ public class RdmaDataNodePassiveEndpoint extends RdmaClientEndpoint implements D
 	public boolean isLocal() {
 		return false;
 	}	
+
+	@Override
+	public ByteBuffer map(BlockInfo remoteMr, long remoteOffset, int length) throws IOException {
+		return null;
+	}
 }